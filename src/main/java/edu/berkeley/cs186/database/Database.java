@@ -7,6 +7,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 import edu.berkeley.cs186.database.common.ByteBuffer;
@@ -56,8 +57,11 @@ public class Database implements AutoCloseable {
     private static final String USER_TABLE_PREFIX = "tables.";
     private static final String TABLE_INFO_TABLE_NAME = METADATA_TABLE_PREFIX + "tables";
     private static final String INDEX_INFO_TABLE_NAME = METADATA_TABLE_PREFIX + "indices";
-    private static final int DEFAULT_BUFFER_SIZE = 262144; // default of 1G
-    private static final int MAX_SCHEMA_SIZE = 4005; // a wonderful number pulled out of nowhere
+    static final int DEFAULT_BUFFER_SIZE = 262144; // default of 1G
+    private static final int MAX_SCHEMA_SIZE = 3985; // a wonderful number pulled out of nowhere
+    // MAX_SCHEMA_SIZE before information_schema.tables had its format and dictionary columns
+    private static final int LEGACY_MAX_SCHEMA_SIZE = 4005;
+    private static final int VACUUM_BATCH_PAGES = 8;
 
     // information_schema.tables, manages all tables in the database
     private Table tableInfo;
@@ -73,6 +77,11 @@ public class Database implements AutoCloseable {
     private final ConcurrentMap<String, RecordId> indexInfoLookup;
     // list of indices for each table
     private final ConcurrentMap<String, List<String>> tableIndices;
+    // table name to metadata of tables that have not been opened yet (tables are only
+    // opened on first access, see lookupTable)
+    private final ConcurrentMap<String, TableInfoRecord> unopenedTables;
+    // index name to metadata of indices that have not been opened yet (see lookupIndex)
+    private final ConcurrentMap<String, BPlusTreeMetadata> unopenedIndices;
 
     // number of transactions created
     private long numTransactions;
@@ -95,9 +104,16 @@ public class Database implements AutoCloseable {
 
     // number of pages of memory to use for joins, etc.
     private int workMem = 1024; // default of 4M
+    // number of threads to scan a table with in a query
+    private int queryParallelism = 1;
     // number of pages of memory available total
     private int numMemoryPages;
 
+    // number of pages of memory for temporary tables, if they have their own buffer pool
+    private int numTempPages;
+    // partitions of temporary tables
+    private final Set<Integer> tempPartitions = ConcurrentHashMap.newKeySet();
+
     // progress in loading tables/indices
     private final Phaser loadingProgress = new Phaser(1);
     // active transactions
@@ -157,7 +173,8 @@ public class Database implements AutoCloseable {
     }
 
     /**
-     * Creates a new database.
+     * Creates a new database. The other settings (see DatabaseOptions) have their
+     * defaults; use Database(String, DatabaseOptions) to change them.
      *
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory in the buffer cache
@@ -167,28 +184,62 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, new DatabaseOptions()
+             .setNumMemoryPages(numMemoryPages)
+             .setLockManager(lockManager)
+             .setEvictionPolicy(policy)
+             .setUseRecoveryManager(useRecoveryManager));
+    }
+
+    /**
+     * Creates a new database with the given options; see DatabaseOptions for the
+     * settings and their defaults.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param options the settings of the database
+     */
+    public Database(String fileDir, DatabaseOptions options) {
         boolean initialized = setupDirectory(fileDir);
+        int numMemoryPages = options.getNumMemoryPages();
+        int numLogPages = options.getNumLogPages();
+        int numTempPages = options.getNumTempPages();
+        boolean useOffHeapBuffers = options.getUseOffHeapBuffers();
+        int readAheadDepth = options.getReadAheadDepth();
+        double cleanFrameFraction = options.getCleanFrameFraction();
+        LockManager lockManager = options.getLockManager();
 
         numTransactions = 0;
         this.numMemoryPages = numMemoryPages;
+        this.numTempPages = numTempPages;
         this.lockManager = lockManager;
         tableLookup = new ConcurrentHashMap<>();
         indexLookup = new ConcurrentHashMap<>();
         tableIndices = new ConcurrentHashMap<>();
         tableInfoLookup = new ConcurrentHashMap<>();
         indexInfoLookup = new ConcurrentHashMap<>();
+        unopenedTables = new ConcurrentHashMap<>();
+        unopenedIndices = new ConcurrentHashMap<>();
         this.executor = new ThreadPool();
 
-        if (useRecoveryManager) {
+        if (options.getUseRecoveryManager()) {
             recoveryManager = new ARIESRecoveryManager(lockManager.databaseContext(),
                     this::beginRecoveryTransaction, this::setTransactionCounter, this::getTransactionCounter);
         } else {
             recoveryManager = new DummyRecoveryManager();
         }
 
-        diskSpaceManager = new DiskSpaceManagerImpl(fileDir, recoveryManager);
-        bufferManager = new BufferManagerImpl(diskSpaceManager, recoveryManager, numMemoryPages,
-                                              policy);
+        diskSpaceManager = options.getDiskSpaceManagerFactory().apply(fileDir, recoveryManager);
+        BufferManager dataPool = new BufferManagerImpl(diskSpaceManager, recoveryManager, numMemoryPages,
+                options.getEvictionPolicy(), useOffHeapBuffers, readAheadDepth, cleanFrameFraction);
+        if (numLogPages == 0 && numTempPages == 0) {
+            bufferManager = dataPool;
+        } else {
+            BufferManager logPool = numLogPages == 0 ? dataPool : new BufferManagerImpl(diskSpaceManager,
+                    recoveryManager, numLogPages, options.getLogPolicy(), useOffHeapBuffers, readAheadDepth, cleanFrameFraction);
+            BufferManager tempPool = numTempPages == 0 ? dataPool : new BufferManagerImpl(diskSpaceManager,
+                    recoveryManager, numTempPages, options.getTempPolicy(), useOffHeapBuffers, readAheadDepth, cleanFrameFraction);
+            bufferManager = new PartitionedBufferManager(logPool, dataPool, tempPool, this::classifyPartition);
+        }
 
         if (!initialized) {
             // create log partition
@@ -265,7 +316,10 @@ public class Database implements AutoCloseable {
                                 new IntDataBox(1),
                                 new LongDataBox(tableInfoPage0),
                                 new BoolDataBox(false),
-                                new StringDataBox(new String(getTableInfoSchema().toBytes()), MAX_SCHEMA_SIZE)
+                                new StringDataBox(new String(getTableInfoSchema().toBytes()), MAX_SCHEMA_SIZE),
+                                new IntDataBox(TableFormat.ROW.ordinal()),
+                                new LongDataBox(0L),
+                                new LongDataBox(-1L)
                             )));
         tableLookup.put(TABLE_INFO_TABLE_NAME, tableInfo);
         tableIndices.put(TABLE_INFO_TABLE_NAME, Collections.emptyList());
@@ -292,7 +346,10 @@ public class Database implements AutoCloseable {
                                 new IntDataBox(2),
                                 new LongDataBox(indexInfoPage0),
                                 new BoolDataBox(false),
-                                new StringDataBox(new String(getIndexInfoSchema().toBytes()), MAX_SCHEMA_SIZE)
+                                new StringDataBox(new String(getIndexInfoSchema().toBytes()), MAX_SCHEMA_SIZE),
+                                new IntDataBox(TableFormat.ROW.ordinal()),
+                                new LongDataBox(0L),
+                                new LongDataBox(-1L)
                             )));
         tableLookup.put(INDEX_INFO_TABLE_NAME, indexInfo);
         tableIndices.put(INDEX_INFO_TABLE_NAME, Collections.emptyList());
@@ -323,7 +380,9 @@ public class Database implements AutoCloseable {
         tableIndices.put(INDEX_INFO_TABLE_NAME, Collections.emptyList());
     }
 
-    // load tables from information_schema.tables
+    // load the metadata of tables and indices from information_schema; the tables and
+    // indices themselves are only opened on first access, so that startup does not
+    // read every table (to compute its statistics) or index
     private void loadTablesAndIndices() {
         Iterator<RecordId> iter = tableInfo.ridIterator();
 
@@ -334,21 +393,37 @@ public class Database implements AutoCloseable {
         dbContext.acquire(primaryTC, LockType.IX);
         tableInfoContext.acquire(primaryTC, LockType.IX);
 
+        Table legacyTableInfo = getLegacyTableInfo();
+        TableInfoRecord tableInfoRecord = null;
+        RecordId tableInfoRecordId = null;
+
         for (RecordId recordId : (Iterable<RecordId>) () -> iter) {
             TransactionContext.setTransaction(primaryTC);
 
             try {
                 LockContext tableMetadataContext = tableInfoContext.childContext(recordId.getPageNum());
-                // need an X lock here even though we're only reading, to prevent others from attempting to
-                // fetch table object before it has been constructed
-                tableMetadataContext.acquire(primaryTC, LockType.X);
+                LockUtil.ensureSufficientLockHeld(tableMetadataContext, LockType.X);
 
-                TableInfoRecord record = new TableInfoRecord(tableInfo.getRecord(recordId));
+                Table rowTable = legacyTableInfo == null ? tableInfo : legacyTableInfo;
+                TableInfoRecord record = new TableInfoRecord(rowTable.getRecord(recordId));
                 if (!record.isAllocated()) {
                     tableInfo.deleteRecord(recordId);
                     continue;
                 }
 
+                if (legacyTableInfo != null) {
+                    // rewrite the row with the current schema (and the defaults for the
+                    // columns it lacks); the row describing information_schema.tables
+                    // itself is rewritten last, so that an upgrade that is interrupted
+                    // is redone from the start the next time the database is opened
+                    if (record.tableName.equals(TABLE_INFO_TABLE_NAME)) {
+                        tableInfoRecord = record;
+                        tableInfoRecordId = recordId;
+                    } else {
+                        tableInfo.updateRecord(record.toDataBox(), recordId);
+                    }
+                }
+
                 if (record.isTemporary) {
                     continue; // no need to load temp tables - they will be cleaned up eventually by recovery
                 }
@@ -356,36 +431,19 @@ public class Database implements AutoCloseable {
                 tableInfoLookup.put(record.tableName, recordId);
                 tableIndices.putIfAbsent(record.tableName, Collections.synchronizedList(new ArrayList<>()));
 
-                if (record.tableName.startsWith(METADATA_TABLE_PREFIX)) {
-                    tableMetadataContext.release(primaryTC);
-                    continue;
+                if (!record.tableName.startsWith(METADATA_TABLE_PREFIX)) {
+                    unopenedTables.put(record.tableName, record);
                 }
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
 
-                loadingProgress.register();
-                executor.execute(() -> {
-                    loadingProgress.arriveAndAwaitAdvance();
-                    TransactionContext.setTransaction(primaryInitTransaction.getTransactionContext());
-
-                    // X(table) acquired during table ctor; not needed earlier because no one can even check
-                    // if table exists due to X(table metadata) lock
-                    LockContext tableContext = getTableContext(record.tableName, record.partNum);
-                    HeapFile heapFile = new PageDirectory(bufferManager, record.partNum, record.pageNum, (short) 0,
-                                                          tableContext);
-                    Table table = new Table(record.tableName, record.schema, heapFile, tableContext);
-                    tableLookup.put(record.tableName, table);
-
-                    // sync on lock manager to ensure that multiple jobs don't
-                    // try to perform LockContext operations for the same transaction simultaneously
-                    synchronized (lockManager) {
-                        LockContext metadataContext = getTableInfoContext().childContext(recordId.getPageNum());
-
-                        tableContext.release(primaryTC);
-                        metadataContext.release(primaryTC);
-                    }
-
-                    TransactionContext.unsetTransaction();
-                    loadingProgress.arriveAndDeregister();
-                });
+        if (tableInfoRecord != null) {
+            TransactionContext.setTransaction(primaryTC);
+            try {
+                tableInfoRecord.schema = getTableInfoSchema();
+                tableInfo.updateRecord(tableInfoRecord.toDataBox(), tableInfoRecordId);
             } finally {
                 TransactionContext.unsetTransaction();
             }
@@ -393,18 +451,70 @@ public class Database implements AutoCloseable {
 
         this.loadIndices();
 
-        loadingProgress.arriveAndAwaitAdvance(); // start table/index loading
+        primaryInitTransaction.commit();
+        secondaryInitTransaction.commit();
+        loadingProgress.arriveAndDeregister();
+    }
 
-        executor.execute(() -> {
-            loadingProgress.arriveAndAwaitAdvance(); // wait for all tables and indices to load
-            primaryInitTransaction.commit();
-            secondaryInitTransaction.commit();
-            loadingProgress.arriveAndDeregister();
-            // add toggleable auto-escalate
-        });
+    /**
+     * Databases created before information_schema.tables had its format, dict_columns
+     * and dict_page columns store its rows with getLegacyTableInfoSchema. Which schema
+     * the rows have is told by the row describing information_schema.tables itself,
+     * read with the legacy schema: its schema column holds the schema of the rows, and
+     * starts at the same offset with either schema.
+     *
+     * @return information_schema.tables read with the legacy schema if its rows have the
+     * legacy schema, or null if they have the current one
+     */
+    private Table getLegacyTableInfo() {
+        // a separate heap file, since a table sets the metadata size of its heap file
+        LockContext tableInfoContext = getTableInfoContext();
+        HeapFile heapFile = new PageDirectory(bufferManager, 1, DiskSpaceManager.getVirtualPageNum(1, 0),
+                                              (short) 0, tableInfoContext);
+        Table legacyTableInfo = new Table(TABLE_INFO_TABLE_NAME, getLegacyTableInfoSchema(), heapFile,
+                                          tableInfoContext);
+
+        TransactionContext.setTransaction(primaryInitTransaction.getTransactionContext());
+        try {
+            for (RecordId recordId : (Iterable<RecordId>) legacyTableInfo::ridIterator) {
+                TableInfoRecord record = new TableInfoRecord(legacyTableInfo.getRecord(recordId));
+                if (record.tableName.equals(TABLE_INFO_TABLE_NAME)) {
+                    // only the field names are compared: schemas are stored as strings,
+                    // which do not keep the bytes of the sizes of string fields intact
+                    if (!record.schema.getFieldNames().equals(getLegacyTableInfoSchema().getFieldNames())) {
+                        return null;
+                    }
+                    // rows are rewritten in place, so they must be laid out on the pages alike
+                    if (legacyTableInfo.getNumRecordsPerPage() != tableInfo.getNumRecordsPerPage()) {
+                        throw new DatabaseException("cannot upgrade " + TABLE_INFO_TABLE_NAME);
+                    }
+                    return legacyTableInfo;
+                }
+            }
+            return null;
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
     }
 
-    // load indices from information_schema.indices
+    // construct the Table object of a row of information_schema.tables
+    private Table openTable(TableInfoRecord record, LockContext tableContext) {
+        HeapFile heapFile = new PageDirectory(bufferManager, record.partNum, record.pageNum, (short) 0,
+                                              tableContext);
+        StringDictionary dictionary = null;
+        if (record.dictionaryPageNum >= 0) {
+            // the dictionary serializes writes to its entries itself, and writes them in
+            // system transactions, which must not wait on the table's locks
+            LockContext dictionaryContext = new DummyLockContext();
+            HeapFile dictionaryHeapFile = new PageDirectory(bufferManager, record.partNum,
+                    record.dictionaryPageNum, (short) 0, dictionaryContext);
+            dictionary = new StringDictionary(record.schema, record.dictionaryColumns, dictionaryHeapFile,
+                                              dictionaryContext, this::runInSystemTransaction);
+        }
+        return new Table(record.tableName, record.schema, heapFile, tableContext, record.format, dictionary);
+    }
+
+    // load the metadata of indices from information_schema.indices
     private void loadIndices() {
         Iterator<RecordId> iter = indexInfo.ridIterator();
 
@@ -419,44 +529,100 @@ public class Database implements AutoCloseable {
 
         for (RecordId recordId : (Iterable<RecordId>) () -> iter) {
             LockContext indexMetadataContext = indexInfoContext.childContext(recordId.getPageNum());
-            // need an X lock here even though we're only reading, to prevent others from attempting to
-            // fetch index object before it has been constructed
             indexMetadataContext.acquire(secondaryTC, LockType.X);
 
             BPlusTreeMetadata metadata = parseIndexMetadata(indexInfo.getRecord(recordId));
             if (metadata == null) {
                 indexInfo.deleteRecord(recordId);
-                return;
+                continue;
             }
 
-            loadingProgress.register();
-            executor.execute(() -> {
-                loadingProgress.arriveAndAwaitAdvance();
+            String indexName = metadata.getName();
+            tableIndices.putIfAbsent(metadata.getTableName(), Collections.synchronizedList(new ArrayList<>()));
+            tableIndices.get(metadata.getTableName()).add(indexName);
+            indexInfoLookup.put(indexName, recordId);
+            unopenedIndices.put(indexName, metadata);
+        }
+    }
 
-                String indexName = metadata.getName();
-                LockContext indexContext = getIndexContext(indexName, metadata.getPartNum());
-                indexContext.acquire(secondaryTC, LockType.X);
+    // the Table object of a table (or null if there is no such table), opening the table
+    // if this is its first access. The table is opened outside of tableLookup, since
+    // computeIfAbsent would block other lookups hashing to the same bin during the I/O;
+    // if two threads open it at once, the first to publish it wins. This runs before the
+    // caller has locked the table, so the table may be dropped while it is opened: it is
+    // published only if it is still unopened, atomically with removing it from
+    // unopenedTables (which dropTable does before removing it from tableLookup)
+    private Table lookupTable(String tableName) {
+        Table table = tableLookup.get(tableName);
+        if (table != null) {
+            return table;
+        }
+        TableInfoRecord record = unopenedTables.get(tableName);
+        if (record == null) {
+            return tableLookup.get(tableName);
+        }
+        Table opened;
+        try {
+            opened = openWithoutLocks(() -> openTable(record, getTableContext(tableName, record.partNum)));
+        } catch (RuntimeException e) {
+            if (unopenedTables.get(tableName) != record) {
+                // dropped (its partition freed) while it was read
+                return tableLookup.get(tableName);
+            }
+            throw e;
+        }
+        unopenedTables.computeIfPresent(tableName, (name, unopened) -> {
+            if (unopened != record) {
+                return unopened;
+            }
+            tableLookup.putIfAbsent(name, opened);
+            return null;
+        });
+        return tableLookup.get(tableName);
+    }
 
-                try {
-                    BPlusTree tree = new BPlusTree(bufferManager, metadata, indexContext);
-                    if (!tableIndices.containsKey(metadata.getTableName())) {
-                        // the list only needs to be synchronized while indices are being loaded, as multiple
-                        // indices may attempt to add themselves to the list at the same time
-                        tableIndices.put(metadata.getTableName(), Collections.synchronizedList(new ArrayList<>()));
-                    }
-                    tableIndices.get(metadata.getTableName()).add(indexName);
-                    indexLookup.put(indexName, tree);
-                    indexInfoLookup.put(indexName, recordId);
+    // the BPlusTree object of an index (or null if there is no such index), opening the
+    // index if this is its first access, in the same way as lookupTable
+    private BPlusTree lookupIndex(String indexName) {
+        BPlusTree tree = indexLookup.get(indexName);
+        if (tree != null) {
+            return tree;
+        }
+        BPlusTreeMetadata metadata = unopenedIndices.get(indexName);
+        if (metadata == null) {
+            return indexLookup.get(indexName);
+        }
+        BPlusTree opened;
+        try {
+            opened = openWithoutLocks(() -> new BPlusTree(bufferManager, metadata,
+                                      getIndexContext(indexName, metadata.getPartNum())));
+        } catch (RuntimeException e) {
+            if (unopenedIndices.get(indexName) != metadata) {
+                // dropped (its partition freed) while it was read
+                return indexLookup.get(indexName);
+            }
+            throw e;
+        }
+        unopenedIndices.computeIfPresent(indexName, (name, unopened) -> {
+            if (unopened != metadata) {
+                return unopened;
+            }
+            indexLookup.putIfAbsent(name, opened);
+            return null;
+        });
+        return indexLookup.get(indexName);
+    }
 
-                    synchronized (lockManager) {
-                        indexContext.release(secondaryTC);
-                    }
-                } finally {
-                    loadingProgress.arriveAndDeregister();
-                }
-            });
+    // opens a table or index outside of the transaction that first accesses it, so that the
+    // transaction is not left holding the X lock that the constructors take, or locks on
+    // every page of a table (which its constructor reads to compute statistics)
+    private <T> T openWithoutLocks(Supplier<T> open) {
+        TransactionContext.setTransaction(null);
+        try {
+            return open.get();
+        } finally {
+            TransactionContext.unsetTransaction();
         }
-        loadingProgress.arriveAndAwaitAdvance(); // start index loading
     }
 
     // wait until setup has finished
@@ -500,6 +666,8 @@ public class Database implements AutoCloseable {
         this.tableInfoLookup.clear();
         this.indexInfoLookup.clear();
         this.tableIndices.clear();
+        this.unopenedTables.clear();
+        this.unopenedIndices.clear();
 
         this.bufferManager.close();
         this.diskSpaceManager.close();
@@ -521,21 +689,54 @@ public class Database implements AutoCloseable {
         return bufferManager;
     }
 
+    /**
+     * Determines which buffer pool a partition's pages go to, if the log or temporary
+     * tables have their own buffer pools.
+     * @param partNum partition number
+     * @return class of the partition
+     */
+    private PartitionedBufferManager.PartitionClass classifyPartition(int partNum) {
+        if (partNum == 0) {
+            return PartitionedBufferManager.PartitionClass.LOG;
+        }
+        if (tempPartitions.contains(partNum)) {
+            return PartitionedBufferManager.PartitionClass.TEMP;
+        }
+        return PartitionedBufferManager.PartitionClass.DATA;
+    }
+
     @Deprecated
     public Table getTable(String tableName) {
-        return tableLookup.get(prefixUserTableName(tableName));
+        return lookupTable(prefixUserTableName(tableName));
     }
 
     public int getWorkMem() {
         // cap work memory at number of memory pages -- this is likely to cause out of memory
         // errors if actually set this high
-        return this.workMem > this.numMemoryPages ? this.numMemoryPages : this.workMem;
+        int memoryPages = this.numTempPages > 0 ? Math.min(this.numMemoryPages, this.numTempPages)
+                          : this.numMemoryPages;
+        return this.workMem > memoryPages ? memoryPages : this.workMem;
     }
 
     public void setWorkMem(int workMem) {
         this.workMem = workMem;
     }
 
+    public int getQueryParallelism() {
+        return this.queryParallelism;
+    }
+
+    /**
+     * Sets the number of threads that a sequential scan in a query may be split across;
+     * 1 (the default) scans every table on the thread running the query.
+     */
+    public void setQueryParallelism(int queryParallelism) {
+        if (queryParallelism < 1) {
+            throw new IllegalArgumentException("query parallelism must be positive");
+        }
+        this.queryParallelism = queryParallelism;
+    }
+
     /**
      * @return Schema for information_schema.tables with fields:
      *   | field name   | field type
@@ -545,12 +746,30 @@ public class Database implements AutoCloseable {
      * 2 | page_num     | long
      * 3 | is_temporary | bool
      * 4 | schema       | string(MAX_SCHEMA_SIZE)
+     * 5 | format       | int (ordinal of TableFormat)
+     * 6 | dict_columns | long (bitmap of dictionary-encoded columns)
+     * 7 | dict_page    | long (page of the dictionaries, or -1)
      */
     private Schema getTableInfoSchema() {
+        return new Schema(
+                   Arrays.asList("table_name", "part_num", "page_num", "is_temporary", "schema", "format",
+                                 "dict_columns", "dict_page"),
+                   Arrays.asList(Type.stringType(32), Type.intType(), Type.longType(), Type.boolType(),
+                                 Type.stringType(MAX_SCHEMA_SIZE), Type.intType(), Type.longType(),
+                                 Type.longType())
+               );
+    }
+
+    /**
+     * @return Schema for information_schema.tables in databases created before it had
+     * the format, dict_columns and dict_page columns: fields 0-4 of getTableInfoSchema,
+     * with a schema column of LEGACY_MAX_SCHEMA_SIZE
+     */
+    private Schema getLegacyTableInfoSchema() {
         return new Schema(
                    Arrays.asList("table_name", "part_num", "page_num", "is_temporary", "schema"),
                    Arrays.asList(Type.stringType(32), Type.intType(), Type.longType(), Type.boolType(),
-                                 Type.stringType(MAX_SCHEMA_SIZE))
+                                 Type.stringType(LEGACY_MAX_SCHEMA_SIZE))
                );
     }
 
@@ -583,6 +802,9 @@ public class Database implements AutoCloseable {
         long pageNum;
         boolean isTemporary;
         Schema schema;
+        TableFormat format;
+        List<Integer> dictionaryColumns;
+        long dictionaryPageNum;
 
         TableInfoRecord(String tableName) {
             this.tableName = tableName;
@@ -590,6 +812,9 @@ public class Database implements AutoCloseable {
             this.pageNum = -1;
             this.isTemporary = false;
             this.schema = new Schema(Collections.emptyList(), Collections.emptyList());
+            this.format = TableFormat.ROW;
+            this.dictionaryColumns = Collections.emptyList();
+            this.dictionaryPageNum = -1;
         }
 
         TableInfoRecord(Record record) {
@@ -599,6 +824,22 @@ public class Database implements AutoCloseable {
             pageNum = values.get(2).getLong();
             isTemporary = values.get(3).getBool();
             schema = Schema.fromBytes(ByteBuffer.wrap(values.get(4).toBytes()));
+            if (values.size() == 5) {
+                // a row of the legacy schema: a row-format table without dictionaries
+                format = TableFormat.ROW;
+                dictionaryColumns = Collections.emptyList();
+                dictionaryPageNum = -1;
+                return;
+            }
+            format = TableFormat.fromInt(values.get(5).getInt());
+            dictionaryColumns = new ArrayList<>();
+            long bitmap = values.get(6).getLong();
+            for (int i = 0; i < Long.SIZE; ++i) {
+                if ((bitmap & (1L << i)) != 0) {
+                    dictionaryColumns.add(i);
+                }
+            }
+            dictionaryPageNum = values.get(7).getLong();
         }
 
         List<DataBox> toDataBox() {
@@ -607,10 +848,21 @@ public class Database implements AutoCloseable {
                        new IntDataBox(partNum),
                        new LongDataBox(pageNum),
                        new BoolDataBox(isTemporary),
-                       new StringDataBox(new String(schema.toBytes()), MAX_SCHEMA_SIZE)
+                       new StringDataBox(new String(schema.toBytes()), MAX_SCHEMA_SIZE),
+                       new IntDataBox(format.ordinal()),
+                       new LongDataBox(dictionaryColumnsBitmap()),
+                       new LongDataBox(dictionaryPageNum)
                    );
         }
 
+        long dictionaryColumnsBitmap() {
+            long bitmap = 0;
+            for (int column : dictionaryColumns) {
+                bitmap |= 1L << column;
+            }
+            return bitmap;
+        }
+
         boolean isAllocated() {
             return this.partNum >= 0;
         }
@@ -651,7 +903,7 @@ public class Database implements AutoCloseable {
 
     // get the lock context for a table
     private LockContext getTableContext(String table) {
-        return getTableContext(table, tableLookup.get(prefixUserTableName(table)).getPartNum());
+        return getTableContext(table, lookupTable(prefixUserTableName(table)).getPartNum());
     }
 
     // get the lock context for an index
@@ -661,7 +913,7 @@ public class Database implements AutoCloseable {
 
     // get the lock context for an index
     LockContext getIndexContext(String index) {
-        return getIndexContext(index, indexLookup.get(index).getPartNum());
+        return getIndexContext(index, lookupIndex(index).getPartNum());
     }
 
     private String prefixUserTableName(String table) {
@@ -776,6 +1028,64 @@ public class Database implements AutoCloseable {
         return t;
     }
 
+    /**
+     * Compacts a table, moving the records of its sparsest data pages to free space on
+     * its other pages so that the sparse pages are freed (see TransactionContext#vacuum).
+     * The table stays online: it is compacted in a series of transactions that each
+     * empty at most VACUUM_BATCH_PAGES pages, so that no transaction holds its locks for
+     * long, until no more pages can be freed.
+     *
+     * @param tableName name of table to compact
+     * @return number of data pages freed
+     */
+    public int vacuum(String tableName) {
+        int numFreed = 0;
+        while (true) {
+            Transaction transaction = beginTransaction();
+            int numBatchFreed;
+            TransactionContext.setTransaction(transaction.getTransactionContext());
+            try {
+                numBatchFreed = transaction.getTransactionContext().vacuum(tableName, VACUUM_BATCH_PAGES);
+            } catch (RuntimeException e) {
+                TransactionContext.unsetTransaction();
+                transaction.rollback();
+                throw e;
+            }
+            TransactionContext.unsetTransaction();
+            transaction.commit();
+            if (numBatchFreed <= 0) {
+                return numFreed;
+            }
+            numFreed += numBatchFreed;
+        }
+    }
+
+    /**
+     * Runs an action in a new transaction, which commits when the action is done, or
+     * rolls back if it throws. Without the recovery manager, nothing can be rolled back,
+     * so the action must undo its own writes before throwing, and the transaction is
+     * just ended.
+     *
+     * @param action action to run
+     */
+    private void runInSystemTransaction(Runnable action) {
+        Transaction transaction = beginTransaction();
+        TransactionContext.setTransaction(transaction.getTransactionContext());
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            TransactionContext.unsetTransaction();
+            if (recoveryManager instanceof DummyRecoveryManager) {
+                transaction.commit();
+            } else {
+                transaction.rollback();
+            }
+            throw e;
+        }
+        TransactionContext.unsetTransaction();
+        transaction.commit();
+    }
+
     /**
      * Start a transaction for recovery.
      *
@@ -815,12 +1125,15 @@ public class Database implements AutoCloseable {
         Map<String, String> aliases;
         Map<String, Table> tempTables;
         long tempTableCounter;
+        // may be run by close() on another thread than the transaction's
+        Set<Runnable> closeHandlers;
 
         private TransactionContextImpl(long tNum) {
             this.transNum = tNum;
             this.aliases = new HashMap<>();
             this.tempTables = new HashMap<>();
             this.tempTableCounter = 0;
+            this.closeHandlers = ConcurrentHashMap.newKeySet();
         }
 
         @Override
@@ -833,19 +1146,43 @@ public class Database implements AutoCloseable {
             return Database.this.getWorkMem();
         }
 
+        @Override
+        public int getQueryParallelism() {
+            return Database.this.getQueryParallelism();
+        }
+
+        @Override
+        public ExecutorService getExecutor() {
+            return Database.this.getExecutor();
+        }
+
+        @Override
+        public void addCloseHandler(Runnable handler) {
+            closeHandlers.add(handler);
+        }
+
+        @Override
+        public void removeCloseHandler(Runnable handler) {
+            closeHandlers.remove(handler);
+        }
+
         @Override
         public String createTempTable(Schema schema) {
             String tempTableName = "tempTable" + tempTableCounter++;
             String tableName = prefixTempTableName(tempTableName);
 
             int partNum = diskSpaceManager.allocPart();
+            tempPartitions.add(partNum);
             long pageNum = diskSpaceManager.allocPage(partNum);
             RecordId recordId = tableInfo.addRecord(Arrays.asList(
                     new StringDataBox(tableName, 32),
                     new IntDataBox(partNum),
                     new LongDataBox(pageNum),
                     new BoolDataBox(true),
-                    new StringDataBox(new String(schema.toBytes()), MAX_SCHEMA_SIZE)));
+                    new StringDataBox(new String(schema.toBytes()), MAX_SCHEMA_SIZE),
+                    new IntDataBox(TableFormat.ROW.ordinal()),
+                    new LongDataBox(0L),
+                    new LongDataBox(-1L)));
             tableInfoLookup.put(tableName, recordId);
 
             LockContext lockContext = getTableContext(tableName, partNum);
@@ -868,6 +1205,7 @@ public class Database implements AutoCloseable {
             Record record = tableInfo.deleteRecord(recordId);
             TableInfoRecord tableInfoRecord = new TableInfoRecord(record);
             bufferManager.freePart(tableInfoRecord.partNum);
+            tempPartitions.remove(tableInfoRecord.partNum);
             tempTables.remove(tempTableName);
             tableLookup.remove(tableName);
             tableIndices.remove(tableName);
@@ -957,6 +1295,16 @@ public class Database implements AutoCloseable {
             return getTable(tableName).iterator();
         }
 
+        @Override
+        public BacktrackingIterator<Record> getRecordIterator(String tableName, List<Integer> columns) {
+            return getTable(tableName).iterator(columns);
+        }
+
+        @Override
+        public Iterator<RecordBatch> getBatchIterator(String tableName, List<Integer> columns) {
+            return getTable(tableName).batchIterator(columns);
+        }
+
         @Override
         public BacktrackingIterator<Page> getPageIterator(String tableName) {
             return getTable(tableName).pageIterator();
@@ -988,6 +1336,25 @@ public class Database implements AutoCloseable {
             return rid;
         }
 
+        @Override
+        public int addRecords(String tableName, Iterator<List<DataBox>> rows) {
+            Table tab = getTable(tableName);
+            List<String> colNames = tab.getSchema().getFieldNames();
+            List<Pair<Integer, BPlusTree>> indices = new ArrayList<>();
+            for (String indexName : tableIndices.get(tab.getName())) {
+                String column = indexName.split(",")[1];
+                indices.add(new Pair<>(colNames.indexOf(column), resolveIndexFromName(tableName, column).getSecond()));
+            }
+
+            // the table hands back each page's rows once the page is written, so that
+            // their keys are added to the indices without holding more than a page of rows
+            return tab.addRecords(rows, (values, rid) -> {
+                for (Pair<Integer, BPlusTree> index : indices) {
+                    index.getSecond().put(values.get(index.getFirst()), rid);
+                }
+            });
+        }
+
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
             Table tab = getTable(tableName);
@@ -1072,6 +1439,24 @@ public class Database implements AutoCloseable {
             }
         }
 
+        @Override
+        public int vacuum(String tableName, int maxPages) {
+            Table tab = getTable(tableName);
+            int numDataPages = tab.getNumDataPages();
+
+            // delete every record to move before adding any back, so that none of them is
+            // added back to a page that is being emptied
+            List<List<DataBox>> moved = new ArrayList<>();
+            for (RecordId rid : tab.getRecordIdsOnPages(tab.getSparsePages(maxPages))) {
+                moved.add(getRecord(tableName, rid).getValues());
+                deleteRecord(tableName, rid);
+            }
+            for (List<DataBox> values : moved) {
+                addRecord(tableName, values);
+            }
+            return numDataPages - tab.getNumDataPages();
+        }
+
         @Override
         public Schema getSchema(String tableName) {
             return getTable(tableName).getSchema();
@@ -1125,6 +1510,10 @@ public class Database implements AutoCloseable {
 
         @Override
         public void close() {
+            for (Runnable handler : closeHandlers) {
+                handler.run();
+            }
+            closeHandlers.clear();
             try {
                 lockManager.getLocks(this).stream()
                     .sorted((a, b) -> b.name.toString().compareTo(a.name.toString()))
@@ -1175,7 +1564,7 @@ public class Database implements AutoCloseable {
         private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
                 String columnName) {
             String indexName = resolveIndexMetadataFromName(tableName, columnName).getFirst();
-            return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
+            return new Pair<>(indexName, lookupIndex(indexName));
         }
 
         @Override
@@ -1199,7 +1588,7 @@ public class Database implements AutoCloseable {
             if (!record.isAllocated()) {
                 throw new DatabaseException("no table with name \"" + tableName + "\"");
             }
-            return Database.this.tableLookup.get(tableName);
+            return lookupTable(tableName);
         }
 
         private String prefixTempTableName(String name) {
@@ -1240,8 +1629,13 @@ public class Database implements AutoCloseable {
         @Override
         protected void startRollback() {
             executor.execute(() -> {
-                recoveryManager.abort(transNum);
-                this.cleanup();
+                try {
+                    recoveryManager.abort(transNum);
+                } finally {
+                    // end the transaction and release its locks even if it could not be
+                    // undone (e.g. abort is not implemented by the recovery manager)
+                    this.cleanup();
+                }
             });
         }
 
@@ -1266,9 +1660,29 @@ public class Database implements AutoCloseable {
 
         @Override
         public void createTable(Schema s, String tableName) {
+            createTable(s, tableName, TableFormat.ROW);
+        }
+
+        @Override
+        public void createTable(Schema s, String tableName, TableFormat format) {
+            createTable(s, tableName, format, Collections.emptyList());
+        }
+
+        @Override
+        public void createTable(Schema s, String tableName, TableFormat format, List<String> dictionaryColumns) {
             if (tableName.contains(".") && !tableName.startsWith(USER_TABLE_PREFIX)) {
                 throw new IllegalArgumentException("name of new table may not contain '.'");
             }
+            List<Integer> dictionaryColumnIndices = new ArrayList<>();
+            for (String column : dictionaryColumns) {
+                int index = s.getFieldNames().indexOf(column);
+                if (index < 0 || index >= Long.SIZE || s.getFieldTypes().get(index).getTypeId() != TypeId.STRING) {
+                    throw new DatabaseException("cannot dictionary-encode column " + column +
+                                                ": only string columns among the first " + Long.SIZE +
+                                                " columns can be dictionary-encoded");
+                }
+                dictionaryColumnIndices.add(index);
+            }
 
             String prefixedTableName = prefixUserTableName(tableName);
             TransactionContext.setTransaction(transactionContext);
@@ -1285,13 +1699,15 @@ public class Database implements AutoCloseable {
                 record.pageNum = diskSpaceManager.allocPage(record.partNum);
                 record.isTemporary = false;
                 record.schema = s;
+                record.format = format;
+                record.dictionaryColumns = dictionaryColumnIndices;
+                if (!dictionaryColumnIndices.isEmpty()) {
+                    record.dictionaryPageNum = diskSpaceManager.allocPage(record.partNum);
+                }
                 tableInfo.updateRecord(record.toDataBox(), tableInfoLookup.get(prefixedTableName));
 
                 LockContext tableContext = getTableContext(prefixedTableName, record.partNum);
-                HeapFile heapFile = new PageDirectory(bufferManager, record.partNum, record.pageNum,
-                                                      (short) 0, tableContext);
-                tableLookup.put(prefixedTableName, new Table(prefixedTableName, s,
-                                heapFile, tableContext));
+                tableLookup.put(prefixedTableName, openTable(record, tableContext));
                 tableIndices.put(prefixedTableName, new ArrayList<>());
             } finally {
                 TransactionContext.unsetTransaction();
@@ -1327,6 +1743,9 @@ public class Database implements AutoCloseable {
                 tableInfo.updateRecord(new TableInfoRecord(prefixedTableName).toDataBox(), tableRecordId);
 
                 tableIndices.remove(prefixedTableName);
+                // before tableLookup, so that a concurrent lookupTable cannot publish the
+                // table after it is removed there (see lookupTable)
+                unopenedTables.remove(prefixedTableName);
                 tableLookup.remove(prefixedTableName);
                 bufferManager.freePart(record.partNum);
             } finally {
@@ -1343,7 +1762,8 @@ public class Database implements AutoCloseable {
                 LockContext dbContext = lockManager.databaseContext();
                 LockUtil.ensureSufficientLockHeld(dbContext, LockType.X);
 
-                List<String> tableNames = new ArrayList<>(tableLookup.keySet());
+                Set<String> tableNames = new HashSet<>(tableLookup.keySet());
+                tableNames.addAll(unopenedTables.keySet());
 
                 for (String s : tableNames) {
                     if (s.startsWith(USER_TABLE_PREFIX)) {
@@ -1411,10 +1831,51 @@ public class Database implements AutoCloseable {
                 tableIndices.get(prefixedTableName).add(indexName);
 
                 // load data into index
-                Table table = tableLookup.get(prefixedTableName);
+                Table table = lookupTable(prefixedTableName);
                 BPlusTree tree = indexLookup.get(indexName);
                 if (bulkLoad) {
-                    throw new UnsupportedOperationException("not implemented");
+                    // sort the table's (key, record id) pairs with an external sort over a
+                    // temporary table, then build the tree bottom up from the sorted run, so
+                    // that only the sort's work memory is used however large the table is
+                    Schema entrySchema = new Schema(Arrays.asList("key", "pageNum", "entryNum"),
+                                                    Arrays.asList(colType, Type.longType(), Type.intType()));
+                    String entryTable = transactionContext.createTempTable(entrySchema);
+                    Iterator<RecordId> rids = table.ridIterator();
+                    transactionContext.addRecords(entryTable, new Iterator<List<DataBox>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return rids.hasNext();
+                        }
+
+                        @Override
+                        public List<DataBox> next() {
+                            RecordId rid = rids.next();
+                            return Arrays.asList(table.getRecord(rid).getValues().get(columnIndex),
+                                                 new LongDataBox(rid.getPageNum()), new IntDataBox(rid.getEntryNum()));
+                        }
+                    });
+                    Iterator<Record> sorted = new SortOperator(transactionContext, entryTable,
+                            Comparator.comparing((Record r) -> r.getValues().get(0))).iterator();
+                    tree.bulkLoad(new Iterator<Pair<DataBox, RecordId>>() {
+                        private DataBox prevKey = null;
+
+                        @Override
+                        public boolean hasNext() {
+                            return sorted.hasNext();
+                        }
+
+                        @Override
+                        public Pair<DataBox, RecordId> next() {
+                            List<DataBox> entry = sorted.next().getValues();
+                            DataBox key = entry.get(0);
+                            if (key.equals(prevKey)) {
+                                throw new DatabaseException("duplicate key " + key + " in " + tableName +
+                                                            "(" + columnName + ")");
+                            }
+                            prevKey = key;
+                            return new Pair<>(key, new RecordId(entry.get(1).getLong(), (short) entry.get(2).getInt()));
+                        }
+                    }, 1);
                 } else {
                     for (RecordId rid : (Iterable<RecordId>) table::ridIterator) {
                         Record record = table.getRecord(rid);
@@ -1454,8 +1915,10 @@ public class Database implements AutoCloseable {
                 // on to drop it.
                 LockUtil.ensureSufficientLockHeld(getIndexContext(indexName, metadata.getPartNum()), LockType.X);
 
-                bufferManager.freePart(metadata.getPartNum());
+                // before indexLookup, as in dropTable
+                unopenedIndices.remove(indexName);
                 indexLookup.remove(indexName);
+                bufferManager.freePart(metadata.getPartNum());
             } finally {
                 TransactionContext.unsetTransaction();
             }
@@ -1491,6 +1954,16 @@ public class Database implements AutoCloseable {
             }
         }
 
+        @Override
+        public void insertAll(String tableName, Iterator<List<DataBox>> rows) {
+            TransactionContext.setTransaction(transactionContext);
+            try {
+                transactionContext.addRecords(tableName, rows);
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
+
         @Override
         public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {
             update(tableName, targetColumnName, targetValue, null, null, null);
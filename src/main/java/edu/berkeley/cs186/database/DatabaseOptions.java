@@ -0,0 +1,240 @@
+package edu.berkeley.cs186.database;
+
+import java.util.function.BiFunction;
+
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
+import edu.berkeley.cs186.database.concurrency.LockManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.EvictionPolicy;
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * The settings a Database is created with. Every setting has a default, so only the
+ * ones that differ from it need to be set, e.g.
+ *
+ *   new Database(dir, new DatabaseOptions()
+ *                .setNumMemoryPages(256)
+ *                .setLockManager(new LockManager())
+ *                .setReadAheadDepth(8));
+ *
+ * The defaults are:
+ * - Default buffer size
+ * - Locking disabled (DummyLockManager)
+ * - Clock eviction policy
+ * - Recovery manager disabled (DummyRecoveryManager)
+ * - Buffer cache stored on the heap
+ * - DiskSpaceManagerImpl for disk space management, forcing every data page write
+ * - Read-ahead and the page cleaner disabled
+ * - A single buffer cache shared by the log, tables and temporary tables
+ */
+public class DatabaseOptions {
+    private int numMemoryPages = Database.DEFAULT_BUFFER_SIZE;
+    private LockManager lockManager;
+    private EvictionPolicy policy;
+    private boolean useRecoveryManager = false;
+    private boolean useOffHeapBuffers = false;
+    private BiFunction<String, RecoveryManager, DiskSpaceManager> diskSpaceManagerFactory;
+    private int syncBatchSize = 1;
+    private int readAheadDepth = 0;
+    private double cleanFrameFraction = 0;
+    private int numLogPages = 0;
+    private EvictionPolicy logPolicy;
+    private int numTempPages = 0;
+    private EvictionPolicy tempPolicy;
+
+    /**
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     */
+    public DatabaseOptions setNumMemoryPages(int numMemoryPages) {
+        this.numMemoryPages = numMemoryPages;
+        return this;
+    }
+
+    /**
+     * @param lockManager the lock manager
+     */
+    public DatabaseOptions setLockManager(LockManager lockManager) {
+        this.lockManager = lockManager;
+        return this;
+    }
+
+    /**
+     * @param policy eviction policy for buffer cache
+     */
+    public DatabaseOptions setEvictionPolicy(EvictionPolicy policy) {
+        this.policy = policy;
+        return this;
+    }
+
+    /**
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     */
+    public DatabaseOptions setUseRecoveryManager(boolean useRecoveryManager) {
+        this.useRecoveryManager = useRecoveryManager;
+        return this;
+    }
+
+    /**
+     * @param useOffHeapBuffers flag to store the buffer cache in direct (off-heap) memory
+     */
+    public DatabaseOptions setUseOffHeapBuffers(boolean useOffHeapBuffers) {
+        this.useOffHeapBuffers = useOffHeapBuffers;
+        return this;
+    }
+
+    /**
+     * @param diskSpaceManagerFactory creates the disk space manager from the directory and
+     *                                recovery manager, e.g. MappedDiskSpaceManager::new
+     */
+    public DatabaseOptions setDiskSpaceManagerFactory(
+            BiFunction<String, RecoveryManager, DiskSpaceManager> diskSpaceManagerFactory) {
+        this.diskSpaceManagerFactory = diskSpaceManagerFactory;
+        return this;
+    }
+
+    /**
+     * Sets the number of data page writes to a partition that may be left unsynced before
+     * the partition is forced to disk, for the default disk space manager (DiskSpaceManagerImpl).
+     * A custom disk space manager takes this as an argument of its own instead, e.g.
+     * (dir, rm) -> new MappedDiskSpaceManager(dir, rm, 8).
+     *
+     * @param syncBatchSize number of unsynced data page writes, or 1 to force every write
+     */
+    public DatabaseOptions setSyncBatchSize(int syncBatchSize) {
+        if (syncBatchSize < 1) {
+            throw new IllegalArgumentException("sync batch size must be positive");
+        }
+        this.syncBatchSize = syncBatchSize;
+        return this;
+    }
+
+    /**
+     * @param readAheadDepth maximum number of pages to load ahead of table and log scans,
+     *                       or 0 to disable read-ahead
+     */
+    public DatabaseOptions setReadAheadDepth(int readAheadDepth) {
+        this.readAheadDepth = readAheadDepth;
+        return this;
+    }
+
+    /**
+     * @param cleanFrameFraction fraction of the buffer cache that a background thread keeps
+     *                           clean by writing back dirty pages, or 0 to disable it
+     */
+    public DatabaseOptions setCleanFrameFraction(double cleanFrameFraction) {
+        this.cleanFrameFraction = cleanFrameFraction;
+        return this;
+    }
+
+    /**
+     * Gives the log a buffer pool of its own, separate from the buffer cache used by
+     * regular tables and indices, so that log traffic does not evict their pages.
+     *
+     * @param numLogPages the number of pages of memory in the log's buffer pool, or 0 for
+     *                    the log to share the buffer cache
+     * @param logPolicy eviction policy for the log's buffer pool (unused if numLogPages is 0)
+     */
+    public DatabaseOptions setLogPool(int numLogPages, EvictionPolicy logPolicy) {
+        this.numLogPages = numLogPages;
+        this.logPolicy = logPolicy;
+        return this;
+    }
+
+    /**
+     * Gives temporary tables a buffer pool of their own, separate from the buffer cache
+     * used by regular tables and indices, so that the intermediate results of large
+     * queries do not evict their pages.
+     *
+     * @param numTempPages the number of pages of memory in the buffer pool for temporary
+     *                     tables, or 0 for temporary tables to share the buffer cache
+     * @param tempPolicy eviction policy for the temporary tables' buffer pool (unused if
+     *                   numTempPages is 0)
+     */
+    public DatabaseOptions setTempPool(int numTempPages, EvictionPolicy tempPolicy) {
+        this.numTempPages = numTempPages;
+        this.tempPolicy = tempPolicy;
+        return this;
+    }
+
+    public int getNumMemoryPages() {
+        return this.numMemoryPages;
+    }
+
+    /**
+     * @return the lock manager, or a new DummyLockManager if none was set
+     */
+    public LockManager getLockManager() {
+        return this.lockManager == null ? new DummyLockManager() : this.lockManager;
+    }
+
+    /**
+     * @return the eviction policy for the buffer cache, or a new ClockEvictionPolicy if
+     * none was set
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return this.policy == null ? new ClockEvictionPolicy() : this.policy;
+    }
+
+    public boolean getUseRecoveryManager() {
+        return this.useRecoveryManager;
+    }
+
+    public boolean getUseOffHeapBuffers() {
+        return this.useOffHeapBuffers;
+    }
+
+    /**
+     * @return the disk space manager factory, or one creating a DiskSpaceManagerImpl with
+     * the sync batch size if none was set
+     * @throws IllegalArgumentException if both a factory and a sync batch size were set
+     */
+    public BiFunction<String, RecoveryManager, DiskSpaceManager> getDiskSpaceManagerFactory() {
+        if (this.diskSpaceManagerFactory == null) {
+            int syncBatchSize = this.syncBatchSize;
+            return (dbDir, recoveryManager) -> new DiskSpaceManagerImpl(dbDir, recoveryManager, syncBatchSize);
+        }
+        if (this.syncBatchSize != 1) {
+            throw new IllegalArgumentException("sync batch size only applies to the default " +
+                                               "disk space manager; pass it to the factory instead");
+        }
+        return this.diskSpaceManagerFactory;
+    }
+
+    public int getSyncBatchSize() {
+        return this.syncBatchSize;
+    }
+
+    public int getReadAheadDepth() {
+        return this.readAheadDepth;
+    }
+
+    public double getCleanFrameFraction() {
+        return this.cleanFrameFraction;
+    }
+
+    public int getNumLogPages() {
+        return this.numLogPages;
+    }
+
+    /**
+     * @return the eviction policy for the log's buffer pool, or a new ClockEvictionPolicy
+     * if none was set
+     */
+    public EvictionPolicy getLogPolicy() {
+        return this.logPolicy == null ? new ClockEvictionPolicy() : this.logPolicy;
+    }
+
+    public int getNumTempPages() {
+        return this.numTempPages;
+    }
+
+    /**
+     * @return the eviction policy for the temporary tables' buffer pool, or a new
+     * ClockEvictionPolicy if none was set
+     */
+    public EvictionPolicy getTempPolicy() {
+        return this.tempPolicy == null ? new ClockEvictionPolicy() : this.tempPolicy;
+    }
+}
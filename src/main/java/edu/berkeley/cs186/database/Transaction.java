@@ -5,8 +5,10 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.TableFormat;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.UnaryOperator;
 
@@ -96,6 +98,28 @@ public interface Transaction extends AutoCloseable {
      */
     void createTable(Schema s, String tableName);
 
+    /**
+     * Creates a table whose data pages are in the given format (see TableFormat);
+     * createTable(s, tableName) creates a table in TableFormat.ROW.
+     *
+     * @param s schema of new table
+     * @param tableName name of new table
+     * @param format layout of records on the table's data pages
+     */
+    void createTable(Schema s, String tableName, TableFormat format);
+
+    /**
+     * Creates a table whose data pages are in the given format, with the given string
+     * columns dictionary-encoded (see StringDictionary): their values are stored as codes
+     * into a per-column dictionary that is persisted with the table.
+     *
+     * @param s schema of new table
+     * @param tableName name of new table
+     * @param format layout of records on the table's data pages
+     * @param dictionaryColumns names of the columns to dictionary-encode
+     */
+    void createTable(Schema s, String tableName, TableFormat format, List<String> dictionaryColumns);
+
     /**
      * Drops a table. Equivalent to
      *      DROP TABLE tableName
@@ -164,6 +188,16 @@ public interface Transaction extends AutoCloseable {
      */
     void insert(String tableName, List<DataBox> values);
 
+    /**
+     * Inserts many rows into a table at once. Equivalent to inserting each row in
+     * turn, but much faster for large loads: rows are appended to new pages, and each
+     * page is written once, rather than once per row.
+     *
+     * @param tableName name of table to insert into
+     * @param rows rows to insert, each a list of values (in the same order as the table's schema)
+     */
+    void insertAll(String tableName, Iterator<List<DataBox>> rows);
+
     /**
      * Updates rows in a table. Equivalent to
      *      UPDATE tableName SET targetColumnName = targetValue(targetColumnName)
@@ -6,6 +6,7 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
@@ -16,6 +17,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.function.UnaryOperator;
 
 /**
@@ -72,6 +74,31 @@ public interface TransactionContext extends AutoCloseable {
 
     int getWorkMemSize();
 
+    /**
+     * @return number of threads that a sequential scan may be split across
+     */
+    int getQueryParallelism();
+
+    /**
+     * @return executor to run the parallel parts of a query on
+     */
+    ExecutorService getExecutor();
+
+    /**
+     * Registers a task to run when this transaction closes, before it releases its locks
+     * (e.g. to stop the workers of a query whose output was not read to the end).
+     *
+     * @param handler task to run
+     */
+    void addCloseHandler(Runnable handler);
+
+    /**
+     * Unregisters a task registered with addCloseHandler.
+     *
+     * @param handler task to no longer run
+     */
+    void removeCloseHandler(Runnable handler);
+
     @Override
     void close();
 
@@ -141,6 +168,18 @@ public interface TransactionContext extends AutoCloseable {
      */
     BacktrackingIterator<Record> getRecordIterator(String tableName);
 
+    /**
+     * Returns a backtracking iterator over the values of the given columns (indices
+     * into the table's schema) of all of the records in `tableName`.
+     */
+    BacktrackingIterator<Record> getRecordIterator(String tableName, List<Integer> columns);
+
+    /**
+     * Returns an iterator over batches of the values of the given columns (indices into
+     * the table's schema, or null for all of them) of all of the records in `tableName`.
+     */
+    Iterator<RecordBatch> getBatchIterator(String tableName, List<Integer> columns);
+
    /**
      * Returns a backtracking iterator over all of the pages in `tableName`.
      */
@@ -160,6 +199,12 @@ public interface TransactionContext extends AutoCloseable {
 
     RecordId addRecord(String tableName, List<DataBox> values);
 
+    /**
+     * Appends every row of `rows` to `tableName`, filling whole pages at a time (see
+     * Table#addRecords), and returns the number of records added.
+     */
+    int addRecords(String tableName, Iterator<List<DataBox>> rows);
+
     RecordId deleteRecord(String tableName, RecordId rid);
 
     Record getRecord(String tableName, RecordId rid);
@@ -173,6 +218,15 @@ public interface TransactionContext extends AutoCloseable {
     void runDeleteRecordWhere(String tableName, String predColumnName, PredicateOperator predOperator,
                               DataBox predValue);
 
+    /**
+     * Moves the records of up to maxPages of the sparsest data pages of `tableName` (see
+     * Table#getSparsePages) to free space on its other pages, so that the sparse pages are
+     * freed, updating the table's indices to the records' new record ids.
+     *
+     * @return number of data pages the table shrank by
+     */
+    int vacuum(String tableName, int maxPages);
+
     // Table/Schema ////////////////////////////////////////////////////////////
 
     /**
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.cli;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -172,6 +173,24 @@ public class CommandLineInterface {
             Transaction t = db.beginTransaction();
             PrettyPrinter.printTable(t.getIndexInfo());
             t.close();
+        } else if (cmd.equals("bm")) {
+            PrettyPrinter.printBufferManagerStats(db.getBufferManager().getStats());
+        } else if (cmd.equals("load")) {
+            // \load <table> <file> [index column]...
+            if (tokens.length < 3) {
+                throw new IllegalArgumentException("usage: \\load <table> <file> [index column]...");
+            }
+            List<String> indexColumns = Arrays.asList(tokens).subList(3, tokens.length);
+            int numThreads = Runtime.getRuntime().availableProcessors();
+            try (CsvLoader loader = new CsvLoader(db, numThreads)) {
+                System.out.println(loader.load(new CsvLoader.Job(tokens[1], Paths.get(tokens[2]), indexColumns)));
+            }
+        } else if (cmd.equals("vacuum")) {
+            // \vacuum <table>
+            if (tokens.length != 2) {
+                throw new IllegalArgumentException("usage: \\vacuum <table>");
+            }
+            System.out.printf("Freed %d pages of \"%s\".\n", db.vacuum(tokens[1]), tokens[1]);
         } else {
             throw new IllegalArgumentException(String.format(
                 "`%s` is not a valid metacommand",
@@ -0,0 +1,326 @@
+package edu.berkeley.cs186.database.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.LongDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Loads CSV files into existing tables, for loads too large for ExampleLoader's
+ * row-by-row inserts.
+ *
+ * Each file is split into chunks of about the same number of bytes (at line
+ * boundaries), which are parsed by a pool of worker threads in parallel. Parsed chunks
+ * are appended to the table in file order with Transaction#insertAll, which fills
+ * whole pages at a time. Indices requested for the table are created once all the
+ * rows are in, with a bulk load, rather than by inserting every row into them.
+ *
+ * Each line of a file is one row, with the values of the table's columns separated by
+ * commas, in the order of the table's schema; strings are trimmed, and blank lines are
+ * skipped. Quoting is not supported.
+ *
+ *   CsvLoader loader = new CsvLoader(db, 4);
+ *   LoadResult result = loader.load(new Job("Students", Paths.get("data", "Students.csv"),
+ *                                           Collections.singletonList("sid")));
+ *   System.out.println(result); // rows loaded, and rows per second
+ *   loader.close();
+ */
+public class CsvLoader implements AutoCloseable {
+    // Default size of the chunks files are split into, in bytes.
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final Database database;
+    private final int numThreads;
+    private final int chunkSize;
+    private final ExecutorService workers;
+
+    /**
+     * A file to load into a table, and the indices to create on the table once it is
+     * loaded.
+     */
+    public static class Job {
+        private final String tableName;
+        private final Path file;
+        private final List<String> indexColumns;
+
+        public Job(String tableName, Path file) {
+            this(tableName, file, Collections.emptyList());
+        }
+
+        public Job(String tableName, Path file, List<String> indexColumns) {
+            this.tableName = tableName;
+            this.file = file;
+            this.indexColumns = indexColumns;
+        }
+    }
+
+    /**
+     * The outcome of a Job.
+     */
+    public static class LoadResult {
+        private final String tableName;
+        private final long numRows;
+        private final long nanos;
+
+        LoadResult(String tableName, long numRows, long nanos) {
+            this.tableName = tableName;
+            this.numRows = numRows;
+            this.nanos = nanos;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public long getNumRows() {
+            return numRows;
+        }
+
+        /**
+         * @return time taken to load the rows and create the indices, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getRowsPerSecond() {
+            return nanos == 0 ? 0 : numRows * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d rows into %s in %.3fs (%.0f rows/s)", numRows, tableName,
+                                 nanos / 1e9, getRowsPerSecond());
+        }
+    }
+
+    public CsvLoader(Database database, int numThreads) {
+        this(database, numThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param database database to load into
+     * @param numThreads number of threads parsing chunks
+     * @param chunkSize approximate size of chunks, in bytes
+     */
+    public CsvLoader(Database database, int numThreads, int chunkSize) {
+        if (numThreads <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("numThreads and chunkSize must be positive");
+        }
+        this.database = database;
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+        this.workers = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "csv-loader");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Runs a job, in its own transaction. If the job fails (e.g. on a malformed line),
+     * the transaction is rolled back rather than committing the chunks appended so far.
+     * Rolling back relies on the recovery manager; without it, the transaction just ends
+     * and releases its locks, and the chunks appended so far stay in the table.
+     */
+    public LoadResult load(Job job) {
+        long start = System.nanoTime();
+        long numRows = 0;
+        // Parse up to two chunks per worker ahead of the chunk being appended.
+        Deque<Future<List<List<DataBox>>>> pending = new ArrayDeque<>();
+        // not try-with-resources: closing a transaction that is still running commits it
+        Transaction transaction = database.beginTransaction();
+        boolean loaded = false;
+        try {
+            Table table = transaction.getTransactionContext().getTable(job.tableName);
+            if (table == null) {
+                throw new DatabaseException("table " + job.tableName + " does not exist");
+            }
+            Schema schema = table.getSchema();
+            long fileSize = Files.size(job.file);
+            long nextChunk = 0;
+            while (nextChunk < fileSize || !pending.isEmpty()) {
+                while (nextChunk < fileSize && pending.size() < 2 * numThreads) {
+                    long chunkStart = nextChunk;
+                    long chunkEnd = Math.min(chunkStart + chunkSize, fileSize);
+                    pending.add(workers.submit(() -> parseChunk(job.file, chunkStart, chunkEnd, schema)));
+                    nextChunk = chunkEnd;
+                }
+                List<List<DataBox>> rows = pending.remove().get();
+                transaction.insertAll(job.tableName, rows.iterator());
+                numRows += rows.size();
+            }
+
+            for (String column : job.indexColumns) {
+                transaction.createIndex(job.tableName, column, true);
+            }
+            loaded = true;
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DatabaseException(e);
+        } finally {
+            // if the load failed, don't leave workers parsing chunks nobody will append
+            for (Future<List<List<DataBox>>> chunk : pending) {
+                chunk.cancel(true);
+            }
+            if (!loaded) {
+                transaction.rollback();
+            }
+        }
+        transaction.commit();
+        return new LoadResult(job.tableName, numRows, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs several jobs concurrently, each on its own thread and in its own transaction;
+     * the chunks of all the jobs share the worker threads. The jobs should load
+     * different tables.
+     *
+     * @return the jobs' results, in the order of the jobs
+     */
+    public List<LoadResult> loadAll(List<Job> jobs) {
+        ExecutorService loaders = Executors.newFixedThreadPool(Math.max(jobs.size(), 1));
+        try {
+            List<Future<LoadResult>> futures = new ArrayList<>();
+            for (Job job : jobs) {
+                futures.add(loaders.submit(() -> load(job)));
+            }
+            List<LoadResult> results = new ArrayList<>();
+            for (Future<LoadResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DatabaseException(e);
+        } finally {
+            loaders.shutdownNow();
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Parses the lines that start in [start, end) of a file. A line that starts before
+     * `end` but ends after it belongs to this chunk, and not to the next.
+     */
+    private static List<List<DataBox>> parseChunk(Path file, long start, long end,
+                                                  Schema schema) throws IOException {
+        List<List<DataBox>> rows = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file)) {
+            long pos = Math.max(start - 1, 0);
+            channel.position(pos);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            if (start > 0) {
+                // skip the rest of the line that the previous chunk ends in; if the byte
+                // before the chunk is a newline, the first line starts at `start`
+                pos += readLine(in, line);
+                line.reset();
+            }
+            while (pos < end) {
+                int length = readLine(in, line);
+                if (length == 0) {
+                    break;
+                }
+                pos += length;
+                String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                line.reset();
+                if (!text.trim().isEmpty()) {
+                    rows.add(parseLine(text, schema));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a line into `line`, without its line terminator.
+     * @return number of bytes read, including the line terminator, or 0 at the end of the stream
+     */
+    private static int readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            ++length;
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return length;
+    }
+
+    static List<DataBox> parseLine(String line, Schema schema) {
+        String[] splits = line.split(",", -1);
+        List<Type> types = schema.getFieldTypes();
+        if (splits.length != types.size()) {
+            throw new DatabaseException(String.format("expected %d values but found %d in line \"%s\"",
+                                        types.size(), splits.length, line));
+        }
+        List<DataBox> values = new ArrayList<>();
+        for (int i = 0; i < splits.length; ++i) {
+            values.add(parseValue(splits[i].trim(), types.get(i)));
+        }
+        return values;
+    }
+
+    private static DataBox parseValue(String value, Type type) {
+        try {
+            switch (type.getTypeId()) {
+            case BOOL: return new BoolDataBox(Boolean.parseBoolean(value));
+            case INT: return new IntDataBox(Integer.parseInt(value));
+            case LONG: return new LongDataBox(Long.parseLong(value));
+            case FLOAT: return new FloatDataBox(Float.parseFloat(value));
+            case STRING: return new StringDataBox(value, type.getSizeInBytes());
+            default: throw new DatabaseException("unsupported type " + type);
+            }
+        } catch (NumberFormatException e) {
+            throw new DatabaseException(String.format("cannot parse \"%s\" as %s", value, type));
+        }
+    }
+}
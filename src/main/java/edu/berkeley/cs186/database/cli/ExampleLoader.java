@@ -1,20 +1,15 @@
 package edu.berkeley.cs186.database.cli;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.Transaction;
 import edu.berkeley.cs186.database.concurrency.LockManager;
-import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.databox.FloatDataBox;
-import edu.berkeley.cs186.database.databox.IntDataBox;
-import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.table.Schema;
@@ -87,47 +82,13 @@ public class ExampleLoader {
             }
         }
 
-        try(Transaction transaction = database.beginTransaction()) {
-            // read student tuples
-            List<String> studentLines = Files.readAllLines(Paths.get("data", "Students.csv"), Charset.defaultCharset());
-
-            for (String line : studentLines) {
-                String[] splits = line.split(",");
-                List<DataBox> values = new ArrayList<>();
-
-                values.add(new IntDataBox(Integer.parseInt(splits[0])));
-                values.add(new StringDataBox(splits[1].trim(), 20));
-                values.add(new StringDataBox(splits[2].trim(), 20));
-                values.add(new FloatDataBox(Float.parseFloat(splits[3])));
-
-                transaction.insert("Students", values);
-            }
-
-            List<String> courseLines = Files.readAllLines(Paths.get("data", "Courses.csv"), Charset.defaultCharset());
-
-            for (String line : courseLines) {
-                String[] splits = line.split(",");
-                List<DataBox> values = new ArrayList<>();
-
-                values.add(new IntDataBox(Integer.parseInt(splits[0])));
-                values.add(new StringDataBox(splits[1].trim(), 20));
-                values.add(new StringDataBox(splits[2].trim(), 20));
-
-                transaction.insert("Courses", values);
-            }
-
-            List<String> enrollmentLines = Files.readAllLines(Paths.get("data", "Enrollments.csv"),
-                                        Charset.defaultCharset());
-
-            for (String line : enrollmentLines) {
-                String[] splits = line.split(",");
-                List<DataBox> values = new ArrayList<>();
-
-                values.add(new IntDataBox(Integer.parseInt(splits[0])));
-                values.add(new IntDataBox(Integer.parseInt(splits[1])));
-
-                transaction.insert("Enrollments", values);
-            }
+        // load the tables' rows, each table on its own thread
+        try (CsvLoader loader = new CsvLoader(database, 2)) {
+            loader.loadAll(Arrays.asList(
+                new CsvLoader.Job("Students", Paths.get("data", "Students.csv")),
+                new CsvLoader.Job("Courses", Paths.get("data", "Courses.csv")),
+                new CsvLoader.Job("Enrollments", Paths.get("data", "Enrollments.csv"))
+            ));
         }
         return database;
     }
@@ -6,6 +6,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.memory.BufferManagerStats;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
@@ -29,6 +30,41 @@ public class PrettyPrinter {
         printRecords(Arrays.asList("column_name", "type"), records.iterator());
     }
 
+    public static void printBufferManagerStats(BufferManagerStats stats) {
+        List<Record> records = new ArrayList<>();
+        for (int partNum : stats.getPartitions()) {
+            records.add(new Record(Arrays.asList(
+                new IntDataBox(partNum),
+                new LongDataBox(stats.getHits(partNum)),
+                new LongDataBox(stats.getMisses(partNum))
+            )));
+        }
+        printRecords(Arrays.asList("part_num", "hits", "misses"), records.iterator());
+
+        String[][] values = {
+            {"hit_ratio", String.format("%.3f", stats.getHitRatio())},
+            {"clean_evictions", Long.toString(stats.getCleanEvictions())},
+            {"dirty_evictions", Long.toString(stats.getDirtyEvictions())},
+            {"pin_waits", Long.toString(stats.getPinWaits())},
+            {"pin_wait_ms", String.format("%.3f", stats.getPinWaitNanos() / 1e6)},
+            {"frames", Integer.toString(stats.getNumFrames())},
+            {"pinned_frames", Integer.toString(stats.getPinnedFrames())},
+            {"dirty_frames", Integer.toString(stats.getDirtyFrames())},
+            {"ios", Long.toString(stats.getNumIOs())},
+            {"cleaned_pages", Long.toString(stats.getNumCleanedPages())},
+            {"read_latency", stats.getReadLatency().toString()},
+            {"write_latency", stats.getWriteLatency().toString()},
+        };
+        records = new ArrayList<>();
+        for (String[] row : values) {
+            records.add(new Record(Arrays.asList(
+                new StringDataBox(row[0], 32),
+                new StringDataBox(row[1], 64)
+            )));
+        }
+        printRecords(Arrays.asList("stat", "value"), records.iterator());
+    }
+
     public static void printRecords(List<String> columnNames, Iterator<Record> records) {
         printRecords(columnNames, records, -1);
     }
@@ -7,18 +7,32 @@ import edu.berkeley.cs186.database.Transaction;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.cli.parser.*;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.TableFormat;
 
 public class CreateTableStatementVisitor extends StatementVisitor {
     public String tableName;
     public List<String> fieldNames = new ArrayList<>();
     public List<Type> fieldTypes = new ArrayList<>();
     public List<String> errorMessages = new ArrayList<>();
+    public TableFormat format = TableFormat.ROW;
+    public List<String> dictionaryColumns = new ArrayList<>();
 
     @Override
     public void visit(ASTTableName node, Object data) {
         this.tableName = (String) node.jjtGetValue();
     }
 
+    // CREATE TABLE ... WITH <format>, e.g. WITH pax for columnar storage
+    @Override
+    public void visit(ASTIdentifier node, Object data) {
+        String name = (String) node.jjtGetValue();
+        try {
+            this.format = TableFormat.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            errorMessages.add(String.format("Unknown table format `%s`.", name));
+        }
+    }
+
     @Override
     public void visit(ASTColumnDef node, Object data) {
         Object[] components = (Object[]) node.jjtGetValue();
@@ -31,6 +45,9 @@ public class CreateTableStatementVisitor extends StatementVisitor {
             case "integer":
                 fieldTypes.add(Type.intType());
                 break;
+            case "dict":
+                // a dictionary-encoded string(n)
+                dictionaryColumns.add(fieldName);
             case "char":;
             case "varchar":;
             case "string":
@@ -68,8 +85,9 @@ public class CreateTableStatementVisitor extends StatementVisitor {
         for(int i = 0; i < fieldTypes.size(); i++) {
             if (i > 0) System.out.println(",");
             System.out.print("   " + fieldNames.get(i) + " " + fieldTypes.get(i));
+            if (dictionaryColumns.contains(fieldNames.get(i))) System.out.print(" (dictionary-encoded)");
         }
-        System.out.println("\n)");
+        System.out.println("\n)" + (this.format == TableFormat.ROW ? "" : " WITH " + this.format));
     }
 
     public void execute(Transaction transaction) {
@@ -81,7 +99,7 @@ public class CreateTableStatementVisitor extends StatementVisitor {
             System.out.println("Failed to execute CREATE TABLE.");
         } else {
             Schema schema = new Schema(this.fieldNames, this.fieldTypes);
-            transaction.createTable(schema, this.tableName);
+            transaction.createTable(schema, this.tableName, this.format, this.dictionaryColumns);
             System.out.println("CREATE TABLE " + tableName);
         }
     }
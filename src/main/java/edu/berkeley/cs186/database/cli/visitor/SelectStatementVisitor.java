@@ -63,6 +63,9 @@ public class SelectStatementVisitor extends StatementVisitor {
             }
             query.project(selectColumns);
         }
+        if(limit != -1) {
+            query.limit(limit);
+        }
         return Optional.of(query);
     }
 
@@ -75,6 +75,9 @@ public class StringDataBox extends DataBox {
                                        toString(), d.toString());
             throw new DataBoxException(err);
         }
+        if (this == d) {
+            return 0;
+        }
         StringDataBox s = (StringDataBox) d;
         return this.s.compareTo(s.s);
     }
@@ -378,19 +378,25 @@ class InnerNode extends BPlusNode {
     public static InnerNode fromBytes(BPlusTreeMetadata metadata, BufferManager bufferManager, LockContext treeContext,
             long pageNum) {
         Page page = bufferManager.fetchPage(treeContext, pageNum, false);
-        Buffer buf = page.getBuffer();
-
-        byte nodeType = buf.get();
-        assert (nodeType == (byte) 0);
-
         List<DataBox> keys = new ArrayList<>();
         List<Long> children = new ArrayList<>();
-        int n = buf.getInt();
-        for (int i = 0; i < n; ++i) {
-            keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
-        }
-        for (int i = 0; i < n + 1; ++i) {
-            children.add(buf.getLong());
+        try {
+            Buffer buf = page.getBuffer();
+
+            byte nodeType = buf.get();
+            assert (nodeType == (byte) 0);
+
+            int n = buf.getInt();
+            for (int i = 0; i < n; ++i) {
+                keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+            }
+            for (int i = 0; i < n + 1; ++i) {
+                children.add(buf.getLong());
+            }
+        } catch (RuntimeException e) {
+            // the constructor unpins the page, but is never reached
+            page.unpin();
+            throw e;
         }
         return new InnerNode(metadata, bufferManager, page, keys, children, treeContext);
     }
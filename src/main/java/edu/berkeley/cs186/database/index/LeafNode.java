@@ -424,18 +424,26 @@ class LeafNode extends BPlusNode {
         // brand new one.
 
         Page page = bufferManager.fetchPage(treeContext, pageNum, false);
-        Buffer b = page.getBuffer();
+        long rightSibling;
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        try {
+            Buffer b = page.getBuffer();
 
-        assert (b.get() == (byte) 1);
+            byte nodeType = b.get();
+            assert (nodeType == (byte) 1);
 
-        long rightSibling = b.getLong();
+            rightSibling = b.getLong();
 
-        int keySize = b.getInt();
-        List<DataBox> keys = new ArrayList<>();
-        List<RecordId> rids = new ArrayList<>();
-        for (int i = 0; i < keySize; i += 1) {
-            keys.add(DataBox.fromBytes(b, metadata.getKeySchema()));
-            rids.add(RecordId.fromBytes(b));
+            int keySize = b.getInt();
+            for (int i = 0; i < keySize; i += 1) {
+                keys.add(DataBox.fromBytes(b, metadata.getKeySchema()));
+                rids.add(RecordId.fromBytes(b));
+            }
+        } catch (RuntimeException e) {
+            // the constructor unpins the page, but is never reached
+            page.unpin();
+            throw e;
         }
 
         return new LeafNode(metadata, bufferManager, page, keys, rids,
@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.io;
 
+import java.nio.ByteBuffer;
+
 public interface DiskSpaceManager extends AutoCloseable {
     short PAGE_SIZE = 4096; // size of a page in bytes
     long INVALID_PAGE_NUM = -1L; // a page number that is always invalid
@@ -65,6 +67,77 @@ public interface DiskSpaceManager extends AutoCloseable {
      */
     void writePage(long page, byte[] buf);
 
+    /**
+     * Reads a page directly into a buffer. The whole buffer (from index 0 to its
+     * capacity, which must be the page size) is filled, regardless of its position.
+     *
+     * @param page number of page to be read
+     * @param buf page-sized buffer whose contents will be filled with page data
+     */
+    default void readPage(long page, ByteBuffer buf) {
+        byte[] bytes = new byte[PAGE_SIZE];
+        readPage(page, bytes);
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        b.put(bytes);
+    }
+
+    /**
+     * Writes to a page directly from a buffer. The whole buffer (from index 0 to its
+     * capacity, which must be the page size) is written, regardless of its position.
+     *
+     * @param page number of page to be written
+     * @param buf page-sized buffer that contains the new page data
+     */
+    default void writePage(long page, ByteBuffer buf) {
+        byte[] bytes = new byte[PAGE_SIZE];
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        b.get(bytes);
+        writePage(page, bytes);
+    }
+
+    /**
+     * Reads several pages. Each buffer is filled as with readPage(long, ByteBuffer).
+     * Implementations may coalesce pages that are adjacent on disk into a single read;
+     * by default, pages are read one at a time.
+     *
+     * @param pages numbers of pages to be read
+     * @param bufs page-sized buffers to be filled with page data, one per page
+     */
+    default void readPages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("readPages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            readPage(pages[i], bufs[i]);
+        }
+    }
+
+    /**
+     * Writes several pages. Each buffer is written as with writePage(long, ByteBuffer).
+     * Implementations may coalesce pages that are adjacent on disk into a single write;
+     * by default, pages are written one at a time. If a page appears more than once, the
+     * last buffer for it is the one written last.
+     *
+     * @param pages numbers of pages to be written
+     * @param bufs page-sized buffers that contain the new page data, one per page
+     */
+    default void writePages(long[] pages, ByteBuffer[] bufs) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("writePages expects one buffer per page");
+        }
+        for (int i = 0; i < pages.length; ++i) {
+            writePage(pages[i], bufs[i]);
+        }
+    }
+
+    /**
+     * Forces any page writes that have not yet been made durable to disk. Only does
+     * anything for implementations that defer syncing data page writes.
+     */
+    default void sync() {}
+
     /**
      * Checks if a page is allocated
      *
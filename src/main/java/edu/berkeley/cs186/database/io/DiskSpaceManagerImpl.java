@@ -5,8 +5,10 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -42,6 +44,12 @@ import java.util.concurrent.locks.ReentrantLock;
  * - the second header page follows
  * - the next 32K pages are data pages managed by the second header page
  * - etc.
+ *
+ * By default every data page write is forced to disk before returning. If a sync batch size
+ * greater than 1 is given, writes to data pages outside the log partition are only forced once
+ * that many writes have accumulated in a partition, or when sync() is called (the recovery manager
+ * does so at checkpoints, and the database on close). Log pages are always forced immediately,
+ * so the write-ahead logging rule (log forced before the page it covers is written) is unaffected.
  */
 public class DiskSpaceManagerImpl implements DiskSpaceManager {
     static final int MAX_HEADER_PAGES = PAGE_SIZE / 2; // 2 bytes per header page
@@ -62,15 +70,47 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
     // recovery manager
     private RecoveryManager recoveryManager;
 
+    // Number of data page writes to a partition after which the partition is forced
+    // to disk. 1 if every write is forced immediately.
+    private int syncBatchSize;
+
+    // Number of times a partition was forced to disk to make deferred writes durable.
+    private AtomicLong numSyncs;
+
+    // Total number of deferred page writes made durable, over all syncs.
+    private AtomicLong numSyncedPages;
+
+    // Largest number of deferred page writes made durable by a single sync.
+    private AtomicInteger maxSyncBatch;
+
     /**
      * Initialize the disk space manager using the given directory. Creates the directory
-     * if not present.
+     * if not present. Every data page write is forced to disk immediately.
      *
      * @param dbDir base directory of the database
      */
     public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager) {
+        this(dbDir, recoveryManager, 1);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     * @param syncBatchSize number of data page writes to a partition that may be left
+     *                      unforced before the partition is synced; 1 forces every write
+     */
+    public DiskSpaceManagerImpl(String dbDir, RecoveryManager recoveryManager, int syncBatchSize) {
+        if (syncBatchSize < 1) {
+            throw new IllegalArgumentException("sync batch size must be positive");
+        }
         this.dbDir = dbDir;
         this.recoveryManager = recoveryManager;
+        this.syncBatchSize = syncBatchSize;
+        this.numSyncs = new AtomicLong(0);
+        this.numSyncedPages = new AtomicLong(0);
+        this.maxSyncBatch = new AtomicInteger(0);
         this.partInfo = new HashMap<>();
         this.partNumCounter = new AtomicInteger(0);
         this.managerLock = new ReentrantLock();
@@ -96,7 +136,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 int fileNum = Integer.parseInt(f.getName());
                 maxFileNum = Math.max(maxFileNum, fileNum);
 
-                PartitionHandle pi = new PartitionHandle(fileNum, recoveryManager);
+                PartitionHandle pi = newPartitionHandle(fileNum);
                 pi.open(dbDir + "/" + f.getName());
                 this.partInfo.put(fileNum, pi);
             }
@@ -106,6 +146,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
 
     @Override
     public void close() {
+        this.sync();
         for (Map.Entry<Integer, PartitionHandle> part : this.partInfo.entrySet()) {
             try {
                 part.getValue().close();
@@ -115,6 +156,23 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    private PartitionHandle newPartitionHandle(int partNum) {
+        // partition 0 holds the log, which must always be forced
+        return createPartitionHandle(partNum, recoveryManager, syncBatchSize > 1 && partNum != 0);
+    }
+
+    /**
+     * Creates the handle for a partition's OS file. Overridden by subclasses that
+     * access data pages differently; the file layout is the same for all of them.
+     * @param partNum partition number
+     * @param recoveryManager recovery manager
+     * @param deferSync whether data page writes to the partition may be left unforced
+     * @return new (unopened) partition handle
+     */
+    PartitionHandle createPartitionHandle(int partNum, RecoveryManager recoveryManager, boolean deferSync) {
+        return new PartitionHandle(partNum, recoveryManager, deferSync);
+    }
+
     @Override
     public int allocPart() {
         return this.allocPartHelper(this.partNumCounter.getAndIncrement());
@@ -135,7 +193,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
                 throw new IllegalStateException("partition number " + partNum + " already exists");
             }
 
-            pi = new PartitionHandle(partNum, recoveryManager);
+            pi = newPartitionHandle(partNum);
             this.partInfo.put(partNum, pi);
 
             pi.partitionLock.lock();
@@ -206,7 +264,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             int pageNum = pi.allocPage();
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            pi.writePage(pageNum, ByteBuffer.wrap(new byte[PAGE_SIZE]));
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -232,7 +290,7 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             pi.allocPage(headerIndex, pageIndex);
-            pi.writePage(pageNum, new byte[PAGE_SIZE]);
+            pi.writePage(pageNum, ByteBuffer.wrap(new byte[PAGE_SIZE]));
             return DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         } catch (IOException e) {
             throw new PageException("could not modify partition " + partNum + ": " + e.getMessage());
@@ -267,6 +325,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("readPage expects a page-sized buffer");
         }
+        this.readPage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void readPage(long page, ByteBuffer buf) {
+        if (buf.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("readPage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
         this.managerLock.lock();
@@ -291,6 +357,14 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         if (buf.length != PAGE_SIZE) {
             throw new IllegalArgumentException("writePage expects a page-sized buffer");
         }
+        this.writePage(page, ByteBuffer.wrap(buf));
+    }
+
+    @Override
+    public void writePage(long page, ByteBuffer buf) {
+        if (buf.capacity() != PAGE_SIZE) {
+            throw new IllegalArgumentException("writePage expects a page-sized buffer");
+        }
         int partNum = DiskSpaceManager.getPartNum(page);
         int pageNum = DiskSpaceManager.getPageNum(page);
         this.managerLock.lock();
@@ -303,6 +377,9 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
         try {
             pi.writePage(pageNum, buf);
+            if (pi.getNumUnsyncedPages() >= this.syncBatchSize) {
+                this.recordSync(pi.sync());
+            }
         } catch (IOException e) {
             throw new PageException("could not write partition " + partNum + ": " + e.getMessage());
         } finally {
@@ -310,6 +387,150 @@ public class DiskSpaceManagerImpl implements DiskSpaceManager {
         }
     }
 
+    @Override
+    public void readPages(long[] pages, ByteBuffer[] bufs) {
+        this.transferPages(pages, bufs, false);
+    }
+
+    @Override
+    public void writePages(long[] pages, ByteBuffer[] bufs) {
+        this.transferPages(pages, bufs, true);
+    }
+
+    /**
+     * Reads or writes a batch of pages. Pages are sorted and grouped by partition, and each
+     * partition's pages are transferred under one acquisition of its lock, with runs of
+     * adjacent pages coalesced into a single read or write.
+     * @param pages virtual page numbers
+     * @param bufs page-sized buffers, one per page
+     * @param write whether to write the pages (rather than read them)
+     */
+    private void transferPages(long[] pages, ByteBuffer[] bufs, boolean write) {
+        if (pages.length != bufs.length) {
+            throw new IllegalArgumentException("expected one buffer per page");
+        }
+        for (ByteBuffer buf : bufs) {
+            if (buf.capacity() != PAGE_SIZE) {
+                throw new IllegalArgumentException("expected page-sized buffers");
+            }
+        }
+        // stable, so repeated writes to a page stay in order
+        Integer[] order = new Integer[pages.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> pages[i]));
+
+        for (int start = 0, end; start < order.length; start = end) {
+            int partNum = DiskSpaceManager.getPartNum(pages[order[start]]);
+            end = start + 1;
+            while (end < order.length && DiskSpaceManager.getPartNum(pages[order[end]]) == partNum) {
+                ++end;
+            }
+            int[] pageNums = new int[end - start];
+            ByteBuffer[] partBufs = new ByteBuffer[end - start];
+            for (int i = start; i < end; ++i) {
+                pageNums[i - start] = DiskSpaceManager.getPageNum(pages[order[i]]);
+                partBufs[i - start] = bufs[order[i]];
+            }
+
+            this.managerLock.lock();
+            PartitionHandle pi;
+            try {
+                pi = getPartInfo(partNum);
+                pi.partitionLock.lock();
+            } finally {
+                this.managerLock.unlock();
+            }
+            try {
+                if (write) {
+                    pi.writePages(pageNums, partBufs);
+                    if (pi.getNumUnsyncedPages() >= this.syncBatchSize) {
+                        this.recordSync(pi.sync());
+                    }
+                } else {
+                    pi.readPages(pageNums, partBufs);
+                }
+            } catch (IOException e) {
+                throw new PageException("could not " + (write ? "write" : "read") + " partition " + partNum + ": " +
+                                        e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void sync() {
+        List<Map.Entry<Integer, PartitionHandle>> parts;
+        this.managerLock.lock();
+        try {
+            parts = new ArrayList<>(this.partInfo.entrySet());
+        } finally {
+            this.managerLock.unlock();
+        }
+        for (Map.Entry<Integer, PartitionHandle> part : parts) {
+            PartitionHandle pi = part.getValue();
+            pi.partitionLock.lock();
+            try {
+                if (pi.getNumUnsyncedPages() > 0) {
+                    this.recordSync(pi.sync());
+                }
+            } catch (IOException e) {
+                throw new PageException("could not sync partition " + part.getKey() + ": " + e.getMessage());
+            } finally {
+                pi.partitionLock.unlock();
+            }
+        }
+    }
+
+    private void recordSync(int numPages) {
+        if (numPages == 0) {
+            return;
+        }
+        this.numSyncs.incrementAndGet();
+        this.numSyncedPages.addAndGet(numPages);
+        this.maxSyncBatch.accumulateAndGet(numPages, Math::max);
+    }
+
+    /**
+     * @return number of times a partition has been forced to make deferred writes durable
+     */
+    public long getNumSyncs() {
+        return this.numSyncs.get();
+    }
+
+    /**
+     * @return total number of deferred page writes that have been made durable; divided by
+     * getNumSyncs(), this is the average sync batch size
+     */
+    public long getNumSyncedPages() {
+        return this.numSyncedPages.get();
+    }
+
+    /**
+     * @return largest number of deferred page writes made durable by one sync
+     */
+    public int getMaxSyncBatchSize() {
+        return this.maxSyncBatch.get();
+    }
+
+    /**
+     * @return number of data page writes that have not yet been forced to disk
+     */
+    public long getNumUnsyncedPages() {
+        long numPages = 0;
+        this.managerLock.lock();
+        try {
+            for (PartitionHandle pi : this.partInfo.values()) {
+                numPages += pi.getNumUnsyncedPages();
+            }
+        } finally {
+            this.managerLock.unlock();
+        }
+        return numPages;
+    }
+
     @Override
     public boolean pageAllocated(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
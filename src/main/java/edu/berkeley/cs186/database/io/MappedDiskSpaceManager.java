@@ -0,0 +1,43 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+/**
+ * A disk space manager that reads and writes data pages through memory mapped extents of
+ * each partition's file (see MappedPartitionHandle), rather than with a positional read or
+ * write system call per page. Partition files have the same master/header/data page layout
+ * as those of DiskSpaceManagerImpl, and either implementation can open a database directory
+ * written by the other. Files are grown an extent at a time, so they may be longer than the
+ * last allocated page; the space past it reads as unallocated header pages.
+ *
+ * This pays off for read-heavy workloads whose data mostly fits in the OS page cache, where a
+ * buffer miss becomes a memory copy instead of a system call.
+ */
+public class MappedDiskSpaceManager extends DiskSpaceManagerImpl {
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present. Every data page write is forced to disk immediately.
+     *
+     * @param dbDir base directory of the database
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager) {
+        super(dbDir, recoveryManager);
+    }
+
+    /**
+     * Initialize the disk space manager using the given directory. Creates the directory
+     * if not present.
+     *
+     * @param dbDir base directory of the database
+     * @param syncBatchSize number of data page writes to a partition that may be left
+     *                      unforced before the partition is synced; 1 forces every write
+     */
+    public MappedDiskSpaceManager(String dbDir, RecoveryManager recoveryManager, int syncBatchSize) {
+        super(dbDir, recoveryManager, syncBatchSize);
+    }
+
+    @Override
+    PartitionHandle createPartitionHandle(int partNum, RecoveryManager recoveryManager, boolean deferSync) {
+        return new MappedPartitionHandle(partNum, recoveryManager, deferSync);
+    }
+}
@@ -0,0 +1,130 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.recovery.RecoveryManager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static edu.berkeley.cs186.database.io.DiskSpaceManager.PAGE_SIZE;
+
+/**
+ * Partition handle that accesses data pages through memory mapped regions of the
+ * partition's OS file, instead of positional reads and writes on the file channel.
+ *
+ * The file is mapped in fixed-size extents, each mapped (and the file grown to cover
+ * it) the first time a page inside it is accessed. Reading or writing a page is then a
+ * copy to or from the mapping, with no system call when the page is in the OS page
+ * cache. The master and header pages are still read and written through the file
+ * channel, so the layout of the file is exactly that of PartitionHandle.
+ */
+class MappedPartitionHandle extends PartitionHandle {
+    // Number of pages in each mapped extent of the file (4M with 4K pages).
+    static final int PAGES_PER_EXTENT = 1024;
+    static final long EXTENT_SIZE = (long) PAGES_PER_EXTENT * PAGE_SIZE;
+
+    // Mapped extents of the file, indexed by extent number; null if not yet mapped.
+    private MappedByteBuffer[] extents;
+
+    // Extents written to since they were last forced.
+    private BitSet dirtyExtents;
+
+    MappedPartitionHandle(int partNum, RecoveryManager recoveryManager, boolean deferSync) {
+        super(partNum, recoveryManager, deferSync);
+        this.extents = new MappedByteBuffer[0];
+        this.dirtyExtents = new BitSet();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.partitionLock.lock();
+        try {
+            // mappings are released once unreachable; writes to them are already in the file
+            Arrays.fill(this.extents, null);
+            this.dirtyExtents.clear();
+            super.close();
+        } finally {
+            this.partitionLock.unlock();
+        }
+    }
+
+    @Override
+    void readDataPage(long offset, ByteBuffer buf) throws IOException {
+        ByteBuffer src = this.pageSlice(offset);
+        ByteBuffer dst = buf.duplicate();
+        dst.clear();
+        dst.put(src);
+    }
+
+    @Override
+    void writeDataPage(long offset, ByteBuffer buf) throws IOException {
+        ByteBuffer src = buf.duplicate();
+        src.clear();
+        this.pageSlice(offset).put(src);
+        this.dirtyExtents.set(extentIndex(offset));
+    }
+
+    @Override
+    void readDataPages(long offset, ByteBuffer[] bufs) throws IOException {
+        // no system calls to save by coalescing - copy each page out of its mapping
+        for (int i = 0; i < bufs.length; ++i) {
+            this.readDataPage(offset + (long) i * PAGE_SIZE, bufs[i]);
+        }
+    }
+
+    @Override
+    void writeDataPages(long offset, ByteBuffer[] bufs) throws IOException {
+        for (int i = 0; i < bufs.length; ++i) {
+            this.writeDataPage(offset + (long) i * PAGE_SIZE, bufs[i]);
+        }
+    }
+
+    @Override
+    void forceDataPages() throws IOException {
+        for (int i = this.dirtyExtents.nextSetBit(0); i >= 0; i = this.dirtyExtents.nextSetBit(i + 1)) {
+            this.extents[i].force();
+        }
+        this.dirtyExtents.clear();
+    }
+
+    /**
+     * @param offset offset in OS file of a data page
+     * @return buffer over exactly the page at offset, in its (mapped) extent
+     */
+    private ByteBuffer pageSlice(long offset) throws IOException {
+        int index = extentIndex(offset);
+        ByteBuffer page = this.getExtent(index).duplicate();
+        int start = (int) (offset - index * EXTENT_SIZE);
+        page.limit(start + PAGE_SIZE);
+        page.position(start);
+        return page;
+    }
+
+    /**
+     * Fetches a mapped extent of the file, mapping it (and growing the file to cover it)
+     * if this is the first access to the extent.
+     * @param index extent number
+     * @return mapping of the extent
+     */
+    private MappedByteBuffer getExtent(int index) throws IOException {
+        if (index >= this.extents.length) {
+            this.extents = Arrays.copyOf(this.extents, Math.max(index + 1, 2 * this.extents.length));
+        }
+        if (this.extents[index] == null) {
+            this.extents[index] = this.getFileChannel().map(FileChannel.MapMode.READ_WRITE,
+                                  index * EXTENT_SIZE, EXTENT_SIZE);
+        }
+        return this.extents[index];
+    }
+
+    /**
+     * @param offset offset in OS file
+     * @return extent number containing the offset
+     */
+    private static int extentIndex(long offset) {
+        return (int) (offset / EXTENT_SIZE);
+    }
+}
@@ -9,6 +9,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.NoSuchElementException;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -31,18 +32,43 @@ class PartitionHandle implements AutoCloseable {
     // Contents of the various header pages of this partition
     private byte[][] headerPages;
 
+    // Free page index, rebuilt from the header pages when the partition is opened:
+    // which header pages have a free data page, and for each loaded header page, which
+    // 64-page words of its bitmap are full. Lets allocPage find a free page by skipping
+    // over full headers and full words a word at a time.
+    private BitSet headersWithSpace;
+    private BitSet[] fullWords;
+
+    // Next page of the extent allocPage is handing out pages from, or -1 if none
+    private int nextExtentPage = -1;
+
     // Recovery manager
     private RecoveryManager recoveryManager;
 
     // Partition number
     private int partNum;
 
+    // Whether data page writes are left unforced until the next call to sync()
+    private boolean deferSync;
+
+    // Number of data page writes since the file was last forced
+    private int numUnsyncedPages;
+
     PartitionHandle(int partNum, RecoveryManager recoveryManager) {
+        this(partNum, recoveryManager, false);
+    }
+
+    PartitionHandle(int partNum, RecoveryManager recoveryManager, boolean deferSync) {
         this.masterPage = new int[MAX_HEADER_PAGES];
         this.headerPages = new byte[MAX_HEADER_PAGES][];
+        this.headersWithSpace = new BitSet(MAX_HEADER_PAGES);
+        this.headersWithSpace.set(0, MAX_HEADER_PAGES);
+        this.fullWords = new BitSet[MAX_HEADER_PAGES];
         this.partitionLock = new ReentrantLock();
         this.recoveryManager = recoveryManager;
         this.partNum = partNum;
+        this.deferSync = deferSync;
+        this.numUnsyncedPages = 0;
     }
 
     /**
@@ -70,6 +96,7 @@ class PartitionHandle implements AutoCloseable {
                         byte[] headerPage = new byte[PAGE_SIZE];
                         this.headerPages[i] = headerPage;
                         this.fileChannel.read(ByteBuffer.wrap(headerPage), PartitionHandle.headerPageOffset(i));
+                        this.indexHeaderPage(i);
                     }
                 }
             }
@@ -90,6 +117,38 @@ class PartitionHandle implements AutoCloseable {
         }
     }
 
+    /**
+     * Adds a header page read from disk to the free page index, and recomputes its
+     * count of allocated pages from its bitmap.
+     * @param headerIndex which header page
+     */
+    private void indexHeaderPage(int headerIndex) {
+        byte[] headerBytes = this.headerPages[headerIndex];
+        BitSet full = new BitSet(DATA_PAGES_PER_HEADER / Long.SIZE);
+        for (int word = 0; word < DATA_PAGES_PER_HEADER / Long.SIZE; ++word) {
+            if (PartitionHandle.isFullWord(headerBytes, word)) {
+                full.set(word);
+            }
+        }
+        this.fullWords[headerIndex] = full;
+        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
+        this.headersWithSpace.set(headerIndex, this.masterPage[headerIndex] < DATA_PAGES_PER_HEADER);
+    }
+
+    /**
+     * @param headerBytes header page bitmap
+     * @param word index of a 64-page word of the bitmap
+     * @return whether every page in the word is allocated
+     */
+    private static boolean isFullWord(byte[] headerBytes, int word) {
+        for (int i = word * Long.BYTES; i < (word + 1) * Long.BYTES; ++i) {
+            if (headerBytes[i] != (byte) 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Writes the master page to disk.
      */
@@ -112,39 +171,81 @@ class PartitionHandle implements AutoCloseable {
     }
 
     /**
-     * Allocates a new page in the partition.
+     * Allocates a new page in the partition. Pages are handed out in order from an
+     * extent, a run of free pages, so that pages allocated one after another (e.g. the
+     * pages of a table as it grows) are contiguous on disk. When the next page of the
+     * extent is taken, a new extent is started at the first run of free pages that
+     * covers a whole byte of the bitmap (8 aligned pages); free pages in shorter runs
+     * (left by freeing pages) are only reused once the first header page with space
+     * has no longer runs.
      * @return data page number
      */
     int allocPage() throws IOException {
-        int headerIndex = -1;
-        for (int i = 0; i < MAX_HEADER_PAGES; ++i) {
-            if (this.masterPage[i] < DATA_PAGES_PER_HEADER) {
-                headerIndex = i;
-                break;
-            }
-        }
-        if (headerIndex == -1) {
-            throw new PageException("no free pages - partition has reached max size");
+        int pageNum = this.nextExtentPage;
+        if (pageNum < 0 || !this.isFreePage(pageNum)) {
+            pageNum = this.findExtent();
         }
+        int headerIndex = pageNum / DATA_PAGES_PER_HEADER;
+        int pageIndex = pageNum % DATA_PAGES_PER_HEADER;
+        // an extent does not continue past the end of a header page's data pages, since the
+        // next header page is in the way
+        this.nextExtentPage = pageIndex + 1 < DATA_PAGES_PER_HEADER ? pageNum + 1 : -1;
+        return this.allocPage(headerIndex, pageIndex);
+    }
 
+    /**
+     * @param pageNum data page number
+     * @return whether the page is free (within the partition's maximum size)
+     */
+    private boolean isFreePage(int pageNum) {
+        int headerIndex = pageNum / DATA_PAGES_PER_HEADER;
+        if (headerIndex >= MAX_HEADER_PAGES) {
+            return false;
+        }
         byte[] headerBytes = this.headerPages[headerIndex];
+        return headerBytes == null || Bits.getBit(headerBytes, pageNum % DATA_PAGES_PER_HEADER) == Bits.Bit.ZERO;
+    }
 
-        int pageIndex = -1;
+    /**
+     * Finds the first page of a new extent, in the first header page with space: the
+     * start of the first run of free pages covering a whole byte of the bitmap, or the
+     * first free page if there is no such run. Full 64-page words of the bitmap are
+     * skipped using the free page index, and runs are looked for a byte at a time.
+     * @return data page number
+     */
+    private int findExtent() {
+        int headerIndex = this.headersWithSpace.nextSetBit(0);
+        if (headerIndex == -1 || headerIndex >= MAX_HEADER_PAGES) {
+            throw new PageException("no free pages - partition has reached max size");
+        }
+        int headerStart = headerIndex * DATA_PAGES_PER_HEADER;
+        byte[] headerBytes = this.headerPages[headerIndex];
         if (headerBytes == null) {
-            pageIndex = 0;
-        } else {
-            for (int i = 0; i < DATA_PAGES_PER_HEADER; i++) {
-                if (Bits.getBit(headerBytes, i) == Bits.Bit.ZERO) {
-                    pageIndex = i;
-                    break;
+            return headerStart;
+        }
+
+        BitSet full = this.fullWords[headerIndex];
+        int firstFree = -1;
+        for (int word = full.nextClearBit(0); word < DATA_PAGES_PER_HEADER / Long.SIZE;
+                word = full.nextClearBit(word + 1)) {
+            for (int i = word * Long.BYTES; i < (word + 1) * Long.BYTES; ++i) {
+                int b = headerBytes[i] & 0xFF;
+                if (b == 0) {
+                    // a free byte, plus the free pages at the end of the byte before it
+                    int previous = i > 0 ? headerBytes[i - 1] & 0xFF : 0xFF;
+                    return headerStart + i * Byte.SIZE - Integer.numberOfTrailingZeros(previous);
+                }
+                if (b != 0xFF && firstFree == -1) {
+                    // bits are numbered from the most significant bit of each byte
+                    firstFree = headerStart + i * Byte.SIZE + Integer.numberOfLeadingZeros(~b & 0xFF)
+                                - (Integer.SIZE - Byte.SIZE);
                 }
-            }
-            if (pageIndex == -1) {
-                throw new PageException("header page should have free space, but doesn't");
             }
         }
-
-        return this.allocPage(headerIndex, pageIndex);
+        if (firstFree == -1) {
+            throw new PageException("header page should have free space, but doesn't");
+        }
+        return firstFree;
     }
 
     /**
@@ -158,6 +259,7 @@ class PartitionHandle implements AutoCloseable {
         if (headerBytes == null) {
             headerBytes = new byte[PAGE_SIZE];
             this.headerPages[headerIndex] = headerBytes;
+            this.fullWords[headerIndex] = new BitSet(DATA_PAGES_PER_HEADER / Long.SIZE);
         }
 
         if (Bits.getBit(headerBytes, pageIndex) == Bits.Bit.ONE) {
@@ -167,7 +269,13 @@ class PartitionHandle implements AutoCloseable {
         }
 
         Bits.setBit(headerBytes, pageIndex, Bits.Bit.ONE);
-        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
+        ++this.masterPage[headerIndex];
+        if (PartitionHandle.isFullWord(headerBytes, pageIndex / Long.SIZE)) {
+            this.fullWords[headerIndex].set(pageIndex / Long.SIZE);
+        }
+        if (this.masterPage[headerIndex] == DATA_PAGES_PER_HEADER) {
+            this.headersWithSpace.clear(headerIndex);
+        }
 
         int pageNum = pageIndex + headerIndex * DATA_PAGES_PER_HEADER;
 
@@ -202,7 +310,9 @@ class PartitionHandle implements AutoCloseable {
         }
 
         Bits.setBit(headerBytes, pageIndex, Bits.Bit.ZERO);
-        this.masterPage[headerIndex] = Bits.countBits(headerBytes);
+        --this.masterPage[headerIndex];
+        this.fullWords[headerIndex].clear(pageIndex / Long.SIZE);
+        this.headersWithSpace.set(headerIndex);
 
         TransactionContext transaction = TransactionContext.getTransaction();
         if (transaction != null) {
@@ -216,35 +326,210 @@ class PartitionHandle implements AutoCloseable {
     }
 
     /**
-     * Reads in a data page. Assumes that the partition lock is held.
+     * Reads in a data page. Assumes that the partition lock is held. The page is read
+     * straight into buf, so a direct buffer avoids any intermediate copy.
      * @param pageNum data page number to read in
      * @param buf output buffer to be filled with page - assumed to be page size
      */
-    void readPage(int pageNum, byte[] buf) throws IOException {
+    void readPage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.read(b, PartitionHandle.dataPageOffset(pageNum));
+        this.readDataPage(PartitionHandle.dataPageOffset(pageNum), buf);
     }
 
     /**
-     * Writes to a data page. Assumes that the partition lock is held.
+     * Writes to a data page. Assumes that the partition lock is held. The page is written
+     * straight from buf, so a direct buffer avoids any intermediate copy.
      * @param pageNum data page number to write to
      * @param buf input buffer with new contents of page - assumed to be page size
      */
-    void writePage(int pageNum, byte[] buf) throws IOException {
+    void writePage(int pageNum, ByteBuffer buf) throws IOException {
         if (this.isNotAllocatedPage(pageNum)) {
             throw new PageException("page " + pageNum + " is not allocated");
         }
-        ByteBuffer b = ByteBuffer.wrap(buf);
-        this.fileChannel.write(b, PartitionHandle.dataPageOffset(pageNum));
-        this.fileChannel.force(false);
+        this.writeDataPage(PartitionHandle.dataPageOffset(pageNum), buf);
+        if (this.deferSync) {
+            ++this.numUnsyncedPages;
+        } else {
+            this.forceDataPages();
+        }
 
         long vpn = DiskSpaceManager.getVirtualPageNum(partNum, pageNum);
         recoveryManager.diskIOHook(vpn);
     }
 
+    /**
+     * Reads in several data pages. Assumes that the partition lock is held. Runs of pages
+     * that are adjacent in the OS file are each read with a single scattering read.
+     * @param pageNums data page numbers to read in, in ascending order
+     * @param bufs output buffers to be filled with the pages, one per page - assumed to be page size
+     */
+    void readPages(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        for (int start = 0, end; start < pageNums.length; start = end) {
+            end = PartitionHandle.runEnd(pageNums, start);
+            this.readDataPages(PartitionHandle.dataPageOffset(pageNums[start]),
+                               Arrays.copyOfRange(bufs, start, end));
+        }
+    }
+
+    /**
+     * Writes to several data pages. Assumes that the partition lock is held. Runs of
+     * pages that are adjacent in the OS file are each written with a single gathering
+     * write, and the file is forced (unless syncing is deferred) once for the whole batch.
+     * @param pageNums data page numbers to write to, in ascending order
+     * @param bufs input buffers with new contents of the pages, one per page - assumed to be page size
+     */
+    void writePages(int[] pageNums, ByteBuffer[] bufs) throws IOException {
+        for (int pageNum : pageNums) {
+            if (this.isNotAllocatedPage(pageNum)) {
+                throw new PageException("page " + pageNum + " is not allocated");
+            }
+        }
+        for (int start = 0, end; start < pageNums.length; start = end) {
+            end = PartitionHandle.runEnd(pageNums, start);
+            this.writeDataPages(PartitionHandle.dataPageOffset(pageNums[start]),
+                                Arrays.copyOfRange(bufs, start, end));
+        }
+        if (this.deferSync) {
+            this.numUnsyncedPages += pageNums.length;
+        } else {
+            this.forceDataPages();
+        }
+
+        for (int pageNum : pageNums) {
+            recoveryManager.diskIOHook(DiskSpaceManager.getVirtualPageNum(partNum, pageNum));
+        }
+    }
+
+    /**
+     * @param pageNums data page numbers, in ascending order
+     * @param start index of the first page of a run
+     * @return index after the last page of the run of pages starting at start that are
+     * adjacent in the OS file
+     */
+    private static int runEnd(int[] pageNums, int start) {
+        int end = start + 1;
+        while (end < pageNums.length &&
+                PartitionHandle.dataPageOffset(pageNums[end]) ==
+                PartitionHandle.dataPageOffset(pageNums[end - 1]) + PAGE_SIZE) {
+            ++end;
+        }
+        return end;
+    }
+
+    /**
+     * Forces all data page writes since the last sync to disk. Assumes that the
+     * partition lock is held.
+     * @return number of page writes made durable by this call
+     */
+    int sync() throws IOException {
+        int numPages = this.numUnsyncedPages;
+        if (numPages > 0) {
+            this.forceDataPages();
+            this.numUnsyncedPages = 0;
+        }
+        return numPages;
+    }
+
+    /**
+     * Reads a data page out of the OS file.
+     * @param offset offset in OS file of the data page
+     * @param buf output buffer to be filled with page, from index 0
+     */
+    void readDataPage(long offset, ByteBuffer buf) throws IOException {
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        this.fileChannel.read(b, offset);
+    }
+
+    /**
+     * Writes a data page to the OS file, without forcing it to disk.
+     * @param offset offset in OS file of the data page
+     * @param buf input buffer with contents of page, from index 0
+     */
+    void writeDataPage(long offset, ByteBuffer buf) throws IOException {
+        ByteBuffer b = buf.duplicate();
+        b.clear();
+        this.fileChannel.write(b, offset);
+    }
+
+    /**
+     * Reads consecutive data pages out of the OS file. Moves the file channel's position,
+     * which nothing else depends on (all other accesses are positional).
+     * @param offset offset in OS file of the first data page
+     * @param bufs output buffers to be filled with pages, from index 0
+     */
+    void readDataPages(long offset, ByteBuffer[] bufs) throws IOException {
+        ByteBuffer[] dsts = new ByteBuffer[bufs.length];
+        for (int i = 0; i < bufs.length; ++i) {
+            dsts[i] = bufs[i].duplicate();
+            dsts[i].clear();
+        }
+        this.fileChannel.position(offset);
+        long remaining = (long) bufs.length * PAGE_SIZE;
+        while (remaining > 0) {
+            long numRead = this.fileChannel.read(dsts);
+            if (numRead < 0) {
+                // past the end of the file: the rest of the pages have never been
+                // written, so read them as zeroes rather than leave the buffers stale
+                for (ByteBuffer dst : dsts) {
+                    while (dst.hasRemaining()) {
+                        dst.put((byte) 0);
+                    }
+                }
+                break;
+            }
+            remaining -= numRead;
+        }
+    }
+
+    /**
+     * Writes consecutive data pages to the OS file, without forcing them to disk. Moves
+     * the file channel's position, which nothing else depends on (all other accesses are
+     * positional).
+     * @param offset offset in OS file of the first data page
+     * @param bufs input buffers with contents of pages, from index 0
+     */
+    void writeDataPages(long offset, ByteBuffer[] bufs) throws IOException {
+        ByteBuffer[] srcs = new ByteBuffer[bufs.length];
+        for (int i = 0; i < bufs.length; ++i) {
+            srcs[i] = bufs[i].duplicate();
+            srcs[i].clear();
+        }
+        this.fileChannel.position(offset);
+        long remaining = (long) bufs.length * PAGE_SIZE;
+        while (remaining > 0) {
+            remaining -= this.fileChannel.write(srcs);
+        }
+    }
+
+    /**
+     * Forces data page writes to disk.
+     */
+    void forceDataPages() throws IOException {
+        this.fileChannel.force(false);
+    }
+
+    /**
+     * @return channel of the underlying OS file
+     */
+    FileChannel getFileChannel() {
+        return this.fileChannel;
+    }
+
+    /**
+     * @return number of data page writes since the last sync
+     */
+    int getNumUnsyncedPages() {
+        return this.numUnsyncedPages;
+    }
+
     /**
      * Checks if page number is for an unallocated data page
      * @param pageNum data page number
@@ -307,7 +592,7 @@ class PartitionHandle implements AutoCloseable {
      * @param pageNum data page number
      * @return offset in OS file for data page
      */
-    private static long dataPageOffset(int pageNum) {
+    static long dataPageOffset(int pageNum) {
         // Consider the layout if we had 4 data pages per header:
         // Offset (in pages):  0  1  2  3  4  5  6  7  8  9 10
         // Page Type:         [M][H][D][D][D][D][H][D][D][D][D]
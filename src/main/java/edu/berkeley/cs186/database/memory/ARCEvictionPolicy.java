@@ -0,0 +1,170 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Implementation of the ARC (adaptive replacement cache) eviction policy.
+ *
+ * Resident frames are split between T1, pages referenced once since being loaded,
+ * and T2, pages referenced at least twice; both are kept in LRU order. Page numbers
+ * of pages evicted from T1 and T2 are remembered in ghost lists B1 and B2. Loading a
+ * page remembered in B1 means T1 was too small, and grows the target size p of T1;
+ * loading a page remembered in B2 shrinks it. Frames are evicted from T1 while it is
+ * larger than p, and from T2 otherwise, so a scan that touches each page once only
+ * cycles through T1 unless the workload shows that recency is paying off.
+ *
+ * A victim returned by evict is only remembered in a ghost list once it is cleaned up,
+ * since the buffer manager may still decide not to evict it (e.g. if it was pinned in
+ * the meantime), in which case it stays resident.
+ *
+ * As with the other policies, repeated hits to a page with no other page referenced
+ * in between are counted as one reference. The victim is chosen before the page being
+ * loaded is known, so the tie-break in ARC's REPLACE that depends on the incoming page
+ * being in B2 is not applied.
+ */
+public class ARCEvictionPolicy implements EvictionPolicy {
+    private static final Object T1 = "T1";
+    private static final Object T2 = "T2";
+
+    // Resident frames referenced once, in order of least to most recently used.
+    private final Set<BufferFrame> t1;
+    // Resident frames referenced more than once, in order of least to most recently used.
+    private final Set<BufferFrame> t2;
+    // Page numbers of pages evicted from T1, in order of eviction.
+    private final Set<Long> b1;
+    // Page numbers of pages evicted from T2, in order of eviction.
+    private final Set<Long> b2;
+
+    // Target size of T1.
+    private double p;
+    // Number of frames; set on the first eviction (nothing is remembered before then).
+    private int capacity;
+    // Page number of the most recently referenced page.
+    private long lastPageNum;
+    // Frame last returned by evict, which goes to a ghost list if it is cleaned up.
+    private BufferFrame victim;
+
+    public ARCEvictionPolicy() {
+        this.t1 = new LinkedHashSet<>();
+        this.t2 = new LinkedHashSet<>();
+        this.b1 = new LinkedHashSet<>();
+        this.b2 = new LinkedHashSet<>();
+        this.p = 0;
+        this.capacity = 0;
+        this.lastPageNum = -1;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        // a victim that was not cleaned up was not evicted after all
+        this.victim = null;
+        long pageNum = frame.getPageNum();
+        this.lastPageNum = pageNum;
+        if (this.b1.remove(pageNum)) {
+            this.p = Math.min(this.capacity, this.p + Math.max(1.0, (double) this.b2.size() / (this.b1.size() + 1)));
+            this.t2.add(frame);
+            frame.tag = T2;
+        } else if (this.b2.remove(pageNum)) {
+            this.p = Math.max(0, this.p - Math.max(1.0, (double) this.b1.size() / (this.b2.size() + 1)));
+            this.t2.add(frame);
+            frame.tag = T2;
+        } else {
+            this.t1.add(frame);
+            frame.tag = T1;
+            trim(this.b1, this.capacity - this.t1.size());
+            trim(this.b2, 2 * this.capacity - this.t1.size() - this.t2.size() - this.b1.size());
+        }
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        long pageNum = frame.getPageNum();
+        if (pageNum == this.lastPageNum) {
+            return;
+        }
+        this.lastPageNum = pageNum;
+        if (frame.tag == T1) {
+            this.t1.remove(frame);
+        } else if (frame.tag == T2) {
+            this.t2.remove(frame);
+        } else {
+            return;
+        }
+        this.t2.add(frame);
+        frame.tag = T2;
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.capacity = frames.length;
+        BufferFrame evicted = null;
+        if (!this.t1.isEmpty() && this.t1.size() > this.p) {
+            evicted = lruUnpinned(this.t1);
+        }
+        if (evicted == null) {
+            evicted = lruUnpinned(this.t2);
+        }
+        if (evicted == null) {
+            evicted = lruUnpinned(this.t1);
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        this.victim = evicted;
+        return evicted;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        if (frame == this.victim) {
+            (frame.tag == T1 ? this.b1 : this.b2).add(frame.getPageNum());
+            this.victim = null;
+        }
+        if (frame.tag == T1) {
+            this.t1.remove(frame);
+        } else if (frame.tag == T2) {
+            this.t2.remove(frame);
+        }
+        frame.tag = null;
+    }
+
+    private static BufferFrame lruUnpinned(Set<BufferFrame> list) {
+        for (BufferFrame frame : list) {
+            if (!frame.isPinned()) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    // Drops the oldest entries of a ghost list until it has at most maxSize entries.
+    private static void trim(Set<Long> ghosts, int maxSize) {
+        Iterator<Long> iter = ghosts.iterator();
+        while (ghosts.size() > Math.max(0, maxSize)) {
+            iter.next();
+            iter.remove();
+        }
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.memory;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 
+import java.util.Iterator;
 import java.util.function.BiConsumer;
 
 public interface BufferManager extends AutoCloseable {
@@ -74,6 +75,21 @@ public interface BufferManager extends AutoCloseable {
      */
     BufferFrame fetchNewPageFrame(int partNum, boolean logPage);
 
+    /**
+     * Starts loading the pages a sequential scan is about to fetch, in the background.
+     * Pages are read in the order given, a few pages ahead of the scan; how far ahead
+     * adapts to how quickly the scan consumes them. Pages that cannot be loaded (e.g.
+     * freed since the scan declared them) are skipped. Pages loaded ahead are not pinned,
+     * and the scan still fetches each page as usual.
+     *
+     * @param pageNums page numbers the scan will fetch, in order
+     * @param logPage whether the pages are for the log or not
+     * @return handle for the scan to report its progress through
+     */
+    default ReadAhead readAhead(Iterator<Long> pageNums, boolean logPage) {
+        return ReadAhead.NONE;
+    }
+
     /**
      * Calls flush on the frame of a page and unloads the page from the frame. If the page
      * is not loaded, this does nothing.
@@ -101,4 +117,11 @@ public interface BufferManager extends AutoCloseable {
      * @return number of I/Os
      */
     long getNumIOs();
+
+    /**
+     * Get a snapshot of the buffer manager's statistics: hits and misses per partition,
+     * evictions, pin waits, pinned and dirty frames, and read/write latencies.
+     * @return buffer manager statistics
+     */
+    BufferManagerStats getStats();
 }
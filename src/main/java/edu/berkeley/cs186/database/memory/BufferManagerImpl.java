@@ -9,15 +9,42 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
- * Data is stored in page-sized byte arrays, and returned in a Frame object specific
+ * Data is stored in page-sized byte buffers, and returned in a Frame object specific
  * to the page loaded (evicting and loading a new page into the frame will result in
- * a new Frame object, with the same underlying byte array), with old Frame objects
- * backed by the same byte array marked as invalid.
+ * a new Frame object, with the same underlying buffer), with old Frame objects
+ * backed by the same buffer marked as invalid.
+ *
+ * By default each frame's buffer wraps its own on-heap byte array. The buffer manager
+ * may instead be created with an off-heap pool, in which case frames are slices of a
+ * few large direct buffers allocated up front; pages are then transferred between the
+ * file and the frame by the disk space manager without an intermediate copy, and the
+ * pool is invisible to the garbage collector.
+ *
+ * Lookups of resident pages do not take the manager lock: the page table is a
+ * concurrent map, and a hit only latches the frame it lands on, validating that the
+ * frame still holds the requested page before returning it. The manager lock is only
+ * needed on a miss, to pick a free frame or an eviction victim.
+ *
+ * If read-ahead is enabled, a background thread loads the pages that sequential scans
+ * declare (see readAhead) into frames before the scans get to them.
+ *
+ * If the page cleaner is enabled, another background thread writes back dirty, unpinned
+ * frames (in page number order) whenever fewer than the configured fraction of frames
+ * are clean, so that a miss can usually evict a clean frame without writing it first.
  */
 public class BufferManagerImpl implements BufferManager {
     // Buffer frames
@@ -26,10 +53,17 @@ public class BufferManagerImpl implements BufferManager {
     // Reference to the disk space manager underneath this buffer manager instance.
     private DiskSpaceManager diskSpaceManager;
 
-    // Map of page number to frame index
-    private Map<Long, Integer> pageToFrame;
+    // Map of page number to frame index. Read without the manager lock on the hit
+    // path; only modified while holding the manager lock.
+    private ConcurrentMap<Long, Integer> pageToFrame;
 
-    // Lock on buffer manager
+    // Dirty pages that have been unmapped from their frame to be evicted, but not yet
+    // written back, mapped to the (latched) frame holding them. A miss on one of these
+    // pages must wait for the write, or it would read a stale copy of the page.
+    private ConcurrentMap<Long, Frame> evictingPages;
+
+    // Lock on buffer manager, held while choosing frames on a miss and while
+    // modifying the page table or free list
     private ReentrantLock managerLock;
 
     // Eviction policy
@@ -42,7 +76,46 @@ public class BufferManagerImpl implements BufferManager {
     private RecoveryManager recoveryManager;
 
     // Count of number of I/Os
-    private long numIOs = 0;
+    private AtomicLong numIOs = new AtomicLong(0);
+
+    // Thread loading pages ahead of sequential scans, or null if read-ahead is disabled
+    private ExecutorService readAheadExecutor;
+
+    // Maximum number of pages a single scan may have loaded ahead of it
+    private int maxReadAheadDepth;
+
+    // Page cleaner thread, or null if the cleaner is disabled
+    private Thread cleanerThread;
+
+    // Number of frames the cleaner tries to keep clean (or free)
+    private int cleanFrameTarget;
+
+    // Monitor the cleaner waits on between rounds, and flag telling it to stop
+    private final Object cleanerSignal = new Object();
+    private volatile boolean cleanerStopped = false;
+
+    // Number of frames written back by the cleaner, and when the cleaner started
+    private AtomicLong numCleanedPages = new AtomicLong(0);
+    private long cleanerStartTime;
+
+    // Statistics (see getStats): hits and misses by partition, victims picked by the
+    // eviction policy, time spent waiting on pinned frames, and I/O latencies
+    private ConcurrentMap<Integer, AtomicLong> hitsByPartition = new ConcurrentHashMap<>();
+    private ConcurrentMap<Integer, AtomicLong> missesByPartition = new ConcurrentHashMap<>();
+    private AtomicLong cleanEvictions = new AtomicLong(0);
+    private AtomicLong dirtyEvictions = new AtomicLong(0);
+    private AtomicLong pinWaits = new AtomicLong(0);
+    private AtomicLong pinWaitNanos = new AtomicLong(0);
+    private LatencyHistogram readLatency = new LatencyHistogram();
+    private LatencyHistogram writeLatency = new LatencyHistogram();
+
+    // How long the cleaner sleeps between rounds if not woken up by a dirty eviction
+    private static final long CLEANER_INTERVAL_MILLIS = 100;
+
+    // How many times fetchPageFrame retries claiming a frame for a page (backing off
+    // between attempts, up to MAX_CLAIM_BACKOFF_NANOS) before giving up
+    private static final int MAX_CLAIM_ATTEMPTS = 10000;
+    private static final long MAX_CLAIM_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
@@ -52,14 +125,14 @@ public class BufferManagerImpl implements BufferManager {
     class Frame extends BufferFrame {
         private static final int INVALID_INDEX = Integer.MIN_VALUE;
 
-        byte[] contents;
+        ByteBuffer contents;
         private int index;
         private long pageNum;
         private boolean dirty;
         private ReentrantLock frameLock;
         private boolean logPage;
 
-        Frame(byte[] contents, int nextFree, boolean logPage) {
+        Frame(ByteBuffer contents, int nextFree, boolean logPage) {
             this(contents, ~nextFree, DiskSpaceManager.INVALID_PAGE_NUM, logPage);
         }
 
@@ -67,7 +140,7 @@ public class BufferManagerImpl implements BufferManager {
             this(frame.contents, frame.index, frame.pageNum, frame.logPage);
         }
 
-        Frame(byte[] contents, int index, long pageNum, boolean logPage) {
+        Frame(ByteBuffer contents, int index, long pageNum, boolean logPage) {
             this.contents = contents;
             this.index = index;
             this.pageNum = pageNum;
@@ -82,7 +155,7 @@ public class BufferManagerImpl implements BufferManager {
          */
         @Override
         public void pin() {
-            this.frameLock.lock();
+            this.latch();
 
             if (!this.isValid()) {
                 throw new IllegalStateException("pinning invalidated frame");
@@ -91,6 +164,37 @@ public class BufferManagerImpl implements BufferManager {
             super.pin();
         }
 
+        /**
+         * Pins the buffer frame if it is still valid and still holds the given page.
+         * Used on the lookup path, which finds frames without holding the manager lock,
+         * and so may race with the frame being evicted or reused for another page.
+         * @param pageNum page number the caller expects the frame to hold
+         * @return true if the frame was pinned, false if it no longer holds the page
+         */
+        private boolean tryPin(long pageNum) {
+            this.latch();
+            if (!this.isValid() || this.pageNum != pageNum) {
+                this.frameLock.unlock();
+                return false;
+            }
+            super.pin();
+            return true;
+        }
+
+        /**
+         * Acquires the frame's latch, recording how long it took if another thread
+         * held it.
+         */
+        private void latch() {
+            if (this.frameLock.tryLock()) {
+                return;
+            }
+            long start = System.nanoTime();
+            this.frameLock.lock();
+            BufferManagerImpl.this.pinWaits.incrementAndGet();
+            BufferManagerImpl.this.pinWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+
         /**
          * Unpin buffer frame.
          */
@@ -172,7 +276,9 @@ public class BufferManagerImpl implements BufferManager {
                 if (!this.logPage) {
                     recoveryManager.pageFlushHook(this.getPageLSN());
                 }
+                long start = System.nanoTime();
                 BufferManagerImpl.this.diskSpaceManager.writePage(pageNum, contents);
+                BufferManagerImpl.this.writeLatency.record(System.nanoTime() - start);
                 BufferManagerImpl.this.incrementIOs();
                 this.dirty = false;
             } finally {
@@ -181,6 +287,56 @@ public class BufferManagerImpl implements BufferManager {
             }
         }
 
+        /**
+         * Gets the page LSN of the frame if it is dirty and not in use, without waiting on
+         * the frame. Used by write-back, to flush the log before latching the frame.
+         * @return page LSN, or null if the frame cannot or need not be written back
+         */
+        private Long getWriteBackLSN() {
+            if (!this.frameLock.tryLock()) {
+                return null;
+            }
+            try {
+                if (!this.isValid() || !this.dirty || this.isPinned()) {
+                    return null;
+                }
+                return this.getPageLSN();
+            } finally {
+                this.frameLock.unlock();
+            }
+        }
+
+        /**
+         * Latches the frame for write-back if it is still dirty, not in use, and has not
+         * been changed since its LSN was read, without waiting on the frame. If latched,
+         * releaseWriteBack must be called once the write is done.
+         * @param pageLSN page LSN returned by getWriteBackLSN
+         * @return whether the frame was latched
+         */
+        private boolean latchForWriteBack(long pageLSN) {
+            if (!this.frameLock.tryLock()) {
+                return false;
+            }
+            if (!this.isValid() || !this.dirty || this.isPinned() || this.getPageLSN() != pageLSN) {
+                this.frameLock.unlock();
+                return false;
+            }
+            super.pin();
+            return true;
+        }
+
+        /**
+         * Releases a frame latched by latchForWriteBack.
+         * @param written whether the frame's contents were written
+         */
+        private void releaseWriteBack(boolean written) {
+            if (written) {
+                this.dirty = false;
+            }
+            super.unpin();
+            this.frameLock.unlock();
+        }
+
         /**
          * Read from the buffer frame.
          * @param position position in buffer frame to start reading
@@ -194,7 +350,9 @@ public class BufferManagerImpl implements BufferManager {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
+                ByteBuffer b = this.contents.duplicate();
+                b.position(position + dataOffset());
+                b.get(buf, 0, num);
                 BufferManagerImpl.this.evictionPolicy.hit(this);
             } finally {
                 this.unpin();
@@ -221,14 +379,16 @@ public class BufferManagerImpl implements BufferManager {
                     for (Pair<Integer, Integer> range : changedRanges) {
                         int start = range.getFirst();
                         int len = range.getSecond();
-                        byte[] before = Arrays.copyOfRange(contents, start + offset, start + offset + len);
+                        byte[] before = this.copyContents(start + offset, len);
                         byte[] after = Arrays.copyOfRange(buf, start, start + len);
                         long pageLSN = recoveryManager.logPageWrite(transaction.getTransNum(), pageNum, position, before,
                                        after);
                         this.setPageLSN(pageLSN);
                     }
                 }
-                System.arraycopy(buf, 0, this.contents, offset, num);
+                ByteBuffer b = this.contents.duplicate();
+                b.position(offset);
+                b.put(buf, 0, num);
                 this.dirty = true;
                 BufferManagerImpl.this.evictionPolicy.hit(this);
             } finally {
@@ -268,7 +428,7 @@ public class BufferManagerImpl implements BufferManager {
 
         @Override
         long getPageLSN() {
-            return ByteBuffer.wrap(this.contents).getLong(8);
+            return this.contents.getLong(8);
         }
 
         @Override
@@ -292,7 +452,7 @@ public class BufferManagerImpl implements BufferManager {
             int startIndex = -1;
             int skip = -1;
             for (int i = 0; i < num; ++i) {
-                if (buf[i] == contents[offset + i] && startIndex >= 0) {
+                if (buf[i] == contents.get(offset + i) && startIndex >= 0) {
                     if (skip > BufferManager.RESERVED_SPACE) {
                         ranges.add(new Pair<>(startIndex, i - startIndex - skip));
                         startIndex = -1;
@@ -300,7 +460,7 @@ public class BufferManagerImpl implements BufferManager {
                     } else {
                         ++skip;
                     }
-                } else if (buf[i] != contents[offset + i]) {
+                } else if (buf[i] != contents.get(offset + i)) {
                     if (startIndex < 0) {
                         startIndex = i;
                     }
@@ -314,7 +474,21 @@ public class BufferManagerImpl implements BufferManager {
         }
 
         void setPageLSN(long pageLSN) {
-            ByteBuffer.wrap(this.contents).putLong(8, pageLSN);
+            this.contents.putLong(8, pageLSN);
+        }
+
+        /**
+         * Copies part of the frame's contents out into a new array.
+         * @param position position in the frame's contents to start copying from
+         * @param num number of bytes to copy
+         * @return copied bytes
+         */
+        private byte[] copyContents(int position, int num) {
+            byte[] bytes = new byte[num];
+            ByteBuffer b = this.contents.duplicate();
+            b.position(position);
+            b.get(bytes);
+            return bytes;
         }
 
         private short dataOffset() {
@@ -327,7 +501,7 @@ public class BufferManagerImpl implements BufferManager {
     }
 
     /**
-     * Creates a new buffer manager.
+     * Creates a new buffer manager, with frames stored on the heap.
      *
      * @param diskSpaceManager the underlying disk space manager
      * @param bufferSize size of buffer (in pages)
@@ -335,20 +509,144 @@ public class BufferManagerImpl implements BufferManager {
      */
     public BufferManagerImpl(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
                              int bufferSize, EvictionPolicy evictionPolicy) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, false);
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether frames should be slices of direct (off-heap) memory
+     *                instead of on-heap byte arrays
+     */
+    public BufferManagerImpl(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                             int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, offHeap, 0);
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether frames should be slices of direct (off-heap) memory
+     *                instead of on-heap byte arrays
+     * @param readAheadDepth maximum number of pages to load ahead of a sequential scan
+     *                       (capped at a quarter of the buffer), or 0 to disable read-ahead
+     */
+    public BufferManagerImpl(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                             int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap,
+                             int readAheadDepth) {
+        this(diskSpaceManager, recoveryManager, bufferSize, evictionPolicy, offHeap, readAheadDepth, 0);
+    }
+
+    /**
+     * Creates a new buffer manager.
+     *
+     * @param diskSpaceManager the underlying disk space manager
+     * @param bufferSize size of buffer (in pages)
+     * @param evictionPolicy eviction policy to use
+     * @param offHeap whether frames should be slices of direct (off-heap) memory
+     *                instead of on-heap byte arrays
+     * @param readAheadDepth maximum number of pages to load ahead of a sequential scan
+     *                       (capped at a quarter of the buffer), or 0 to disable read-ahead
+     * @param cleanFraction fraction of frames the page cleaner keeps clean, or 0 to
+     *                      disable the page cleaner
+     */
+    public BufferManagerImpl(DiskSpaceManager diskSpaceManager, RecoveryManager recoveryManager,
+                             int bufferSize, EvictionPolicy evictionPolicy, boolean offHeap,
+                             int readAheadDepth, double cleanFraction) {
+        if (cleanFraction < 0 || cleanFraction > 1) {
+            throw new IllegalArgumentException("clean fraction must be between 0 and 1");
+        }
         this.frames = new Frame[bufferSize];
+        ByteBuffer[] pool = offHeap ? allocateDirectPool(bufferSize) : allocateHeapPool(bufferSize);
         for (int i = 0; i < bufferSize; ++i) {
-            this.frames[i] = new Frame(new byte[DiskSpaceManager.PAGE_SIZE], i + 1, false);
+            this.frames[i] = new Frame(pool[i], i + 1, false);
         }
         this.firstFreeIndex = 0;
         this.diskSpaceManager = diskSpaceManager;
-        this.pageToFrame = new HashMap<>();
+        this.pageToFrame = new ConcurrentHashMap<>();
+        this.evictingPages = new ConcurrentHashMap<>();
         this.managerLock = new ReentrantLock();
         this.evictionPolicy = evictionPolicy;
         this.recoveryManager = recoveryManager;
+        this.maxReadAheadDepth = Math.min(readAheadDepth, bufferSize / 4);
+        if (this.maxReadAheadDepth > 0) {
+            this.readAheadExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.cleanFrameTarget = (int) Math.ceil(cleanFraction * bufferSize);
+        if (this.cleanFrameTarget > 0) {
+            this.cleanerStartTime = System.nanoTime();
+            this.cleanerThread = new Thread(this::runCleaner, "page-cleaner");
+            this.cleanerThread.setDaemon(true);
+            this.cleanerThread.start();
+        }
+    }
+
+    /**
+     * Allocates a page-sized on-heap buffer for each frame.
+     * @param bufferSize number of frames
+     * @return buffers for each frame
+     */
+    private static ByteBuffer[] allocateHeapPool(int bufferSize) {
+        ByteBuffer[] pool = new ByteBuffer[bufferSize];
+        for (int i = 0; i < bufferSize; ++i) {
+            pool[i] = ByteBuffer.wrap(new byte[DiskSpaceManager.PAGE_SIZE]);
+        }
+        return pool;
+    }
+
+    /**
+     * Allocates the frames in as few direct buffers as possible, and slices them into
+     * page-sized buffers, one per frame. A single ByteBuffer is indexed by an int, so
+     * pools larger than 2G are split across several regions.
+     * @param bufferSize number of frames
+     * @return buffers for each frame
+     */
+    private static ByteBuffer[] allocateDirectPool(int bufferSize) {
+        ByteBuffer[] pool = new ByteBuffer[bufferSize];
+        int pagesPerRegion = Integer.MAX_VALUE / DiskSpaceManager.PAGE_SIZE;
+        for (int start = 0; start < bufferSize; start += pagesPerRegion) {
+            int numPages = Math.min(pagesPerRegion, bufferSize - start);
+            ByteBuffer region = ByteBuffer.allocateDirect(numPages * DiskSpaceManager.PAGE_SIZE);
+            for (int i = 0; i < numPages; ++i) {
+                region.limit((i + 1) * DiskSpaceManager.PAGE_SIZE);
+                region.position(i * DiskSpaceManager.PAGE_SIZE);
+                pool[start + i] = region.slice();
+            }
+        }
+        return pool;
     }
 
     @Override
     public void close() {
+        if (this.cleanerThread != null) {
+            synchronized (this.cleanerSignal) {
+                this.cleanerStopped = true;
+                this.cleanerSignal.notifyAll();
+            }
+            try {
+                this.cleanerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (this.readAheadExecutor != null) {
+            this.readAheadExecutor.shutdownNow();
+            try {
+                this.readAheadExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         this.managerLock.lock();
         try {
             for (Frame frame : this.frames) {
@@ -371,27 +669,124 @@ public class BufferManagerImpl implements BufferManager {
         }
     }
 
+    /**
+     * Looks up and pins the frame holding a page, without taking the manager lock.
+     * @param pageNum page number
+     * @return pinned frame holding the page, or null if the page is not resident
+     */
+    private Frame fetchResidentFrame(long pageNum) {
+        Integer frameIndex = this.pageToFrame.get(pageNum);
+        if (frameIndex == null) {
+            return null;
+        }
+        Frame frame = this.frames[frameIndex];
+        if (frame.tryPin(pageNum)) {
+            return frame;
+        }
+        // frame was evicted or reassigned between the lookup and the pin - let the
+        // caller fall back to the locked path
+        return null;
+    }
+
     @Override
     public Frame fetchPageFrame(long pageNum, boolean logPage) {
-        this.managerLock.lock();
+        long backoffNanos = 1000;
+        for (int attempt = 1; ; ++attempt) {
+            Frame residentFrame = this.fetchResidentFrame(pageNum);
+            if (residentFrame != null) {
+                this.countFetch(this.hitsByPartition, pageNum);
+                return residentFrame;
+            }
+
+            Frame newFrame = this.claimFrame(pageNum, logPage, true);
+            if (newFrame == null) {
+                // loaded by another thread since our lookup, being written back, or the
+                // victim was pinned; retry without holding the manager lock, since
+                // pinning (or waiting for the write) may block on another pin
+                Frame evicting = this.evictingPages.get(pageNum);
+                if (evicting != null) {
+                    evicting.frameLock.lock();
+                    evicting.frameLock.unlock();
+                } else if (attempt >= MAX_CLAIM_ATTEMPTS) {
+                    throw new IllegalStateException("could not claim a frame for page " + pageNum);
+                } else if (attempt > 1) {
+                    // victims keep getting pinned: give the threads pinning them time to
+                    // unpin, rather than spinning on the manager lock
+                    LockSupport.parkNanos(backoffNanos);
+                    backoffNanos = Math.min(2 * backoffNanos, MAX_CLAIM_BACKOFF_NANOS);
+                }
+                continue;
+            }
+            // read new page into frame
+            try {
+                long start = System.nanoTime();
+                BufferManagerImpl.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
+                this.readLatency.record(System.nanoTime() - start);
+                this.incrementIOs();
+                this.countFetch(this.missesByPartition, pageNum);
+                return newFrame;
+            } catch (PageException e) {
+                newFrame.unpin();
+                throw e;
+            } finally {
+                newFrame.frameLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Picks a frame for a page that is not loaded (a free frame if there is one, otherwise
+     * an eviction victim, which is flushed), and maps the page to it. The frame is returned
+     * pinned and latched: the caller must read the page into it, then release the latch
+     * (frameLock.unlock()). Threads looking up the page wait on the latch until then.
+     * @param pageNum page number
+     * @param logPage whether the page is for the log or not
+     * @param mayFlush whether a dirty victim may be evicted; if not, and the victim chosen
+     *                 is dirty, nothing is evicted and IllegalStateException is thrown
+     * @return frame for the page, or null if the page was loaded by another thread since
+     * the caller looked it up, is still being written back after its eviction (see
+     * evictingPages), or the victim chosen was pinned in the meantime
+     */
+    private Frame claimFrame(long pageNum, boolean logPage, boolean mayFlush) {
         Frame newFrame;
         Frame evictedFrame;
+        this.managerLock.lock();
         // figure out what frame to load data to, and update manager state
         try {
             if (!this.diskSpaceManager.pageAllocated(pageNum)) {
                 throw new PageException("page " + pageNum + " not allocated");
             }
-            if (this.pageToFrame.containsKey(pageNum)) {
-                newFrame = this.frames[this.pageToFrame.get(pageNum)];
-                newFrame.pin();
-                return newFrame;
+            if (this.pageToFrame.containsKey(pageNum) || this.evictingPages.containsKey(pageNum)) {
+                return null;
             }
             // prioritize free frames over eviction
             if (this.firstFreeIndex < this.frames.length) {
                 evictedFrame = this.frames[this.firstFreeIndex];
+                evictedFrame.frameLock.lock();
                 evictedFrame.setUsed();
             } else {
                 evictedFrame = (Frame) evictionPolicy.evict(frames);
+                // a lookup may have pinned the victim since the policy checked it, without
+                // the manager lock - waiting for it here could deadlock with a lookup that
+                // goes on to take the manager lock, so let the caller retry instead
+                if (!evictedFrame.frameLock.tryLock()) {
+                    return null;
+                }
+                if (evictedFrame.isPinned()) {
+                    evictedFrame.frameLock.unlock();
+                    return null;
+                }
+                if (evictedFrame.dirty) {
+                    this.wakeCleaner();
+                    if (!mayFlush) {
+                        evictedFrame.frameLock.unlock();
+                        throw new IllegalStateException("no clean frame to evict");
+                    }
+                    this.dirtyEvictions.incrementAndGet();
+                    this.evictingPages.put(evictedFrame.pageNum, evictedFrame);
+                } else {
+                    this.cleanEvictions.incrementAndGet();
+                }
                 this.pageToFrame.remove(evictedFrame.pageNum, evictedFrame.index);
                 evictionPolicy.cleanup(evictedFrame);
             }
@@ -399,7 +794,6 @@ public class BufferManagerImpl implements BufferManager {
             newFrame = this.frames[frameIndex] = new Frame(evictedFrame.contents, frameIndex, pageNum, logPage);
             evictionPolicy.init(newFrame);
 
-            evictedFrame.frameLock.lock();
             newFrame.frameLock.lock();
 
             this.pageToFrame.put(pageNum, frameIndex);
@@ -410,20 +804,28 @@ public class BufferManagerImpl implements BufferManager {
         try {
             evictedFrame.invalidate();
         } finally {
+            this.evictingPages.remove(evictedFrame.pageNum, evictedFrame);
             evictedFrame.frameLock.unlock();
         }
-        // read new page into frame
+        newFrame.pin();
+        return newFrame;
+    }
+
+    /**
+     * Unmaps a frame claimed by claimFrame whose page could not be read, and returns it
+     * to the free list. The frame must still be pinned and latched by the caller.
+     * @param frame frame to discard
+     */
+    private void discardFrame(Frame frame) {
+        this.managerLock.lock();
         try {
-            newFrame.pageNum = pageNum;
-            newFrame.pin();
-            BufferManagerImpl.this.diskSpaceManager.readPage(pageNum, newFrame.contents);
-            this.incrementIOs();
-            return newFrame;
-        } catch (PageException e) {
-            newFrame.unpin();
-            throw e;
+            this.pageToFrame.remove(frame.pageNum, frame.index);
+            evictionPolicy.cleanup(frame);
+            int frameIndex = frame.index;
+            frame.setFree();
+            this.frames[frameIndex] = new Frame(frame);
         } finally {
-            newFrame.frameLock.unlock();
+            this.managerLock.unlock();
         }
     }
 
@@ -435,12 +837,9 @@ public class BufferManagerImpl implements BufferManager {
     @Override
     public Frame fetchNewPageFrame(int partNum, boolean logPage) {
         long pageNum = this.diskSpaceManager.allocPage(partNum);
-        this.managerLock.lock();
-        try {
-            return fetchPageFrame(pageNum, logPage);
-        } finally {
-            this.managerLock.unlock();
-        }
+        // no other thread knows of the new page yet, and fetchPageFrame may need to
+        // release the manager lock to retry, so it is not held here
+        return fetchPageFrame(pageNum, logPage);
     }
 
     @Override
@@ -462,7 +861,7 @@ public class BufferManagerImpl implements BufferManager {
                         transaction.getTransNum(),
                         page.getPageNum(),
                         (short) 0,
-                        frame.contents,
+                        frame.copyContents(0, DiskSpaceManager.PAGE_SIZE),
                         new byte[EFFECTIVE_PAGE_SIZE]
                 );
             }
@@ -479,44 +878,390 @@ public class BufferManagerImpl implements BufferManager {
 
     @Override
     public void freePart(int partNum) {
-        this.managerLock.lock();
+        while (true) {
+            // frames are latched while pinned, and a thread holding a pin may go on to take
+            // the manager lock, so the frames are collected under the manager lock but
+            // latched without it; the partition is freed once a pass finds none left
+            List<Frame> partFrames = new ArrayList<>();
+            this.managerLock.lock();
+            try {
+                for (Frame frame : frames) {
+                    // a frame freed with its page (by freePage) still has the page's number
+                    if (frame.isValid() && DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
+                        partFrames.add(frame);
+                    }
+                }
+                if (partFrames.isEmpty()) {
+                    diskSpaceManager.freePart(partNum);
+                    return;
+                }
+            } finally {
+                this.managerLock.unlock();
+            }
+
+            for (Frame frame : partFrames) {
+                frame.frameLock.lock();
+                try {
+                    this.managerLock.lock();
+                    try {
+                        // evicted since it was collected (and then invalidated)
+                        if (!frame.isValid()) {
+                            continue;
+                        }
+                        int i = frame.index;
+                        this.pageToFrame.remove(frame.getPageNum(), i);
+                        evictionPolicy.cleanup(frame);
+                        frame.setFree();
+
+                        frames[i] = new Frame(frame);
+                    } finally {
+                        this.managerLock.unlock();
+                    }
+                } finally {
+                    frame.frameLock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public ReadAhead readAhead(Iterator<Long> pageNums, boolean logPage) {
+        if (this.readAheadExecutor == null) {
+            return ReadAhead.NONE;
+        }
+        return new ScanReadAhead(pageNums, logPage);
+    }
+
+    /**
+     * Loads pages into frames, if they are not already loaded, without leaving them pinned.
+     * Run on the read-ahead thread. The pages are read with one call to the disk space
+     * manager, so runs of pages adjacent on disk are read together. Only free or clean
+     * frames are used (writing back dirty pages is left to the page cleaner and to misses),
+     * and the remaining pages are skipped once there are none left.
+     * @param pageNums page numbers
+     * @param logPage whether the pages are for the log or not
+     */
+    private void prefetchPages(List<Long> pageNums, boolean logPage) {
+        List<Frame> claimed = new ArrayList<>();
         try {
-            for (int i = 0; i < frames.length; ++i) {
-                Frame frame = frames[i];
-                if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
-                    this.pageToFrame.remove(frame.getPageNum(), i);
-                    evictionPolicy.cleanup(frame);
-                    frame.setFree();
+            for (long pageNum : pageNums) {
+                if (this.pageToFrame.containsKey(pageNum)) {
+                    continue;
+                }
+                Frame frame;
+                try {
+                    frame = this.claimFrame(pageNum, logPage, false);
+                } catch (PageException e) {
+                    // page no longer exists - the scan will fail to fetch it itself
+                    continue;
+                } catch (IllegalStateException e) {
+                    // everything is pinned or dirty
+                    break;
+                }
+                if (frame != null) {
+                    claimed.add(frame);
+                }
+            }
+            if (claimed.isEmpty()) {
+                return;
+            }
+            long[] claimedPageNums = new long[claimed.size()];
+            ByteBuffer[] bufs = new ByteBuffer[claimed.size()];
+            for (int i = 0; i < claimed.size(); ++i) {
+                claimedPageNums[i] = claimed.get(i).pageNum;
+                bufs[i] = claimed.get(i).contents;
+            }
+            try {
+                long start = System.nanoTime();
+                this.diskSpaceManager.readPages(claimedPageNums, bufs);
+                this.readLatency.record(System.nanoTime() - start);
+                this.numIOs.addAndGet(claimed.size());
+            } catch (PageException e) {
+                // don't leave pages mapped to frames that don't hold them
+                for (Frame frame : claimed) {
+                    this.discardFrame(frame);
+                }
+            }
+        } finally {
+            for (Frame frame : claimed) {
+                frame.unpin();
+                frame.frameLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Read-ahead for a single scan. Keeps up to depth of the scan's upcoming pages
+     * queued or loaded ahead of it. The depth doubles when the scan reaches a page whose
+     * read has not finished (the scan is waiting on I/O), and shrinks by one when the
+     * scan advances with every read ahead of it already finished (the scan is the
+     * bottleneck, so fewer frames need to be tied up ahead of it).
+     */
+    private class ScanReadAhead implements ReadAhead {
+        private final Iterator<Long> pageNums;
+        private final boolean logPage;
+
+        // Reads for pages the scan has not reached yet, in scan order
+        private final Deque<Future<?>> pending;
+
+        private int depth;
+
+        private ScanReadAhead(Iterator<Long> pageNums, boolean logPage) {
+            this.pageNums = pageNums;
+            this.logPage = logPage;
+            this.pending = new ArrayDeque<>();
+            this.depth = 1;
+            this.fill();
+        }
+
+        @Override
+        public void advance() {
+            Future<?> next = this.pending.poll();
+            if (next != null) {
+                if (!next.isDone()) {
+                    this.depth = Math.min(this.depth * 2, BufferManagerImpl.this.maxReadAheadDepth);
+                } else if (this.pending.isEmpty() || this.pending.getLast().isDone()) {
+                    this.depth = Math.max(this.depth - 1, 1);
+                }
+            }
+            this.fill();
+        }
+
+        @Override
+        public void close() {
+            for (Future<?> read : this.pending) {
+                read.cancel(false);
+            }
+            this.pending.clear();
+        }
+
+        // queues reads of upcoming pages, as one batch, until depth pages are pending
+        private void fill() {
+            List<Long> batch = new ArrayList<>();
+            while (this.pending.size() + batch.size() < this.depth && this.pageNums.hasNext()) {
+                batch.add(this.pageNums.next());
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            Future<?> read;
+            try {
+                read = BufferManagerImpl.this.readAheadExecutor.submit(
+                           () -> BufferManagerImpl.this.prefetchPages(batch, this.logPage));
+            } catch (RejectedExecutionException e) {
+                // buffer manager is closing
+                return;
+            }
+            for (int i = 0; i < batch.size(); ++i) {
+                this.pending.add(read);
+            }
+        }
+    }
+
+    /**
+     * Main loop of the page cleaner thread: runs a round of cleaning whenever woken up
+     * by a dirty eviction, or periodically otherwise.
+     */
+    private void runCleaner() {
+        while (true) {
+            synchronized (this.cleanerSignal) {
+                if (this.cleanerStopped) {
+                    return;
+                }
+                try {
+                    this.cleanerSignal.wait(CLEANER_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (this.cleanerStopped) {
+                    return;
+                }
+            }
+            this.cleanFrames();
+        }
+    }
 
-                    frames[i] = new Frame(frame);
+    private void wakeCleaner() {
+        if (this.cleanerThread != null) {
+            synchronized (this.cleanerSignal) {
+                this.cleanerSignal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes back dirty, unpinned frames, in page number order, until at least
+     * cleanFrameTarget frames are clean (or there is nothing left that can be written).
+     */
+    private void cleanFrames() {
+        List<Frame> dirtyFrames = new ArrayList<>();
+        int numClean = 0;
+        for (Frame frame : this.frames) {
+            if (frame.isValid() && frame.dirty) {
+                dirtyFrames.add(frame);
+            } else {
+                ++numClean;
+            }
+        }
+        if (numClean >= this.cleanFrameTarget) {
+            return;
+        }
+        dirtyFrames.sort(Comparator.comparingLong(Frame::getPageNum));
+        try {
+            this.numCleanedPages.addAndGet(this.writeBack(dirtyFrames, this.cleanFrameTarget - numClean));
+        } catch (PageException e) {
+            // page freed or partition dropped under us; try again next round
+        }
+    }
+
+    /**
+     * Writes back dirty frames that are not in use, as one batch: the log is flushed once
+     * (up to the largest page LSN among the data pages), and the pages are written with
+     * one call to the disk space manager, so runs of pages adjacent on disk are written
+     * together. Frames that are in use are skipped rather than waited on, and the log is
+     * flushed before any frame is latched, so this never waits on the log while holding a
+     * frame that a thread holding the log may be waiting to evict.
+     * @param candidates frames to write back, in the order to write them
+     * @param limit maximum number of frames to write
+     * @return number of frames written
+     */
+    private int writeBack(List<Frame> candidates, int limit) {
+        List<Frame> toWrite = new ArrayList<>();
+        List<Long> pageLSNs = new ArrayList<>();
+        long maxPageLSN = Long.MIN_VALUE;
+        for (Frame frame : candidates) {
+            if (toWrite.size() >= limit) {
+                break;
+            }
+            Long pageLSN = frame.getWriteBackLSN();
+            if (pageLSN != null) {
+                toWrite.add(frame);
+                pageLSNs.add(pageLSN);
+                if (!frame.logPage) {
+                    maxPageLSN = Math.max(maxPageLSN, pageLSN);
                 }
             }
+        }
+        if (maxPageLSN != Long.MIN_VALUE) {
+            recoveryManager.pageFlushHook(maxPageLSN);
+        }
 
-            diskSpaceManager.freePart(partNum);
+        List<Frame> latched = new ArrayList<>();
+        boolean written = false;
+        try {
+            for (int i = 0; i < toWrite.size(); ++i) {
+                if (toWrite.get(i).latchForWriteBack(pageLSNs.get(i))) {
+                    latched.add(toWrite.get(i));
+                }
+            }
+            if (latched.isEmpty()) {
+                return 0;
+            }
+            long[] pageNums = new long[latched.size()];
+            ByteBuffer[] bufs = new ByteBuffer[latched.size()];
+            for (int i = 0; i < latched.size(); ++i) {
+                pageNums[i] = latched.get(i).pageNum;
+                bufs[i] = latched.get(i).contents;
+            }
+            long start = System.nanoTime();
+            this.diskSpaceManager.writePages(pageNums, bufs);
+            this.writeLatency.record(System.nanoTime() - start);
+            this.numIOs.addAndGet(latched.size());
+            written = true;
+            return latched.size();
         } finally {
-            this.managerLock.unlock();
+            for (Frame frame : latched) {
+                frame.releaseWriteBack(written);
+            }
+        }
+    }
+
+    /**
+     * @return number of frames written back by the page cleaner
+     */
+    public long getNumCleanedPages() {
+        return this.numCleanedPages.get();
+    }
+
+    /**
+     * @return average number of frames written back by the page cleaner per second since
+     * it was started, or 0 if the page cleaner is disabled
+     */
+    public double getCleanerWriteRate() {
+        if (this.cleanerThread == null) {
+            return 0;
+        }
+        double elapsedSeconds = (System.nanoTime() - this.cleanerStartTime) / 1e9;
+        return this.numCleanedPages.get() / elapsedSeconds;
+    }
+
+    /**
+     * @return fraction of frames currently holding a dirty page
+     */
+    public double getDirtyPageRatio() {
+        int numDirty = 0;
+        for (Frame frame : this.frames) {
+            if (frame.isValid() && frame.dirty) {
+                ++numDirty;
+            }
         }
+        return (double) numDirty / this.frames.length;
     }
 
     @Override
     public void evict(long pageNum) {
-        managerLock.lock();
-        try {
-            if (!pageToFrame.containsKey(pageNum)) {
-                return;
+        while (true) {
+            Frame frame;
+            managerLock.lock();
+            try {
+                Integer i = pageToFrame.get(pageNum);
+                if (i == null) {
+                    return;
+                }
+                frame = frames[i];
+                if (tryEvict(frame)) {
+                    return;
+                }
+            } finally {
+                managerLock.unlock();
             }
-            evict(pageToFrame.get(pageNum));
-        } finally {
-            managerLock.unlock();
+            // wait for the frame's latch without the manager lock (see tryEvict)
+            frame.frameLock.lock();
+            frame.frameLock.unlock();
         }
     }
 
     private void evict(int i) {
-        Frame frame = frames[i];
-        frame.frameLock.lock();
+        while (true) {
+            Frame frame;
+            managerLock.lock();
+            try {
+                frame = frames[i];
+                if (tryEvict(frame)) {
+                    return;
+                }
+            } finally {
+                managerLock.unlock();
+            }
+            frame.frameLock.lock();
+            frame.frameLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the page in a frame unless the frame is pinned. The manager lock must be
+     * held. The frame's latch is only tried, not waited for: a frame stays latched while
+     * another thread has it pinned, and that thread may go on to take the manager lock.
+     * @return false if another thread holds the frame's latch, and nothing was done
+     */
+    private boolean tryEvict(Frame frame) {
+        if (!frame.frameLock.tryLock()) {
+            return false;
+        }
         try {
             if (frame.isValid() && !frame.isPinned()) {
-                this.pageToFrame.remove(frame.pageNum, frame.index);
+                int i = frame.index;
+                this.pageToFrame.remove(frame.pageNum, i);
                 evictionPolicy.cleanup(frame);
 
                 frames[i] = new Frame(frame.contents, this.firstFreeIndex, false);
@@ -524,6 +1269,7 @@ public class BufferManagerImpl implements BufferManager {
 
                 frame.invalidate();
             }
+            return true;
         } finally {
             frame.frameLock.unlock();
         }
@@ -531,6 +1277,16 @@ public class BufferManagerImpl implements BufferManager {
 
     @Override
     public void evictAll() {
+        // write dirty pages back in one batch first, rather than one at a time as they're evicted
+        List<Frame> dirtyFrames = new ArrayList<>();
+        for (Frame frame : this.frames) {
+            if (frame.isValid() && frame.dirty) {
+                dirtyFrames.add(frame);
+            }
+        }
+        dirtyFrames.sort(Comparator.comparingLong(Frame::getPageNum));
+        this.writeBack(dirtyFrames, dirtyFrames.size());
+
         for (int i = 0; i < frames.length; ++i) {
             evict(i);
         }
@@ -552,11 +1308,42 @@ public class BufferManagerImpl implements BufferManager {
 
     @Override
     public long getNumIOs() {
-        return numIOs;
+        return numIOs.get();
     }
 
     private void incrementIOs() {
-        ++numIOs;
+        numIOs.incrementAndGet();
+    }
+
+    private void countFetch(ConcurrentMap<Integer, AtomicLong> counts, long pageNum) {
+        int partNum = DiskSpaceManager.getPartNum(pageNum);
+        counts.computeIfAbsent(partNum, k -> new AtomicLong(0)).incrementAndGet();
+    }
+
+    @Override
+    public BufferManagerStats getStats() {
+        BufferManagerStats stats = new BufferManagerStats();
+        this.hitsByPartition.forEach((partNum, count) -> stats.hitsByPartition.put(partNum, count.get()));
+        this.missesByPartition.forEach((partNum, count) -> stats.missesByPartition.put(partNum, count.get()));
+        stats.cleanEvictions = this.cleanEvictions.get();
+        stats.dirtyEvictions = this.dirtyEvictions.get();
+        stats.pinWaits = this.pinWaits.get();
+        stats.pinWaitNanos = this.pinWaitNanos.get();
+        stats.numFrames = this.frames.length;
+        // frames are read without their latches, so these counts may be slightly stale
+        for (Frame frame : this.frames) {
+            if (frame.isValid() && frame.isPinned()) {
+                ++stats.pinnedFrames;
+            }
+            if (frame.isValid() && frame.dirty) {
+                ++stats.dirtyFrames;
+            }
+        }
+        stats.numIOs = this.numIOs.get();
+        stats.numCleanedPages = this.numCleanedPages.get();
+        stats.readLatency = this.readLatency.copy();
+        stats.writeLatency = this.writeLatency.copy();
+        return stats;
     }
 
     /**
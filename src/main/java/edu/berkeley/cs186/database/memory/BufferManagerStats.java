@@ -0,0 +1,193 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Snapshot of a buffer manager's statistics, returned by BufferManager#getStats.
+ * Counters are cumulative since the buffer manager was started; frame counts are
+ * as of when the snapshot was taken.
+ *
+ * A hit is a fetch of a page that was already resident, and a miss is a fetch that
+ * had to read the page in. Pages loaded by read-ahead are neither (a later fetch of
+ * one is a hit), but their reads are included in the read latencies. Evictions only
+ * count frames picked by the eviction policy to make room for another page, and not
+ * explicit calls to evict.
+ */
+public class BufferManagerStats {
+    SortedMap<Integer, Long> hitsByPartition = new TreeMap<>();
+    SortedMap<Integer, Long> missesByPartition = new TreeMap<>();
+    long cleanEvictions;
+    long dirtyEvictions;
+    long pinWaits;
+    long pinWaitNanos;
+    int numFrames;
+    int pinnedFrames;
+    int dirtyFrames;
+    long numIOs;
+    long numCleanedPages;
+    LatencyHistogram readLatency = new LatencyHistogram();
+    LatencyHistogram writeLatency = new LatencyHistogram();
+
+    BufferManagerStats() {}
+
+    /**
+     * Adds another buffer manager's statistics to these, e.g. to total the statistics
+     * of several buffer pools.
+     * @param other statistics to add
+     */
+    void add(BufferManagerStats other) {
+        other.hitsByPartition.forEach((partNum, count) -> this.hitsByPartition.merge(partNum, count, Long::sum));
+        other.missesByPartition.forEach((partNum, count) -> this.missesByPartition.merge(partNum, count, Long::sum));
+        this.cleanEvictions += other.cleanEvictions;
+        this.dirtyEvictions += other.dirtyEvictions;
+        this.pinWaits += other.pinWaits;
+        this.pinWaitNanos += other.pinWaitNanos;
+        this.numFrames += other.numFrames;
+        this.pinnedFrames += other.pinnedFrames;
+        this.dirtyFrames += other.dirtyFrames;
+        this.numIOs += other.numIOs;
+        this.numCleanedPages += other.numCleanedPages;
+        this.readLatency.add(other.readLatency);
+        this.writeLatency.add(other.writeLatency);
+    }
+
+    /**
+     * @return partitions with at least one hit or miss, in order
+     */
+    public SortedSet<Integer> getPartitions() {
+        SortedSet<Integer> partitions = new TreeSet<>(this.hitsByPartition.keySet());
+        partitions.addAll(this.missesByPartition.keySet());
+        return Collections.unmodifiableSortedSet(partitions);
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of hits on pages of the partition
+     */
+    public long getHits(int partNum) {
+        return this.hitsByPartition.getOrDefault(partNum, 0L);
+    }
+
+    /**
+     * @param partNum partition number
+     * @return number of misses on pages of the partition
+     */
+    public long getMisses(int partNum) {
+        return this.missesByPartition.getOrDefault(partNum, 0L);
+    }
+
+    /**
+     * @return number of hits across all partitions
+     */
+    public long getHits() {
+        return this.hitsByPartition.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return number of misses across all partitions
+     */
+    public long getMisses() {
+        return this.missesByPartition.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return fraction of fetches that were hits, or 0 if nothing was fetched
+     */
+    public double getHitRatio() {
+        long hits = this.getHits();
+        long total = hits + this.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return number of evicted frames that were clean
+     */
+    public long getCleanEvictions() {
+        return this.cleanEvictions;
+    }
+
+    /**
+     * @return number of evicted frames that were dirty, and so had to be written back
+     * before they could be reused
+     */
+    public long getDirtyEvictions() {
+        return this.dirtyEvictions;
+    }
+
+    /**
+     * @return number of evicted frames
+     */
+    public long getEvictions() {
+        return this.cleanEvictions + this.dirtyEvictions;
+    }
+
+    /**
+     * @return number of times a thread pinning a frame had to wait for another thread
+     * to unpin it first
+     */
+    public long getPinWaits() {
+        return this.pinWaits;
+    }
+
+    /**
+     * @return total time spent waiting to pin frames, in nanoseconds
+     */
+    public long getPinWaitNanos() {
+        return this.pinWaitNanos;
+    }
+
+    /**
+     * @return number of frames in the buffer
+     */
+    public int getNumFrames() {
+        return this.numFrames;
+    }
+
+    /**
+     * @return number of frames that were pinned
+     */
+    public int getPinnedFrames() {
+        return this.pinnedFrames;
+    }
+
+    /**
+     * @return number of frames that held a dirty page
+     */
+    public int getDirtyFrames() {
+        return this.dirtyFrames;
+    }
+
+    /**
+     * @return number of I/Os, as counted by BufferManager#getNumIOs
+     */
+    public long getNumIOs() {
+        return this.numIOs;
+    }
+
+    /**
+     * @return number of frames written back by the page cleaner
+     */
+    public long getNumCleanedPages() {
+        return this.numCleanedPages;
+    }
+
+    /**
+     * @return latencies of reads from the disk space manager; a batch of pages read
+     * together (by read-ahead) counts as one read
+     */
+    public LatencyHistogram getReadLatency() {
+        return this.readLatency;
+    }
+
+    /**
+     * @return latencies of writes to the disk space manager; a batch of pages written
+     * together (by the page cleaner or evictAll) counts as one write
+     */
+    public LatencyHistogram getWriteLatency() {
+        return this.writeLatency;
+    }
+}
@@ -3,6 +3,10 @@ package edu.berkeley.cs186.database.memory;
 /**
  * Implementation of clock eviction policy, which works by adding a reference
  * bit to each frame, and running the algorithm.
+ *
+ * hit only sets the frame's reference bit, and so does not synchronize with evict:
+ * a hit racing with the arm passing over the frame may be lost, which only gives the
+ * frame one less trip around the clock.
  */
 public class ClockEvictionPolicy implements EvictionPolicy {
     private int arm;
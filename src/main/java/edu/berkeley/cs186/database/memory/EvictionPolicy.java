@@ -2,6 +2,11 @@ package edu.berkeley.cs186.database.memory;
 
 /**
  * Interface for eviction policies for the buffer manager.
+ *
+ * The buffer manager calls init, evict and cleanup while holding its manager lock,
+ * but calls hit without it (from any thread reading or writing a frame), so hit may
+ * run concurrently with any of the other methods, and with itself for different
+ * frames. Implementations must be thread-safe.
  */
 public interface EvictionPolicy {
     /**
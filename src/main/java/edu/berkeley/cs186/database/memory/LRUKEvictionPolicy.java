@@ -0,0 +1,133 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implementation of the LRU-K eviction policy, which evicts the page whose K-th most
+ * recent reference is furthest in the past. Pages referenced fewer than K times are
+ * evicted first (least recently used first), so pages touched once by a large scan
+ * do not push out pages that are referenced repeatedly.
+ *
+ * References are counted on a logical clock that advances whenever a different page
+ * is referenced; repeated hits to a page with no other page referenced in between are
+ * correlated (e.g. reading several records off a page) and count as one reference.
+ * Reference histories of evicted pages are retained (for up to as many pages as there
+ * are frames), so a page that is reloaded soon after eviction keeps its history.
+ */
+public class LRUKEvictionPolicy implements EvictionPolicy {
+    private final int k;
+
+    // Logical time, advanced on each uncorrelated reference.
+    private long clock;
+    // Page number of the most recently referenced page.
+    private long lastPageNum;
+
+    // Reference histories of recently evicted pages, in order of eviction.
+    private final Map<Long, long[]> retained;
+    // Number of histories to retain; set to the number of frames on the first eviction.
+    private int maxRetained;
+
+    public LRUKEvictionPolicy() {
+        this(2);
+    }
+
+    /**
+     * @param k number of references to track per page
+     */
+    public LRUKEvictionPolicy(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("K must be positive");
+        }
+        this.k = k;
+        this.clock = 0;
+        this.lastPageNum = -1;
+        this.retained = new LinkedHashMap<>();
+        this.maxRetained = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        long[] history = this.retained.remove(frame.getPageNum());
+        frame.tag = history == null ? new long[this.k] : history;
+        this.reference(frame);
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        this.reference(frame);
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        this.maxRetained = frames.length;
+        BufferFrame evicted = null;
+        long[] evictedHistory = null;
+        for (BufferFrame frame : frames) {
+            if (frame.isPinned() || !(frame.tag instanceof long[])) {
+                continue;
+            }
+            long[] history = (long[]) frame.tag;
+            // a 0 (never) K-th reference sorts first, then ties go to the least recently used
+            if (evicted == null || history[this.k - 1] < evictedHistory[this.k - 1] ||
+                    (history[this.k - 1] == evictedHistory[this.k - 1] && history[0] < evictedHistory[0])) {
+                evicted = frame;
+                evictedHistory = history;
+            }
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        return evicted;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        if (frame.tag instanceof long[]) {
+            this.retained.put(frame.getPageNum(), (long[]) frame.tag);
+            Iterator<Long> iter = this.retained.keySet().iterator();
+            while (this.retained.size() > this.maxRetained) {
+                iter.next();
+                iter.remove();
+            }
+        }
+        frame.tag = null;
+    }
+
+    /**
+     * Records a reference to a frame's page, unless it is correlated with the
+     * previous reference.
+     */
+    private void reference(BufferFrame frame) {
+        long pageNum = frame.getPageNum();
+        if (pageNum == this.lastPageNum) {
+            return;
+        }
+        this.lastPageNum = pageNum;
+        ++this.clock;
+        long[] history = (long[]) frame.tag;
+        System.arraycopy(history, 0, history, 1, this.k - 1);
+        history[0] = this.clock;
+    }
+}
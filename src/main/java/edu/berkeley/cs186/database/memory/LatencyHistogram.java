@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of operation latencies, with power-of-two microsecond buckets: bucket 0
+ * counts latencies under 1us, and bucket i > 0 counts latencies of at least 2^(i-1)us
+ * and under 2^i us (the last bucket also counts anything longer). Safe to record into
+ * from several threads at once.
+ */
+public class LatencyHistogram {
+    public static final int NUM_BUCKETS = 32;
+
+    private final AtomicLongArray buckets;
+    private final AtomicLong count;
+    private final AtomicLong totalNanos;
+
+    public LatencyHistogram() {
+        this.buckets = new AtomicLongArray(NUM_BUCKETS);
+        this.count = new AtomicLong(0);
+        this.totalNanos = new AtomicLong(0);
+    }
+
+    /**
+     * Records an operation.
+     * @param nanos how long the operation took, in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(nanos, 0) / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), NUM_BUCKETS - 1);
+        this.buckets.incrementAndGet(bucket);
+        this.count.incrementAndGet();
+        this.totalNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return copy of this histogram that is not affected by later recordings
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            copy.buckets.set(i, this.buckets.get(i));
+        }
+        copy.count.set(this.count.get());
+        copy.totalNanos.set(this.totalNanos.get());
+        return copy;
+    }
+
+    /**
+     * Adds the operations recorded in another histogram to this one.
+     * @param other histogram to add
+     */
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            this.buckets.addAndGet(i, other.buckets.get(i));
+        }
+        this.count.addAndGet(other.count.get());
+        this.totalNanos.addAndGet(other.totalNanos.get());
+    }
+
+    /**
+     * @return number of operations recorded
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @param bucket bucket index, between 0 and NUM_BUCKETS - 1
+     * @return number of operations recorded in the bucket
+     */
+    public long getBucketCount(int bucket) {
+        return this.buckets.get(bucket);
+    }
+
+    /**
+     * @param bucket bucket index, between 0 and NUM_BUCKETS - 1
+     * @return exclusive upper bound of the bucket's latencies, in microseconds
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * @return mean latency in microseconds, or 0 if nothing was recorded
+     */
+    public double getMeanMicros() {
+        long count = this.count.get();
+        return count == 0 ? 0 : this.totalNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * Estimates a percentile of the latencies recorded, as the upper bound of the
+     * bucket it falls in.
+     * @param percentile percentile, between 0 and 100
+     * @return upper bound of the percentile's bucket in microseconds, or 0 if nothing
+     * was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+        long count = this.count.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            seen += this.buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                return getBucketUpperBoundMicros(i);
+            }
+        }
+        return getBucketUpperBoundMicros(NUM_BUCKETS - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50<%dus p99<%dus", this.getCount(),
+                             this.getMeanMicros(), this.getPercentileMicros(50),
+                             this.getPercentileMicros(99));
+    }
+}
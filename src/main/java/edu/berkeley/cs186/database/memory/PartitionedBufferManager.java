@@ -0,0 +1,185 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Buffer manager split into separate buffer pools, so that one kind of traffic cannot
+ * evict another kind's pages: e.g. a large sort filling temporary tables only evicts
+ * other temporary pages, and leaves the pages of regular tables and indices cached.
+ *
+ * Each page is routed to a pool by the class of the partition it is in, as decided by
+ * a classifier supplied when the buffer manager is created. Each pool is a buffer
+ * manager of its own, with its own size and eviction policy; the same buffer manager
+ * may be used for several classes to have them share a pool.
+ */
+public class PartitionedBufferManager implements BufferManager {
+    /**
+     * Classes of partitions, each of which has its own buffer pool.
+     */
+    public enum PartitionClass {
+        // the log
+        LOG,
+        // regular tables, indices and metadata
+        DATA,
+        // temporary tables, used by queries for intermediate results
+        TEMP
+    }
+
+    private final Map<PartitionClass, BufferManager> pools;
+
+    // distinct pools, for operations that go through every pool
+    private final List<BufferManager> distinctPools;
+
+    private final IntFunction<PartitionClass> classifier;
+
+    /**
+     * Creates a new partitioned buffer manager.
+     *
+     * @param logPool buffer pool for log pages
+     * @param dataPool buffer pool for pages of regular tables and indices
+     * @param tempPool buffer pool for pages of temporary tables
+     * @param classifier determines the class of a partition from its partition number
+     */
+    public PartitionedBufferManager(BufferManager logPool, BufferManager dataPool,
+                                    BufferManager tempPool, IntFunction<PartitionClass> classifier) {
+        this.pools = new EnumMap<>(PartitionClass.class);
+        this.pools.put(PartitionClass.LOG, logPool);
+        this.pools.put(PartitionClass.DATA, dataPool);
+        this.pools.put(PartitionClass.TEMP, tempPool);
+        this.distinctPools = new ArrayList<>();
+        for (BufferManager pool : this.pools.values()) {
+            if (this.distinctPools.stream().noneMatch(p -> p == pool)) {
+                this.distinctPools.add(pool);
+            }
+        }
+        this.classifier = classifier;
+    }
+
+    /**
+     * @param partitionClass class of partitions
+     * @return buffer pool used for partitions of the class
+     */
+    public BufferManager getPool(PartitionClass partitionClass) {
+        return this.pools.get(partitionClass);
+    }
+
+    private BufferManager poolForPart(int partNum) {
+        return this.pools.get(this.classifier.apply(partNum));
+    }
+
+    private BufferManager poolForPage(long pageNum) {
+        return this.poolForPart(DiskSpaceManager.getPartNum(pageNum));
+    }
+
+    @Override
+    public void close() {
+        for (BufferManager pool : this.distinctPools) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public Page fetchPage(LockContext parentContext, long pageNum, boolean logPage) {
+        return this.poolForPage(pageNum).fetchPage(parentContext, pageNum, logPage);
+    }
+
+    @Override
+    public Page fetchNewPage(LockContext parentContext, int partNum, boolean logPage) {
+        return this.poolForPart(partNum).fetchNewPage(parentContext, partNum, logPage);
+    }
+
+    @Override
+    public void freePage(Page page) {
+        this.poolForPage(page.getPageNum()).freePage(page);
+    }
+
+    @Override
+    public void freePart(int partNum) {
+        this.poolForPart(partNum).freePart(partNum);
+    }
+
+    @Override
+    public BufferFrame fetchPageFrame(long pageNum, boolean logPage) {
+        return this.poolForPage(pageNum).fetchPageFrame(pageNum, logPage);
+    }
+
+    @Override
+    public BufferFrame fetchNewPageFrame(int partNum, boolean logPage) {
+        return this.poolForPart(partNum).fetchNewPageFrame(partNum, logPage);
+    }
+
+    /**
+     * Routes the read-ahead to the pool of the first page declared; a scan's pages are
+     * all in one partition.
+     */
+    @Override
+    public ReadAhead readAhead(Iterator<Long> pageNums, boolean logPage) {
+        if (!pageNums.hasNext()) {
+            return ReadAhead.NONE;
+        }
+        long firstPageNum = pageNums.next();
+        Iterator<Long> allPageNums = new Iterator<Long>() {
+            private boolean returnedFirst = false;
+
+            @Override
+            public boolean hasNext() {
+                return !this.returnedFirst || pageNums.hasNext();
+            }
+
+            @Override
+            public Long next() {
+                if (!this.returnedFirst) {
+                    this.returnedFirst = true;
+                    return firstPageNum;
+                }
+                return pageNums.next();
+            }
+        };
+        return this.poolForPage(firstPageNum).readAhead(allPageNums, logPage);
+    }
+
+    @Override
+    public void evict(long pageNum) {
+        this.poolForPage(pageNum).evict(pageNum);
+    }
+
+    @Override
+    public void evictAll() {
+        for (BufferManager pool : this.distinctPools) {
+            pool.evictAll();
+        }
+    }
+
+    @Override
+    public void iterPageNums(BiConsumer<Long, Boolean> process) {
+        for (BufferManager pool : this.distinctPools) {
+            pool.iterPageNums(process);
+        }
+    }
+
+    @Override
+    public long getNumIOs() {
+        long numIOs = 0;
+        for (BufferManager pool : this.distinctPools) {
+            numIOs += pool.getNumIOs();
+        }
+        return numIOs;
+    }
+
+    /**
+     * @return statistics of all the pools combined; see getPool for a single pool's
+     */
+    @Override
+    public BufferManagerStats getStats() {
+        BufferManagerStats stats = new BufferManagerStats();
+        for (BufferManager pool : this.distinctPools) {
+            stats.add(pool.getStats());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,30 @@
+package edu.berkeley.cs186.database.memory;
+
+/**
+ * Handle on the read-ahead for a sequential scan, returned by BufferManager#readAhead.
+ * The scan calls advance() each time it moves on to the next of the pages it declared,
+ * and close() if it stops before reaching the end of them.
+ */
+public interface ReadAhead extends AutoCloseable {
+    /**
+     * Read-ahead that does nothing, used when read-ahead is disabled.
+     */
+    ReadAhead NONE = new ReadAhead() {
+        @Override
+        public void advance() {}
+
+        @Override
+        public void close() {}
+    };
+
+    /**
+     * Called by the scan before it fetches the next of its declared pages.
+     */
+    void advance();
+
+    /**
+     * Cancels any reads that have not been started yet.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,149 @@
+package edu.berkeley.cs186.database.memory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Implementation of the (full version of the) 2Q eviction policy, which is
+ * resistant to large sequential scans flushing out frequently used pages.
+ *
+ * Newly loaded pages go into a FIFO queue, A1in, where further hits do not affect
+ * their position. When a page is evicted from A1in its page number is remembered in
+ * a ghost queue, A1out. Only pages that are loaded again while still remembered in
+ * A1out are considered hot, and are placed in an LRU queue, Am. Pages are evicted
+ * from A1in while it is larger than its target size, and from Am otherwise, so a
+ * scan of pages that are each touched once only cycles through A1in.
+ *
+ * A victim returned by evict is only remembered in A1out once it is cleaned up, since
+ * the buffer manager may still decide not to evict it (e.g. if it was pinned in the
+ * meantime), in which case it stays in A1in.
+ */
+public class TwoQueueEvictionPolicy implements EvictionPolicy {
+    private static final Object A1IN = "A1in";
+    private static final Object AM = "Am";
+
+    // Target size of A1in, as a fraction of the number of frames.
+    private final double inFraction;
+    // Maximum size of A1out, as a fraction of the number of frames.
+    private final double outFraction;
+
+    // Frames referenced once since loaded, in order of loading.
+    private final Set<BufferFrame> a1in;
+    // Page numbers of pages recently evicted from A1in, in order of eviction.
+    private final Set<Long> a1out;
+    // Hot frames, in order of least to most recently used.
+    private final Set<BufferFrame> am;
+    // Frame last returned by evict, which goes to A1out if it is cleaned up.
+    private BufferFrame victim;
+    // Maximum size of A1out; set on the first eviction.
+    private int maxOut;
+
+    public TwoQueueEvictionPolicy() {
+        this(0.25, 0.5);
+    }
+
+    /**
+     * @param inFraction target size of the A1in queue, as a fraction of the number of frames
+     * @param outFraction number of page numbers remembered in A1out, as a fraction of the
+     *                    number of frames
+     */
+    public TwoQueueEvictionPolicy(double inFraction, double outFraction) {
+        this.inFraction = inFraction;
+        this.outFraction = outFraction;
+        this.a1in = new LinkedHashSet<>();
+        this.a1out = new LinkedHashSet<>();
+        this.am = new LinkedHashSet<>();
+    }
+
+    /**
+     * Called to initiaize a new buffer frame.
+     * @param frame new frame to be initialized
+     */
+    @Override
+    public synchronized void init(BufferFrame frame) {
+        // a victim that was not cleaned up was not evicted after all
+        this.victim = null;
+        if (this.a1out.remove(frame.getPageNum())) {
+            this.am.add(frame);
+            frame.tag = AM;
+        } else {
+            this.a1in.add(frame);
+            frame.tag = A1IN;
+        }
+    }
+
+    /**
+     * Called when a frame is hit.
+     * @param frame Frame object that is being read from/written to
+     */
+    @Override
+    public synchronized void hit(BufferFrame frame) {
+        if (frame.tag == AM) {
+            this.am.remove(frame);
+            this.am.add(frame);
+        }
+    }
+
+    /**
+     * Called when a frame needs to be evicted.
+     * @param frames Array of all frames (same length every call)
+     * @return index of frame to be evicted
+     * @throws IllegalStateException if everything is pinned
+     */
+    @Override
+    public synchronized BufferFrame evict(BufferFrame[] frames) {
+        BufferFrame evicted = null;
+        if (this.a1in.size() > Math.max(1, (int) (frames.length * this.inFraction))) {
+            evicted = firstUnpinned(this.a1in);
+        }
+        if (evicted == null) {
+            evicted = firstUnpinned(this.am);
+        }
+        if (evicted == null) {
+            evicted = firstUnpinned(this.a1in);
+        }
+        if (evicted == null) {
+            throw new IllegalStateException("cannot evict anything - everything pinned");
+        }
+        this.victim = evicted;
+        this.maxOut = Math.max(1, (int) (frames.length * this.outFraction));
+        return evicted;
+    }
+
+    /**
+     * Called when a frame is removed, either because it
+     * was returned from a call to evict, or because of other constraints
+     * (e.g. if the page is deleted on disk).
+     * @param frame frame being removed
+     */
+    @Override
+    public synchronized void cleanup(BufferFrame frame) {
+        if (frame == this.victim) {
+            if (frame.tag == A1IN) {
+                this.a1out.add(frame.getPageNum());
+                Iterator<Long> iter = this.a1out.iterator();
+                while (this.a1out.size() > this.maxOut) {
+                    iter.next();
+                    iter.remove();
+                }
+            }
+            this.victim = null;
+        }
+        if (frame.tag == A1IN) {
+            this.a1in.remove(frame);
+        } else if (frame.tag == AM) {
+            this.am.remove(frame);
+        }
+        frame.tag = null;
+    }
+
+    private static BufferFrame firstUnpinned(Set<BufferFrame> queue) {
+        for (BufferFrame frame : queue) {
+            if (!frame.isPinned()) {
+                return frame;
+            }
+        }
+        return null;
+    }
+}
@@ -66,6 +66,10 @@ class BNLJOperator extends JoinOperator {
 
             this.leftIterator = this.getLeftPageIterator();
             fetchNextLeftBlock();
+            // the right records are not needed without a left record
+            if (this.leftRecord == null) {
+                return;
+            }
 
             this.rightIterator = this.getRightPageIterator();
             this.rightIterator.markNext();
@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * An implementation of Iterator that joins build records with probe records, one joined
+ * record at a time. The build records are read into an in-memory hash table of at most
+ * maxBuildRecords records, which is probed with all of the probe records; if there are
+ * more build records than that, the next block of them is read into a new hash table,
+ * which is probed with all of the probe records again, and so on.
+ *
+ * This is the build and probe stage of the hash joins when the build records fit in
+ * memory, and a block nested loop join of them otherwise (e.g. when all of the records
+ * of a partition have the same join value, and partitioning them again does not help).
+ */
+class BlockHashJoinIterator implements Iterator<Record> {
+    private Iterator<Record> buildRecords;
+    private int buildColumnIndex;
+    // supplies a new iterator over all of the probe records for every block
+    private Supplier<Iterator<Record>> probeRecords;
+    private int probeColumnIndex;
+    // true if the probe records come from the left relation
+    private boolean probeFirst;
+    private int maxBuildRecords;
+
+    private Map<DataBox, List<Record>> hashTable = Collections.emptyMap();
+    private Iterator<Record> probeIterator = Collections.emptyIterator();
+    private Record probeRecord;
+    private Iterator<Record> matchIterator = Collections.emptyIterator();
+
+    BlockHashJoinIterator(Iterator<Record> buildRecords, int buildColumnIndex,
+                          Supplier<Iterator<Record>> probeRecords, int probeColumnIndex,
+                          boolean probeFirst, int maxBuildRecords) {
+        this.buildRecords = buildRecords;
+        this.buildColumnIndex = buildColumnIndex;
+        this.probeRecords = probeRecords;
+        this.probeColumnIndex = probeColumnIndex;
+        this.probeFirst = probeFirst;
+        this.maxBuildRecords = Math.max(1, maxBuildRecords);
+    }
+
+    /**
+     * Reads the next block of build records into a new hash table.
+     *
+     * @return false if there are no more build records
+     */
+    private boolean buildNextBlock() {
+        if (!this.buildRecords.hasNext()) {
+            return false;
+        }
+        this.hashTable = new HashMap<>();
+        for (int i = 0; i < this.maxBuildRecords && this.buildRecords.hasNext(); ++i) {
+            Record buildRecord = this.buildRecords.next();
+            DataBox buildJoinValue = buildRecord.getValues().get(this.buildColumnIndex);
+            this.hashTable.computeIfAbsent(buildJoinValue, k -> new ArrayList<>()).add(buildRecord);
+        }
+        this.probeIterator = this.probeRecords.get();
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!this.matchIterator.hasNext()) {
+            if (this.probeIterator.hasNext()) {
+                this.probeRecord = this.probeIterator.next();
+                DataBox probeJoinValue = this.probeRecord.getValues().get(this.probeColumnIndex);
+                this.matchIterator = this.hashTable.getOrDefault(probeJoinValue,
+                                     Collections.emptyList()).iterator();
+            } else if (!this.buildNextBlock()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Record next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Record buildRecord = this.matchIterator.next();
+        List<DataBox> values;
+        if (this.probeFirst) {
+            values = new ArrayList<>(this.probeRecord.getValues());
+            values.addAll(buildRecord.getValues());
+        } else {
+            values = new ArrayList<>(buildRecord.getValues());
+            values.addAll(this.probeRecord.getValues());
+        }
+        return new Record(values);
+    }
+}
@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * A join operator that runs a GraceHashJoin over its inputs: both inputs are partitioned
+ * into B-1 partitions, recursively, until one side of every partition fits in B-2 pages,
+ * and every partition is then joined with an in-memory hash table. A partition that still
+ * does not fit after MAX_PASSES passes is joined a block of B-2 pages at a time.
+ */
+class GHJOperator extends JoinOperator {
+    // GraceHashJoin stops partitioning after this many passes
+    private static final int MAX_PASSES = 5;
+
+    protected int numBuffers;
+
+    GHJOperator(QueryOperator leftSource, QueryOperator rightSource, String leftColumnName, String rightColumnName,
+                TransactionContext transaction) {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.GHJ);
+
+        this.numBuffers = transaction.getWorkMemSize();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new GHJIterator();
+    }
+
+    @Override
+    public int estimateIOCost() {
+        if (numBuffers < 3) {
+            return Integer.MAX_VALUE;
+        }
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        // partition until the smaller side of each partition fits in B-2 pages, assuming
+        // the join values are spread evenly over the partitions
+        int numPasses = 1;
+        double partitionPages = (double) Math.min(numLeftPages, numRightPages) / (numBuffers - 1);
+        // records with the same join value are never split up, so no number of passes
+        // makes a partition smaller than the pages of a single join value
+        double minPartitionPages = Math.min(pagesPerValue(numLeftPages, getLeftSource(), getLeftColumnIndex()),
+                                            pagesPerValue(numRightPages, getRightSource(), getRightColumnIndex()));
+        if (Math.ceil(minPartitionPages) > numBuffers - 2) {
+            return Integer.MAX_VALUE;
+        }
+        while (Math.ceil(partitionPages) > numBuffers - 2) {
+            ++numPasses;
+            partitionPages /= numBuffers - 1;
+        }
+        if (numPasses > MAX_PASSES) {
+            return Integer.MAX_VALUE;
+        }
+        // every pass reads and writes both inputs, and the partitions are read once more
+        // to build and probe
+        return (2 * numPasses + 1) * (numLeftPages + numRightPages);
+    }
+
+    // the number of pages of the records with a single join value, or 0 if the number of
+    // distinct join values is unknown
+    private static double pagesPerValue(int numPages, QueryOperator source, int columnIndex) {
+        int numDistinct = getNumDistinct(source, columnIndex);
+        return numDistinct > 0 ? (double) numPages / numDistinct : 0;
+    }
+
+    private class GHJIterator extends JoinIterator {
+        private Iterator<Record> joinedIterator;
+
+        private GHJIterator() {
+            super();
+
+            GraceHashJoin join = new GraceHashJoin(this.getLeftRecordIterator(),
+                    GHJOperator.this.getRecordIterator(this.getRightTableName()), GHJOperator.this.getLeftColumnIndex(),
+                    GHJOperator.this.getRightColumnIndex(), GHJOperator.this.getTransaction(),
+                    GHJOperator.this.getLeftSource().getOutputSchema(),
+                    GHJOperator.this.getRightSource().getOutputSchema(), true);
+            this.joinedIterator = join.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.joinedIterator.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            return this.joinedIterator.next();
+        }
+    }
+}
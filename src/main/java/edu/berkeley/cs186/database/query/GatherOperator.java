@@ -0,0 +1,258 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Operator that runs a sequential scan of a table, and the selections on top of it, in
+ * parallel. The data pages of the table are split into morsels of MORSEL_PAGES pages,
+ * which are scanned and filtered on the database's executor by up to getQueryParallelism()
+ * threads at a time; the records of each morsel are then passed on in the order of the
+ * morsels, so that the operator outputs the same records, in the same order, as its
+ * source does.
+ *
+ * The S lock on the table is acquired by the thread running the query before any morsel
+ * is scanned, so the worker threads read the pages of the table without locking them
+ * (and without any transaction of their own). The workers therefore never outlive the
+ * iteration: once all records are returned, a morsel fails, or the transaction closes
+ * (e.g. because a limit above this operator stopped reading its records), the morsels
+ * that have not started are cancelled, and those being scanned stop at the next page.
+ */
+class GatherOperator extends QueryOperator {
+    // number of data pages scanned by a single task
+    static final int MORSEL_PAGES = 8;
+
+    private TransactionContext transaction;
+    private SequentialScanOperator scan;
+    // selections between the scan and this operator, bottom-most first
+    private List<SelectOperator> selects;
+    private int numWorkers;
+
+    /**
+     * @param transaction current running transaction
+     * @param source a sequential scan, or a chain of selections over a sequential scan
+     * @param numWorkers maximum number of morsels to scan at a time
+     */
+    GatherOperator(TransactionContext transaction, QueryOperator source, int numWorkers) {
+        super(OperatorType.GATHER, source);
+        this.transaction = transaction;
+        this.numWorkers = numWorkers;
+        this.selects = new ArrayList<>();
+        while (source.isSelect()) {
+            this.selects.add((SelectOperator) source);
+            source = source.getSource();
+        }
+        if (!source.isSequentialScan() || source.getType() != OperatorType.SEQSCAN) {
+            throw new QueryPlanException("can only gather a sequential scan and selections on it");
+        }
+        Collections.reverse(this.selects);
+        this.scan = (SequentialScanOperator) source;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public boolean isSortedOn(int columnIndex) {
+        return this.getSource().isSortedOn(columnIndex);
+    }
+
+    @Override
+    public Schema computeSchema() {
+        return this.getSource().getOutputSchema();
+    }
+
+    @Override
+    public String str() {
+        return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
+               "\nworkers: " + this.numWorkers;
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return this.getSource().getStats();
+    }
+
+    @Override
+    public int estimateIOCost() {
+        return this.getSource().getIOCost();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new GatherIterator();
+    }
+
+    /**
+     * Scans and filters the data pages of a morsel, on a worker thread, until iterator
+     * is closed.
+     */
+    private List<Record> scanMorsel(GatherIterator iterator, List<Long> pageNums) {
+        TransactionContext.setTransaction(null);
+        try {
+            List<Record> records = new ArrayList<>();
+            for (long pageNum : pageNums) {
+                if (iterator.closed) {
+                    break;
+                }
+                for (Record record : iterator.table.getPageRecords(pageNum, this.scan.getColumns())) {
+                    if (this.evaluate(record)) {
+                        records.add(record);
+                    }
+                }
+            }
+            return records;
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    private boolean evaluate(Record record) {
+        for (SelectOperator select : this.selects) {
+            if (!select.evaluate(record)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An implementation of Iterator that submits the morsels of the table to the
+     * executor, keeping at most 2 * numWorkers of them in flight, and returns their
+     * records in order.
+     */
+    private class GatherIterator implements Iterator<Record> {
+        private Table table;
+        private List<Long> pageNums;
+        // index into pageNums of the first page of the next morsel to submit
+        private int nextPage = 0;
+        // also read by close(), which the transaction may call on another thread
+        private Deque<Future<List<Record>>> pending = new ConcurrentLinkedDeque<>();
+        private Iterator<Record> morselIterator = Collections.emptyIterator();
+        // set once no more morsels may be scanned
+        private volatile boolean closed = false;
+        // number of morsels being scanned, guarded by this
+        private int numRunning = 0;
+        private Runnable closeHandler = this::close;
+
+        private GatherIterator() {
+            String tableName = GatherOperator.this.scan.getTableName();
+            this.table = GatherOperator.this.transaction.getTable(tableName);
+            // acquires the S lock on the table on this thread, for every worker
+            this.pageNums = this.table.getDataPageNums();
+            GatherOperator.this.transaction.addCloseHandler(this.closeHandler);
+        }
+
+        private void submit() {
+            while (this.nextPage < this.pageNums.size() &&
+                    this.pending.size() < 2 * GatherOperator.this.numWorkers) {
+                int end = Math.min(this.nextPage + MORSEL_PAGES, this.pageNums.size());
+                List<Long> morsel = this.pageNums.subList(this.nextPage, end);
+                this.pending.add(GatherOperator.this.transaction.getExecutor().submit(() -> this.run(morsel)));
+                this.nextPage = end;
+            }
+        }
+
+        private List<Record> run(List<Long> morsel) {
+            synchronized (this) {
+                if (this.closed) {
+                    return Collections.emptyList();
+                }
+                ++this.numRunning;
+            }
+            try {
+                return GatherOperator.this.scanMorsel(this, morsel);
+            } finally {
+                synchronized (this) {
+                    --this.numRunning;
+                    this.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Cancels the morsels that have not started, and waits for the workers scanning
+         * the others to stop. Called when the iteration ends or fails, and when the
+         * transaction closes (possibly on another thread), before its locks are released.
+         */
+        private void close() {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+            }
+            for (Future<List<Record>> future : this.pending) {
+                future.cancel(false);
+            }
+            synchronized (this) {
+                boolean interrupted = false;
+                while (this.numRunning > 0) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            GatherOperator.this.transaction.removeCloseHandler(this.closeHandler);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.closed) {
+                return false;
+            }
+            while (!this.morselIterator.hasNext()) {
+                this.submit();
+                if (this.pending.isEmpty()) {
+                    this.close();
+                    return false;
+                }
+                try {
+                    this.morselIterator = this.pending.removeFirst().get().iterator();
+                } catch (InterruptedException e) {
+                    this.close();
+                    Thread.currentThread().interrupt();
+                    throw new DatabaseException(e);
+                } catch (ExecutionException e) {
+                    this.close();
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new DatabaseException(e);
+                } catch (CancellationException e) {
+                    // the transaction closed while this iterator was in use
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.morselIterator.next();
+        }
+    }
+}
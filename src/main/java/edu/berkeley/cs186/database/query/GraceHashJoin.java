@@ -1,10 +1,14 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.function.Function;
 
 import edu.berkeley.cs186.database.TransactionContext;
@@ -12,9 +16,11 @@ import edu.berkeley.cs186.database.common.HashFunc;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.HashPartition;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 
 public class GraceHashJoin {
     private Iterator<Record> leftRelationIterator;
@@ -203,6 +209,80 @@ public class GraceHashJoin {
         return run(this.leftRelationIterator, this.rightRelationIterator, 1);
     }
 
+    /**
+     * Runs the grace hash join algorithm like begin(), but returns the joined records one
+     * at a time instead of collecting them into a list: each partition is built and
+     * probed (or partitioned again) only once the joined records of the partitions before
+     * it have been consumed.
+     *
+     * A partition that still does not fit in B-2 pages of memory after the max number of
+     * passes (e.g. because all of its records have the same join value) does not make the
+     * join fail; its left records are joined a block of B-2 pages at a time instead,
+     * probing every block with all of its right records (as a block nested loop join would).
+     *
+     * @return An iterator over the joined records
+     */
+    public Iterator<Record> iterator() {
+        return new GraceHashJoinIterator();
+    }
+
+    private class GraceHashJoinIterator implements Iterator<Record> {
+        // partitions left to join, with the pass that created them
+        private Deque<Pair<HashPartition, Integer>> partitions = new ArrayDeque<>();
+        private Iterator<Record> joinedIterator = Collections.emptyIterator();
+
+        private GraceHashJoinIterator() {
+            this.push(leftRelationIterator, rightRelationIterator, 1);
+        }
+
+        // partitions the records, adding the partitions to the front of the queue
+        private void push(Iterator<Record> leftRecords, Iterator<Record> rightRecords, int pass) {
+            HashPartition[] newPartitions = createPartitions();
+            partition(newPartitions, leftRecords, true, pass);
+            partition(newPartitions, rightRecords, false, pass);
+            for (int i = newPartitions.length - 1; i >= 0; --i) {
+                this.partitions.addFirst(new Pair<>(newPartitions[i], pass));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.joinedIterator.hasNext()) {
+                if (this.partitions.isEmpty()) {
+                    return false;
+                }
+                Pair<HashPartition, Integer> next = this.partitions.removeFirst();
+                HashPartition partition = next.getFirst();
+                int pass = next.getSecond();
+                int maxLeftRecords = (numBuffers - 2) *
+                                     Table.computeNumRecordsPerPage(BufferManager.EFFECTIVE_PAGE_SIZE, leftSchema);
+                int maxRightRecords = (numBuffers - 2) *
+                                      Table.computeNumRecordsPerPage(BufferManager.EFFECTIVE_PAGE_SIZE, rightSchema);
+                if (partition.getNumRightPages() <= numBuffers - 2 &&
+                        partition.getNumLeftPages() > numBuffers - 2) {
+                    this.joinedIterator = new BlockHashJoinIterator(partition.getRightIterator(),
+                            getRightColumnIndex(), partition::getLeftIterator, getLeftColumnIndex(), true,
+                            maxRightRecords);
+                } else if (partition.getNumLeftPages() <= numBuffers - 2 || pass == 5) {
+                    this.joinedIterator = new BlockHashJoinIterator(partition.getLeftIterator(),
+                            getLeftColumnIndex(), partition::getRightIterator, getRightColumnIndex(), false,
+                            maxLeftRecords);
+                } else {
+                    this.push(partition.getLeftIterator(), partition.getRightIterator(), pass + 1);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.joinedIterator.next();
+        }
+    }
+
     /**
      * Create an appropriate number of HashPartitions relative to the
      * number of available buffers we have and return an array
@@ -1,19 +1,31 @@
 package edu.berkeley.cs186.database.query;
 
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Function;
 
 import edu.berkeley.cs186.database.TransactionContext;
-import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.HashFunc;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 class GroupByOperator extends QueryOperator {
+    // estimated number of bytes of memory used by a group, besides its values
+    private static final int GROUP_OVERHEAD = 64;
+
     private int groupByColumnIndex;
     private String groupByColumn;
     private TransactionContext transaction;
@@ -44,9 +56,33 @@ class GroupByOperator extends QueryOperator {
         return true;
     }
 
+    /**
+     * Yields the first record of each group.
+     */
     @Override
     public Iterator<Record> iterator() {
-        return new GroupByIterator();
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < this.getOutputSchema().getFieldNames().size(); ++i) {
+            columns.add(i);
+        }
+        return this.aggregate(columns, false, -1, -1);
+    }
+
+    /**
+     * Computes aggregates of each group with a hash table of groups, updating the
+     * aggregates of a group as each of its records is read. Yields a record per group,
+     * with the values of `columns` of the first record of the group, followed by the
+     * number of records of the group (if count is true), the sum of the column at
+     * sumColumnIndex, and the average of the column at averageColumnIndex (if they are
+     * not -1).
+     *
+     * The hash table holds as many groups as fit in the transaction's work memory. Once
+     * it is full, the records of groups that are not in it are partitioned by hash into
+     * temporary tables, whose groups are computed after those of the hash table.
+     */
+    Iterator<Record> aggregate(List<Integer> columns, boolean count, int sumColumnIndex,
+                               int averageColumnIndex) {
+        return new HashAggregateIterator(columns, count, sumColumnIndex, averageColumnIndex);
     }
 
     @Override
@@ -76,37 +112,108 @@ class GroupByOperator extends QueryOperator {
     }
 
     /**
-     * An implementation of Iterator that provides an iterator interface for this operator.
-     * Returns a marker record between the records of different groups, e.g.
-     * [group 1 record] [group 1 record] [marker record] [group 2 record] ...
+     * The projected values and running aggregates of a single group.
      */
-    private class GroupByIterator implements Iterator<Record> {
-        private MarkerRecord markerRecord;
-        private Map<String, String> hashGroupTempTables;
-        private int currCount;
-        private Iterator<String> keyIter;
-        private Iterator<Record> rIter;
-
-        private GroupByIterator() {
-            Iterator<Record> sourceIterator = GroupByOperator.this.getSource().iterator();
-            this.markerRecord = MarkerRecord.getMarker();
-            this.hashGroupTempTables = new HashMap<>();
-            this.currCount = 0;
-            this.rIter = null;
-            while (sourceIterator.hasNext()) {
-                Record record = sourceIterator.next();
-                DataBox groupByColumn = record.getValues().get(GroupByOperator.this.groupByColumnIndex);
-                String tableName;
-                if (!this.hashGroupTempTables.containsKey(groupByColumn.toString())) {
-                    tableName = GroupByOperator.this.transaction.createTempTable(
-                                    GroupByOperator.this.getSource().getOutputSchema());
-                    this.hashGroupTempTables.put(groupByColumn.toString(), tableName);
-                } else {
-                    tableName = this.hashGroupTempTables.get(groupByColumn.toString());
+    private class Group {
+        private List<DataBox> values;
+        private int count;
+        private double sum;
+        private double averageSum;
+
+        private Group(List<DataBox> values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * An implementation of Iterator that aggregates the source's records in a hash table
+     * of groups, spilling the records of the groups that do not fit into partitions, and
+     * then yields the groups of the hash table and of each partition in turn.
+     */
+    private class HashAggregateIterator implements Iterator<Record> {
+        private List<Integer> columns;
+        private boolean count;
+        private int sumColumnIndex;
+        private boolean sumIsFloat;
+        private int averageColumnIndex;
+        private boolean averageIsFloat;
+        // maximum number of groups in the hash table
+        private int maxGroups;
+        private int numPartitions;
+        // temporary tables of spilled records, and the pass to aggregate them in
+        private Deque<Pair<String, Integer>> partitions;
+        private Iterator<Group> groupIterator;
+
+        private HashAggregateIterator(List<Integer> columns, boolean count, int sumColumnIndex,
+                                      int averageColumnIndex) {
+            Schema schema = GroupByOperator.this.getOutputSchema();
+            this.columns = columns;
+            this.count = count;
+            this.sumColumnIndex = sumColumnIndex;
+            this.sumIsFloat = sumColumnIndex != -1 &&
+                              schema.getFieldTypes().get(sumColumnIndex).getTypeId() == TypeId.FLOAT;
+            this.averageColumnIndex = averageColumnIndex;
+            this.averageIsFloat = averageColumnIndex != -1 &&
+                                  schema.getFieldTypes().get(averageColumnIndex).getTypeId() == TypeId.FLOAT;
+
+            int workMem = GroupByOperator.this.transaction.getWorkMemSize();
+            long memory = (long) workMem * BufferManager.EFFECTIVE_PAGE_SIZE;
+            this.maxGroups = (int) Math.max(1, memory / (schema.getSizeInBytes() + GROUP_OVERHEAD));
+            this.numPartitions = Math.max(2, workMem - 1);
+            this.partitions = new ArrayDeque<>();
+            this.groupIterator = this.build(GroupByOperator.this.getSource().iterator(), 1);
+        }
+
+        /**
+         * Aggregates records into a new hash table of groups, spilling the records of
+         * groups that do not fit into new partitions, to aggregate in pass + 1.
+         */
+        private Iterator<Group> build(Iterator<Record> records, int pass) {
+            Map<DataBox, Group> groups = new LinkedHashMap<>();
+            Function<DataBox, Integer> hashFunc = HashFunc.getHashFunction(pass);
+            String[] spilled = new String[this.numPartitions];
+            while (records.hasNext()) {
+                Record record = records.next();
+                List<DataBox> values = record.getValues();
+                DataBox key = values.get(GroupByOperator.this.groupByColumnIndex);
+                Group group = groups.get(key);
+                if (group == null) {
+                    if (groups.size() >= this.maxGroups) {
+                        int partition = Math.floorMod(hashFunc.apply(key), this.numPartitions);
+                        if (spilled[partition] == null) {
+                            spilled[partition] = GroupByOperator.this.transaction.createTempTable(
+                                                     GroupByOperator.this.getOutputSchema());
+                        }
+                        GroupByOperator.this.transaction.addRecord(spilled[partition], values);
+                        continue;
+                    }
+                    List<DataBox> groupValues = new ArrayList<>(this.columns.size());
+                    for (int column : this.columns) {
+                        groupValues.add(values.get(column));
+                    }
+                    group = new Group(groupValues);
+                    groups.put(key, group);
                 }
-                GroupByOperator.this.transaction.addRecord(tableName, record.getValues());
+                this.add(group, values);
+            }
+            for (String tableName : spilled) {
+                if (tableName != null) {
+                    this.partitions.add(new Pair<>(tableName, pass + 1));
+                }
+            }
+            return groups.values().iterator();
+        }
+
+        private void add(Group group, List<DataBox> values) {
+            group.count++;
+            if (this.sumColumnIndex != -1) {
+                DataBox d = values.get(this.sumColumnIndex);
+                group.sum += this.sumIsFloat ? d.getFloat() : d.getInt();
+            }
+            if (this.averageColumnIndex != -1) {
+                DataBox d = values.get(this.averageColumnIndex);
+                group.averageSum += this.averageIsFloat ? d.getFloat() : d.getInt();
             }
-            this.keyIter = hashGroupTempTables.keySet().iterator();
         }
 
         /**
@@ -116,7 +223,15 @@ class GroupByOperator extends QueryOperator {
          */
         @Override
         public boolean hasNext() {
-            return this.keyIter.hasNext() || (this.rIter != null && this.rIter.hasNext());
+            while (!this.groupIterator.hasNext()) {
+                if (this.partitions.isEmpty()) {
+                    return false;
+                }
+                Pair<String, Integer> partition = this.partitions.removeFirst();
+                this.groupIterator = this.build(GroupByOperator.this.transaction.getRecordIterator(
+                                                    partition.getFirst()), partition.getSecond());
+            }
+            return true;
         }
 
         /**
@@ -127,24 +242,25 @@ class GroupByOperator extends QueryOperator {
          */
         @Override
         public Record next() {
-            while (this.hasNext()) {
-                if (this.rIter != null && this.rIter.hasNext()) {
-                    return this.rIter.next();
-                } else if (this.keyIter.hasNext()) {
-                    String key = this.keyIter.next();
-                    String tableName = this.hashGroupTempTables.get(key);
-                    Iterator<Record> prevIter = this.rIter;
-                    try {
-                        this.rIter = GroupByOperator.this.transaction.getRecordIterator(tableName);
-                    } catch (DatabaseException de) {
-                        throw new NoSuchElementException();
-                    }
-                    if (prevIter != null && ++this.currCount < this.hashGroupTempTables.size()) {
-                        return markerRecord;
-                    }
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Group group = this.groupIterator.next();
+            List<DataBox> values = new ArrayList<>(group.values);
+            if (this.count) {
+                values.add(new IntDataBox(group.count));
+            }
+            if (this.sumColumnIndex != -1) {
+                if (this.sumIsFloat) {
+                    values.add(new FloatDataBox((float) group.sum));
+                } else {
+                    values.add(new IntDataBox((int) group.sum));
                 }
             }
-            throw new NoSuchElementException();
+            if (this.averageColumnIndex != -1) {
+                values.add(new FloatDataBox((float) (group.averageSum / group.count)));
+            }
+            return new Record(values);
         }
 
         @Override
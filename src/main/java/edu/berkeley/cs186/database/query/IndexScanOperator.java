@@ -51,6 +51,12 @@ class IndexScanOperator extends QueryOperator {
         return true;
     }
 
+    @Override
+    public boolean isSortedOn(int columnIndex) {
+        // records are returned in the order of the index's keys
+        return columnIndex == this.columnIndex;
+    }
+
     @Override
     public String str() {
         return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
@@ -12,6 +12,7 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.Histogram;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 abstract class JoinOperator extends QueryOperator {
@@ -19,7 +20,9 @@ abstract class JoinOperator extends QueryOperator {
         SNLJ,
         PNLJ,
         BNLJ,
-        SORTMERGE
+        SORTMERGE,
+        SHJ,
+        GHJ
     }
 
     JoinType joinType;
@@ -206,6 +209,18 @@ abstract class JoinOperator extends QueryOperator {
         return this.transaction.getRecordIterator(tableName);
     }
 
+    /**
+     * @return the estimated number of distinct values of a column of the output of source,
+     * or 0 if there is no histogram of the column
+     */
+    static int getNumDistinct(QueryOperator source, int columnIndex) {
+        List<Histogram> histograms = source.getStats().getHistograms();
+        if (columnIndex >= histograms.size()) {
+            return 0;
+        }
+        return histograms.get(columnIndex).getNumDistinct();
+    }
+
     // Iterator ////////////////////////////////////////////////////////////////
 
     /**
@@ -220,25 +235,15 @@ abstract class JoinOperator extends QueryOperator {
 
         public JoinIterator() {
             this.transaction = JoinOperator.this.transaction;
+            // other left sources are only materialized once getLeftTableName() is called,
+            // so that joins that read the left records once can stream them from the source;
+            // other right sources once getRightTableName() is called, so that they are not
+            // read if the join stops before it needs them (e.g. if there are no left records)
             if (JoinOperator.this.getLeftSource().isSequentialScan()) {
                 this.leftTableName = ((SequentialScanOperator) JoinOperator.this.getLeftSource()).getTableName();
-            } else {
-                this.leftTableName = this.transaction.createTempTable(
-                                         JoinOperator.this.getLeftSource().getOutputSchema());
-                Iterator<Record> leftIter = JoinOperator.this.getLeftSource().iterator();
-                while (leftIter.hasNext()) {
-                    this.transaction.addRecord(this.leftTableName, leftIter.next().getValues());
-                }
             }
             if (JoinOperator.this.getRightSource().isSequentialScan()) {
                 this.rightTableName = ((SequentialScanOperator) JoinOperator.this.getRightSource()).getTableName();
-            } else {
-                this.rightTableName = this.transaction.createTempTable(
-                                          JoinOperator.this.getRightSource().getOutputSchema());
-                Iterator<Record> rightIter = JoinOperator.this.getRightSource().iterator();
-                while (rightIter.hasNext()) {
-                    this.transaction.addRecord(this.rightTableName, rightIter.next().getValues());
-                }
             }
         }
 
@@ -246,26 +251,56 @@ abstract class JoinOperator extends QueryOperator {
          * @return the name of the table supplying left records to this join iterator
          */
         protected String getLeftTableName() {
+            if (this.leftTableName == null) {
+                this.leftTableName = this.transaction.createTempTable(
+                                         JoinOperator.this.getLeftSource().getOutputSchema());
+                Iterator<Record> leftIter = JoinOperator.this.getLeftSource().iterator();
+                while (leftIter.hasNext()) {
+                    this.transaction.addRecord(this.leftTableName, leftIter.next().getValues());
+                }
+            }
             return this.leftTableName;
         }
 
+        /**
+         * @return an iterator over the left records, which reads them straight from the left
+         * source if they have not been materialized, so that a join that stops early (e.g.
+         * under a limit) does not read the rest of them
+         */
+        protected Iterator<Record> getLeftRecordIterator() {
+            if (this.leftTableName == null) {
+                return JoinOperator.this.getLeftSource().iterator();
+            }
+            return this.transaction.getRecordIterator(this.leftTableName);
+        }
+
         /**
          * @return the name of the table supplying right records to this join iterator
          */
-        protected String getRightTableName() { return this.rightTableName; }
+        protected String getRightTableName() {
+            if (this.rightTableName == null) {
+                this.rightTableName = this.transaction.createTempTable(
+                                          JoinOperator.this.getRightSource().getOutputSchema());
+                Iterator<Record> rightIter = JoinOperator.this.getRightSource().iterator();
+                while (rightIter.hasNext()) {
+                    this.transaction.addRecord(this.rightTableName, rightIter.next().getValues());
+                }
+            }
+            return this.rightTableName;
+        }
 
         /**
          * @return an iterator over the pages of the table supplying left records to this join iterator
          */
         protected BacktrackingIterator<Page> getLeftPageIterator() {
-            return this.transaction.getPageIterator(this.leftTableName);
+            return this.transaction.getPageIterator(this.getLeftTableName());
         }
 
         /**
          * @return an iterator over the pages of the table supplying right records to this join iterator
          */
         protected BacktrackingIterator<Page> getRightPageIterator() {
-            return this.transaction.getPageIterator(this.rightTableName);
+            return this.transaction.getPageIterator(this.getRightTableName());
         }
     }
 }
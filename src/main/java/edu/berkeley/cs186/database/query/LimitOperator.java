@@ -0,0 +1,139 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+class LimitOperator extends QueryOperator {
+    private int limit;
+    private String orderByColumn;
+    private int orderByColumnIndex;
+
+    /**
+     * Creates a new LimitOperator that returns at most `limit` records of source. Without
+     * an order by column, these are the first records of source, and no more records are
+     * pulled from source once they are returned. With one, they are the records with the
+     * smallest values of the column, in increasing order, which are found by keeping the
+     * smallest `limit` records seen so far in a bounded heap rather than sorting source.
+     *
+     * @param source the source operator of this operator
+     * @param limit maximum number of records to return
+     * @param orderByColumn the column to order the records by, or null
+     */
+    LimitOperator(QueryOperator source, int limit, String orderByColumn) {
+        super(OperatorType.LIMIT, source);
+        this.limit = limit;
+        this.orderByColumnIndex = -1;
+        if (orderByColumn != null) {
+            Schema schema = source.getOutputSchema();
+            this.orderByColumn = this.checkSchemaForColumn(schema, orderByColumn);
+            this.orderByColumnIndex = schema.getFieldNames().indexOf(this.orderByColumn);
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public boolean isSortedOn(int columnIndex) {
+        if (this.orderByColumn != null) {
+            return columnIndex == this.orderByColumnIndex;
+        }
+        return this.getSource().isSortedOn(columnIndex);
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        if (this.limit == 0) {
+            return Collections.emptyIterator();
+        }
+        if (this.orderByColumn != null) {
+            return this.topN();
+        }
+        return new LimitIterator();
+    }
+
+    @Override
+    protected Schema computeSchema() {
+        return this.getSource().getOutputSchema();
+    }
+
+    @Override
+    public String str() {
+        String orderBy = this.orderByColumn == null ? "" : "\norder by: " + this.orderByColumn;
+        return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
+               "\nlimit: " + this.limit + orderBy;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    @Override
+    public TableStats estimateStats() {
+        return this.getSource().getStats().copyWithLimit(this.limit);
+    }
+
+    @Override
+    public int estimateIOCost() {
+        return this.getSource().getIOCost();
+    }
+
+    /**
+     * Reads all of source, keeping the `limit` records with the smallest values of the
+     * order by column in a max-heap, and returns an iterator over them in order.
+     */
+    private Iterator<Record> topN() {
+        Comparator<Record> comparator = Comparator.comparing(
+            r -> r.getValues().get(this.orderByColumnIndex));
+        PriorityQueue<Record> heap = new PriorityQueue<>(this.limit, comparator.reversed());
+        for (Record record : this.getSource()) {
+            if (heap.size() < this.limit) {
+                heap.add(record);
+            } else if (comparator.compare(record, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(record);
+            }
+        }
+        List<Record> records = new ArrayList<>(heap);
+        records.sort(comparator);
+        return records.iterator();
+    }
+
+    /**
+     * An implementation of Iterator that returns the first `limit` records of source,
+     * without asking source for any record after them.
+     */
+    private class LimitIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+        private int numReturned;
+
+        private LimitIterator() {
+            this.sourceIterator = LimitOperator.this.getSource().iterator();
+            this.numReturned = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numReturned < LimitOperator.this.limit && this.sourceIterator.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.numReturned++;
+            return this.sourceIterator.next();
+        }
+    }
+}
@@ -4,6 +4,9 @@ import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.table.Record;
 
 class MaterializeOperator extends SequentialScanOperator {
+    // the materialized operator, which the temporary table is in the order of
+    private QueryOperator source;
+
     /**
      * Operator that materializes the source operator into a temporary table immediately,
      * and then acts as a sequential scan operator over the temporary table.
@@ -13,6 +16,7 @@ class MaterializeOperator extends SequentialScanOperator {
     MaterializeOperator(QueryOperator source,
                         TransactionContext transaction) {
         super(OperatorType.MATERIALIZE, transaction, materialize(source, transaction));
+        this.source = source;
     }
 
     private static String materialize(QueryOperator source, TransactionContext transaction) {
@@ -23,6 +27,11 @@ class MaterializeOperator extends SequentialScanOperator {
         return materializedTableName;
     }
 
+    @Override
+    public boolean isSortedOn(int columnIndex) {
+        return this.source.isSortedOn(columnIndex);
+    }
+
     @Override
     public String str() {
         return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")";
@@ -10,8 +10,8 @@ import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
-import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -130,10 +130,45 @@ class ProjectOperator extends QueryOperator {
     }
 
     @Override
-    public Iterator<Record> iterator() { return new ProjectIterator(); }
+    public Iterator<Record> iterator() {
+        // a group by computes the projected columns and aggregates of each group itself
+        if (this.getSource().isGroupBy()) {
+            return ((GroupByOperator) this.getSource()).aggregate(this.indices, this.hasCount,
+                    this.sumColumnIndex, this.averageColumnIndex);
+        }
+        if (this.hasAggregate) {
+            return new AggregateBatchIterator();
+        }
+        // records are only worth projecting in batches if the source reads them in
+        // batches (e.g. a scan of a PAX table); otherwise they are projected one at a time
+        if (this.batchesNatively()) {
+            return RecordBatch.records(this.batchIterator());
+        }
+        return new ProjectIterator();
+    }
+
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        if (!this.batchesNatively()) {
+            return super.batchIterator();
+        }
+        Iterator<RecordBatch> sourceIterator = this.getSource().batchIterator();
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return sourceIterator.hasNext();
+            }
 
-    private void addToCount() {
-        this.countValue++;
+            @Override
+            public RecordBatch next() {
+                return sourceIterator.next().project(ProjectOperator.this.indices);
+            }
+        };
+    }
+
+    @Override
+    public boolean batchesNatively() {
+        return !this.hasAggregate && !this.getSource().isGroupBy() && this.getSource().batchesNatively();
     }
 
     private int getAndResetCount() {
@@ -142,25 +177,12 @@ class ProjectOperator extends QueryOperator {
         return result;
     }
 
-    private void addToSum(Record record) {
-        if (this.sumIsFloat) {
-            this.sumValue += record.getValues().get(this.sumColumnIndex).getFloat();
-        } else {
-            this.sumValue += record.getValues().get(this.sumColumnIndex).getInt();
-        }
-    }
-
     private double getAndResetSum() {
         double result = this.sumValue;
         this.sumValue = 0;
         return result;
     }
 
-    private void addToAverage(Record record) {
-        this.averageCountValue++;
-        this.averageSumValue += record.getValues().get(this.averageColumnIndex).getInt();
-    }
-
     private double getAndResetAverage() {
         if (this.averageCountValue == 0) {
             return 0f;
@@ -172,6 +194,26 @@ class ProjectOperator extends QueryOperator {
         return result;
     }
 
+    /**
+     * @return the sum of the selected values of an int or float column of a batch
+     */
+    private static double sumColumn(RecordBatch batch, int column) {
+        int[] selection = batch.getSelection();
+        double sum = 0;
+        if (batch.getSchema().getFieldTypes().get(column).getTypeId() == TypeId.FLOAT) {
+            float[] values = batch.getFloats(column);
+            for (int i = 0; i < batch.size(); ++i) {
+                sum += values[selection[i]];
+            }
+        } else {
+            int[] values = batch.getInts(column);
+            for (int i = 0; i < batch.size(); ++i) {
+                sum += values[selection[i]];
+            }
+        }
+        return sum;
+    }
+
     @Override
     public String str() {
         return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
@@ -194,133 +236,108 @@ class ProjectOperator extends QueryOperator {
     }
 
     /**
-     * An implementation of Iterator that provides an iterator interface for this operator.
+     * An implementation of Iterator that projects the source's records one at a time.
      */
     private class ProjectIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
-        private MarkerRecord markerRecord;
-        private boolean prevWasMarker;
-        private List<DataBox> baseValues;
 
         private ProjectIterator() {
             this.sourceIterator = ProjectOperator.this.getSource().iterator();
-            this.markerRecord = MarkerRecord.getMarker();
-            this.prevWasMarker = true;
-            this.baseValues = new ArrayList<>();
         }
 
-        /**
-         * Checks if there are more record(s) to yield
-         *
-         * @return true if this iterator has another record to yield, otherwise false
-         */
         @Override
         public boolean hasNext() {
             return this.sourceIterator.hasNext();
         }
 
-        /**
-         * Yields the next record of this iterator.
-         *
-         * @return the next Record
-         * @throws NoSuchElementException if there are no more Records to yield
-         */
         @Override
         public Record next() {
-            if (this.hasNext()) {
-                if (ProjectOperator.this.hasAggregate) {
-                    while (this.sourceIterator.hasNext()) {
-                        Record r = this.sourceIterator.next();
-                        List<DataBox> recordValues = r.getValues();
-
-                        // if the record is a MarkerRecord, that means we reached the end of a group... we reset
-                        // the aggregates and add the appropriate new record to the new Records
-                        if (r == this.markerRecord) {
-                            if (ProjectOperator.this.hasCount) {
-                                int count = ProjectOperator.this.getAndResetCount();
-                                this.baseValues.add(new IntDataBox(count));
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                double sum = ProjectOperator.this.getAndResetSum();
+            List<DataBox> sourceValues = this.sourceIterator.next().getValues();
+            List<DataBox> values = new ArrayList<>(ProjectOperator.this.indices.size());
+            for (int index : ProjectOperator.this.indices) {
+                values.add(sourceValues.get(index));
+            }
+            return new Record(values);
+        }
+    }
 
-                                if (ProjectOperator.this.sumIsFloat) {
-                                    this.baseValues.add(new FloatDataBox((float) sum));
-                                } else {
-                                    this.baseValues.add(new IntDataBox((int) sum));
-                                }
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                double average = (float) ProjectOperator.this.getAndResetAverage();
-                                this.baseValues.add(new FloatDataBox((float) average));
-                            }
-                            // record that we just saw a marker record
-                            this.prevWasMarker = true;
-                            return new Record(this.baseValues);
-                        } else {
-                            // if the previous record was a marker (or for the first record) we have to get the relevant
-                            // fields out of the record
-                            if (this.prevWasMarker) {
-                                this.baseValues = new ArrayList<>();
-                                for (int index : ProjectOperator.this.indices) {
-                                    this.baseValues.add(recordValues.get(index));
-                                }
-                                this.prevWasMarker = false;
-                            }
-                            if (ProjectOperator.this.hasCount) {
-                                ProjectOperator.this.addToCount();
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                ProjectOperator.this.addToSum(r);
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                ProjectOperator.this.addToAverage(r);
-                            }
-                        }
-                    }
+    /**
+     * Computes the aggregates of a projection without a group by a batch of the source's
+     * records at a time, and yields a single record with the projected columns of the
+     * first record and the aggregates (or no record, if the source has none).
+     */
+    private class AggregateBatchIterator implements Iterator<Record> {
+        private Iterator<RecordBatch> sourceIterator;
+        private Record nextRecord;
+        private boolean done;
 
-                    // at the very end, we need to make sure we add all the aggregated records to the result
-                    // either because there was no group by or to add the last group we saw
-                    if (ProjectOperator.this.hasCount) {
-                        int count = ProjectOperator.this.getAndResetCount();
-                        this.baseValues.add(new IntDataBox(count));
-                    }
-                    if (ProjectOperator.this.sumColumnIndex != -1) {
-                        double sum = ProjectOperator.this.getAndResetSum();
+        private AggregateBatchIterator() {
+            this.sourceIterator = ProjectOperator.this.getSource().batchIterator();
+            this.nextRecord = null;
+            this.done = false;
+        }
 
-                        if (ProjectOperator.this.sumIsFloat) {
-                            this.baseValues.add(new FloatDataBox((float) sum));
-                        } else {
-                            this.baseValues.add(new IntDataBox((int) sum));
-                        }
-                    }
-                    if (ProjectOperator.this.averageColumnIndex != -1) {
-                        double average = ProjectOperator.this.getAndResetAverage();
-                        this.baseValues.add(new FloatDataBox((float) average));
+        private Record aggregate() {
+            List<DataBox> baseValues = null;
+            while (this.sourceIterator.hasNext()) {
+                RecordBatch batch = this.sourceIterator.next();
+                if (batch.size() == 0) {
+                    continue;
+                }
+                if (baseValues == null) {
+                    baseValues = new ArrayList<>();
+                    for (int index : ProjectOperator.this.indices) {
+                        baseValues.add(batch.getValue(index, batch.getSelection()[0]));
                     }
-                    return new Record(this.baseValues);
+                }
+                if (ProjectOperator.this.hasCount) {
+                    ProjectOperator.this.countValue += batch.size();
+                }
+                if (ProjectOperator.this.sumColumnIndex != -1) {
+                    ProjectOperator.this.sumValue += sumColumn(batch, ProjectOperator.this.sumColumnIndex);
+                }
+                if (ProjectOperator.this.averageColumnIndex != -1) {
+                    ProjectOperator.this.averageCountValue += batch.size();
+                    ProjectOperator.this.averageSumValue += sumColumn(batch, ProjectOperator.this.averageColumnIndex);
+                }
+            }
+            if (baseValues == null) {
+                return null;
+            }
+            if (ProjectOperator.this.hasCount) {
+                baseValues.add(new IntDataBox(ProjectOperator.this.getAndResetCount()));
+            }
+            if (ProjectOperator.this.sumColumnIndex != -1) {
+                double sum = ProjectOperator.this.getAndResetSum();
+                if (ProjectOperator.this.sumIsFloat) {
+                    baseValues.add(new FloatDataBox((float) sum));
                 } else {
-                    Record r = this.sourceIterator.next();
-                    List<DataBox> recordValues = r.getValues();
-                    List<DataBox> newValues = new ArrayList<>();
-
-                    // if there is a marker record (in the case we're projecting from a group by), we simply
-                    // leave the marker records in
-                    if (r == this.markerRecord) {
-                        return markerRecord;
-                    } else {
-                        for (int index : ProjectOperator.this.indices) {
-                            newValues.add(recordValues.get(index));
-                        }
-                        return new Record(newValues);
-                    }
+                    baseValues.add(new IntDataBox((int) sum));
                 }
             }
-            throw new NoSuchElementException();
+            if (ProjectOperator.this.averageColumnIndex != -1) {
+                baseValues.add(new FloatDataBox((float) ProjectOperator.this.getAndResetAverage()));
+            }
+            return new Record(baseValues);
         }
 
         @Override
-        public void remove() {
-            throw new UnsupportedOperationException();
+        public boolean hasNext() {
+            if (!this.done) {
+                this.nextRecord = this.aggregate();
+                this.done = true;
+            }
+            return this.nextRecord != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record r = this.nextRecord;
+            this.nextRecord = null;
+            return r;
         }
     }
 }
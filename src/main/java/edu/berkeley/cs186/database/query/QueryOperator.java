@@ -4,6 +4,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -22,6 +23,8 @@ public abstract class QueryOperator implements Iterable<Record> {
         SEQSCAN,
         INDEXSCAN,
         MATERIALIZE,
+        GATHER,
+        LIMIT,
     }
 
     private OperatorType type;
@@ -98,6 +101,15 @@ public abstract class QueryOperator implements Iterable<Record> {
         return this.type.equals(OperatorType.INDEXSCAN);
     }
 
+    /**
+     * @return True if this operator outputs its records in increasing order of the column
+     * `columnIndex` of its output schema (e.g. an index scan, on the index's column), false
+     * if they are in no particular order.
+     */
+    public boolean isSortedOn(int columnIndex) {
+        return false;
+    }
+
     /**
      * @return the source operator from which this operator draws records from
      */
@@ -160,6 +172,24 @@ public abstract class QueryOperator implements Iterable<Record> {
      */
     public abstract Iterator<Record> iterator();
 
+    /**
+     * @return an iterator over the output records of this operator, in batches (see
+     * RecordBatch). Operators that do not process batches natively group the records of
+     * iterator() into batches.
+     */
+    public Iterator<RecordBatch> batchIterator() {
+        return RecordBatch.batches(this.getOutputSchema(), this.iterator());
+    }
+
+    /**
+     * @return True if batchIterator() produces batches natively, false if it only groups
+     * the records of iterator() into batches, which is slower than iterator() itself and
+     * reads a whole batch of records ahead of its consumer.
+     */
+    public boolean batchesNatively() {
+        return false;
+    }
+
     /**
      * Utility method that checks to see if a column is found in a schema using dot notation.
      *
@@ -39,6 +39,8 @@ public class QueryPlan {
     private boolean hasCount;
     private String averageColumnName;
     private String sumColumnName;
+    private int limit;
+    private String orderByColumn;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -81,6 +83,9 @@ public class QueryPlan {
 
         this.groupByColumn = null;
 
+        this.limit = -1;
+        this.orderByColumn = null;
+
         this.finalOperator = null;
 
         this.transaction.setAliasMap(this.aliases);
@@ -156,6 +161,28 @@ public class QueryPlan {
         this.sumColumnName = column;
     }
 
+    /**
+     * Limit the number of records returned by this query.
+     *
+     * @param limit the maximum number of records to return
+     */
+    public void limit(int limit) {
+        if (limit < 0) {
+            throw new QueryPlanException("Cannot limit a query to a negative number of records.");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Order the records returned by this query by a column (of the query's output), in
+     * increasing order. Only supported together with a limit.
+     *
+     * @param column the column to order by
+     */
+    public void orderBy(String column) {
+        this.orderByColumn = column;
+    }
+
     /**
      * Join the leftColumnName column of the existing queryplan against the rightColumnName column
      * of tableName.
@@ -213,13 +240,15 @@ public class QueryPlan {
                 this.generateIndexPlan(indexColumn);
             } else {
                 // start off with the start table scan as the source
-                this.finalOperator = new SequentialScanOperator(this.transaction, this.startTableName);
+                this.finalOperator = new SequentialScanOperator(this.transaction, this.startTableName,
+                        this.getReferencedColumns());
 
                 this.addJoins();
                 this.addSelects();
                 this.addGroupBy();
                 this.addProjects();
             }
+            this.addLimit();
 
             return this.finalOperator.execute();
         } finally {
@@ -256,6 +285,7 @@ public class QueryPlan {
             finalOperator = minCostOperator(minCost);
             addGroupBy();
             addProjects();
+            addLimit();
             return finalOperator.execute();
         } finally {
             transaction.clearAliasMap();
@@ -347,7 +377,7 @@ public class QueryPlan {
      */
     QueryOperator minCostSingleAccess(String table) {
         // Find the cost of a sequential scan of the table
-        QueryOperator minOp = new SequentialScanOperator(transaction, table);
+        QueryOperator minOp = new SequentialScanOperator(transaction, table, getReferencedColumns());
 
         // 1. Find the cost of a sequential scan of the table
 
@@ -368,6 +398,13 @@ public class QueryPlan {
         }
         minOp = addEligibleSelections(minOp, index);
 
+        // 4. Split a sequential scan of a large enough table across several threads
+        int parallelism = transaction.getQueryParallelism();
+        if (index == -1 && parallelism > 1
+                && transaction.getNumDataPages(table) >= 2 * GatherOperator.MORSEL_PAGES) {
+            minOp = new GatherOperator(transaction, minOp, parallelism);
+        }
+
         return minOp;
     }
 
@@ -384,8 +421,16 @@ public class QueryPlan {
 
         int minCost = Integer.MAX_VALUE;
         List<QueryOperator> allJoins = new ArrayList<>();
-        allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        QueryOperator snlj = new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction);
+        allJoins.add(snlj);
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        // sort merge and hash joins read all of both inputs before returning any record, so
+        // they are not worth it when only the first few records of the join are read
+        if (!this.stopsEarly(snlj.getStats().getNumRecords())) {
+            allJoins.add(new SortMergeOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+            allJoins.add(new SHJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+            allJoins.add(new GHJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        }
 
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
@@ -490,6 +535,34 @@ public class QueryPlan {
         return minOp;
     }
 
+    /**
+     * Returns the names of every column that the query refers to, so that scans of
+     * tables with columnar storage only need to read those columns, or null if the
+     * query outputs every column of its tables.
+     *
+     * @return a list of (possibly qualified) column names, or null
+     */
+    private List<String> getReferencedColumns() {
+        if (this.projectColumns.isEmpty() && !this.hasCount && this.sumColumnName == null
+                && this.averageColumnName == null) {
+            return null;
+        }
+        List<String> columns = new ArrayList<>(this.projectColumns);
+        columns.addAll(this.selectColumnNames);
+        columns.addAll(this.joinLeftColumnNames);
+        columns.addAll(this.joinRightColumnNames);
+        if (this.groupByColumn != null) {
+            columns.add(this.groupByColumn);
+        }
+        if (this.sumColumnName != null) {
+            columns.add(this.sumColumnName);
+        }
+        if (this.averageColumnName != null) {
+            columns.add(this.averageColumnName);
+        }
+        return columns;
+    }
+
     private String checkIndexEligible() {
         if (this.selectColumnNames.size() > 0 && this.groupByColumn == null && this.joinTableNames.size() == 0) {
             int index = 0;
@@ -526,7 +599,8 @@ public class QueryPlan {
         int index = 0;
 
         for (String joinTable : this.joinTableNames) {
-            SequentialScanOperator scanOperator = new SequentialScanOperator(this.transaction, joinTable);
+            SequentialScanOperator scanOperator = new SequentialScanOperator(this.transaction, joinTable,
+                    this.getReferencedColumns());
 
             this.finalOperator = new SNLJOperator(finalOperator, scanOperator, this.joinLeftColumnNames.get(index),
                     this.joinRightColumnNames.get(index), this.transaction);
@@ -559,6 +633,27 @@ public class QueryPlan {
         }
     }
 
+    /**
+     * @param numRecords the estimated number of output records of a join
+     * @return whether the query has a limit below numRecords and nothing between the joins
+     * and the limit that reads all of its input, so that only the first records of the
+     * join are read
+     */
+    private boolean stopsEarly(int numRecords) {
+        return this.limit != -1 && this.limit < numRecords && this.orderByColumn == null
+               && this.groupByColumn == null && !this.hasCount && this.sumColumnName == null
+               && this.averageColumnName == null;
+    }
+
+    private void addLimit() {
+        if (this.orderByColumn != null && this.limit == -1) {
+            throw new QueryPlanException("Can only order a query with a limit.");
+        }
+        if (this.limit != -1) {
+            this.finalOperator = new LimitOperator(this.finalOperator, this.limit, this.orderByColumn);
+        }
+    }
+
     private void addProjects() {
         if (!this.projectColumns.isEmpty() || this.hasCount || this.sumColumnName != null
                 || this.averageColumnName != null) {
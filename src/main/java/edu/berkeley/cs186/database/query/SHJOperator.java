@@ -0,0 +1,83 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * A join operator that runs a SimpleHashJoin over its inputs: the left records are
+ * partitioned once into B-1 partitions, and every partition is probed with all of the
+ * right records. A partition of the left input that does not fit in B-2 pages is joined
+ * a block of B-2 pages at a time, so the join is only cheap if every partition fits.
+ */
+class SHJOperator extends JoinOperator {
+    protected int numBuffers;
+
+    SHJOperator(QueryOperator leftSource, QueryOperator rightSource, String leftColumnName, String rightColumnName,
+                TransactionContext transaction) {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.SHJ);
+
+        this.numBuffers = transaction.getWorkMemSize();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new SHJIterator();
+    }
+
+    @Override
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        int numPartitions = numBuffers - 1;
+        // records with the same join value land in the same partition, so there are no
+        // more non-empty partitions than there are distinct join values
+        int numFilledPartitions = numPartitions;
+        int numDistinct = getNumDistinct(getLeftSource(), getLeftColumnIndex());
+        if (numDistinct > 0) {
+            numFilledPartitions = Math.min(numPartitions, numDistinct);
+        }
+        // a partition that does not fit in memory is joined block by block, reading the
+        // right input once per block, which is not worth estimating
+        if (numBuffers < 3 || Math.ceil((double) numLeftPages / numFilledPartitions) > numBuffers - 2) {
+            return Integer.MAX_VALUE;
+        }
+        // read, write, and read again the left input; read the right input once per
+        // partition, skipping the empty ones
+        return 3 * numLeftPages + numFilledPartitions * numRightPages;
+    }
+
+    private class SHJIterator extends JoinIterator {
+        private Iterator<Record> joinedIterator;
+
+        private SHJIterator() {
+            super();
+
+            BacktrackingIterator<Record> rightIterator = SHJOperator.this.getRecordIterator(this.getRightTableName());
+            if (!rightIterator.hasNext()) {
+                this.joinedIterator = Collections.emptyIterator();
+                return;
+            }
+            SimpleHashJoin join = new SimpleHashJoin(this.getLeftRecordIterator(),
+                    rightIterator, SHJOperator.this.getLeftColumnIndex(), SHJOperator.this.getRightColumnIndex(),
+                    SHJOperator.this.getTransaction(), SHJOperator.this.getLeftSource().getOutputSchema());
+            this.joinedIterator = join.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.joinedIterator.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            return this.joinedIterator.next();
+        }
+    }
+}
@@ -45,7 +45,7 @@ public class SNLJOperator extends JoinOperator {
      */
     private class SNLJIterator extends JoinIterator {
         // Iterator over pages of the left relation
-        private BacktrackingIterator<Record> leftIterator;
+        private Iterator<Record> leftIterator;
         // Iterator over pages of the right relation
         private BacktrackingIterator<Record> rightIterator;
         // The current record on the left page
@@ -57,12 +57,14 @@ public class SNLJOperator extends JoinOperator {
 
         public SNLJIterator() {
             super();
-            this.rightIterator = SNLJOperator.this.getRecordIterator(this.getRightTableName());
-            this.leftIterator = SNLJOperator.this.getRecordIterator(this.getLeftTableName());
+            this.leftIterator = this.getLeftRecordIterator();
 
             this.nextRecord = null;
 
             this.leftRecord = leftIterator.hasNext() ? leftIterator.next() : null;
+            // the right records are not needed without a left record
+            if (this.leftRecord == null) { return; }
+            this.rightIterator = SNLJOperator.this.getRecordIterator(this.getRightTableName());
             this.rightRecord = rightIterator.hasNext() ? rightIterator.next() : null;
 
             // We mark the first record so we can reset to it when we advance the left record.
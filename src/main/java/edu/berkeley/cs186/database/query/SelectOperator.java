@@ -5,8 +5,10 @@ import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -45,6 +47,11 @@ class SelectOperator extends QueryOperator {
         return true;
     }
 
+    @Override
+    public boolean isSortedOn(int columnIndex) {
+        return this.getSource().isSortedOn(columnIndex);
+    }
+
     @Override
     public Schema computeSchema() {
         return this.getSource().getOutputSchema();
@@ -79,6 +86,143 @@ class SelectOperator extends QueryOperator {
     @Override
     public Iterator<Record> iterator() { return new SelectIterator(); }
 
+    @Override
+    public Iterator<RecordBatch> batchIterator() { return new SelectBatchIterator(); }
+
+    @Override
+    public boolean batchesNatively() { return this.getSource().batchesNatively(); }
+
+    /**
+     * Removes the rows of a batch that do not satisfy the predicate from its selection
+     * vector. Values of primitive columns are compared without boxing them, when the
+     * predicate's value has the same type as the column.
+     */
+    private RecordBatch filter(RecordBatch batch) {
+        int[] selection = batch.getSelection();
+        int numSelected = 0;
+        TypeId typeId = this.getOutputSchema().getFieldTypes().get(this.columnIndex).getTypeId();
+        if (typeId != this.value.type().getTypeId()) {
+            typeId = TypeId.STRING;
+        }
+        switch (typeId) {
+        case INT: {
+            int[] values = batch.getInts(this.columnIndex);
+            int v = this.value.getInt();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (this.matches(Integer.compare(values[selection[i]], v))) {
+                    selection[numSelected++] = selection[i];
+                }
+            }
+            break;
+        }
+        case LONG: {
+            long[] values = batch.getLongs(this.columnIndex);
+            long v = this.value.getLong();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (this.matches(Long.compare(values[selection[i]], v))) {
+                    selection[numSelected++] = selection[i];
+                }
+            }
+            break;
+        }
+        case FLOAT: {
+            float[] values = batch.getFloats(this.columnIndex);
+            float v = this.value.getFloat();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (this.matches(Float.compare(values[selection[i]], v))) {
+                    selection[numSelected++] = selection[i];
+                }
+            }
+            break;
+        }
+        case BOOL: {
+            boolean[] values = batch.getBools(this.columnIndex);
+            boolean v = this.value.getBool();
+            for (int i = 0; i < batch.size(); ++i) {
+                if (this.matches(Boolean.compare(values[selection[i]], v))) {
+                    selection[numSelected++] = selection[i];
+                }
+            }
+            break;
+        }
+        default: {
+            // strings, and values of another type than the column, are compared as in
+            // SelectIterator
+            for (int i = 0; i < batch.size(); ++i) {
+                if (this.matches(batch.getValue(this.columnIndex, selection[i]))) {
+                    selection[numSelected++] = selection[i];
+                }
+            }
+            break;
+        }
+        }
+        batch.select(selection, numSelected);
+        return batch;
+    }
+
+    /**
+     * @return whether a record of the source operator satisfies the predicate
+     */
+    boolean evaluate(Record record) {
+        return this.matches(record.getValues().get(this.columnIndex));
+    }
+
+    /**
+     * @return whether a value of the column satisfies the predicate, comparing it as in
+     * SelectIterator
+     */
+    private boolean matches(DataBox d) {
+        if (this.operator == PredicateOperator.EQUALS) {
+            return d.equals(this.value);
+        } else if (this.operator == PredicateOperator.NOT_EQUALS) {
+            return !d.equals(this.value);
+        }
+        return this.matches(d.compareTo(this.value));
+    }
+
+    /**
+     * @return whether the result of comparing a value to this.value satisfies the predicate
+     */
+    private boolean matches(int comparison) {
+        switch (this.operator) {
+        case EQUALS:
+            return comparison == 0;
+        case NOT_EQUALS:
+            return comparison != 0;
+        case LESS_THAN:
+            return comparison < 0;
+        case LESS_THAN_EQUALS:
+            return comparison <= 0;
+        case GREATER_THAN:
+            return comparison > 0;
+        case GREATER_THAN_EQUALS:
+            return comparison >= 0;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * An implementation of Iterator that filters the batches of the source operator.
+     */
+    private class SelectBatchIterator implements Iterator<RecordBatch> {
+        private Iterator<RecordBatch> sourceIterator;
+
+        private SelectBatchIterator() {
+            this.sourceIterator = SelectOperator.this.getSource().batchIterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        @Override
+        public RecordBatch next() {
+            return SelectOperator.this.filter(this.sourceIterator.next());
+        }
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
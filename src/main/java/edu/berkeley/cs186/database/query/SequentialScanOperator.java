@@ -1,16 +1,23 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.TableFormat;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 class SequentialScanOperator extends QueryOperator {
     private TransactionContext transaction;
     private String tableName;
+    // indices of the columns of the table that the scan reads, or null for all of them
+    private List<Integer> columns;
 
     /**
      * Creates a new SequentialScanOperator that provides an iterator on all tuples in a table.
@@ -23,15 +30,41 @@ class SequentialScanOperator extends QueryOperator {
      */
     SequentialScanOperator(TransactionContext transaction,
                            String tableName) {
-        this(OperatorType.SEQSCAN, transaction, tableName);
+        this(OperatorType.SEQSCAN, transaction, tableName, null);
+    }
+
+    /**
+     * Creates a new SequentialScanOperator that only needs the columns of a table named by
+     * `columnNames` (which may or may not be qualified by the table name; names of columns
+     * of other tables are ignored). If the table has columnar storage (TableFormat.PAX),
+     * the scan only reads and outputs those columns; otherwise, it outputs every column.
+     *
+     * @param transaction
+     * @param tableName
+     * @param columnNames
+     */
+    SequentialScanOperator(TransactionContext transaction,
+                           String tableName,
+                           List<String> columnNames) {
+        this(OperatorType.SEQSCAN, transaction, tableName, columnNames);
     }
 
     protected SequentialScanOperator(OperatorType type,
                                      TransactionContext transaction,
                                      String tableName) {
+        this(type, transaction, tableName, null);
+    }
+
+    protected SequentialScanOperator(OperatorType type,
+                                     TransactionContext transaction,
+                                     String tableName,
+                                     List<String> columnNames) {
         super(type);
         this.transaction = transaction;
         this.tableName = tableName;
+        if (columnNames != null && transaction.getTable(tableName).getFormat() == TableFormat.PAX) {
+            this.columns = this.resolveColumns(columnNames);
+        }
         this.setOutputSchema(this.computeSchema());
 
         this.stats = this.estimateStats();
@@ -42,6 +75,14 @@ class SequentialScanOperator extends QueryOperator {
         return this.tableName;
     }
 
+    /**
+     * @return indices of the columns of the table that the scan reads, or null if it
+     * reads all of them
+     */
+    List<Integer> getColumns() {
+        return this.columns;
+    }
+
     @Override
     public boolean isSequentialScan() {
         return true;
@@ -49,22 +90,68 @@ class SequentialScanOperator extends QueryOperator {
 
     @Override
     public Iterator<Record> iterator() {
+        if (this.columns != null) {
+            return this.transaction.getRecordIterator(tableName, this.columns);
+        }
         return this.transaction.getRecordIterator(tableName);
     }
 
+    @Override
+    public Iterator<RecordBatch> batchIterator() {
+        return this.transaction.getBatchIterator(tableName, this.columns);
+    }
+
+    @Override
+    public boolean batchesNatively() {
+        return this.transaction.getTable(tableName).getFormat() == TableFormat.PAX;
+    }
+
     @Override
     public Schema computeSchema() {
         try {
-            return this.transaction.getFullyQualifiedSchema(this.tableName);
+            Schema schema = this.transaction.getFullyQualifiedSchema(this.tableName);
+            if (this.columns == null) {
+                return schema;
+            }
+            List<String> names = new ArrayList<>();
+            List<Type> types = new ArrayList<>();
+            for (int column : this.columns) {
+                names.add(schema.getFieldNames().get(column));
+                types.add(schema.getFieldTypes().get(column));
+            }
+            return new Schema(names, types);
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
     }
 
+    /**
+     * Finds the indices of the columns of the table named by columnNames, in the order of
+     * the table's schema. At least one column is always read, so that the scan still
+     * produces a record per record of the table.
+     */
+    private List<Integer> resolveColumns(List<String> columnNames) {
+        List<String> fieldNames = this.transaction.getFullyQualifiedSchema(this.tableName).getFieldNames();
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < fieldNames.size(); ++i) {
+            for (String columnName : columnNames) {
+                if (this.checkColumnNameEquality(fieldNames.get(i), columnName)) {
+                    columns.add(i);
+                    break;
+                }
+            }
+        }
+        if (columns.isEmpty()) {
+            columns.add(0);
+        }
+        return columns;
+    }
+
     @Override
     public String str() {
+        String columnNames = this.columns == null ? "" : "\ncolumns: " + this.getOutputSchema().getFieldNames();
         return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
-               "\ntable: " + this.tableName;
+               "\ntable: " + this.tableName + columnNames;
     }
 
     /**
@@ -75,7 +162,8 @@ class SequentialScanOperator extends QueryOperator {
     @Override
     public TableStats estimateStats() {
         try {
-            return this.transaction.getStats(this.tableName);
+            TableStats stats = this.transaction.getStats(this.tableName);
+            return this.columns == null ? stats : stats.copyWithProjection(this.columns);
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
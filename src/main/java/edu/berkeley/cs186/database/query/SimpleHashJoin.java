@@ -3,9 +3,11 @@ package edu.berkeley.cs186.database.query;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.SimpleHashPartition;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 
 import java.util.*;
 
@@ -125,6 +127,52 @@ public class SimpleHashJoin {
         return joinedRecords;
     }
 
+    /**
+     * Runs the Hash Join algorithm like run(), but returns the joined records one at a time
+     * instead of collecting them into a list: the left records are partitioned up front,
+     * and each partition is then built and probed as the joined records are consumed.
+     *
+     * A partition that does not fit in B-2 pages of memory does not make the join fail;
+     * it is joined a block of B-2 pages at a time instead, probing every block with all
+     * of the right records (as a block nested loop join would).
+     *
+     * @return An iterator over the joined records
+     */
+    public Iterator<Record> iterator() {
+        SimpleHashPartition partitions[] = createPartitions();
+        this.partition(partitions, this.leftRelationIterator);
+        int maxBuildRecords = (this.numBuffers - 2) *
+                              Table.computeNumRecordsPerPage(BufferManager.EFFECTIVE_PAGE_SIZE, this.leftSchema);
+        return new Iterator<Record>() {
+            private int nextPartition = 0;
+            private Iterator<Record> joinedIterator = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!this.joinedIterator.hasNext()) {
+                    if (this.nextPartition == partitions.length) {
+                        return false;
+                    }
+                    SimpleHashPartition partition = partitions[this.nextPartition++];
+                    this.joinedIterator = new BlockHashJoinIterator(partition.getIterator(),
+                            getLeftColumnIndex(), () -> {
+                                rightRelationIterator.reset();
+                                return rightRelationIterator;
+                            }, getRightColumnIndex(), false, maxBuildRecords);
+                }
+                return true;
+            }
+
+            @Override
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.joinedIterator.next();
+            }
+        };
+    }
+
     /**
      * Create an appropriate number of SimpleHashPartitions and return them
      * as an array.
@@ -12,10 +12,20 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 
 class SortMergeOperator extends JoinOperator {
+    private int numBuffers;
+    // whether each input is already sorted on its join column, in which case it is not
+    // sorted again
+    private boolean leftSorted;
+    private boolean rightSorted;
+
     SortMergeOperator(QueryOperator leftSource, QueryOperator rightSource, String leftColumnName,
             String rightColumnName, TransactionContext transaction) {
         super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.SORTMERGE);
 
+        this.numBuffers = transaction.getWorkMemSize();
+        this.leftSorted = leftSource.isSortedOn(getLeftColumnIndex());
+        this.rightSorted = rightSource.isSortedOn(getRightColumnIndex());
+
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
     }
@@ -25,10 +35,33 @@ class SortMergeOperator extends JoinOperator {
         return new SortMergeIterator();
     }
 
+    @Override
+    public boolean isSortedOn(int columnIndex) {
+        // records are joined in order of the join columns, which are equal
+        return columnIndex == getLeftColumnIndex() ||
+               columnIndex == getLeftSource().getOutputSchema().getFieldNames().size() + getRightColumnIndex();
+    }
+
     @Override
     public int estimateIOCost() {
-        //does nothing
-        return 0;
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        return (leftSorted ? 0 : estimateSortIOCost(numLeftPages)) +
+               (rightSorted ? 0 : estimateSortIOCost(numRightPages)) + numLeftPages + numRightPages;
+    }
+
+    /**
+     * External sorting first sorts runs of B pages, and then merges B - 1 runs at a time
+     * until one run is left, reading and writing every page once per pass.
+     */
+    private int estimateSortIOCost(int numPages) {
+        int fanIn = Math.max(numBuffers - 1, 2);
+        int numPasses = 1;
+        for (int numRuns = (numPages + numBuffers - 1) / numBuffers; numRuns > 1;
+                numRuns = (numRuns + fanIn - 1) / fanIn) {
+            ++numPasses;
+        }
+        return 2 * numPages * numPasses;
     }
 
     /**
@@ -60,9 +93,10 @@ class SortMergeOperator extends JoinOperator {
             super();
             // Hint: you may find the helper methods getTransaction() and getRecordIterator(tableName)
             // in JoinOperator useful here.
-            leftIterator = getTransaction().getRecordIterator(
+            // inputs that are already sorted were materialized in order
+            leftIterator = getTransaction().getRecordIterator(leftSorted ? getLeftTableName() :
                     new SortOperator(getTransaction(), getLeftTableName(), new LeftRecordComparator()).sort());
-            rightIterator = getTransaction().getRecordIterator(
+            rightIterator = getTransaction().getRecordIterator(rightSorted ? getRightTableName() :
                     new SortOperator(getTransaction(), getRightTableName(), new RightRecordComparator()).sort());
             marked = false;
         }
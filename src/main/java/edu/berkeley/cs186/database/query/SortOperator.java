@@ -100,17 +100,17 @@ public class SortOperator {
                 queue.add(new Pair<>(iterators.get(i).next(), i));
             }
         }
-        List<Record> records = new ArrayList<>();
+        // records are appended to the output run as they are merged, rather than
+        // collected first, so that only a record per input run is held in memory
+        Run run = createRun();
         while (!queue.isEmpty()) {
             Pair<Record, Integer> record = queue.remove();
-            records.add(record.getFirst());
+            run.addRecord(record.getFirst().getValues());
             int i = record.getSecond();
             if (iterators.get(i).hasNext()) {
                 queue.add(new Pair<>(iterators.get(i).next(), i));
             }
         }
-        Run run = createRun();
-        run.addRecords(records);
         return run;
     }
 
@@ -435,7 +435,10 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * when full (or when done).
      *
      * Finally, the master record should be rewritten with the LSN of the
-     * begin checkpoint record.
+     * begin checkpoint record. Data page writes the disk space manager has
+     * deferred are synced first: a page written before the DPT was
+     * recorded may be missing from it, so the write must be durable before
+     * recovery can start from this checkpoint.
      */
     @Override
     public void checkpoint() {
@@ -482,6 +485,9 @@ public class ARIESRecoveryManager implements RecoveryManager {
         LogRecord endRecord = new EndCheckpointLogRecord(dpt, txnTable, touchedPages);
         logManager.appendToLog(endRecord);
 
+        // Make deferred page writes durable before pointing recovery at this checkpoint
+        diskSpaceManager.sync();
+
         // Update master record
         MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
         logManager.rewriteMasterRecord(masterRecord);
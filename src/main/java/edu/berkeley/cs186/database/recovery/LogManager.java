@@ -10,9 +10,11 @@ import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.memory.ReadAhead;
 import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
 
 import java.util.*;
+import java.util.stream.LongStream;
 
 /**
  * The LogManager is responsible for interfacing with the log itself. The log is stored
@@ -274,9 +276,13 @@ class LogManager implements Iterable<LogRecord>, AutoCloseable {
     private class LogPagesIterator implements BacktrackingIterator<BacktrackingIterable<LogRecord>> {
         private BacktrackingIterator<LogRecord> nextIter;
         private long nextIndex;
+        private ReadAhead readAhead;
 
         private LogPagesIterator(long startLSN) {
             nextIndex = getLSNPage(startLSN);
+            // log pages are allocated in order, so the rest of the scan is every page up to the tail
+            readAhead = bufferManager.readAhead(
+                    LongStream.rangeClosed(nextIndex + 1, logTail.getPageNum()).boxed().iterator(), true);
             try {
                 Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex, true);
                 nextIter = new LogPageIterator(page, getLSNIndex(startLSN));
@@ -314,6 +320,7 @@ class LogManager implements Iterable<LogRecord>, AutoCloseable {
                 nextIter = null;
                 do {
                     ++nextIndex;
+                    readAhead.advance();
                     try {
                         Page page = bufferManager.fetchPage(new DummyLockContext(), nextIndex, true);
                         nextIter = new LogPageIterator(page, 0);
@@ -321,6 +328,9 @@ class LogManager implements Iterable<LogRecord>, AutoCloseable {
                         break;
                     }
                 } while (!nextIter.hasNext());
+                if (nextIter == null || !nextIter.hasNext()) {
+                    readAhead.close();
+                }
 
                 return iterable;
             }
@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database.table;
 
+import java.util.List;
+
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.memory.Page;
@@ -57,6 +59,11 @@ public interface HeapFile extends BacktrackingIterable<Page> {
      */
     int getNumDataPages();
 
+    /**
+     * @return page numbers of all allocated data pages, in the order of iterator()
+     */
+    List<Long> getDataPageNums();
+
     /**
      * Gets partition number of partition the heap file lies on.
      * @return partition number
@@ -3,8 +3,8 @@ package edu.berkeley.cs186.database.table;
 import java.util.ArrayList;
 
 /**
- * An empty record used to delineate groups in the GroupByOperator (see
- * comments in GroupByOperator).
+ * An empty record used to delineate groups of records in a stream of records,
+ * which operators pass on unchanged.
  */
 public class MarkerRecord extends Record {
     private static final MarkerRecord record = new MarkerRecord();
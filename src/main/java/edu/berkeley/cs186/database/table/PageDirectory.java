@@ -13,9 +13,17 @@ import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.memory.ReadAhead;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * An implementation of a heap file, using a page directory. Assumes data pages are packed (but record
@@ -38,6 +46,10 @@ import java.util.Random;
  *
  * The page directory id is a randomly generated 32-bit integer used to help detect bugs (where we attempt
  * to write to a page that is not managed by the page directory).
+ *
+ * To find a data page with enough free space without walking the header pages, the page directory keeps
+ * an in-memory free space map, rebuilt from the header pages when the page directory is loaded. See
+ * FreeSpaceMap.
  */
 public class PageDirectory implements HeapFile {
     // size of the header in header pages
@@ -64,6 +76,12 @@ public class PageDirectory implements HeapFile {
     // First header page
     private HeaderPage firstHeader;
 
+    // All header pages, in order (the ith header page has header offset i)
+    private List<HeaderPage> headers;
+
+    // Free space of the data pages, and which header pages have unused entries
+    private FreeSpaceMap freeSpaceMap;
+
     // Size of metadata of an empty data page.
     private short emptyPageMetadataSize;
 
@@ -89,6 +107,8 @@ public class PageDirectory implements HeapFile {
         this.partNum = partNum;
         this.emptyPageMetadataSize = emptyPageMetadataSize;
         this.lockContext = lockContext;
+        this.headers = new CopyOnWriteArrayList<>();
+        this.freeSpaceMap = new FreeSpaceMap();
         this.firstHeader = new HeaderPage(pageNum, 0, true);
     }
 
@@ -116,9 +136,31 @@ public class PageDirectory implements HeapFile {
             throw new IllegalArgumentException("requesting page with more space than the size of the page");
         }
 
-        Page page = this.firstHeader.loadPageWithSpace(requiredSpace);
+        Page page = null;
+        while (page == null) {
+            long entry = this.freeSpaceMap.reserve(requiredSpace);
+            if (entry != -1) {
+                page = this.headers.get(FreeSpaceMap.headerIndex(entry))
+                       .loadPageWithSpace(FreeSpaceMap.slot(entry), requiredSpace);
+            } else {
+                // no data page has enough space; allocate a new one, in the first header page
+                // with an unused entry (adding a header page if every entry is used), retrying
+                // if another thread used up the header page's unused entries first
+                int headerIndex = this.freeSpaceMap.getHeaderWithUnusedEntry();
+                if (headerIndex == -1) {
+                    headerIndex = this.addNewHeaderPage();
+                }
+                page = this.headers.get(headerIndex).loadNewPage(requiredSpace);
+            }
+        }
         LockContext pageContext = lockContext.childContext(page.getPageNum());
-        LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
+        try {
+            LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
+        } catch (RuntimeException e) {
+            // don't leave the page pinned if the lock cannot be acquired
+            page.unpin();
+            throw e;
+        }
 
         return new DataPage(pageDirectoryId, page);
     }
@@ -141,11 +183,7 @@ public class PageDirectory implements HeapFile {
             page.unpin();
         }
 
-        HeaderPage headerPage = firstHeader;
-        for (int i = 0; i < headerIndex; ++i) {
-            headerPage = headerPage.nextPage;
-        }
-        headerPage.updateSpace(page, offset, newFreeSpace);
+        this.headers.get(headerIndex).updateSpace(page, offset, newFreeSpace);
     }
 
     @Override
@@ -164,11 +202,37 @@ public class PageDirectory implements HeapFile {
         return numDataPages;
     }
 
+    @Override
+    public List<Long> getDataPageNums() {
+        // only the header pages are read
+        List<Long> pageNums = new ArrayList<>();
+        HeaderPage headerPage = firstHeader;
+        while (headerPage != null) {
+            pageNums.addAll(headerPage.getDataPageNums(0));
+            headerPage = headerPage.nextPage;
+        }
+        return pageNums;
+    }
+
     @Override
     public int getPartNum() {
         return partNum;
     }
 
+    /**
+     * Adds a header page after the last one, unless another thread already has since
+     * the caller found no header page with an unused entry.
+     * @return header offset of a header page that had an unused entry
+     */
+    private synchronized int addNewHeaderPage() {
+        int headerIndex = this.freeSpaceMap.getHeaderWithUnusedEntry();
+        if (headerIndex != -1) {
+            return headerIndex;
+        }
+        this.headers.get(this.headers.size() - 1).addNewHeaderPage();
+        return this.headers.size() - 1;
+    }
+
     /**
      * Wrapper around page object to skip the header and verify that it belongs to this
      * page directory.
@@ -237,6 +301,143 @@ public class PageDirectory implements HeapFile {
         }
     }
 
+    /**
+     * In-memory free space map: the free space of every data page, grouped into free space
+     * classes, and the set of header pages with an unused entry. A data page with at least
+     * the requested space is found from the lowest class guaranteed to have enough space
+     * (only falling back to searching the class the request itself falls in if no higher
+     * class has any pages), so finding a page takes no page accesses besides fetching the
+     * header page and data page themselves.
+     *
+     * Space is reserved in the map when a page is picked, so concurrent inserters see each
+     * other's reservations. A thread keeps inserting into the last page it was given while
+     * that page has room, and otherwise searches each class starting after the last page
+     * handed out to any thread, so concurrent inserters are spread over different pages
+     * rather than all contending for the first page with space.
+     *
+     * Data page entries are identified by header offset and slot, packed into a long
+     * (in header page order, so entries are ordered as the pages are iterated over).
+     */
+    private static class FreeSpaceMap {
+        private static final int NUM_CLASSES = 64;
+        private static final int CLASS_WIDTH = (EFFECTIVE_PAGE_SIZE + NUM_CLASSES) / NUM_CLASSES;
+
+        // free space of each data page entry
+        private final Map<Long, Short> freeSpace = new HashMap<>();
+
+        // data page entries in each free space class
+        private final List<TreeSet<Long>> classes = new ArrayList<>();
+
+        // header pages with at least one unused entry
+        private final BitSet headersWithUnusedEntries = new BitSet();
+
+        // entry after the last one handed out, where searches of a class start
+        private long nextEntry = 0;
+
+        // last entry handed out to each thread
+        private final ThreadLocal<Long> lastEntry = new ThreadLocal<>();
+
+        private FreeSpaceMap() {
+            for (int i = 0; i < NUM_CLASSES; ++i) {
+                this.classes.add(new TreeSet<>());
+            }
+        }
+
+        private static long entry(int headerIndex, short slot) {
+            return ((long) headerIndex << Short.SIZE) | slot;
+        }
+
+        private static int headerIndex(long entry) {
+            return (int) (entry >>> Short.SIZE);
+        }
+
+        private static short slot(long entry) {
+            return (short) entry;
+        }
+
+        private static int classOf(short freeSpace) {
+            return Math.max(freeSpace, 0) / CLASS_WIDTH;
+        }
+
+        /**
+         * Sets the free space of a data page entry.
+         * @param freeSpace free space of the data page, or -1 if the entry is unused
+         */
+        private synchronized void setFreeSpace(int headerIndex, short slot, short freeSpace) {
+            long entry = entry(headerIndex, slot);
+            Short oldFreeSpace = this.freeSpace.remove(entry);
+            if (oldFreeSpace != null) {
+                this.classes.get(classOf(oldFreeSpace)).remove(entry);
+            }
+            if (freeSpace >= 0) {
+                this.freeSpace.put(entry, freeSpace);
+                this.classes.get(classOf(freeSpace)).add(entry);
+            }
+        }
+
+        private synchronized void setHasUnusedEntries(int headerIndex, boolean hasUnusedEntries) {
+            this.headersWithUnusedEntries.set(headerIndex, hasUnusedEntries);
+        }
+
+        /**
+         * @return header offset of the first header page with an unused entry, or -1 if
+         * every entry of every header page is used
+         */
+        private synchronized int getHeaderWithUnusedEntry() {
+            return this.headersWithUnusedEntries.nextSetBit(0);
+        }
+
+        /**
+         * Picks a data page with at least the required space, and subtracts the space from
+         * its free space.
+         * @return entry of the data page, or -1 if no data page has enough space
+         */
+        private synchronized long reserve(short requiredSpace) {
+            Long entry = this.lastEntry.get();
+            if (entry == null || this.freeSpace.getOrDefault(entry, (short) -1) < requiredSpace) {
+                entry = null;
+                int requiredClass = classOf(requiredSpace);
+                for (int i = requiredClass + 1; i < NUM_CLASSES && entry == null; ++i) {
+                    entry = this.findFrom(this.classes.get(i), (short) 0);
+                }
+                if (entry == null) {
+                    entry = this.findFrom(this.classes.get(requiredClass), requiredSpace);
+                }
+                if (entry == null) {
+                    return -1;
+                }
+            }
+            short newFreeSpace = (short) (this.freeSpace.get(entry) - requiredSpace);
+            this.setFreeSpace(headerIndex(entry), slot(entry), newFreeSpace);
+            this.lastEntry.set(entry);
+            this.nextEntry = entry + 1;
+            return entry;
+        }
+
+        // first entry of a class, starting at nextEntry and wrapping around, with the space
+        private Long findFrom(TreeSet<Long> entries, short requiredSpace) {
+            for (Long entry : entries.tailSet(this.nextEntry)) {
+                if (this.freeSpace.get(entry) >= requiredSpace) {
+                    return entry;
+                }
+            }
+            for (Long entry : entries.headSet(this.nextEntry)) {
+                if (this.freeSpace.get(entry) >= requiredSpace) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Records that the calling thread was given a (new) data page.
+         */
+        private synchronized void setLastEntry(int headerIndex, short slot) {
+            this.lastEntry.set(entry(headerIndex, slot));
+            this.nextEntry = entry(headerIndex, slot) + 1;
+        }
+    }
+
     /**
      * Represents a single header page.
      */
@@ -281,10 +482,11 @@ public class PageDirectory implements HeapFile {
                         throw new PageException("header page page directory id does not match");
                     }
                     nextPageNum = pageBuffer.getLong();
-                    for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                    for (short i = 0; i < HEADER_ENTRY_COUNT; ++i) {
                         DataPageEntry dpe = DataPageEntry.fromBytes(pageBuffer);
                         if (dpe.isValid()) {
                             ++this.numDataPages;
+                            freeSpaceMap.setFreeSpace(headerOffset, i, dpe.freeSpace);
                         }
                     }
                 }
@@ -292,6 +494,8 @@ public class PageDirectory implements HeapFile {
                 this.page.unpin();
             }
             this.headerOffset = headerOffset;
+            headers.add(this);
+            freeSpaceMap.setHasUnusedEntries(headerOffset, this.numDataPages < HEADER_ENTRY_COUNT);
             if (nextPageNum == DiskSpaceManager.INVALID_PAGE_NUM) {
                 this.nextPage = null;
             } else {
@@ -309,61 +513,66 @@ public class PageDirectory implements HeapFile {
             this.page.pin();
             try {
                 this.nextPage = new HeaderPage(page.getPageNum(), headerOffset + 1, false);
-                this.page.getBuffer().position(1).putLong(page.getPageNum());
+                // skip the valid byte and page directory id
+                this.page.getBuffer().position(5).putLong(page.getPageNum());
             } finally {
                 this.page.unpin();
                 page.unpin();
             }
         }
 
-        // gets and loads a page with the required free space
-        private Page loadPageWithSpace(short requiredSpace) {
+        // loads the data page of an entry, taking the required space (already reserved in
+        // the free space map) from its free space
+        private Page loadPageWithSpace(short slot, short requiredSpace) {
+            long pageNum;
             this.page.pin();
             try {
                 Buffer b = this.page.getBuffer();
-                b.position(HEADER_HEADER_SIZE);
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * slot);
+                DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                dpe.freeSpace -= requiredSpace;
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * slot);
+                dpe.toBytes(b);
+                pageNum = dpe.pageNum;
+            } finally {
+                this.page.unpin();
+            }
+            return bufferManager.fetchPage(lockContext, pageNum, false);
+        }
 
-                // if we have any data page managed by this header page with enough space, return it
+        // allocates a new data page in an unused entry, with the required space taken from
+        // its free space; returns null if there is no unused entry left
+        private Page loadNewPage(short requiredSpace) {
+            this.page.pin();
+            try {
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE);
                 short unusedSlot = -1;
                 for (short i = 0; i < HEADER_ENTRY_COUNT; ++i) {
-                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
-                    if (!dpe.isValid()) {
-                        if (unusedSlot == -1) {
-                            unusedSlot = i;
-                        }
-                        continue;
-                    }
-                    if (dpe.freeSpace >= requiredSpace) {
-                        dpe.freeSpace -= requiredSpace;
-                        b.position(b.position() - DataPageEntry.SIZE);
-                        dpe.toBytes(b);
-
-                        return bufferManager.fetchPage(lockContext, dpe.pageNum, false);
+                    if (!DataPageEntry.fromBytes(b).isValid()) {
+                        unusedSlot = i;
+                        break;
                     }
                 }
+                if (unusedSlot == -1) {
+                    freeSpaceMap.setHasUnusedEntries(headerOffset, false);
+                    return null;
+                }
 
-                // if we have any unused slot in this header page, allocate a new data page
-                if (unusedSlot != -1) {
-                    Page page = bufferManager.fetchNewPage(lockContext, partNum, false);
-                    DataPageEntry dpe = new DataPageEntry(page.getPageNum(),
-                                                          (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
+                Page page = bufferManager.fetchNewPage(lockContext, partNum, false);
+                DataPageEntry dpe = new DataPageEntry(page.getPageNum(),
+                                                      (short) (EFFECTIVE_PAGE_SIZE - emptyPageMetadataSize - requiredSpace));
 
-                    b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
-                    dpe.toBytes(b);
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * unusedSlot);
+                dpe.toBytes(b);
 
-                    page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
+                page.getBuffer().putInt(pageDirectoryId).putInt(headerOffset).putShort(unusedSlot);
 
-                    ++this.numDataPages;
-                    return page;
-                }
-
-                // if we have no next header page, make one
-                if (this.nextPage == null) {
-                    this.addNewHeaderPage();
-                }
-
-                // no space on this header page, try next one
-                return this.nextPage.loadPageWithSpace(requiredSpace);
+                ++this.numDataPages;
+                freeSpaceMap.setFreeSpace(headerOffset, unusedSlot, dpe.freeSpace);
+                freeSpaceMap.setLastEntry(headerOffset, unusedSlot);
+                freeSpaceMap.setHasUnusedEntries(headerOffset, this.numDataPages < HEADER_ENTRY_COUNT);
+                return page;
             } finally {
                 this.page.unpin();
             }
@@ -381,12 +590,16 @@ public class PageDirectory implements HeapFile {
                     dpe.freeSpace = newFreeSpace;
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     dpe.toBytes(b);
+                    freeSpaceMap.setFreeSpace(headerOffset, index, newFreeSpace);
                 } else {
                     // the entire page is free; free it
                     Buffer b = this.page.getBuffer();
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * index);
                     (new DataPageEntry()).toBytes(b);
                     bufferManager.freePage(dataPage);
+                    --this.numDataPages;
+                    freeSpaceMap.setFreeSpace(headerOffset, index, (short) -1);
+                    freeSpaceMap.setHasUnusedEntries(headerOffset, true);
                 }
             } finally {
                 this.page.unpin();
@@ -398,8 +611,31 @@ public class PageDirectory implements HeapFile {
             return new HeaderPageIterator();
         }
 
+        // page numbers of the data pages managed by this header page, starting at an index
+        private List<Long> getDataPageNums(int fromIndex) {
+            List<Long> pageNums = new ArrayList<>();
+            this.page.pin();
+            try {
+                Buffer b = this.page.getBuffer();
+                b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * fromIndex);
+                for (int i = fromIndex; i < HEADER_ENTRY_COUNT; ++i) {
+                    DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                    if (dpe.isValid()) {
+                        pageNums.add(dpe.pageNum);
+                    }
+                }
+            } finally {
+                this.page.unpin();
+            }
+            return pageNums;
+        }
+
         // iterator over the data pages managed by this header page
         private class HeaderPageIterator extends IndexBacktrackingIterator<Page> {
+            // read-ahead of the remaining data pages, started when the first one is fetched
+            // (and again when the first one after a reset is fetched)
+            private ReadAhead readAhead;
+
             private HeaderPageIterator() {
                 super(HEADER_ENTRY_COUNT);
             }
@@ -416,6 +652,9 @@ public class PageDirectory implements HeapFile {
                             return i;
                         }
                     }
+                    if (this.readAhead != null) {
+                        this.readAhead.close();
+                    }
                     return HEADER_ENTRY_COUNT;
                 } finally {
                     HeaderPage.this.page.unpin();
@@ -424,6 +663,10 @@ public class PageDirectory implements HeapFile {
 
             @Override
             protected Page getValue(int index) {
+                if (this.readAhead == null) {
+                    this.readAhead = bufferManager.readAhead(getDataPageNums(index).iterator(), false);
+                }
+                this.readAhead.advance();
                 HeaderPage.this.page.pin();
                 try {
                     Buffer b = HeaderPage.this.page.getBuffer();
@@ -434,6 +677,20 @@ public class PageDirectory implements HeapFile {
                     HeaderPage.this.page.unpin();
                 }
             }
+
+            /**
+             * Backtracking moves the scan back to the marked page, so the pages read ahead
+             * of where it was are no longer next; cancel the reads that have not started,
+             * and read ahead from the marked page once the scan gets there.
+             */
+            @Override
+            public void reset() {
+                super.reset();
+                if (this.readAhead != null) {
+                    this.readAhead.close();
+                    this.readAhead = null;
+                }
+            }
         }
     }
 
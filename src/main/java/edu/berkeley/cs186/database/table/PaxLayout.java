@@ -0,0 +1,169 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.Bits;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * The layout of a data page of a table with columnar storage (TableFormat.PAX).
+ *
+ * Like a page of fixed-size records, the page begins with a bitmap of valid entries,
+ * but the values of each column are then stored together, in a "minipage" per column,
+ * instead of record by record:
+ *
+ *   +--------+---------------------+---------------------+-----+
+ *   | bitmap | column 0 of entries | column 1 of entries | ... |
+ *   |        | 0, 1, ..., n - 1    | 0, 1, ..., n - 1    |     |
+ *   +--------+---------------------+---------------------+-----+
+ *
+ * so that a scan that only needs some of the columns of a table only decodes (and
+ * touches the memory of) those columns. Values are stored as in Record#toBytes, except
+ * for booleans, which are packed one bit per value.
+ *
+ * Entries keep fixed positions within their page, so that record ids, in-place updates,
+ * and the heap file's free space accounting work as they do for fixed-size records.
+ */
+class PaxLayout {
+    private final List<Type> types;
+    // offset of each column's minipage
+    private final int[] offsets;
+    private final int bitmapSize;
+    private final int capacity;
+    private final int usedSize;
+
+    PaxLayout(int pageSize, Schema schema) {
+        this.types = schema.getFieldTypes();
+        this.capacity = computeCapacity(pageSize, types);
+        this.bitmapSize = (capacity + 7) / 8;
+        this.offsets = new int[types.size()];
+        int offset = bitmapSize;
+        for (int i = 0; i < types.size(); ++i) {
+            offsets[i] = offset;
+            offset += minipageSize(types.get(i), capacity);
+        }
+        this.usedSize = offset;
+    }
+
+    /**
+     * Computes the number of entries per page: each entry needs a bit of the bitmap,
+     * a bit per boolean column, and a byte per byte of every other column. As with
+     * fixed-size records, the number is rounded down to a multiple of 8 when possible,
+     * so that the bitmap and boolean minipages have no partial bytes, and it is capped
+     * at the page size, so that every entry accounts for at least a byte of the page's
+     * free space (see Table).
+     */
+    private static int computeCapacity(int pageSize, List<Type> types) {
+        int bitsPerEntry = 1;
+        for (Type t : types) {
+            bitsPerEntry += t.getTypeId() == TypeId.BOOL ? 1 : 8 * t.getSizeInBytes();
+        }
+        int capacity = Math.min(pageSize * 8 / bitsPerEntry, pageSize);
+        if (capacity >= 8) {
+            capacity = capacity / 8 * 8;
+        }
+        return Math.max(capacity, 1);
+    }
+
+    private static int minipageSize(Type t, int capacity) {
+        return t.getTypeId() == TypeId.BOOL ? (capacity + 7) / 8 : capacity * t.getSizeInBytes();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getBitmapSize() {
+        return bitmapSize;
+    }
+
+    /**
+     * @return number of bytes at the front of a page used by the bitmap and minipages
+     */
+    int getUsedSize() {
+        return usedSize;
+    }
+
+    /**
+     * Reads the value of one column of an entry from a page's buffer.
+     */
+    DataBox getValue(Buffer page, int column, int entryNum) {
+        Type t = types.get(column);
+        if (t.getTypeId() == TypeId.BOOL) {
+            byte b = page.get(offsets[column] + entryNum / 8);
+            return new BoolDataBox(Bits.getBit(new byte[] {b}, entryNum % 8) == Bits.Bit.ONE);
+        }
+        page.position(offsets[column] + entryNum * t.getSizeInBytes());
+        return DataBox.fromBytes(page, t);
+    }
+
+    /**
+     * Reads the value of one column of an entry from a page's buffer into a row of a
+     * batch, without boxing it (unless it is a string).
+     */
+    void readValue(Buffer page, int column, int entryNum, RecordBatch batch, int batchColumn, int row) {
+        Type t = types.get(column);
+        int offset = offsets[column] + entryNum * t.getSizeInBytes();
+        switch (t.getTypeId()) {
+        case BOOL:
+            byte b = page.get(offsets[column] + entryNum / 8);
+            batch.getBools(batchColumn)[row] = Bits.getBit(new byte[] {b}, entryNum % 8) == Bits.Bit.ONE;
+            break;
+        case INT:
+            batch.getInts(batchColumn)[row] = page.getInt(offset);
+            break;
+        case LONG:
+            batch.getLongs(batchColumn)[row] = page.getLong(offset);
+            break;
+        case FLOAT:
+            batch.getFloats(batchColumn)[row] = page.getFloat(offset);
+            break;
+        default:
+            page.position(offset);
+            batch.getValues(batchColumn)[row] = DataBox.fromBytes(page, t);
+            break;
+        }
+    }
+
+    /**
+     * Reads the value of an int column of an entry from a page's buffer.
+     */
+    int getInt(Buffer page, int column, int entryNum) {
+        return page.getInt(offsets[column] + entryNum * Integer.BYTES);
+    }
+
+    /**
+     * Reads the values of the given columns of an entry from a page's buffer, in the
+     * order of `columns`.
+     */
+    Record getRecord(Buffer page, int entryNum, List<Integer> columns) {
+        List<DataBox> values = new ArrayList<>(columns.size());
+        for (int column : columns) {
+            values.add(getValue(page, column, entryNum));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Writes every value of a record to its minipage in a page's buffer.
+     */
+    void putRecord(Buffer page, int entryNum, Record record) {
+        List<DataBox> values = record.getValues();
+        for (int column = 0; column < values.size(); ++column) {
+            Type t = types.get(column);
+            if (t.getTypeId() == TypeId.BOOL) {
+                int index = offsets[column] + entryNum / 8;
+                byte[] b = new byte[] {page.get(index)};
+                Bits.setBit(b, entryNum % 8, values.get(column).getBool() ? Bits.Bit.ONE : Bits.Bit.ZERO);
+                page.put(index, b[0]);
+            } else {
+                page.position(offsets[column] + entryNum * t.getSizeInBytes()).put(values.get(column).toBytes());
+            }
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package edu.berkeley.cs186.database.table;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
 
@@ -45,6 +48,69 @@ public class Record {
         return new Record(values);
     }
 
+    /**
+     * Serializes the record for a table with variable-length records (see
+     * TableFormat.SLOTTED): strings are stored as a 2-byte length followed by their
+     * characters without the padding, instead of always taking their declared length.
+     * Other values are stored as in toBytes.
+     */
+    public byte[] toCompactBytes(Schema schema) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(getCompactSizeInBytes());
+        for (DataBox value : values) {
+            if (value.type().getTypeId() == TypeId.STRING) {
+                byte[] bytes = trimPadding(value.toBytes());
+                byteBuffer.putShort((short) bytes.length).put(bytes);
+            } else {
+                byteBuffer.put(value.toBytes());
+            }
+        }
+        return byteBuffer.array();
+    }
+
+    /**
+     * @return size of the record's serialization by toCompactBytes
+     */
+    public int getCompactSizeInBytes() {
+        int size = 0;
+        for (DataBox value : values) {
+            if (value.type().getTypeId() == TypeId.STRING) {
+                size += Short.BYTES + trimPadding(value.toBytes()).length;
+            } else {
+                size += value.type().getSizeInBytes();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Takes a byte[] produced by toCompactBytes and decodes it into a Record.
+     *
+     * @param buf the byte array to decode
+     * @param schema the schema used for this record
+     * @return the decoded Record
+     */
+    public static Record fromCompactBytes(Buffer buf, Schema schema) {
+        List<DataBox> values = new ArrayList<>();
+        for (Type t : schema.getFieldTypes()) {
+            if (t.getTypeId() == TypeId.STRING) {
+                byte[] bytes = new byte[buf.getShort()];
+                buf.get(bytes);
+                values.add(new StringDataBox(new String(bytes, StandardCharsets.US_ASCII), t.getSizeInBytes()));
+            } else {
+                values.add(DataBox.fromBytes(buf, t));
+            }
+        }
+        return new Record(values);
+    }
+
+    private static byte[] trimPadding(byte[] bytes) {
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            --length;
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
     @Override
     public String toString() {
         List<String> strings = new ArrayList<>();
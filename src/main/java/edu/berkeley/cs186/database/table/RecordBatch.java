@@ -0,0 +1,289 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.LongDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+/**
+ * A RecordBatch holds up to CAPACITY records column by column, for batch-at-a-time
+ * execution: the values of int, long, float, and bool columns are kept in arrays of
+ * primitives (so they are neither boxed nor wrapped in a Record each), and only the
+ * values of string columns are kept as DataBoxes.
+ *
+ *   RecordBatch batch = new RecordBatch(schema);
+ *   batch.add(record);
+ *   int[] xs = batch.getInts(0);   // the values of column 0, an int column
+ *
+ * A batch also has a selection vector: the rows (indices into the column arrays) that
+ * are still part of the batch. Filtering a batch only shrinks its selection vector,
+ * rather than copying the values of the remaining rows:
+ *
+ *   for (int i = 0; i < batch.size(); ++i) {
+ *       int row = batch.getSelection()[i];
+ *       ... xs[row] ...
+ *   }
+ */
+public class RecordBatch {
+    public static final int CAPACITY = 1024;
+
+    private Schema schema;
+    // values of each column: an int[], long[], float[], or boolean[], or a DataBox[] for
+    // string columns
+    private Object[] columns;
+    // number of rows of the column arrays in use
+    private int numRows;
+    // selected rows, in increasing order
+    private int[] selection;
+    private int numSelected;
+
+    /**
+     * Creates an empty batch of records of `schema`.
+     */
+    public RecordBatch(Schema schema) {
+        this.schema = schema;
+        List<Type> types = schema.getFieldTypes();
+        this.columns = new Object[types.size()];
+        for (int i = 0; i < types.size(); ++i) {
+            switch (types.get(i).getTypeId()) {
+            case INT:
+                columns[i] = new int[CAPACITY];
+                break;
+            case LONG:
+                columns[i] = new long[CAPACITY];
+                break;
+            case FLOAT:
+                columns[i] = new float[CAPACITY];
+                break;
+            case BOOL:
+                columns[i] = new boolean[CAPACITY];
+                break;
+            default:
+                columns[i] = new DataBox[CAPACITY];
+                break;
+            }
+        }
+        this.selection = new int[CAPACITY];
+    }
+
+    private RecordBatch(Schema schema, Object[] columns, int numRows, int[] selection, int numSelected) {
+        this.schema = schema;
+        this.columns = columns;
+        this.numRows = numRows;
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return number of selected rows
+     */
+    public int size() {
+        return numSelected;
+    }
+
+    /**
+     * @return true if no more rows can be added to the batch
+     */
+    public boolean isFull() {
+        return numRows == CAPACITY;
+    }
+
+    /**
+     * @return the selection vector; only its first size() entries are valid
+     */
+    public int[] getSelection() {
+        return selection;
+    }
+
+    /**
+     * Replaces the selection vector by the first `numSelected` entries of `selection`,
+     * which must be rows that are currently selected, in increasing order.
+     */
+    public void select(int[] selection, int numSelected) {
+        this.selection = selection;
+        this.numSelected = numSelected;
+    }
+
+    public int[] getInts(int column) {
+        return (int[]) columns[column];
+    }
+
+    public long[] getLongs(int column) {
+        return (long[]) columns[column];
+    }
+
+    public float[] getFloats(int column) {
+        return (float[]) columns[column];
+    }
+
+    public boolean[] getBools(int column) {
+        return (boolean[]) columns[column];
+    }
+
+    /**
+     * @return the values of a string column
+     */
+    public DataBox[] getValues(int column) {
+        return (DataBox[]) columns[column];
+    }
+
+    /**
+     * Appends a new, selected row to the batch, whose values are then set with the
+     * set methods below.
+     *
+     * @return the index of the new row
+     */
+    public int addRow() {
+        if (isFull()) {
+            throw new IllegalStateException("record batch is full");
+        }
+        selection[numSelected++] = numRows;
+        return numRows++;
+    }
+
+    public void add(Record record) {
+        int row = addRow();
+        List<DataBox> values = record.getValues();
+        for (int i = 0; i < columns.length; ++i) {
+            setValue(i, row, values.get(i));
+        }
+    }
+
+    /**
+     * Sets a value of a row, of any column type.
+     */
+    public void setValue(int column, int row, DataBox value) {
+        switch (schema.getFieldTypes().get(column).getTypeId()) {
+        case INT:
+            getInts(column)[row] = value.getInt();
+            break;
+        case LONG:
+            getLongs(column)[row] = value.getLong();
+            break;
+        case FLOAT:
+            getFloats(column)[row] = value.getFloat();
+            break;
+        case BOOL:
+            getBools(column)[row] = value.getBool();
+            break;
+        default:
+            getValues(column)[row] = value;
+            break;
+        }
+    }
+
+    /**
+     * Gets a value of a row, of any column type, boxing it if needed.
+     */
+    public DataBox getValue(int column, int row) {
+        switch (schema.getFieldTypes().get(column).getTypeId()) {
+        case INT:
+            return new IntDataBox(getInts(column)[row]);
+        case LONG:
+            return new LongDataBox(getLongs(column)[row]);
+        case FLOAT:
+            return new FloatDataBox(getFloats(column)[row]);
+        case BOOL:
+            return new BoolDataBox(getBools(column)[row]);
+        default:
+            return getValues(column)[row];
+        }
+    }
+
+    /**
+     * @return the i-th selected row of the batch, as a record
+     */
+    public Record getRecord(int i) {
+        int row = selection[i];
+        List<DataBox> values = new ArrayList<>(columns.length);
+        for (int column = 0; column < columns.length; ++column) {
+            values.add(getValue(column, row));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Returns a batch with only the given columns (indices into the schema) of this
+     * batch, in the order of `columns`, and the same selected rows. The new batch shares
+     * its values and selection vector with this batch.
+     */
+    public RecordBatch project(List<Integer> columns) {
+        List<String> names = new ArrayList<>(columns.size());
+        List<Type> types = new ArrayList<>(columns.size());
+        Object[] projected = new Object[columns.size()];
+        for (int i = 0; i < columns.size(); ++i) {
+            int column = columns.get(i);
+            names.add(schema.getFieldNames().get(column));
+            types.add(schema.getFieldTypes().get(column));
+            projected[i] = this.columns[column];
+        }
+        return new RecordBatch(new Schema(names, types), projected, numRows, selection, numSelected);
+    }
+
+    /**
+     * Adapts an iterator over records of `schema` to an iterator over full batches of
+     * them (except for the last one).
+     */
+    public static Iterator<RecordBatch> batches(Schema schema, Iterator<Record> records) {
+        return new Iterator<RecordBatch>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public RecordBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordBatch batch = new RecordBatch(schema);
+                while (!batch.isFull() && records.hasNext()) {
+                    batch.add(records.next());
+                }
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * Adapts an iterator over batches to an iterator over the selected records of each
+     * batch.
+     */
+    public static Iterator<Record> records(Iterator<RecordBatch> batches) {
+        return new Iterator<Record>() {
+            private RecordBatch batch = null;
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (batch == null || next == batch.size()) {
+                    if (!batches.hasNext()) {
+                        return false;
+                    }
+                    batch = batches.next();
+                    next = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Record next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.getRecord(next++);
+            }
+        };
+    }
+}
@@ -1,6 +1,7 @@
 package edu.berkeley.cs186.database.table;
 
 import java.util.Iterator;
+import java.util.List;
 
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.DatabaseException;
@@ -14,14 +15,23 @@ import edu.berkeley.cs186.database.DatabaseException;
  *   recordIterator.next(); // equivalent to t.getRecord(ridIterator.next())
  *   recordIterator.next(); // equivalent to t.getRecord(ridIterator.next())
  *   recordIterator.next(); // equivalent to t.getRecord(ridIterator.next())
+ *
+ * If constructed with a list of columns, it only reads those columns of each record
+ * (see Table#getRecord(RecordId, List<Integer>)).
  */
 public class RecordIterator implements BacktrackingIterator<Record> {
     private Iterator<RecordId> ridIter;
     private Table table;
+    private List<Integer> columns;
 
     public RecordIterator(Table table, Iterator<RecordId> ridIter) {
+        this(table, ridIter, null);
+    }
+
+    public RecordIterator(Table table, Iterator<RecordId> ridIter, List<Integer> columns) {
         this.ridIter = ridIter;
         this.table = table;
+        this.columns = columns;
     }
 
     @Override
@@ -32,7 +42,10 @@ public class RecordIterator implements BacktrackingIterator<Record> {
     @Override
     public Record next() {
         try {
-            return table.getRecord(ridIter.next());
+            if (columns == null) {
+                return table.getRecord(ridIter.next());
+            }
+            return table.getRecord(ridIter.next(), columns);
         } catch (DatabaseException e) {
             throw new IllegalStateException(e);
         }
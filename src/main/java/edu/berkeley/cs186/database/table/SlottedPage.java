@@ -0,0 +1,289 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.memory.Page;
+
+/**
+ * A data page of a table with variable-length records (TableFormat.SLOTTED).
+ *
+ * The page begins with a 4-byte header (the number of slots, and the offset of the end
+ * of the record data), followed by the records, packed from the front. The slot
+ * directory grows from the back of the page towards them, 4 bytes per slot (the
+ * offset and length of the slot's entry, or an offset of 0 for an unused slot):
+ *
+ *   +--------+---------+---------+-----+-------------------+--------+--------+
+ *   | header | entry 0 | entry 2 | ... |    free space     | slot 1 | slot 0 |
+ *   +--------+---------+---------+-----+-------------------+--------+--------+
+ *
+ * A record's id is the number of its slot, which does not change as the page is
+ * compacted. The first byte of an entry is its kind:
+ *  - RECORD: a record, in its home slot.
+ *  - FORWARD: a record that grew too large for its home page and moved to another page;
+ *    the entry holds the record id of where it moved to (so that the record keeps its
+ *    original record id).
+ *  - MOVED: a record that moved here from its home slot on another page. Scans skip
+ *    these, and reach them through the home slot's FORWARD entry instead.
+ *
+ * Every entry takes at least MIN_ENTRY_SIZE bytes, so that a record can always be
+ * replaced by a FORWARD entry in place.
+ *
+ * A SlottedPage works on a copy of the page's contents; write() writes the changes
+ * back to the page.
+ */
+class SlottedPage {
+    static final int HEADER_SIZE = 4;
+    static final int SLOT_SIZE = 4;
+
+    static final byte RECORD = 0;
+    static final byte FORWARD = 1;
+    static final byte MOVED = 2;
+
+    // size of a FORWARD entry's body: a page number and an entry number
+    private static final int FORWARD_SIZE = Long.BYTES + Short.BYTES;
+    static final int MIN_ENTRY_SIZE = 1 + FORWARD_SIZE;
+
+    private final Page page;
+    private final int pageSize;
+    private final byte[] bytes;
+    private final java.nio.ByteBuffer buf;
+
+    private int numSlots;
+    private int dataEnd;
+    // total size of the entries of used slots
+    private int usedBytes;
+
+    /**
+     * Reads the contents of a page, which must be pinned. A page that has never been
+     * written to has no slots.
+     */
+    SlottedPage(Page page, int pageSize) {
+        this.page = page;
+        this.pageSize = pageSize;
+        this.bytes = new byte[pageSize];
+        page.getBuffer().get(bytes, 0, pageSize);
+        this.buf = java.nio.ByteBuffer.wrap(bytes);
+        this.numSlots = buf.getShort(0);
+        this.dataEnd = numSlots == 0 ? HEADER_SIZE : buf.getShort(2);
+        this.usedBytes = 0;
+        for (int slot = 0; slot < numSlots; ++slot) {
+            usedBytes += getLength(slot);
+        }
+    }
+
+    /**
+     * @return number of slots that can fit on a page, at most
+     */
+    static int maxSlots(int pageSize) {
+        return (pageSize - HEADER_SIZE) / (SLOT_SIZE + MIN_ENTRY_SIZE);
+    }
+
+    /**
+     * @return free space needed on a page to insert an entry with a body of `bodySize` bytes
+     */
+    static int spaceNeeded(int bodySize) {
+        return entrySize(bodySize) + SLOT_SIZE;
+    }
+
+    private static int entrySize(int bodySize) {
+        return Math.max(1 + bodySize, MIN_ENTRY_SIZE);
+    }
+
+    static byte[] forwardBody(RecordId rid) {
+        return java.nio.ByteBuffer.allocate(FORWARD_SIZE).putLong(rid.getPageNum())
+               .putShort(rid.getEntryNum()).array();
+    }
+
+    static RecordId readForward(Buffer body) {
+        return new RecordId(body.getLong(), body.getShort());
+    }
+
+    /**
+     * Reads the kind of a slot's entry directly from a page's buffer, without copying
+     * the page.
+     * @return kind of the slot's entry, or -1 if the slot is unused
+     */
+    static byte getKind(Buffer page, int pageSize, int slot) {
+        if (slot >= page.getShort(0)) {
+            return -1;
+        }
+        int offset = page.getShort(pageSize - (slot + 1) * SLOT_SIZE);
+        return offset == 0 ? -1 : page.get(offset);
+    }
+
+    /**
+     * Positions a page's buffer at the body of a used slot's entry.
+     */
+    static Buffer getBody(Buffer page, int pageSize, int slot) {
+        int offset = page.getShort(pageSize - (slot + 1) * SLOT_SIZE);
+        return page.position(offset + 1);
+    }
+
+    int getNumSlots() {
+        return numSlots;
+    }
+
+    /**
+     * @return space that entries can use, including space only usable after compaction
+     */
+    int getFreeSpace() {
+        return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - usedBytes;
+    }
+
+    /**
+     * @return kind of the slot's entry, or -1 if the slot is unused
+     */
+    byte getKind(int slot) {
+        if (slot >= numSlots || getOffset(slot) == 0) {
+            return -1;
+        }
+        return bytes[getOffset(slot)];
+    }
+
+    /**
+     * @return whether the slot holds a record in its home slot (moved or not)
+     */
+    boolean isHome(int slot) {
+        byte kind = getKind(slot);
+        return kind == RECORD || kind == FORWARD;
+    }
+
+    /**
+     * @return body of the slot's entry (which may be followed by padding)
+     */
+    Buffer getBody(int slot) {
+        return ByteBuffer.wrap(bytes, getOffset(slot) + 1, getLength(slot) - 1).slice();
+    }
+
+    /**
+     * Inserts an entry in the first unused slot (or a new slot if every slot is used),
+     * compacting the page first if needed.
+     * @return the entry's slot, or -1 if there is not enough free space
+     */
+    int insert(byte kind, byte[] body) {
+        int slot = 0;
+        while (slot < numSlots && getOffset(slot) != 0) {
+            ++slot;
+        }
+        int length = entrySize(body.length);
+        int needed = length + (slot == numSlots ? SLOT_SIZE : 0);
+        if (needed > getFreeSpace()) {
+            return -1;
+        }
+        if (slot == numSlots) {
+            ++numSlots;
+            setSlot(slot, 0, 0);
+        }
+        place(slot, kind, body, length);
+        return slot;
+    }
+
+    /**
+     * Replaces the entry of a used slot, in place if the new entry is no larger, and
+     * otherwise compacting the page if needed. A larger entry must leave at least one
+     * byte of the page free, so that the page's free space can always be reported to
+     * the heap file (which does not track full pages) after an update.
+     * @return whether there was enough free space for the new entry
+     */
+    boolean update(int slot, byte kind, byte[] body) {
+        int oldLength = getLength(slot);
+        int length = entrySize(body.length);
+        if (length <= oldLength) {
+            writeEntry(getOffset(slot), kind, body, length);
+            setSlot(slot, getOffset(slot), length);
+            usedBytes -= oldLength - length;
+            return true;
+        }
+        if (length >= getFreeSpace() + oldLength) {
+            return false;
+        }
+        setSlot(slot, 0, 0);
+        usedBytes -= oldLength;
+        place(slot, kind, body, length);
+        return true;
+    }
+
+    /**
+     * Frees a used slot, and any unused slots at the end of the slot directory.
+     */
+    void delete(int slot) {
+        usedBytes -= getLength(slot);
+        setSlot(slot, 0, 0);
+        while (numSlots > 0 && getOffset(numSlots - 1) == 0) {
+            --numSlots;
+        }
+        if (numSlots == 0) {
+            dataEnd = HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Writes the page's new contents back to it.
+     */
+    void write() {
+        buf.putShort(0, (short) numSlots);
+        buf.putShort(2, (short) dataEnd);
+        page.getBuffer().put(bytes, 0, pageSize);
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private int slotPosition(int slot) {
+        return pageSize - (slot + 1) * SLOT_SIZE;
+    }
+
+    private int getOffset(int slot) {
+        return buf.getShort(slotPosition(slot));
+    }
+
+    private int getLength(int slot) {
+        return buf.getShort(slotPosition(slot) + 2);
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        buf.putShort(slotPosition(slot), (short) offset);
+        buf.putShort(slotPosition(slot) + 2, (short) length);
+    }
+
+    private void place(int slot, byte kind, byte[] body, int length) {
+        if (dataEnd + length > slotPosition(numSlots - 1)) {
+            compact();
+        }
+        writeEntry(dataEnd, kind, body, length);
+        setSlot(slot, dataEnd, length);
+        dataEnd += length;
+        usedBytes += length;
+    }
+
+    private void writeEntry(int offset, byte kind, byte[] body, int length) {
+        bytes[offset] = kind;
+        System.arraycopy(body, 0, bytes, offset + 1, body.length);
+        Arrays.fill(bytes, offset + 1 + body.length, offset + length, (byte) 0);
+    }
+
+    /**
+     * Moves every entry to the front of the page, in order, so that all of the free
+     * space is between the entries and the slot directory.
+     */
+    private void compact() {
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = 0; slot < numSlots; ++slot) {
+            if (getOffset(slot) != 0) {
+                slots.add(slot);
+            }
+        }
+        slots.sort((a, b) -> Integer.compare(getOffset(a), getOffset(b)));
+        int offset = HEADER_SIZE;
+        for (int slot : slots) {
+            int length = getLength(slot);
+            // entries only move towards the front, so none is overwritten before it moves
+            System.arraycopy(bytes, getOffset(slot), bytes, offset, length);
+            setSlot(slot, offset, length);
+            offset += length;
+        }
+        dataEnd = offset;
+    }
+}
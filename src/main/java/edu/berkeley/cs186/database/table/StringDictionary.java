@@ -0,0 +1,255 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * The dictionaries of the dictionary-encoded string columns of a table.
+ *
+ * A table stores the values of a dictionary-encoded column as int codes instead of
+ * fixed-size strings, which saves space (and comparisons) when a column only takes a
+ * few distinct values. Each column has its own dictionary, with codes assigned in
+ * order of first use:
+ *
+ *   StringDictionary d = new StringDictionary(schema, Arrays.asList(1), heapFile, lockContext);
+ *   Schema stored = d.encodeSchema(schema);    // column 1 is now an int column
+ *   Record r = d.encode(record);               // column 1 is now a code
+ *   d.decode(r);                               // back to the original record
+ *
+ * Every record decoded from the same code gets the same StringDataBox, so that equality
+ * checks on decoded values (in selections, group by, and hash joins) are reference
+ * comparisons.
+ *
+ * The entries are persisted in their own heap file (normally in the table's partition),
+ * as rows of (column, code, value), and are read back when the dictionary is loaded
+ * again. Entries are never removed, even if no record uses them anymore. New entries
+ * are persisted in a system transaction, which commits before the entries are used,
+ * rather than in the transaction of the records that added them: once a code is handed
+ * out, records of other transactions may use it, so it must stay in the dictionary even
+ * if that transaction aborts. The new entries of a batch of records (see encodeAll)
+ * share one system transaction.
+ */
+public class StringDictionary {
+    private static final String ENTRIES_TABLE_NAME = "dictionary";
+
+    // indices of the dictionary-encoded columns of the table's schema
+    private final List<Integer> columns;
+    private final List<Type> types;
+    // the table holding the entries of every dictionary
+    private final Table entries;
+    // for each column of the table: the values of its codes, and the codes of its
+    // values (or null for columns that are not encoded)
+    private final List<List<StringDataBox>> values;
+    private final List<Map<DataBox, Integer>> codes;
+    // runs an action in a system transaction that commits as soon as the action is done
+    private final Consumer<Runnable> systemTransaction;
+
+    /**
+     * Loads the dictionaries of `columns` (indices into `schema`, which must be string
+     * columns) from `heapFile`, creating them if they do not exist yet, and persists new
+     * entries in the current transaction.
+     */
+    public StringDictionary(Schema schema, List<Integer> columns, HeapFile heapFile, LockContext lockContext) {
+        this(schema, columns, heapFile, lockContext, Runnable::run);
+    }
+
+    /**
+     * Same as above, but new entries are persisted by calling `systemTransaction` with
+     * the action that writes them, which it must run in a new transaction and commit.
+     * Writes to the entries are serialized by the dictionary itself, so `lockContext`
+     * should not be a context the transactions adding records lock (e.g. a
+     * DummyLockContext): a system transaction waiting on their locks would never finish.
+     */
+    public StringDictionary(Schema schema, List<Integer> columns, HeapFile heapFile, LockContext lockContext,
+                            Consumer<Runnable> systemTransaction) {
+        this.columns = columns;
+        this.systemTransaction = systemTransaction;
+        this.types = schema.getFieldTypes();
+        this.values = new ArrayList<>();
+        this.codes = new ArrayList<>();
+        int valueSize = 1;
+        for (int i = 0; i < types.size(); ++i) {
+            values.add(null);
+            codes.add(null);
+        }
+        for (int column : columns) {
+            if (types.get(column).getTypeId() != TypeId.STRING) {
+                String msg = String.format("Cannot dictionary-encode column %s of type %s.",
+                                           schema.getFieldNames().get(column), types.get(column));
+                throw new DatabaseException(msg);
+            }
+            values.set(column, new ArrayList<>());
+            codes.set(column, new HashMap<>());
+            valueSize = Math.max(valueSize, types.get(column).getSizeInBytes());
+        }
+
+        Schema entrySchema = new Schema(Arrays.asList("column", "code", "value"),
+                                        Arrays.asList(Type.intType(), Type.intType(), Type.stringType(valueSize)));
+        this.entries = new Table(ENTRIES_TABLE_NAME, entrySchema, heapFile, lockContext);
+        List<Record> loaded = new ArrayList<>();
+        for (Iterator<Record> iter = entries.iterator(); iter.hasNext(); ) {
+            loaded.add(iter.next());
+        }
+        loaded.sort((a, b) -> Integer.compare(a.getValues().get(1).getInt(), b.getValues().get(1).getInt()));
+        for (Record entry : loaded) {
+            int column = entry.getValues().get(0).getInt();
+            int code = entry.getValues().get(1).getInt();
+            // codes added by transactions that aborted are missing
+            while (values.get(column).size() < code) {
+                values.get(column).add(null);
+            }
+            addEntry(column, new StringDataBox(entry.getValues().get(2).getString(),
+                                               types.get(column).getSizeInBytes()));
+        }
+    }
+
+    public List<Integer> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of distinct values of a dictionary-encoded column
+     */
+    public synchronized int getNumEntries(int column) {
+        return values.get(column).size();
+    }
+
+    /**
+     * @return the schema that records are stored in: `schema`, with every dictionary-encoded
+     * column replaced by an int column
+     */
+    public Schema encodeSchema(Schema schema) {
+        List<Type> storedTypes = new ArrayList<>(schema.getFieldTypes());
+        for (int column : columns) {
+            storedTypes.set(column, Type.intType());
+        }
+        return new Schema(schema.getFieldNames(), storedTypes);
+    }
+
+    /**
+     * Replaces the values of the dictionary-encoded columns of a record by their codes,
+     * adding values that are not in their dictionary yet.
+     */
+    public Record encode(Record record) {
+        return encodeAll(Collections.singletonList(record)).get(0);
+    }
+
+    /**
+     * Same as encode, for several records at once: the values that are not in their
+     * dictionary yet are all persisted in a single system transaction. If persisting them
+     * fails, none of them are added.
+     */
+    public synchronized List<Record> encodeAll(List<Record> records) {
+        int valueSize = entries.getSchema().getFieldTypes().get(2).getSizeInBytes();
+        List<List<DataBox>> newEntries = new ArrayList<>();
+        List<Set<StringDataBox>> newValues = new ArrayList<>();
+        for (int column : columns) {
+            Set<StringDataBox> columnValues = new LinkedHashSet<>();
+            for (Record record : records) {
+                StringDataBox value = (StringDataBox) record.getValues().get(column);
+                if (!codes.get(column).containsKey(value) && columnValues.add(value)) {
+                    int code = getNumEntries(column) + columnValues.size() - 1;
+                    newEntries.add(Arrays.asList(new IntDataBox(column), new IntDataBox(code),
+                                                 new StringDataBox(value.getString(), valueSize)));
+                }
+            }
+            newValues.add(columnValues);
+        }
+        if (!newEntries.isEmpty()) {
+            // persist the entries before any record can use their codes
+            systemTransaction.accept(() -> persist(newEntries));
+            for (int i = 0; i < columns.size(); ++i) {
+                for (StringDataBox value : newValues.get(i)) {
+                    addEntry(columns.get(i), value);
+                }
+            }
+        }
+
+        List<Record> encodedRecords = new ArrayList<>();
+        for (Record record : records) {
+            List<DataBox> encoded = new ArrayList<>(record.getValues());
+            for (int column : columns) {
+                encoded.set(column, new IntDataBox(codes.get(column).get(encoded.get(column))));
+            }
+            encodedRecords.add(new Record(encoded));
+        }
+        return encodedRecords;
+    }
+
+    /**
+     * Writes entries to the entries table. If a write fails, the entries already
+     * written are deleted again before rethrowing, so that a failed batch leaves nothing
+     * behind even if its transaction cannot be rolled back (without the recovery manager,
+     * rolling back does not undo anything).
+     */
+    private void persist(List<List<DataBox>> newEntries) {
+        List<RecordId> added = new ArrayList<>();
+        try {
+            for (List<DataBox> entry : newEntries) {
+                added.add(entries.addRecord(entry));
+            }
+        } catch (RuntimeException e) {
+            for (RecordId rid : added) {
+                entries.deleteRecord(rid);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the codes of the dictionary-encoded columns of a stored record by their
+     * values.
+     */
+    public Record decode(Record record) {
+        List<DataBox> decoded = new ArrayList<>(record.getValues());
+        for (int column : columns) {
+            decoded.set(column, decode(column, decoded.get(column)));
+        }
+        return new Record(decoded);
+    }
+
+    /**
+     * Decodes a single value of a column of the table; values of columns that are not
+     * dictionary-encoded are returned as is.
+     */
+    public synchronized DataBox decode(int column, DataBox value) {
+        if (values.get(column) == null) {
+            return value;
+        }
+        return decode(column, value.getInt());
+    }
+
+    /**
+     * Decodes a code of a dictionary-encoded column.
+     */
+    public synchronized StringDataBox decode(int column, int code) {
+        if (code < 0 || code >= values.get(column).size() || values.get(column).get(code) == null) {
+            String msg = String.format("Code %d is not in the dictionary of column %d.", code, column);
+            throw new DatabaseException(msg);
+        }
+        return values.get(column).get(code);
+    }
+
+    private int addEntry(int column, StringDataBox value) {
+        int code = values.get(column).size();
+        values.get(column).add(value);
+        codes.get(column).put(value, code);
+        return code;
+    }
+}
@@ -1,15 +1,18 @@
 package edu.berkeley.cs186.database.table;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.common.iterator.*;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -85,6 +88,35 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
  * only supports locking at the page level, so in cases where tuple-level locks are
  * necessary even at the cost of an I/O per tuple, a full page record may be desirable),
  * and may be explicitly toggled on with the setFullPageRecords method.
+ *
+ * # Variable-Length Records
+ * Fixed-size records always take the declared length of their strings. Tables created
+ * with TableFormat.SLOTTED instead store records in a compact, variable-length
+ * encoding (see Record#toCompactBytes) on slotted pages (see SlottedPage): each page
+ * has a directory of slots, and a record id names a slot rather than a fixed offset,
+ * so records can be moved around within their page as it is compacted. A record that
+ * grows too large for its page on update is moved to another page, leaving a
+ * forwarding entry in its slot, so that its record id never changes.
+ *
+ * # Columnar Storage
+ * Tables created with TableFormat.PAX keep the bitmap and fixed entry positions of
+ * fixed-size records, but store the values of each column of a page together (see
+ * PaxLayout). Scans that only need some columns of such a table can read just those
+ * columns with iterator(List<Integer>), without decoding the rest of each record, or
+ * with batchIterator(List<Integer>), which decodes pages a column at a time into batches
+ * of primitive values (see RecordBatch).
+ *
+ * # Dictionary Encoding
+ * String columns can be dictionary-encoded (see StringDictionary), in which case records
+ * are stored with an int code in place of each of their values; records are encoded as
+ * they are added or updated, and decoded as they are read, so the encoding is invisible
+ * to users of the table, except for the space it saves.
+ *
+ * # Compaction
+ * Deleting records leaves pages partially empty, and a page is only freed once all of
+ * its records are deleted. getSparsePages picks the pages whose records could be moved
+ * to the free space of the table's other pages, so that the pages can be freed; see
+ * Database#vacuum.
  */
 public class Table implements BacktrackingIterable<Record> {
     // The name of the table.
@@ -93,6 +125,13 @@ public class Table implements BacktrackingIterable<Record> {
     // The schema of the table.
     private Schema schema;
 
+    // The schema of the records stored on the table's data pages, which differs from the
+    // schema of the table in its dictionary-encoded columns.
+    private Schema storedSchema;
+
+    // The dictionaries of the table's dictionary-encoded columns, or null if it has none.
+    private StringDictionary dictionary;
+
     // The page directory persisting the table.
     private HeapFile heapFile;
 
@@ -111,6 +150,15 @@ public class Table implements BacktrackingIterable<Record> {
     // The lock context of the table.
     private LockContext lockContext;
 
+    // The layout of records on the table's data pages.
+    private TableFormat format;
+
+    // The layout of the columns on each data page, for tables with TableFormat.PAX.
+    private PaxLayout paxLayout;
+
+    // The free space (in bytes) of a data page that each record accounts for.
+    private int recordSpace;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Load a table named `name` with schema `schema` from `heapFile`. `lockContext`
@@ -118,16 +166,53 @@ public class Table implements BacktrackingIterable<Record> {
      * new table will be created if none exists on the heapfile.
      */
     public Table(String name, Schema schema, HeapFile heapFile, LockContext lockContext) {
+        this(name, schema, heapFile, lockContext, TableFormat.ROW);
+    }
+
+    /**
+     * Same as above, but with the data pages of the table in `format`; a table must
+     * always be loaded with the format it was created with.
+     */
+    public Table(String name, Schema schema, HeapFile heapFile, LockContext lockContext,
+                 TableFormat format) {
+        this(name, schema, heapFile, lockContext, format, null);
+    }
+
+    /**
+     * Same as above, but with the columns of `dictionary` dictionary-encoded (or none, if
+     * `dictionary` is null); a table must always be loaded with the same dictionary.
+     */
+    public Table(String name, Schema schema, HeapFile heapFile, LockContext lockContext,
+                 TableFormat format, StringDictionary dictionary) {
         LockUtil.ensureSufficientLockHeld(lockContext, LockType.X);
 
         this.name = name;
         this.heapFile = heapFile;
         this.schema = schema;
-        this.bitmapSizeInBytes = computeBitmapSizeInBytes(heapFile.getEffectivePageSize(), schema);
-        this.numRecordsPerPage = computeNumRecordsPerPage(heapFile.getEffectivePageSize(), schema);
-        // mark everything that is not used for records as metadata
-        this.heapFile.setEmptyPageMetadataSize((short) (heapFile.getEffectivePageSize() - numRecordsPerPage
-                                               * schema.getSizeInBytes()));
+        this.format = format;
+        this.dictionary = dictionary;
+        this.storedSchema = dictionary == null ? schema : dictionary.encodeSchema(schema);
+        if (format == TableFormat.SLOTTED) {
+            this.bitmapSizeInBytes = 0;
+            this.numRecordsPerPage = SlottedPage.maxSlots(heapFile.getEffectivePageSize());
+            this.heapFile.setEmptyPageMetadataSize((short) SlottedPage.HEADER_SIZE);
+        } else if (format == TableFormat.PAX) {
+            this.paxLayout = new PaxLayout(heapFile.getEffectivePageSize(), storedSchema);
+            this.bitmapSizeInBytes = paxLayout.getBitmapSize();
+            this.numRecordsPerPage = paxLayout.getCapacity();
+            // booleans are packed into bits, so a record may take less space on the page
+            // than its size; split the page evenly between records instead
+            this.recordSpace = heapFile.getEffectivePageSize() / numRecordsPerPage;
+            this.heapFile.setEmptyPageMetadataSize((short) (heapFile.getEffectivePageSize() - numRecordsPerPage
+                                                   * recordSpace));
+        } else {
+            this.bitmapSizeInBytes = computeBitmapSizeInBytes(heapFile.getEffectivePageSize(), storedSchema);
+            this.numRecordsPerPage = computeNumRecordsPerPage(heapFile.getEffectivePageSize(), storedSchema);
+            this.recordSpace = storedSchema.getSizeInBytes();
+            // mark everything that is not used for records as metadata
+            this.heapFile.setEmptyPageMetadataSize((short) (heapFile.getEffectivePageSize() - numRecordsPerPage
+                                                   * recordSpace));
+        }
 
         this.stats = new TableStats(this.schema, this.numRecordsPerPage);
         this.numRecords = 0;
@@ -135,7 +220,7 @@ public class Table implements BacktrackingIterable<Record> {
         Iterator<Page> iter = this.heapFile.iterator();
         while(iter.hasNext()) {
             Page page = iter.next();
-            byte[] bitmap = getBitMap(page);
+            byte[] bitmap = getLiveEntries(page);
 
             for (short i = 0; i < numRecordsPerPage; ++i) {
                 if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
@@ -163,11 +248,22 @@ public class Table implements BacktrackingIterable<Record> {
         return numRecordsPerPage;
     }
 
+    public TableFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return dictionaries of the table's dictionary-encoded columns, or null if it has none
+     */
+    public StringDictionary getDictionary() {
+        return dictionary;
+    }
+
     public void setFullPageRecords() {
         numRecordsPerPage = 1;
         bitmapSizeInBytes = 0;
         heapFile.setEmptyPageMetadataSize((short) (heapFile.getEffectivePageSize() -
-                                          schema.getSizeInBytes()));
+                                          storedSchema.getSizeInBytes()));
     }
 
     public TableStats getStats() {
@@ -196,6 +292,25 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Returns a bitmap of the entries of a data page that hold records. For tables with
+     * fixed-size records, this is the page's bitmap; for slotted pages, it is computed
+     * from the slot directory (counting each moved record in its home slot only).
+     */
+    private byte[] getLiveEntries(Page page) {
+        if (format != TableFormat.SLOTTED) {
+            return getBitMap(page);
+        }
+        SlottedPage slotted = new SlottedPage(page, heapFile.getEffectivePageSize());
+        byte[] bitmap = new byte[(numRecordsPerPage + 7) / 8];
+        for (int i = 0; i < slotted.getNumSlots(); ++i) {
+            if (slotted.isHome(i)) {
+                Bits.setBit(bitmap, i, Bits.Bit.ONE);
+            }
+        }
+        return bitmap;
+    }
+
     private void writeBitMap(Page page, byte[] bitmap) {
         if (bitmapSizeInBytes > 0) {
             page.getBuffer().put(bitmap, 0, bitmapSizeInBytes);
@@ -236,8 +351,12 @@ public class Table implements BacktrackingIterable<Record> {
     }
 
     private synchronized void insertRecord(Page page, int entryNum, Record record) {
-        int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
-        page.getBuffer().position(offset).put(record.toBytes(schema));
+        if (format == TableFormat.PAX) {
+            paxLayout.putRecord(page.getBuffer(), entryNum, record);
+            return;
+        }
+        int offset = bitmapSizeInBytes + (entryNum * storedSchema.getSizeInBytes());
+        page.getBuffer().position(offset).put(record.toBytes(storedSchema));
     }
 
     /**
@@ -249,8 +368,11 @@ public class Table implements BacktrackingIterable<Record> {
      * the page with index 3 and the bitmap is updated to 0b11111000.
      */
     public synchronized RecordId addRecord(List<DataBox> values) {
-        Record record = schema.verify(values);
-        Page page = heapFile.getPageWithSpace(schema.getSizeInBytes());
+        Record record = encode(schema.verify(values));
+        if (format == TableFormat.SLOTTED) {
+            return addSlottedRecord(record);
+        }
+        Page page = heapFile.getPageWithSpace((short) recordSpace);
         try {
             // Find the first empty slot in the bitmap.
             // entry number of the first free slot and store it in entryNum; and (2) we
@@ -282,12 +404,102 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * addRecords appends many records to this table and returns the record ids of
+     * the newly added records, in order. Unlike addRecord, records are not put in
+     * free slots of existing pages: each page is taken from the heap file empty,
+     * filled with as many records as fit (bitmap included) in memory, and then written
+     * with a single write, so that every page is written (and logged) once, rather
+     * than once per record. stats and numRecords are updated once at the end.
+     *
+     * Only the last page of the batch may be left partially filled; its free space is
+     * then updated so that later calls to addRecord can fill it.
+     */
+    public List<RecordId> addRecords(Iterator<List<DataBox>> rows) {
+        List<RecordId> rids = new ArrayList<>();
+        addRecords(rows, (values, rid) -> rids.add(rid));
+        return rids;
+    }
+
+    /**
+     * Same as above, but rather than returning the record ids, calls `added` with the
+     * values and record id of each new record, a page at a time, once the page is
+     * written; only a page of rows is held in memory however many there are.
+     *
+     * @return number of records added
+     */
+    public synchronized int addRecords(Iterator<List<DataBox>> rows, BiConsumer<List<DataBox>, RecordId> added) {
+        if (format == TableFormat.SLOTTED) {
+            return addSlottedRecords(rows, added);
+        }
+        int numAdded = 0;
+        int recordSize = storedSchema.getSizeInBytes();
+        short pageSpace = (short) (numRecordsPerPage * recordSpace);
+        int imageSize = format == TableFormat.PAX ? paxLayout.getUsedSize()
+                        : bitmapSizeInBytes + numRecordsPerPage * recordSize;
+        byte[] image = new byte[imageSize];
+        Buffer imageBuffer = ByteBuffer.wrap(image);
+        while (rows.hasNext()) {
+            // Verify the page's records before allocating it, so that a bad row does
+            // not leave an empty page behind.
+            List<List<DataBox>> pageRows = new ArrayList<>();
+            List<Record> records = new ArrayList<>();
+            while (records.size() < numRecordsPerPage && rows.hasNext()) {
+                List<DataBox> values = rows.next();
+                records.add(schema.verify(values));
+                pageRows.add(values);
+            }
+            // new dictionary entries of the whole page are persisted together
+            records = encodeAll(records);
+
+            Page page = heapFile.getPageWithSpace(pageSpace);
+            try {
+                Arrays.fill(image, 0, bitmapSizeInBytes, (byte) 0);
+                for (int entryNum = 0; entryNum < records.size(); ++entryNum) {
+                    if (format == TableFormat.PAX) {
+                        paxLayout.putRecord(imageBuffer, entryNum, records.get(entryNum));
+                    } else {
+                        byte[] bytes = records.get(entryNum).toBytes(storedSchema);
+                        System.arraycopy(bytes, 0, image, bitmapSizeInBytes + entryNum * recordSize, recordSize);
+                    }
+                    if (bitmapSizeInBytes > 0) {
+                        Bits.setBit(image, entryNum, Bits.Bit.ONE);
+                    }
+                }
+                // a PAX page's minipages span the whole page, however few records it has
+                int length = format == TableFormat.PAX ? imageSize
+                             : bitmapSizeInBytes + records.size() * recordSize;
+                page.getBuffer().put(image, 0, length);
+
+                if (records.size() < numRecordsPerPage) {
+                    heapFile.updateFreeSpace(page, (short) ((numRecordsPerPage - records.size()) * recordSpace));
+                }
+            } finally {
+                page.unpin();
+            }
+            stats.addRecords(records.size());
+            numRecords += records.size();
+            numAdded += records.size();
+            for (int entryNum = 0; entryNum < pageRows.size(); ++entryNum) {
+                added.accept(pageRows.get(entryNum), new RecordId(page.getPageNum(), (short) entryNum));
+            }
+        }
+        return numAdded;
+    }
+
     /**
      * Retrieves a record from the table, throwing an exception if no such record
      * exists.
      */
     public synchronized Record getRecord(RecordId rid) {
+        return decode(getStoredRecord(rid));
+    }
+
+    private Record getStoredRecord(RecordId rid) {
         validateRecordId(rid);
+        if (format == TableFormat.SLOTTED) {
+            return getSlottedRecord(rid);
+        }
         Page page = fetchPage(rid.getPageNum());
         try {
             byte[] bitmap = getBitMap(page);
@@ -296,10 +508,54 @@ public class Table implements BacktrackingIterable<Record> {
                 throw new DatabaseException(msg);
             }
 
-            int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
+            if (format == TableFormat.PAX) {
+                return paxLayout.getRecord(page.getBuffer(), rid.getEntryNum(), allColumns());
+            }
+            int offset = bitmapSizeInBytes + (rid.getEntryNum() * storedSchema.getSizeInBytes());
             Buffer buf = page.getBuffer();
             buf.position(offset);
-            return Record.fromBytes(buf, schema);
+            return Record.fromBytes(buf, storedSchema);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Retrieves the values of some of the columns of a record (in the order of
+     * `columns`, which are indices into the schema), throwing an exception if no such
+     * record exists. Only tables with TableFormat.PAX can read the columns without
+     * reading the entire record.
+     */
+    public synchronized Record getRecord(RecordId rid, List<Integer> columns) {
+        return getStoredRecord(rid, columns);
+    }
+
+    private Record getStoredRecord(RecordId rid, List<Integer> columns) {
+        if (format != TableFormat.PAX) {
+            List<DataBox> values = decode(getStoredRecord(rid)).getValues();
+            List<DataBox> projected = new ArrayList<>(columns.size());
+            for (int column : columns) {
+                projected.add(values.get(column));
+            }
+            return new Record(projected);
+        }
+        validateRecordId(rid);
+        Page page = fetchPage(rid.getPageNum());
+        try {
+            byte[] bitmap = getBitMap(page);
+            if (Bits.getBit(bitmap, rid.getEntryNum()) == Bits.Bit.ZERO) {
+                String msg = String.format("Record %s does not exist.", rid);
+                throw new DatabaseException(msg);
+            }
+            Record record = paxLayout.getRecord(page.getBuffer(), rid.getEntryNum(), columns);
+            if (dictionary == null) {
+                return record;
+            }
+            List<DataBox> values = new ArrayList<>(columns.size());
+            for (int i = 0; i < columns.size(); ++i) {
+                values.add(dictionary.decode(columns.get(i), record.getValues().get(i)));
+            }
+            return new Record(values);
         } finally {
             page.unpin();
         }
@@ -317,7 +573,10 @@ public class Table implements BacktrackingIterable<Record> {
         LockContext pageContext = lockContext.childContext(rid.getPageNum());
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
 
-        Record newRecord = schema.verify(values);
+        Record newRecord = encode(schema.verify(values));
+        if (format == TableFormat.SLOTTED) {
+            return decode(updateSlottedRecord(rid, newRecord));
+        }
         Record oldRecord = getRecord(rid);
 
         Page page = fetchPage(rid.getPageNum());
@@ -343,6 +602,9 @@ public class Table implements BacktrackingIterable<Record> {
 
         LockUtil.ensureSufficientLockHeld(pageContext, LockType.X);
 
+        if (format == TableFormat.SLOTTED) {
+            return decode(deleteSlottedRecord(rid));
+        }
         Page page = fetchPage(rid.getPageNum());
         try {
             Record record = getRecord(rid);
@@ -354,7 +616,7 @@ public class Table implements BacktrackingIterable<Record> {
             stats.removeRecord(record);
             int numRecords = numRecordsPerPage == 1 ? 0 : numRecordsOnPage(page);
             heapFile.updateFreeSpace(page,
-                                     (short) ((numRecordsPerPage - numRecords) * schema.getSizeInBytes()));
+                                     (short) ((numRecordsPerPage - numRecords) * recordSpace));
             this.numRecords--;
 
             return record;
@@ -363,12 +625,322 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * Chooses data pages to empty when compacting the table (see Database#vacuum): the
+     * sparsest pages whose records all fit in the free space of the table's other pages,
+     * at most maxPages of them. Emptying k pages takes k pages' worth of free space across
+     * the whole table (the free space of the k pages included), so pages are taken from
+     * the sparsest up for as long as that holds.
+     *
+     * Fixed-size records always fit exactly. Variable-length records may not pack into
+     * the free space of the other pages as tightly, in which case moving them can take
+     * a new page.
+     *
+     * @return page numbers of the chosen pages, sparsest first
+     */
+    public synchronized List<Long> getSparsePages(int maxPages) {
+        int pageSpace = format == TableFormat.SLOTTED
+                        ? heapFile.getEffectivePageSize() - SlottedPage.HEADER_SIZE
+                        : numRecordsPerPage * recordSpace;
+        List<Long> pageNums = new ArrayList<>();
+        Map<Long, Integer> usedSpace = new HashMap<>();
+        long freeSpace = 0;
+        Iterator<Page> iter = heapFile.iterator();
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            try {
+                int used = format == TableFormat.SLOTTED
+                           ? pageSpace - new SlottedPage(page, heapFile.getEffectivePageSize()).getFreeSpace()
+                           : numRecordsOnPage(page) * recordSpace;
+                pageNums.add(page.getPageNum());
+                usedSpace.put(page.getPageNum(), used);
+                freeSpace += pageSpace - used;
+            } finally {
+                page.unpin();
+            }
+        }
+
+        pageNums.sort(Comparator.comparing(usedSpace::get));
+        List<Long> chosen = new ArrayList<>();
+        for (long pageNum : pageNums) {
+            if (chosen.size() == maxPages || (long) (chosen.size() + 1) * pageSpace > freeSpace) {
+                break;
+            }
+            chosen.add(pageNum);
+        }
+        return chosen;
+    }
+
+    /**
+     * Returns the records that must be moved to empty some data pages (see
+     * getSparsePages): those in their home slot on one of the pages, and, for tables with
+     * TableFormat.SLOTTED, those that moved onto one of the pages from their home slot on
+     * another page (found through the FORWARD entries of the whole table, since a moved
+     * record does not point back at its home slot).
+     *
+     * @return record ids of the records, by which they are read or deleted as usual
+     */
+    public synchronized List<RecordId> getRecordIdsOnPages(List<Long> pageNums) {
+        List<RecordId> rids = new ArrayList<>();
+        if (format != TableFormat.SLOTTED) {
+            for (long pageNum : pageNums) {
+                ridIterator(pageNum).forEachRemaining(rids::add);
+            }
+            return rids;
+        }
+        Set<Long> pages = new HashSet<>(pageNums);
+        Iterator<Page> iter = heapFile.iterator();
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            try {
+                SlottedPage slotted = new SlottedPage(page, heapFile.getEffectivePageSize());
+                for (short slot = 0; slot < slotted.getNumSlots(); ++slot) {
+                    byte kind = slotted.getKind(slot);
+                    if ((kind == SlottedPage.RECORD && pages.contains(page.getPageNum())) ||
+                            (kind == SlottedPage.FORWARD && (pages.contains(page.getPageNum()) ||
+                             pages.contains(SlottedPage.readForward(slotted.getBody(slot)).getPageNum())))) {
+                        rids.add(new RecordId(page.getPageNum(), slot));
+                    }
+                }
+            } finally {
+                page.unpin();
+            }
+        }
+        return rids;
+    }
+
     @Override
     public String toString() {
         return "Table " + name;
     }
 
+    // Slotted Pages ///////////////////////////////////////////////////////////
+    // Implementations of the modifiers above for tables with TableFormat.SLOTTED.
+
+    private RecordId addSlottedRecord(Record record) {
+        byte[] body = record.toCompactBytes(storedSchema);
+        Page page = heapFile.getPageWithSpace((short) SlottedPage.spaceNeeded(body.length));
+        try {
+            SlottedPage slotted = new SlottedPage(page, heapFile.getEffectivePageSize());
+            int slot = slotted.insert(SlottedPage.RECORD, body);
+            assert (slot >= 0);
+            slotted.write();
+            updateFreeSpace(page, slotted);
+
+            stats.addRecord(record);
+            numRecords++;
+            return new RecordId(page.getPageNum(), (short) slot);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private int addSlottedRecords(Iterator<List<DataBox>> rows, BiConsumer<List<DataBox>, RecordId> added) {
+        int numAdded = 0;
+        short pageSpace = (short) (heapFile.getEffectivePageSize() - SlottedPage.HEADER_SIZE);
+        byte[] next = null;
+        List<DataBox> nextValues = null;
+        while (next != null || rows.hasNext()) {
+            // Encode as many records as fit on an empty page before allocating it (the
+            // first record that does not fit goes on the next page).
+            List<byte[]> bodies = new ArrayList<>();
+            List<List<DataBox>> pageRows = new ArrayList<>();
+            int space = 0;
+            while (true) {
+                if (next == null) {
+                    if (!rows.hasNext()) {
+                        break;
+                    }
+                    nextValues = rows.next();
+                    next = encode(schema.verify(nextValues)).toCompactBytes(storedSchema);
+                }
+                if (space + SlottedPage.spaceNeeded(next.length) > pageSpace) {
+                    break;
+                }
+                space += SlottedPage.spaceNeeded(next.length);
+                bodies.add(next);
+                pageRows.add(nextValues);
+                next = null;
+            }
+
+            Page page = heapFile.getPageWithSpace(pageSpace);
+            List<RecordId> pageRids = new ArrayList<>(bodies.size());
+            try {
+                SlottedPage slotted = new SlottedPage(page, heapFile.getEffectivePageSize());
+                for (byte[] body : bodies) {
+                    int slot = slotted.insert(SlottedPage.RECORD, body);
+                    pageRids.add(new RecordId(page.getPageNum(), (short) slot));
+                }
+                slotted.write();
+                updateFreeSpace(page, slotted);
+            } finally {
+                page.unpin();
+            }
+            stats.addRecords(pageRids.size());
+            numRecords += pageRids.size();
+            numAdded += pageRids.size();
+            for (int i = 0; i < pageRids.size(); ++i) {
+                added.accept(pageRows.get(i), pageRids.get(i));
+            }
+        }
+        return numAdded;
+    }
+
+    private Record getSlottedRecord(RecordId rid) {
+        Page page = fetchPage(rid.getPageNum());
+        try {
+            Buffer buf = page.getBuffer();
+            int pageSize = heapFile.getEffectivePageSize();
+            byte kind = SlottedPage.getKind(buf, pageSize, rid.getEntryNum());
+            if (kind == SlottedPage.FORWARD) {
+                return getMovedRecord(SlottedPage.readForward(SlottedPage.getBody(buf, pageSize,
+                                      rid.getEntryNum())));
+            }
+            if (kind != SlottedPage.RECORD) {
+                String msg = String.format("Record %s does not exist.", rid);
+                throw new DatabaseException(msg);
+            }
+            return Record.fromCompactBytes(SlottedPage.getBody(buf, pageSize, rid.getEntryNum()), storedSchema);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private Record getMovedRecord(RecordId movedTo) {
+        Page page = fetchPage(movedTo.getPageNum());
+        try {
+            Buffer buf = page.getBuffer();
+            int pageSize = heapFile.getEffectivePageSize();
+            assert (SlottedPage.getKind(buf, pageSize, movedTo.getEntryNum()) == SlottedPage.MOVED);
+            return Record.fromCompactBytes(SlottedPage.getBody(buf, pageSize, movedTo.getEntryNum()), storedSchema);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private Record updateSlottedRecord(RecordId rid, Record newRecord) {
+        Record oldRecord = getSlottedRecord(rid);
+        byte[] body = newRecord.toCompactBytes(storedSchema);
+        int slot = rid.getEntryNum();
+
+        Page page = fetchPage(rid.getPageNum());
+        try {
+            SlottedPage home = new SlottedPage(page, heapFile.getEffectivePageSize());
+            if (home.getKind(slot) == SlottedPage.FORWARD) {
+                // The record was moved; update it where it is if it still fits there, and
+                // otherwise remove it and place it again below.
+                RecordId movedTo = SlottedPage.readForward(home.getBody(slot));
+                LockUtil.ensureSufficientLockHeld(lockContext.childContext(movedTo.getPageNum()), LockType.X);
+                Page movedPage = fetchPage(movedTo.getPageNum());
+                try {
+                    SlottedPage moved = new SlottedPage(movedPage, heapFile.getEffectivePageSize());
+                    boolean updated = moved.update(movedTo.getEntryNum(), SlottedPage.MOVED, body);
+                    if (!updated) {
+                        moved.delete(movedTo.getEntryNum());
+                    }
+                    moved.write();
+                    updateFreeSpace(movedPage, moved);
+                    if (updated) {
+                        return updatedSlottedRecord(oldRecord, newRecord);
+                    }
+                } finally {
+                    movedPage.unpin();
+                }
+            }
+
+            // Put the record in its home slot if it fits, and otherwise move it to another
+            // page (which cannot be this one, as it does not have enough space) and
+            // forward to it. A forwarding entry always fits in place of a record.
+            if (!home.update(slot, SlottedPage.RECORD, body)) {
+                RecordId movedTo = insertMovedRecord(body);
+                boolean forwarded = home.update(slot, SlottedPage.FORWARD, SlottedPage.forwardBody(movedTo));
+                assert (forwarded);
+            }
+            home.write();
+            updateFreeSpace(page, home);
+            return updatedSlottedRecord(oldRecord, newRecord);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private Record updatedSlottedRecord(Record oldRecord, Record newRecord) {
+        this.stats.removeRecord(oldRecord);
+        this.stats.addRecord(newRecord);
+        return oldRecord;
+    }
+
+    private RecordId insertMovedRecord(byte[] body) {
+        Page page = heapFile.getPageWithSpace((short) SlottedPage.spaceNeeded(body.length));
+        try {
+            SlottedPage slotted = new SlottedPage(page, heapFile.getEffectivePageSize());
+            int slot = slotted.insert(SlottedPage.MOVED, body);
+            assert (slot >= 0);
+            slotted.write();
+            updateFreeSpace(page, slotted);
+            return new RecordId(page.getPageNum(), (short) slot);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private Record deleteSlottedRecord(RecordId rid) {
+        Record record = getSlottedRecord(rid);
+        int slot = rid.getEntryNum();
+
+        Page page = fetchPage(rid.getPageNum());
+        try {
+            SlottedPage home = new SlottedPage(page, heapFile.getEffectivePageSize());
+            if (home.getKind(slot) == SlottedPage.FORWARD) {
+                RecordId movedTo = SlottedPage.readForward(home.getBody(slot));
+                LockUtil.ensureSufficientLockHeld(lockContext.childContext(movedTo.getPageNum()), LockType.X);
+                Page movedPage = fetchPage(movedTo.getPageNum());
+                try {
+                    SlottedPage moved = new SlottedPage(movedPage, heapFile.getEffectivePageSize());
+                    moved.delete(movedTo.getEntryNum());
+                    moved.write();
+                    updateFreeSpace(movedPage, moved);
+                } finally {
+                    movedPage.unpin();
+                }
+            }
+            home.delete(slot);
+            home.write();
+            updateFreeSpace(page, home);
+
+            stats.removeRecord(record);
+            this.numRecords--;
+            return record;
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Reports the free space of a slotted page to the heap file. A page with no free
+     * space at all is left alone: the heap file already accounted for the space used
+     * when the page was handed out by getPageWithSpace, and updates and deletes always
+     * leave some free space behind.
+     */
+    private void updateFreeSpace(Page page, SlottedPage slotted) {
+        if (slotted.getFreeSpace() > 0) {
+            heapFile.updateFreeSpace(page, (short) slotted.getFreeSpace());
+        }
+    }
+
     // Helpers /////////////////////////////////////////////////////////////////
+    private Record encode(Record record) {
+        return dictionary == null ? record : dictionary.encode(record);
+    }
+
+    private List<Record> encodeAll(List<Record> records) {
+        return dictionary == null ? records : dictionary.encodeAll(records);
+    }
+
+    private Record decode(Record record) {
+        return dictionary == null ? record : dictionary.decode(record);
+    }
+
     private Page fetchPage(long pageNum) {
         try {
             return heapFile.getPage(pageNum);
@@ -414,6 +986,14 @@ public class Table implements BacktrackingIterable<Record> {
         return numRecords;
     }
 
+    private List<Integer> allColumns() {
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < schema.getFieldNames().size(); ++i) {
+            columns.add(i);
+        }
+        return columns;
+    }
+
     private void validateRecordId(RecordId rid) {
         int e = rid.getEntryNum();
 
@@ -439,11 +1019,78 @@ public class Table implements BacktrackingIterable<Record> {
         return new ConcatBacktrackingIterator<>(new PageIterator(iter, false));
     }
 
+    /**
+     * Returns the page numbers of the table's data pages, so that they can be scanned
+     * separately (e.g. in parallel) with ridIterator(long). Like a full scan, this
+     * requires read access to the whole table.
+     */
+    public List<Long> getDataPageNums() {
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.S);
+        return heapFile.getDataPageNums();
+    }
+
+    /**
+     * Returns an iterator over the record ids of the records of a single data page.
+     */
+    public BacktrackingIterator<RecordId> ridIterator(long pageNum) {
+        return new RIDPageIterator(fetchPage(pageNum));
+    }
+
+    /**
+     * Reads the records of a single data page, or only some of their columns (indices
+     * into the schema, or null for all of them). Unlike getRecord, this does not hold the
+     * table's monitor, so that several pages can be read at once; the caller must hold a
+     * lock that keeps other transactions from writing to the table, such as the S lock
+     * taken by getDataPageNums().
+     */
+    public List<Record> getPageRecords(long pageNum, List<Integer> columns) {
+        List<Record> records = new ArrayList<>();
+        Iterator<RecordId> rids = ridIterator(pageNum);
+        while (rids.hasNext()) {
+            RecordId rid = rids.next();
+            records.add(columns == null ? decode(getStoredRecord(rid)) : getStoredRecord(rid, columns));
+        }
+        return records;
+    }
+
     @Override
     public BacktrackingIterator<Record> iterator() {
         return new RecordIterator(this, ridIterator());
     }
 
+    /**
+     * Returns an iterator over the values of some of the columns (indices into the
+     * schema) of every record of the table; see getRecord(RecordId, List<Integer>).
+     */
+    public BacktrackingIterator<Record> iterator(List<Integer> columns) {
+        return new RecordIterator(this, ridIterator(), columns);
+    }
+
+    /**
+     * Returns an iterator over batches of the values of some of the columns (indices into
+     * the schema, or null for all of them) of every record of the table. The pages of
+     * tables with TableFormat.PAX are decoded column by column, straight into the
+     * batches; the records of other tables are read one at a time, as by iterator().
+     */
+    public Iterator<RecordBatch> batchIterator(List<Integer> columns) {
+        if (columns == null) {
+            columns = allColumns();
+        }
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        for (int column : columns) {
+            names.add(schema.getFieldNames().get(column));
+            types.add(schema.getFieldTypes().get(column));
+        }
+        Schema batchSchema = new Schema(names, types);
+        if (format != TableFormat.PAX) {
+            return RecordBatch.batches(batchSchema, iterator(columns));
+        }
+        // Doing a scan of the table requires read access
+        LockUtil.ensureSufficientLockHeld(lockContext, LockType.S);
+        return new PaxBatchIterator(batchSchema, columns);
+    }
+
     private BacktrackingIterator<RecordId> blockRidIterator(Iterator<Page> pageIter, int maxPages) {
         Page[] block = new Page[maxPages];
         int numPages;
@@ -483,7 +1130,7 @@ public class Table implements BacktrackingIterable<Record> {
         RIDPageIterator(Page page) {
             super(numRecordsPerPage);
             this.page = page;
-            this.bitmap = getBitMap(page);
+            this.bitmap = getLiveEntries(page);
             page.unpin();
         }
 
@@ -503,6 +1150,89 @@ public class Table implements BacktrackingIterable<Record> {
         }
     }
 
+    /**
+     * PaxBatchIterator fills batches with the live entries of each data page of a table
+     * with TableFormat.PAX. Each page is copied out of the buffer manager once, and its
+     * minipages are then decoded without boxing the values of non-string columns.
+     */
+    private class PaxBatchIterator implements Iterator<RecordBatch> {
+        private Schema batchSchema;
+        private List<Integer> columns;
+        // whether each column of the batch is dictionary-encoded
+        private boolean[] encoded;
+        private Iterator<Page> pageIterator;
+        // copy of the current page, its bitmap, and the next entry of it to read
+        private Buffer page = null;
+        private byte[] bitmap = null;
+        private int nextEntry = 0;
+
+        private PaxBatchIterator(Schema batchSchema, List<Integer> columns) {
+            this.batchSchema = batchSchema;
+            this.columns = columns;
+            this.encoded = new boolean[columns.size()];
+            for (int i = 0; i < columns.size(); ++i) {
+                encoded[i] = dictionary != null && dictionary.getColumns().contains(columns.get(i));
+            }
+            this.pageIterator = heapFile.iterator();
+            fetchNextPage();
+        }
+
+        private void fetchNextPage() {
+            page = null;
+            while (page == null && pageIterator.hasNext()) {
+                Page p = pageIterator.next();
+                try {
+                    byte[] bytes = new byte[paxLayout.getUsedSize()];
+                    p.getBuffer().get(bytes, 0, bytes.length);
+                    page = ByteBuffer.wrap(bytes);
+                    bitmap = Arrays.copyOf(bytes, bitmapSizeInBytes);
+                    nextEntry = nextLiveEntry(0);
+                    if (nextEntry == numRecordsPerPage) {
+                        page = null;
+                    }
+                } finally {
+                    p.unpin();
+                }
+            }
+        }
+
+        private int nextLiveEntry(int entryNum) {
+            while (entryNum < numRecordsPerPage && Bits.getBit(bitmap, entryNum) == Bits.Bit.ZERO) {
+                ++entryNum;
+            }
+            return entryNum;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return page != null;
+        }
+
+        @Override
+        public RecordBatch next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordBatch batch = new RecordBatch(batchSchema);
+            while (page != null && !batch.isFull()) {
+                int row = batch.addRow();
+                for (int i = 0; i < columns.size(); ++i) {
+                    if (encoded[i]) {
+                        int code = paxLayout.getInt(page, columns.get(i), nextEntry);
+                        batch.getValues(i)[row] = dictionary.decode(columns.get(i), code);
+                    } else {
+                        paxLayout.readValue(page, columns.get(i), nextEntry, batch, i, row);
+                    }
+                }
+                nextEntry = nextLiveEntry(nextEntry + 1);
+                if (nextEntry == numRecordsPerPage) {
+                    fetchNextPage();
+                }
+            }
+            return batch;
+        }
+    }
+
     private class PageIterator implements BacktrackingIterator<BacktrackingIterable<RecordId>> {
         private BacktrackingIterator<Page> sourceIterator;
         private boolean pinOnFetch;
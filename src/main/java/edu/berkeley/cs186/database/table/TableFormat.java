@@ -0,0 +1,24 @@
+package edu.berkeley.cs186.database.table;
+
+/**
+ * How a table lays out records on its data pages. The format of a table is chosen when
+ * it is created, and stored with the rest of its metadata.
+ */
+public enum TableFormat {
+    // fixed-size records after a bitmap of valid records; see Table
+    ROW,
+    // variable-length records addressed through a slot directory; see SlottedPage
+    SLOTTED,
+    // fixed-size records stored column by column after a bitmap; see PaxLayout
+    PAX;
+
+    private static final TableFormat[] values = TableFormat.values();
+
+    public static TableFormat fromInt(int x) {
+        if (x < 0 || x >= values.length) {
+            String err = String.format("Unknown TableFormat ordinal %d.", x);
+            throw new IllegalArgumentException(err);
+        }
+        return values[x];
+    }
+}
@@ -75,6 +75,11 @@ public class TableStats {
         numRecords++;
     }
 
+    /** Records `count` records being added to the table at once. */
+    public void addRecords(int count) {
+        numRecords += count;
+    }
+
     public void refreshHistograms(int buckets, Table tab) {
         List<Histogram> newHistograms = new ArrayList<>();
         int count = 0;
@@ -178,6 +183,39 @@ public class TableStats {
         return new TableStats(this.tableSchema, this.numRecordsPerPage, numRecords, copyHistograms);
     }
 
+    /**
+     * Creates a new TableStats which is the statistics for the table that results
+     * from keeping only the given columns (in the given order) of this one.
+     *
+     * @param columns the indices of the columns to keep
+     * @return new TableStats based off of this and params
+     */
+    public TableStats copyWithProjection(List<Integer> columns) {
+        List<String> fieldNames = new ArrayList<>();
+        List<Type> fieldTypes = new ArrayList<>();
+        List<Histogram> copyHistograms = new ArrayList<>();
+        for (int column : columns) {
+            fieldNames.add(tableSchema.getFieldNames().get(column));
+            fieldTypes.add(tableSchema.getFieldTypes().get(column));
+            copyHistograms.add(histograms.get(column));
+        }
+        return new TableStats(new Schema(fieldNames, fieldTypes), this.numRecordsPerPage, this.numRecords,
+                              copyHistograms);
+    }
+
+    /**
+     * Creates a new TableStats which is the statistics for the table that results
+     * from keeping at most `limit` records of this one. The histograms are shared
+     * with this one, since which records are kept is unknown.
+     *
+     * @param limit the maximum number of records to keep
+     * @return new TableStats based off of this and params
+     */
+    public TableStats copyWithLimit(int limit) {
+        return new TableStats(this.tableSchema, this.numRecordsPerPage, Math.min(this.numRecords, limit),
+                              this.histograms);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
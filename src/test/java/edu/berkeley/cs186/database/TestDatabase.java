@@ -3,6 +3,10 @@ package edu.berkeley.cs186.database;
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManagerStats;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.PartitionedBufferManager;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.*;
 import edu.berkeley.cs186.database.table.Record;
@@ -17,9 +21,12 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -145,6 +152,124 @@ public class TestDatabase {
         }
     }
 
+    @Test
+    public void testReadAheadScan() {
+        db.close();
+        db = new Database(this.filename, new DatabaseOptions()
+                          .setNumMemoryPages(32)
+                          .setReadAheadDepth(8));
+        db.waitSetupFinished();
+
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < 1000; ++i) {
+                t1.getTransactionContext().addRecord(tableName, input.getValues());
+            }
+        }
+        db.getBufferManager().evictAll();
+
+        try(Transaction t1 = db.beginTransaction()) {
+            Iterator<Record> iter = t1.getTransactionContext().getRecordIterator(tableName);
+            int count = 0;
+            while (iter.hasNext()) {
+                assertEquals(input, iter.next());
+                ++count;
+            }
+            assertEquals(1000, count);
+        }
+    }
+
+    @Test
+    public void testSyncBatchSize() {
+        db.close();
+        db = new Database(this.filename, new DatabaseOptions()
+                          .setNumMemoryPages(32)
+                          .setSyncBatchSize(1000));
+        db.waitSetupFinished();
+
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < 100; ++i) {
+                t1.getTransactionContext().addRecord(tableName, input.getValues());
+            }
+        }
+        db.getBufferManager().evictAll();
+
+        // the data page writes are batched rather than each forced
+        DiskSpaceManagerImpl diskSpaceManager = (DiskSpaceManagerImpl) db.getDiskSpaceManager();
+        assertTrue(diskSpaceManager.getNumUnsyncedPages() > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSyncBatchSizeWithCustomFactory() {
+        DatabaseOptions options = new DatabaseOptions()
+                                  .setDiskSpaceManagerFactory(DiskSpaceManagerImpl::new)
+                                  .setSyncBatchSize(4);
+        options.getDiskSpaceManagerFactory();
+    }
+
+    @Test
+    public void testSeparateTempPool() {
+        db.close();
+        db = new Database(this.filename, new DatabaseOptions()
+                          .setNumMemoryPages(32)
+                          .setTempPool(8, new ClockEvictionPolicy()));
+        db.waitSetupFinished();
+
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        Record input = TestUtils.createRecordWithAllTypes();
+        String tableName = "testTable1";
+
+        try(Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, tableName);
+            for (int i = 0; i < 100; ++i) {
+                t1.getTransactionContext().addRecord(tableName, input.getValues());
+            }
+        }
+
+        // fill a temporary table much larger than its pool
+        try(Transaction t1 = db.beginTransaction()) {
+            String tempTableName = t1.getTransactionContext().createTempTable(s);
+            for (int i = 0; i < 10000; ++i) {
+                t1.getTransactionContext().addRecord(tempTableName, input.getValues());
+            }
+            Iterator<Record> iter = t1.getTransactionContext().getRecordIterator(tempTableName);
+            int count = 0;
+            while (iter.hasNext()) {
+                assertEquals(input, iter.next());
+                ++count;
+            }
+            assertEquals(10000, count);
+        }
+
+        PartitionedBufferManager bufferManager = (PartitionedBufferManager) db.getBufferManager();
+        BufferManagerStats tempStats = bufferManager.getPool(PartitionedBufferManager.PartitionClass.TEMP).getStats();
+        assertEquals(8, tempStats.getNumFrames());
+        assertTrue(tempStats.getEvictions() > 0);
+
+        // the table's pages were not evicted by the temporary table
+        long numIOs = bufferManager.getNumIOs();
+        try(Transaction t1 = db.beginTransaction()) {
+            Iterator<Record> iter = t1.getTransactionContext().getRecordIterator(tableName);
+            int count = 0;
+            while (iter.hasNext()) {
+                assertEquals(input, iter.next());
+                ++count;
+            }
+            assertEquals(100, count);
+        }
+        assertEquals(numIOs, bufferManager.getNumIOs());
+        assertEquals(0, bufferManager.getPool(PartitionedBufferManager.PartitionClass.DATA).getStats().getEvictions());
+    }
+
     @Test
     public void testREADMESample() {
         try (Transaction t1 = db.beginTransaction()) {
@@ -187,6 +312,344 @@ public class TestDatabase {
         }
     }
 
+    @Test
+    public void testInsertAll() {
+        Schema s = new Schema(
+            Arrays.asList("id", "name"),
+            Arrays.asList(Type.intType(), Type.stringType(10))
+        );
+        List<List<DataBox>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rows.add(Arrays.asList(new IntDataBox(i), new StringDataBox("row" + i, 10)));
+        }
+
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1");
+            t1.createIndex("table1", "id", false);
+            t1.insertAll("table1", rows.iterator());
+            t1.commit();
+        }
+
+        try (Transaction t2 = db.beginTransaction()) {
+            Iterator<Record> iter = t2.query("table1").execute();
+            for (List<DataBox> row : rows) {
+                assertEquals(row, iter.next().getValues());
+            }
+            assertFalse(iter.hasNext());
+
+            // the index was updated with every row
+            for (int i = 0; i < 1000; i += 97) {
+                assertTrue(t2.getTransactionContext().contains("table1", "id", new IntDataBox(i)));
+            }
+            assertFalse(t2.getTransactionContext().contains("table1", "id", new IntDataBox(1000)));
+            t2.commit();
+        }
+    }
+
+    @Test
+    public void testSlottedTable() {
+        Schema s = new Schema(
+            Arrays.asList("id", "name"),
+            Arrays.asList(Type.intType(), Type.stringType(255))
+        );
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1", TableFormat.SLOTTED);
+            t1.createIndex("table1", "id", false);
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox("row" + i, 255)));
+            }
+            // grow some records, so that they move off their pages
+            t1.update("table1", "name", d -> new StringDataBox(d.getString().trim() + String.join("",
+                      Collections.nCopies(200, "x")), 255), "id", PredicateOperator.LESS_THAN, new IntDataBox(50));
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            assertEquals(TableFormat.SLOTTED, t2.getTransactionContext().getTable("table1").getFormat());
+            assertEquals(1000, t2.getTransactionContext().getTable("table1").getNumRecords());
+
+            // the index still finds moved records by their original record ids
+            QueryPlan query = t2.query("table1");
+            query.select("id", PredicateOperator.EQUALS, new IntDataBox(7));
+            Iterator<Record> iter = query.execute();
+            assertTrue(iter.next().getValues().get(1).getString().startsWith("row7xxx"));
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testUpgradeLegacyCatalog() throws Exception {
+        // legacy-catalog holds a database written by the code before information_schema.tables
+        // had the format and dictionary columns: table1(id int, name string(20)) with rows
+        // (i, "name" + i) for i in [0, 100) and an index on id, and an empty table2
+        db.close();
+        File legacyDir = tempFolder.newFolder("legacy");
+        for (File file : new File(getClass().getResource("/legacy-catalog").toURI()).listFiles()) {
+            Files.copy(file.toPath(), new File(legacyDir, file.getName()).toPath());
+        }
+
+        // opened twice: the first time upgrades the catalog, the second reads the upgraded one
+        for (int pass = 0; pass < 2; ++pass) {
+            db = new Database(legacyDir.getAbsolutePath(), 32);
+            db.waitSetupFinished();
+            try (Transaction t = db.beginTransaction()) {
+                Table table1 = t.getTransactionContext().getTable("table1");
+                assertEquals(TableFormat.ROW, table1.getFormat());
+                assertEquals(Arrays.asList("id", "name"), table1.getSchema().getFieldNames());
+                assertEquals(100, table1.getNumRecords());
+                // plus the rows inserted by earlier passes
+                assertEquals(pass, t.getTransactionContext().getTable("table2").getNumRecords());
+
+                Iterator<Record> iter = t.getTransactionContext().lookupKey("table1", "id", new IntDataBox(42));
+                assertEquals(new StringDataBox("name42", 20), iter.next().getValues().get(1));
+                assertFalse(iter.hasNext());
+
+                // new rows are written (and found) as usual
+                t.insert("table2", Arrays.asList(new IntDataBox(pass), new StringDataBox("x", 20)));
+                assertEquals(pass + 1, t.getTransactionContext().getTable("table2").getNumRecords());
+            }
+            db.close();
+        }
+        db = new Database(this.filename, 32);
+    }
+
+    @Test
+    public void testLazyLoading() {
+        int partNum1;
+        int partNum2;
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(TestUtils.createSchemaWithTwoInts(), "table1");
+            t1.createTable(TestUtils.createSchemaWithTwoInts(), "table2");
+            t1.createIndex("table1", "int1", false);
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new IntDataBox(2 * i)));
+                t1.insert("table2", Arrays.asList(new IntDataBox(i), new IntDataBox(3 * i)));
+            }
+            partNum1 = t1.getTransactionContext().getTable("table1").getPartNum();
+            partNum2 = t1.getTransactionContext().getTable("table2").getPartNum();
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+        db.waitSetupFinished();
+
+        // opening the database does not read any table
+        BufferManagerStats stats = db.getBufferManager().getStats();
+        assertEquals(0, stats.getMisses(partNum1));
+        assertEquals(0, stats.getMisses(partNum2));
+
+        // tables and indices are opened on first access
+        try (Transaction t2 = db.beginTransaction()) {
+            Iterator<Record> iter = t2.getTransactionContext().lookupKey("table1", "int1", new IntDataBox(7));
+            assertEquals(Arrays.asList(new IntDataBox(7), new IntDataBox(14)), iter.next().getValues());
+            assertFalse(iter.hasNext());
+            assertEquals(1000, t2.getTransactionContext().getNumRecords("table1"));
+            stats = db.getBufferManager().getStats();
+            assertTrue(stats.getMisses(partNum1) > 0);
+            assertEquals(0, stats.getMisses(partNum2));
+
+            assertEquals(1000, t2.getTransactionContext().getNumRecords("table2"));
+        }
+
+        // tables that were never opened can still be dropped
+        try (Transaction t3 = db.beginTransaction()) {
+            t3.dropAllTables();
+        }
+        db.close();
+        db = new Database(this.filename, 32);
+        try (Transaction t4 = db.beginTransaction()) {
+            t4.createTable(TestUtils.createSchemaWithTwoInts(), "table1");
+            assertEquals(0, t4.getTransactionContext().getNumRecords("table1"));
+        }
+    }
+
+    @Test
+    public void testVacuum() {
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(TestUtils.createSchemaWithTwoInts(), "table1");
+            t1.createIndex("table1", "int1", false);
+            for (int i = 0; i < 5000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new IntDataBox(i % 5)));
+            }
+            // leave every data page a fifth full
+            t1.delete("table1", "int2", PredicateOperator.NOT_EQUALS, new IntDataBox(0));
+            assertEquals(11, t1.getTransactionContext().getNumDataPages("table1"));
+            // 496 records fit on a page, so 1000 records fit on 3 pages
+            assertEquals(8, t1.getTransactionContext().getTable("table1").getSparsePages(Integer.MAX_VALUE).size());
+        }
+
+        assertEquals(8, db.vacuum("table1"));
+        assertEquals(0, db.vacuum("table1"));
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            assertEquals(3, t2.getTransactionContext().getNumDataPages("table1"));
+            assertEquals(1000, t2.getTransactionContext().getNumRecords("table1"));
+            assertTrue(t2.getTransactionContext().getTable("table1").getSparsePages(Integer.MAX_VALUE).isEmpty());
+
+            // the index points at the records' new record ids
+            for (int i = 0; i < 5000; ++i) {
+                Iterator<Record> iter = t2.getTransactionContext().lookupKey("table1", "int1", new IntDataBox(i));
+                if (i % 5 == 0) {
+                    assertEquals(Arrays.asList(new IntDataBox(i), new IntDataBox(0)), iter.next().getValues());
+                }
+                assertFalse(iter.hasNext());
+            }
+            QueryPlan query = t2.query("table1");
+            query.select("int1", PredicateOperator.EQUALS, new IntDataBox(4995));
+            Iterator<Record> iter = query.execute();
+            assertEquals(Arrays.asList(new IntDataBox(4995), new IntDataBox(0)), iter.next().getValues());
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testVacuumSlotted() {
+        Schema s = new Schema(
+            Arrays.asList("id", "name"),
+            Arrays.asList(Type.intType(), Type.stringType(255))
+        );
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1", TableFormat.SLOTTED);
+            t1.createIndex("table1", "id", false);
+            for (int i = 0; i < 2000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox("row" + i, 255)));
+            }
+            // grow some records, so that they move off their (first) page onto new pages
+            t1.update("table1", "name", d -> new StringDataBox(d.getString().trim() + String.join("",
+                      Collections.nCopies(200, "x")), 255), "id", PredicateOperator.LESS_THAN, new IntDataBox(40));
+            // leave the first page full of records and FORWARD entries, and the pages the
+            // records moved to sparse, so that only the latter are emptied
+            t1.delete("table1", "id", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(200));
+            for (int i = 10; i < 30; ++i) {
+                t1.delete("table1", "id", PredicateOperator.EQUALS, new IntDataBox(i));
+            }
+        }
+
+        int numDataPages;
+        try (Transaction t2 = db.beginTransaction()) {
+            numDataPages = t2.getTransactionContext().getNumDataPages("table1");
+        }
+        int numFreed = db.vacuum("table1");
+        assertTrue(numFreed > 0);
+        assertEquals(0, db.vacuum("table1"));
+
+        try (Transaction t3 = db.beginTransaction()) {
+            Table table = t3.getTransactionContext().getTable("table1");
+            assertEquals(numDataPages - numFreed, table.getNumDataPages());
+            // the pages holding moved records were emptied too
+            assertTrue(table.getSparsePages(Integer.MAX_VALUE).isEmpty());
+            assertEquals(180, table.getNumRecords());
+
+            for (int i = 0; i < 2000; ++i) {
+                Iterator<Record> iter = t3.getTransactionContext().lookupKey("table1", "id", new IntDataBox(i));
+                if (i < 10 || (i >= 30 && i < 40)) {
+                    assertTrue(iter.next().getValues().get(1).getString().startsWith("row" + i + "xxx"));
+                } else if (i >= 40 && i < 200) {
+                    assertEquals(new StringDataBox("row" + i, 255), iter.next().getValues().get(1));
+                }
+                assertFalse(iter.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void testPaxTable() {
+        Schema s = new Schema(
+            Arrays.asList("id", "name", "score"),
+            Arrays.asList(Type.intType(), Type.stringType(20), Type.floatType())
+        );
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1", TableFormat.PAX);
+            t1.createTable(TestUtils.createSchemaWithTwoInts(), "table2");
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox("row" + i, 20),
+                          new FloatDataBox(i % 10)));
+                t1.insert("table2", Arrays.asList(new IntDataBox(i), new IntDataBox(2 * i)));
+            }
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            assertEquals(TableFormat.PAX, t2.getTransactionContext().getTable("table1").getFormat());
+
+            // only the columns the query refers to are read from table1
+            QueryPlan query = t2.query("table1");
+            query.select("score", PredicateOperator.EQUALS, new FloatDataBox(3));
+            query.project(Collections.singletonList("name"));
+            Iterator<Record> iter = query.execute();
+            assertTrue(query.getFinalOperator().toString().contains("columns: [table1.name, table1.score]"));
+            for (int i = 3; i < 1000; i += 10) {
+                assertEquals(new Record(Collections.singletonList(new StringDataBox("row" + i, 20))), iter.next());
+            }
+            assertFalse(iter.hasNext());
+
+            // ...including columns used to join with tables in other formats, which are read entirely
+            query = t2.query("table1");
+            query.join("table2", "table1.id", "table2.int1");
+            query.project(Arrays.asList("table1.name", "table2.int2"));
+            query.select("table1.id", PredicateOperator.LESS_THAN, new IntDataBox(5));
+            iter = query.execute();
+            int count = 0;
+            while (iter.hasNext()) {
+                List<DataBox> values = iter.next().getValues();
+                int id = Integer.parseInt(values.get(0).getString().trim().substring(3));
+                assertEquals(2 * id, values.get(1).getInt());
+                ++count;
+            }
+            assertEquals(5, count);
+        }
+    }
+
+    @Test
+    public void testDictionaryEncodedTable() {
+        Schema s = new Schema(
+            Arrays.asList("id", "dept"),
+            Arrays.asList(Type.intType(), Type.stringType(32))
+        );
+        String[] departments = {"EECS", "MATH", "PHYS", "CHEM"};
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1", TableFormat.ROW, Collections.singletonList("dept"));
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox(departments[i % 4], 32)));
+            }
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            Table table = t2.getTransactionContext().getTable("table1");
+            assertEquals(4, table.getDictionary().getNumEntries(1));
+            assertEquals(1000, table.getNumRecords());
+
+            QueryPlan query = t2.query("table1");
+            query.select("dept", PredicateOperator.EQUALS, new StringDataBox("MATH", 32));
+            query.count();
+            Iterator<Record> iter = query.execute();
+            assertEquals(250, iter.next().getValues().get(0).getInt());
+
+            // new values are added to the dictionary
+            t2.insert("table1", Arrays.asList(new IntDataBox(1000), new StringDataBox("ARTS", 32)));
+            assertEquals(5, table.getDictionary().getNumEntries(1));
+        }
+
+        try (Transaction t3 = db.beginTransaction()) {
+            try {
+                t3.createTable(s, "table2", TableFormat.ROW, Collections.singletonList("id"));
+                fail();
+            } catch (DatabaseException e) {
+                // only string columns can be dictionary-encoded
+            }
+        }
+    }
+
     @Test
     public void testJoinQuery() {
         try (Transaction t1 = db.beginTransaction()) {
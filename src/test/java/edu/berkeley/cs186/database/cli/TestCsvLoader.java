@@ -0,0 +1,180 @@
+package edu.berkeley.cs186.database.cli;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.LockManager;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestCsvLoader {
+    private static final String TestDir = "testCsvLoader";
+    private Database db;
+    private File testDir;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        this.testDir = tempFolder.newFolder(TestDir);
+        this.db = new Database(testDir.getAbsolutePath(), 32, new LockManager());
+        this.db.setWorkMem(4);
+        Schema s = new Schema(
+            Arrays.asList("id", "name", "score"),
+            Arrays.asList(Type.intType(), Type.stringType(10), Type.floatType())
+        );
+        try (Transaction t = db.beginTransaction()) {
+            t.createTable(s, "table1");
+            t.createTable(s, "table2");
+        }
+    }
+
+    @After
+    public void afterEach() {
+        this.db.close();
+    }
+
+    private Path writeCsv(String name, int numRows) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < numRows; ++i) {
+            lines.add(i + ", name" + i + "," + (i / 2.0));
+        }
+        Path file = new File(testDir, name).toPath();
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private void checkTable(String tableName, int numRows) {
+        try (Transaction t = db.beginTransaction()) {
+            Iterator<Record> iter = t.getTransactionContext().getRecordIterator(tableName);
+            for (int i = 0; i < numRows; ++i) {
+                assertEquals(Arrays.asList(
+                                 new IntDataBox(i),
+                                 new StringDataBox("name" + i, 10),
+                                 new FloatDataBox((float) (i / 2.0))
+                             ), iter.next().getValues());
+            }
+            assertFalse(iter.hasNext());
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        Path file = writeCsv("table1.csv", 5000);
+
+        // small chunks, so that rows are split across many chunks parsed in parallel
+        CsvLoader.LoadResult result;
+        try (CsvLoader loader = new CsvLoader(db, 4, 1000)) {
+            result = loader.load(new CsvLoader.Job("table1", file, Collections.singletonList("id")));
+        }
+        assertEquals("table1", result.getTableName());
+        assertEquals(5000, result.getNumRows());
+        assertTrue(result.getRowsPerSecond() > 0);
+
+        checkTable("table1", 5000);
+        try (Transaction t = db.beginTransaction()) {
+            for (int i = 0; i < 5000; i += 101) {
+                assertTrue(t.getTransactionContext().contains("table1", "id", new IntDataBox(i)));
+            }
+            assertFalse(t.getTransactionContext().contains("table1", "id", new IntDataBox(5000)));
+        }
+    }
+
+    @Test
+    public void testLoadChunkBoundaries() throws IOException {
+        // every chunk size from a single byte to more than a line
+        Path file = writeCsv("table1.csv", 50);
+        for (int chunkSize = 1; chunkSize <= 40; chunkSize += 3) {
+            String tableName = "chunks" + chunkSize;
+            try (Transaction t = db.beginTransaction()) {
+                t.createTable(t.getSchema("table1"), tableName);
+            }
+            try (CsvLoader loader = new CsvLoader(db, 3, chunkSize)) {
+                assertEquals(50, loader.load(new CsvLoader.Job(tableName, file)).getNumRows());
+            }
+            checkTable(tableName, 50);
+        }
+    }
+
+    @Test
+    public void testLoadAll() throws IOException {
+        Path file1 = writeCsv("table1.csv", 3000);
+        Path file2 = writeCsv("table2.csv", 2000);
+
+        List<CsvLoader.LoadResult> results;
+        try (CsvLoader loader = new CsvLoader(db, 4, 1000)) {
+            results = loader.loadAll(Arrays.asList(
+                new CsvLoader.Job("table1", file1),
+                new CsvLoader.Job("table2", file2, Collections.singletonList("id"))
+            ));
+        }
+        assertEquals(3000, results.get(0).getNumRows());
+        assertEquals(2000, results.get(1).getNumRows());
+        checkTable("table1", 3000);
+        checkTable("table2", 2000);
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testLoadBadLine() throws IOException {
+        Path file = new File(testDir, "bad.csv").toPath();
+        Files.write(file, Arrays.asList("1,a,1.0", "2,b"), StandardCharsets.UTF_8);
+        try (CsvLoader loader = new CsvLoader(db, 2)) {
+            loader.load(new CsvLoader.Job("table1", file));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testLoadFailsPartway() throws IOException {
+        // a malformed line in the last of many chunks, after the others are appended
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            lines.add(i + ", name" + i + "," + (i / 2.0));
+        }
+        lines.add("2000,bad");
+        Path file = new File(testDir, "bad.csv").toPath();
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        try (CsvLoader loader = new CsvLoader(db, 4, 1000)) {
+            try {
+                loader.load(new CsvLoader.Job("table1", file, Collections.singletonList("id")));
+                fail();
+            } catch (DatabaseException e) {
+                // expected
+            }
+
+            // the failed load's transaction ended and released its locks on table1
+            // (and afterEach finds no page left pinned)
+            Path good = writeCsv("table2.csv", 100);
+            assertEquals(100, loader.load(new CsvLoader.Job("table2", good)).getNumRows());
+        }
+        try (Transaction t = db.beginTransaction()) {
+            t.insert("table1", Arrays.asList(new IntDataBox(-1), new StringDataBox("x", 10),
+                                             new FloatDataBox(0)));
+        }
+        checkTable("table2", 100);
+    }
+}
@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.concurrency;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.function.UnaryOperator;
 
 import edu.berkeley.cs186.database.AbstractTransactionContext;
@@ -86,11 +87,36 @@ public class DummyTransactionContext extends AbstractTransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public int addRecords(String tableName, Iterator<List<DataBox>> rows) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public int getWorkMemSize() {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public int getQueryParallelism() {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public ExecutorService getExecutor() {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public void addCloseHandler(Runnable handler) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public void removeCloseHandler(Runnable handler) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public RecordId deleteRecord(String tableName, RecordId rid)  {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -106,6 +132,16 @@ public class DummyTransactionContext extends AbstractTransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public RecordIterator getRecordIterator(String tableName, List<Integer> columns) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public Iterator<RecordBatch> getBatchIterator(String tableName, List<Integer> columns) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public RecordId updateRecord(String tableName, List<DataBox> values,
                                  RecordId rid)  {
@@ -146,6 +182,11 @@ public class DummyTransactionContext extends AbstractTransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public int vacuum(String tableName, int maxPages) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public TableStats getStats(String tableName) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -10,6 +10,8 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.NoSuchElementException;
 
@@ -137,6 +139,54 @@ public class TestDiskSpaceManager {
         diskSpaceManager.close();
     }
 
+    @Test
+    public void testAllocPageExtents() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(1);
+        for (int i = 0; i < 200; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, i), diskSpaceManager.allocPage(partNum));
+        }
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 130));
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 3));
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 64));
+        for (int i = 16; i < 32; ++i) {
+            diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, i));
+        }
+
+        // allocation carries on with the current extent rather than filling holes
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 200), diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+
+        // the next extent starts at the first run of free pages long enough, skipping
+        // the single free pages
+        diskSpaceManager = getDiskSpaceManager();
+        for (int i = 16; i < 32; ++i) {
+            assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, i), diskSpaceManager.allocPage(partNum));
+        }
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 201), diskSpaceManager.allocPage(partNum));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 202), diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testAllocPageFillsHoles() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart(1);
+        // fill the first header page, except for a few single pages
+        int pagesPerHeader = DiskSpaceManager.PAGE_SIZE * 8;
+        for (int i = 0; i < pagesPerHeader; ++i) {
+            diskSpaceManager.allocPage(partNum);
+        }
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 5));
+        diskSpaceManager.freePage(DiskSpaceManager.getVirtualPageNum(partNum, 1000));
+
+        // no runs of free pages are left, so the single free pages are reused
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 5), diskSpaceManager.allocPage(partNum));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, 1000), diskSpaceManager.allocPage(partNum));
+        assertEquals(DiskSpaceManager.getVirtualPageNum(partNum, pagesPerHeader), diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+    }
+
     @Test(expected = NoSuchElementException.class)
     public void testReadBadPart() {
         diskSpaceManager = getDiskSpaceManager();
@@ -298,5 +348,150 @@ public class TestDiskSpaceManager {
         diskSpaceManager.freePart(partNum2);
         diskSpaceManager.close();
     }
-}
 
+    private static ByteBuffer getTestPage(int seed, boolean direct) {
+        ByteBuffer buf = direct ? ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE) :
+                         ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE);
+        for (int i = 0; i < DiskSpaceManager.PAGE_SIZE; ++i) {
+            buf.put((byte) ((Integer.valueOf(i + seed).hashCode() >> (seed % 3) * 8) & 0xFF));
+        }
+        return buf;
+    }
+
+    @Test
+    public void testReadWritePages() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum1 = diskSpaceManager.allocPart();
+        int partNum2 = diskSpaceManager.allocPart();
+        long[] pageNums = new long[] {
+            diskSpaceManager.allocPage(partNum1),
+            diskSpaceManager.allocPage(partNum1),
+            diskSpaceManager.allocPage(partNum1),
+            // last page under the first header page, and first page under the second,
+            // which are not adjacent in the file
+            diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum1, 32767)),
+            diskSpaceManager.allocPage(DiskSpaceManager.getVirtualPageNum(partNum1, 32768)),
+            diskSpaceManager.allocPage(partNum2),
+            diskSpaceManager.allocPage(partNum2),
+        };
+
+        // out of order, across partitions, with a page written twice
+        int[] order = new int[] { 2, 5, 0, 4, 1, 6, 3, 0 };
+        long[] writePageNums = new long[order.length];
+        ByteBuffer[] writeBufs = new ByteBuffer[order.length];
+        for (int i = 0; i < order.length; ++i) {
+            writePageNums[i] = pageNums[order[i]];
+            writeBufs[i] = getTestPage(i, i % 2 == 0);
+        }
+        diskSpaceManager.writePages(writePageNums, writeBufs);
+
+        ByteBuffer[] readBufs = new ByteBuffer[pageNums.length];
+        for (int i = 0; i < readBufs.length; ++i) {
+            readBufs[i] = i % 2 == 0 ? ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE) :
+                          ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        }
+        diskSpaceManager.readPages(pageNums, readBufs);
+
+        int[] expectedSeeds = new int[] { 7, 4, 0, 6, 3, 1, 5 };
+        for (int i = 0; i < pageNums.length; ++i) {
+            ByteBuffer expected = getTestPage(expectedSeeds[i], false);
+            expected.clear();
+            readBufs[i].clear();
+            assertEquals(expected, readBufs[i]);
+
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(pageNums[i], buf);
+            assertArrayEquals(expected.array(), buf);
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadPagesPastEndOfFile() throws IOException {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long[] pageNums = new long[] {
+            diskSpaceManager.allocPage(partNum),
+            diskSpaceManager.allocPage(partNum),
+            diskSpaceManager.allocPage(partNum),
+        };
+        diskSpaceManager.writePage(pageNums[0], getTestPage(1, false).array());
+
+        // cut off the last two pages, as if the writes zeroing them had been lost
+        try (RandomAccessFile file = new RandomAccessFile(managerRoot.resolve(Integer.toString(partNum)).toFile(),
+                                                          "rw")) {
+            file.setLength(file.length() - 2 * DiskSpaceManager.PAGE_SIZE);
+        }
+        ByteBuffer[] readBufs = new ByteBuffer[pageNums.length];
+        for (int i = 0; i < readBufs.length; ++i) {
+            readBufs[i] = getTestPage(4, false);
+        }
+        diskSpaceManager.readPages(pageNums, readBufs);
+
+        ByteBuffer expected = getTestPage(1, false);
+        expected.clear();
+        readBufs[0].clear();
+        assertEquals(expected, readBufs[0]);
+        for (int i = 1; i < readBufs.length; ++i) {
+            assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], readBufs[i].array());
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test(expected = PageException.class)
+    public void testReadPagesUnallocated() {
+        diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+        try {
+            diskSpaceManager.readPages(new long[] { pageNum, pageNum + 1 }, new ByteBuffer[] {
+                ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE), ByteBuffer.allocate(DiskSpaceManager.PAGE_SIZE)
+            });
+        } finally {
+            diskSpaceManager.close();
+        }
+    }
+
+    @Test
+    public void testDeferredSync() {
+        DiskSpaceManagerImpl diskSpaceManager = new DiskSpaceManagerImpl(managerRoot.toString(),
+                new DummyRecoveryManager(), 4);
+        int logPartNum = diskSpaceManager.allocPart(0);
+        int partNum = diskSpaceManager.allocPart();
+        long logPageNum = diskSpaceManager.allocPage(logPartNum);
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        // log page writes are forced; the one unsynced write is allocPage zero-filling the
+        // data page
+        diskSpaceManager.writePage(logPageNum, buf);
+        diskSpaceManager.writePage(logPageNum, buf);
+        assertEquals(1, diskSpaceManager.getNumUnsyncedPages());
+
+        diskSpaceManager.writePage(pageNum, buf);
+        diskSpaceManager.writePage(pageNum, buf);
+        assertEquals(3, diskSpaceManager.getNumUnsyncedPages());
+        assertEquals(0, diskSpaceManager.getNumSyncs());
+
+        // fourth write fills the batch
+        diskSpaceManager.writePage(pageNum, buf);
+        assertEquals(0, diskSpaceManager.getNumUnsyncedPages());
+        assertEquals(1, diskSpaceManager.getNumSyncs());
+        assertEquals(4, diskSpaceManager.getNumSyncedPages());
+
+        diskSpaceManager.writePage(pageNum, buf);
+        diskSpaceManager.sync();
+        assertEquals(0, diskSpaceManager.getNumUnsyncedPages());
+        assertEquals(2, diskSpaceManager.getNumSyncs());
+        assertEquals(5, diskSpaceManager.getNumSyncedPages());
+        assertEquals(4, diskSpaceManager.getMaxSyncBatchSize());
+
+        // nothing to sync
+        diskSpaceManager.sync();
+        assertEquals(2, diskSpaceManager.getNumSyncs());
+
+        diskSpaceManager.close();
+    }
+}
@@ -0,0 +1,171 @@
+package edu.berkeley.cs186.database.io;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class, SystemTests.class})
+public class TestMappedDiskSpaceManager {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path managerRoot;
+
+    @Before
+    public void beforeEach() throws IOException {
+        managerRoot = tempFolder.newFolder("mapped-dsm-test").toPath();
+    }
+
+    private DiskSpaceManager getDiskSpaceManager() {
+        return new MappedDiskSpaceManager(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    private DiskSpaceManager getUnmappedDiskSpaceManager() {
+        return new DiskSpaceManagerImpl(managerRoot.toString(), new DummyRecoveryManager());
+    }
+
+    private static byte[] getTestPage(int seed) {
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        for (int i = 0; i < buf.length; ++i) {
+            buf[i] = (byte) ((Integer.valueOf(i + seed).hashCode() >> (seed % 3) * 8) & 0xFF);
+        }
+        return buf;
+    }
+
+    @Test
+    public void testAllocPageZeroed() {
+        DiskSpaceManager diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum, buf);
+        assertArrayEquals(new byte[DiskSpaceManager.PAGE_SIZE], buf);
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadWriteAcrossExtents() {
+        DiskSpaceManager diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+
+        // enough pages to span more than one mapped extent
+        int numPages = MappedPartitionHandle.PAGES_PER_EXTENT + 10;
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+            diskSpaceManager.writePage(pageNums[i], getTestPage(i));
+        }
+        for (int i = numPages - 1; i >= 0; --i) {
+            byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(pageNums[i], buf);
+            assertArrayEquals(getTestPage(i), buf);
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadWritePages() {
+        DiskSpaceManager diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+
+        // a run of adjacent pages crossing from one extent into the next
+        int numPages = MappedPartitionHandle.PAGES_PER_EXTENT + 10;
+        long[] pageNums = new long[numPages];
+        for (int i = 0; i < numPages; ++i) {
+            pageNums[i] = diskSpaceManager.allocPage(partNum);
+        }
+        long[] runPageNums = Arrays.copyOfRange(pageNums, numPages - 20, numPages);
+        ByteBuffer[] bufs = new ByteBuffer[runPageNums.length];
+        for (int i = 0; i < bufs.length; ++i) {
+            bufs[i] = ByteBuffer.wrap(getTestPage(i));
+        }
+        diskSpaceManager.writePages(runPageNums, bufs);
+
+        for (int i = 0; i < bufs.length; ++i) {
+            bufs[i] = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        }
+        diskSpaceManager.readPages(runPageNums, bufs);
+        for (int i = 0; i < bufs.length; ++i) {
+            byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+            bufs[i].clear();
+            bufs[i].get(actual);
+            assertArrayEquals(getTestPage(i), actual);
+        }
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReadWriteDirectBuffer() {
+        DiskSpaceManager diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum = diskSpaceManager.allocPage(partNum);
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(DiskSpaceManager.PAGE_SIZE);
+        buf.put(getTestPage(1));
+        diskSpaceManager.writePage(pageNum, buf);
+
+        byte[] actual = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum, actual);
+        assertArrayEquals(getTestPage(1), actual);
+
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testOpenUnmappedFiles() {
+        DiskSpaceManager diskSpaceManager = getUnmappedDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        diskSpaceManager.writePage(pageNum1, getTestPage(1));
+        diskSpaceManager.writePage(pageNum2, getTestPage(2));
+        diskSpaceManager.close();
+
+        diskSpaceManager = getDiskSpaceManager();
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum1, buf);
+        assertArrayEquals(getTestPage(1), buf);
+        diskSpaceManager.readPage(pageNum2, buf);
+        assertArrayEquals(getTestPage(2), buf);
+        assertFalse(diskSpaceManager.pageAllocated(pageNum2 + 1));
+        assertEquals(pageNum2 + 1, diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+    }
+
+    @Test
+    public void testReopenWithUnmapped() {
+        DiskSpaceManager diskSpaceManager = getDiskSpaceManager();
+        int partNum = diskSpaceManager.allocPart();
+        long pageNum1 = diskSpaceManager.allocPage(partNum);
+        long pageNum2 = diskSpaceManager.allocPage(partNum);
+        diskSpaceManager.writePage(pageNum1, getTestPage(1));
+        diskSpaceManager.writePage(pageNum2, getTestPage(2));
+        diskSpaceManager.freePage(pageNum1);
+        diskSpaceManager.close();
+
+        diskSpaceManager = getUnmappedDiskSpaceManager();
+        byte[] buf = new byte[DiskSpaceManager.PAGE_SIZE];
+        assertFalse(diskSpaceManager.pageAllocated(pageNum1));
+        diskSpaceManager.readPage(pageNum2, buf);
+        assertArrayEquals(getTestPage(2), buf);
+        // a single freed page is skipped in favour of the run of free pages after page 2
+        assertEquals(pageNum2 + 1, diskSpaceManager.allocPage(partNum));
+        diskSpaceManager.close();
+    }
+}
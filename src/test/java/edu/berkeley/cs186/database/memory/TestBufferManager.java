@@ -12,7 +12,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -210,6 +215,37 @@ public class TestBufferManager {
         assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void testOffHeapReload() {
+        bufferManager.close();
+        bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 5,
+                                              new ClockEvictionPolicy(), true);
+        int partNum = diskSpaceManager.allocPart();
+
+        byte[] expected = new byte[] { (byte) 0xDE, (byte) 0xAD, (byte) 0xBE, (byte) 0xEF };
+        byte[] actual = new byte[4];
+
+        BufferFrame frame1 = bufferManager.fetchNewPageFrame(partNum, false);
+        frame1.writeBytes((short) 67, (short) 4, expected);
+        frame1.setPageLSN(1234L);
+        frame1.unpin();
+
+        // force a eviction
+        for (int i = 0; i < 9; ++i) {
+            bufferManager.fetchNewPageFrame(partNum, false).unpin();
+        }
+
+        assertFalse(frame1.isValid());
+
+        // reload page
+        frame1 = bufferManager.fetchPageFrame(frame1.getPageNum(), false);
+        frame1.readBytes((short) 67, (short) 4, actual);
+        assertEquals(1234L, frame1.getPageLSN());
+        frame1.unpin();
+
+        assertArrayEquals(expected, actual);
+    }
+
     @Test
     public void testRequestValidFrame() {
         int partNum = diskSpaceManager.allocPart();
@@ -320,6 +356,273 @@ public class TestBufferManager {
         assertTrue(frame7.isValid());
     }
 
+    @Test
+    public void testConcurrentHits() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart();
+
+        long[] pageNums = new long[5];
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(partNum, false);
+            frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+        long numIOs = bufferManager.getNumIOs();
+
+        List<Throwable> errors = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                try {
+                    byte[] actual = new byte[1];
+                    for (int i = 0; i < 1000; ++i) {
+                        int j = (i + offset) % pageNums.length;
+                        BufferFrame frame = bufferManager.fetchPageFrame(pageNums[j], false);
+                        try {
+                            frame.readBytes((short) 0, (short) 1, actual);
+                            assertEquals(pageNums[j], frame.getPageNum());
+                            assertEquals((byte) j, actual[0]);
+                        } finally {
+                            frame.unpin();
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Collections.emptyList(), errors);
+        // every fetch was a hit, so nothing should have been read from disk
+        assertEquals(numIOs, bufferManager.getNumIOs());
+    }
+
+    @Test
+    public void testReadAhead() throws InterruptedException {
+        BufferManager readAheadManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(),
+                16, new ClockEvictionPolicy(), false, 4);
+        try {
+            int partNum = diskSpaceManager.allocPart();
+            List<Long> pageNums = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                BufferFrame frame = readAheadManager.fetchNewPageFrame(partNum, false);
+                frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+                pageNums.add(frame.getPageNum());
+                frame.unpin();
+            }
+            // pages freed after the scan declared them are skipped
+            BufferFrame freed = readAheadManager.fetchNewPageFrame(partNum, false);
+            long freedPageNum = freed.getPageNum();
+            readAheadManager.freePage(new Page(new DummyLockContext(), freed));
+            pageNums.add(4, freedPageNum);
+            readAheadManager.evictAll();
+            long numIOs = readAheadManager.getNumIOs();
+
+            ReadAhead readAhead = readAheadManager.readAhead(pageNums.iterator(), false);
+            readAhead.advance();
+            // the second page should be loaded without the scan fetching it
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!isLoaded(readAheadManager, pageNums.get(1)) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(isLoaded(readAheadManager, pageNums.get(1)));
+
+            byte[] actual = new byte[1];
+            for (int i = 0; i < pageNums.size(); ++i) {
+                if (i != 0) {
+                    readAhead.advance();
+                }
+                if (pageNums.get(i) == freedPageNum) {
+                    continue;
+                }
+                BufferFrame frame = readAheadManager.fetchPageFrame(pageNums.get(i), false);
+                frame.readBytes((short) 0, (short) 1, actual);
+                frame.unpin();
+                assertEquals((byte) (i < 4 ? i : i - 1), actual[0]);
+            }
+            readAhead.close();
+            // each page was read once, by either the scan or the read-ahead thread
+            assertEquals(numIOs + 8, readAheadManager.getNumIOs());
+        } finally {
+            readAheadManager.close();
+        }
+    }
+
+    @Test
+    public void testReadAheadDisabled() {
+        assertSame(ReadAhead.NONE, bufferManager.readAhead(Collections.singletonList(0L).iterator(), false));
+    }
+
+    @Test
+    public void testPageCleaner() throws InterruptedException {
+        Set<Long> flushedLSNs = Collections.synchronizedSet(new HashSet<>());
+        BufferManagerImpl cleanedManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager() {
+            @Override
+            public void pageFlushHook(long pageLSN) {
+                flushedLSNs.add(pageLSN);
+            }
+        }, 8, new ClockEvictionPolicy(), false, 0, 0.5);
+        BufferFrame pinned = null;
+        try {
+            int partNum = diskSpaceManager.allocPart();
+            List<BufferFrame> frames = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                BufferFrame frame = cleanedManager.fetchNewPageFrame(partNum, false);
+                frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+                frame.setPageLSN(100 + i);
+                frames.add(frame);
+            }
+            pinned = frames.get(0);
+            for (BufferFrame frame : frames.subList(1, frames.size())) {
+                frame.unpin();
+            }
+
+            long deadline = System.currentTimeMillis() + 10000;
+            while (cleanedManager.getNumCleanedPages() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(4, cleanedManager.getNumCleanedPages());
+            assertEquals(0.5, cleanedManager.getDirtyPageRatio(), 1e-9);
+            assertTrue(cleanedManager.getCleanerWriteRate() > 0);
+
+            // the pinned page is skipped, and the rest are written in page number order
+            Set<Long> dirtyPageNums = new HashSet<>();
+            cleanedManager.iterPageNums((pageNum, dirty) -> {
+                if (dirty) {
+                    dirtyPageNums.add(pageNum);
+                }
+            });
+            Set<Long> expectedDirty = new HashSet<>();
+            for (BufferFrame frame : Arrays.asList(frames.get(0), frames.get(5), frames.get(6), frames.get(7))) {
+                expectedDirty.add(frame.getPageNum());
+            }
+            assertEquals(expectedDirty, dirtyPageNums);
+
+            // the log was flushed up to the written pages' LSNs first
+            assertEquals(104L, (long) Collections.max(flushedLSNs));
+            byte[] page = new byte[DiskSpaceManager.PAGE_SIZE];
+            diskSpaceManager.readPage(frames.get(3).getPageNum(), page);
+            assertEquals(3, page[BufferManager.RESERVED_SPACE]);
+        } finally {
+            if (pinned != null) {
+                pinned.unpin();
+            }
+            cleanedManager.close();
+        }
+    }
+
+    private static boolean isLoaded(BufferManager bufferManager, long pageNum) {
+        boolean[] loaded = new boolean[1];
+        bufferManager.iterPageNums((loadedPageNum, dirty) -> loaded[0] |= loadedPageNum == pageNum);
+        return loaded[0];
+    }
+
+    @Test
+    public void testStats() {
+        int partNum1 = diskSpaceManager.allocPart();
+        int partNum2 = diskSpaceManager.allocPart();
+
+        // fill the buffer with dirty pages: 3 in the first partition, 2 in the second
+        long[] pageNums = new long[5];
+        for (int i = 0; i < pageNums.length; ++i) {
+            BufferFrame frame = bufferManager.fetchNewPageFrame(i < 3 ? partNum1 : partNum2, false);
+            frame.writeBytes((short) 0, (short) 1, new byte[] { (byte) i });
+            pageNums[i] = frame.getPageNum();
+            frame.unpin();
+        }
+        bufferManager.fetchPageFrame(pageNums[0], false).unpin();
+        bufferManager.fetchPageFrame(pageNums[3], false).unpin();
+        BufferFrame pinned = bufferManager.fetchPageFrame(pageNums[4], false);
+
+        BufferManagerStats stats = bufferManager.getStats();
+        assertEquals(new HashSet<>(Arrays.asList(partNum1, partNum2)), stats.getPartitions());
+        assertEquals(1, stats.getHits(partNum1));
+        assertEquals(3, stats.getMisses(partNum1));
+        assertEquals(2, stats.getHits(partNum2));
+        assertEquals(2, stats.getMisses(partNum2));
+        assertEquals(3.0 / 8, stats.getHitRatio(), 1e-9);
+        assertEquals(0, stats.getEvictions());
+        assertEquals(5, stats.getNumFrames());
+        assertEquals(1, stats.getPinnedFrames());
+        assertEquals(5, stats.getDirtyFrames());
+        assertEquals(5, stats.getReadLatency().getCount());
+        assertEquals(0, stats.getWriteLatency().getCount());
+        pinned.unpin();
+
+        // every frame is dirty, so the next miss evicts a dirty frame
+        bufferManager.fetchNewPageFrame(partNum1, false).unpin();
+        stats = bufferManager.getStats();
+        assertEquals(0, stats.getCleanEvictions());
+        assertEquals(1, stats.getDirtyEvictions());
+        assertEquals(4, stats.getDirtyFrames());
+        assertEquals(0, stats.getPinnedFrames());
+        assertEquals(1, stats.getWriteLatency().getCount());
+
+        // explicit evictions are not counted; once everything is written back, the next
+        // evictions are of clean frames
+        bufferManager.evictAll();
+        for (int i = 0; i < 6; ++i) {
+            bufferManager.fetchNewPageFrame(partNum2, false).unpin();
+        }
+        stats = bufferManager.getStats();
+        assertEquals(1, stats.getCleanEvictions());
+        assertEquals(1, stats.getDirtyEvictions());
+        assertEquals(0, stats.getDirtyFrames());
+        assertEquals(8, stats.getMisses(partNum2));
+        assertEquals(12, stats.getReadLatency().getCount());
+        // evictAll writes its 4 dirty pages back in one batch
+        assertEquals(2, stats.getWriteLatency().getCount());
+    }
+
+    @Test
+    public void testPinWaitStats() throws InterruptedException {
+        int partNum = diskSpaceManager.allocPart();
+        BufferFrame frame = bufferManager.fetchNewPageFrame(partNum, false);
+        assertEquals(0, bufferManager.getStats().getPinWaits());
+
+        Thread thread = new Thread(() -> bufferManager.fetchPageFrame(frame.getPageNum(), false).unpin());
+        thread.start();
+        Thread.sleep(50);
+        frame.unpin();
+        thread.join();
+
+        BufferManagerStats stats = bufferManager.getStats();
+        assertEquals(1, stats.getPinWaits());
+        assertTrue(stats.getPinWaitNanos() > 0);
+        assertEquals(1, stats.getHits(partNum));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMicros(50));
+        histogram.record(500);        // < 1us
+        histogram.record(3_000);      // [2us, 4us)
+        histogram.record(3_500);      // [2us, 4us)
+        histogram.record(1_000_000);  // [512us, 1024us)
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(2, histogram.getBucketCount(2));
+        assertEquals(1, histogram.getBucketCount(10));
+        assertEquals(1, histogram.getPercentileMicros(25));
+        assertEquals(4, histogram.getPercentileMicros(50));
+        assertEquals(1024, histogram.getPercentileMicros(100));
+        assertEquals(1_007_000 / 1000.0 / 4, histogram.getMeanMicros(), 1e-9);
+
+        LatencyHistogram copy = histogram.copy();
+        histogram.record(0);
+        assertEquals(4, copy.getCount());
+    }
+
     @Test(expected = PageException.class)
     public void testMissingPart() {
         bufferManager.fetchPageFrame(DiskSpaceManager.getVirtualPageNum(0, 0), false);
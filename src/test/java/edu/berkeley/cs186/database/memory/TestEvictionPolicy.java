@@ -2,10 +2,18 @@ package edu.berkeley.cs186.database.memory;
 
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
 
@@ -32,7 +40,7 @@ public class TestEvictionPolicy {
 
         @Override
         long getPageNum() {
-            return 0;
+            return index;
         }
 
         @Override
@@ -193,4 +201,332 @@ public class TestEvictionPolicy {
         assertEquals(frames[2], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[2], placeholderFrames[3]}));
         policy.cleanup(frames[2]);
     }
+
+    @Test
+    public void testTwoQueuePolicy() {
+        EvictionPolicy policy = new TwoQueueEvictionPolicy();
+        policy.init(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+        policy.init(frames[2]); policy.hit(frames[2]);
+        policy.init(frames[3]); policy.hit(frames[3]);
+
+        // everything is in A1in, which is evicted in FIFO order
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[0]);
+
+        // page 0 is remembered in A1out, so it is hot when loaded again
+        policy.init(frames[0]); policy.hit(frames[0]);
+
+        // hits do not move frames in A1in
+        policy.hit(frames[1]);
+
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[1]);
+
+        policy.init(frames[4]); policy.hit(frames[4]);
+        frames[2].pin();
+
+        assertEquals(frames[3], policy.evict(new BufferFrame[] {frames[0], frames[4], frames[2], frames[3]}));
+        policy.cleanup(frames[3]);
+
+        frames[2].unpin();
+        policy.init(frames[5]); policy.hit(frames[5]);
+
+        assertEquals(frames[2], policy.evict(new BufferFrame[] {frames[0], frames[4], frames[2], frames[5]}));
+        policy.cleanup(frames[2]);
+
+        // page 1 has since been forgotten by A1out
+        policy.init(frames[1]); policy.hit(frames[1]);
+
+        assertEquals(frames[4], policy.evict(new BufferFrame[] {frames[0], frames[4], frames[1], frames[5]}));
+        policy.cleanup(frames[4]);
+        assertEquals(frames[5], policy.evict(new BufferFrame[] {frames[0], placeholderFrames[1], frames[1], frames[5]}));
+        policy.cleanup(frames[5]);
+
+        // A1in is down to its target size, so the hot frame goes next
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], placeholderFrames[1], frames[1], placeholderFrames[3]}));
+        policy.cleanup(frames[0]);
+
+        frames[1].pin();
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[1], placeholderFrames[3]});
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        frames[1].unpin();
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[1], placeholderFrames[3]}));
+        policy.cleanup(frames[1]);
+    }
+
+    @Test
+    public void testTwoQueueRejectedVictim() {
+        EvictionPolicy policy = new TwoQueueEvictionPolicy();
+        for (BufferFrame frame : frames) {
+            policy.init(frame);
+        }
+
+        // page 0 is reloaded from A1out into Am
+        assertEquals(frames[0], policy.evict(frames));
+        policy.cleanup(frames[0]);
+        BufferFrame hotFrame = new TestFrame(0);
+        policy.init(hotFrame);
+
+        for (int i = 1; i <= 3; ++i) {
+            assertEquals(frames[i], policy.evict(frames));
+            policy.cleanup(frames[i]);
+        }
+        // the buffer manager does not evict frame 4 (e.g. it was pinned in the meantime),
+        // so page 4 must not take up a place in A1out
+        assertEquals(frames[4], policy.evict(frames));
+        frames[4].pin();
+        assertEquals(frames[5], policy.evict(frames));
+        policy.cleanup(frames[5]);
+
+        // page 1 is still remembered in A1out, so it is reloaded into Am, behind page 0
+        BufferFrame reloadedFrame = new TestFrame(1);
+        policy.init(reloadedFrame);
+        frames[6].pin();
+        frames[7].pin();
+        assertEquals(hotFrame, policy.evict(frames));
+        policy.cleanup(hotFrame);
+        assertEquals(reloadedFrame, policy.evict(frames));
+
+        frames[4].unpin();
+        frames[6].unpin();
+        frames[7].unpin();
+    }
+
+    @Test
+    public void testLRUKPolicy() {
+        EvictionPolicy policy = new LRUKEvictionPolicy(2);
+        policy.init(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+        policy.hit(frames[0]);
+        policy.init(frames[2]); policy.hit(frames[2]); policy.hit(frames[2]);
+        policy.init(frames[3]); policy.hit(frames[3]);
+
+        // frame 0 is the only frame referenced twice (back to back hits are one reference)
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[1]);
+
+        // page 1's history is retained across eviction
+        policy.init(frames[1]); policy.hit(frames[1]);
+
+        assertEquals(frames[2], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[2]);
+
+        policy.init(frames[4]); policy.hit(frames[4]);
+        frames[3].pin();
+
+        assertEquals(frames[4], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[4], frames[3]}));
+        policy.cleanup(frames[4]);
+
+        frames[3].unpin();
+        policy.init(frames[5]); policy.hit(frames[5]);
+        policy.hit(frames[3]);
+        policy.hit(frames[5]);
+
+        // all frames referenced twice; the one with the oldest second-to-last reference goes
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[5], frames[3]}));
+        policy.cleanup(frames[0]);
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {placeholderFrames[0], frames[1], frames[5], frames[3]}));
+        policy.cleanup(frames[1]);
+
+        frames[3].pin();
+        frames[5].pin();
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[5], frames[3]});
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        frames[3].unpin();
+        assertEquals(frames[3], policy.evict(new BufferFrame[] {placeholderFrames[0], placeholderFrames[1], frames[5], frames[3]}));
+        policy.cleanup(frames[3]);
+        frames[5].unpin();
+    }
+
+    @Test
+    public void testARCPolicy() {
+        EvictionPolicy policy = new ARCEvictionPolicy();
+        policy.init(frames[0]); policy.hit(frames[0]);
+        policy.init(frames[1]); policy.hit(frames[1]);
+        policy.init(frames[2]); policy.hit(frames[2]);
+        policy.init(frames[3]); policy.hit(frames[3]);
+
+        // frame 1 is referenced again and moves to T2
+        policy.hit(frames[1]); policy.hit(frames[1]);
+
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[0], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[0]);
+
+        policy.init(frames[4]); policy.hit(frames[4]);
+
+        assertEquals(frames[2], policy.evict(new BufferFrame[] {frames[4], frames[1], frames[2], frames[3]}));
+        policy.cleanup(frames[2]);
+
+        // page 0 is remembered in B1: reloading it grows T1's target size to 1
+        policy.init(frames[0]); policy.hit(frames[0]);
+
+        assertEquals(frames[3], policy.evict(new BufferFrame[] {frames[4], frames[1], frames[0], frames[3]}));
+        policy.cleanup(frames[3]);
+
+        policy.init(frames[5]); policy.hit(frames[5]);
+        policy.hit(frames[4]);
+
+        // T1 is within its target size, so the LRU frame of T2 goes
+        assertEquals(frames[1], policy.evict(new BufferFrame[] {frames[4], frames[1], frames[0], frames[5]}));
+        policy.cleanup(frames[1]);
+
+        policy.init(frames[6]); policy.hit(frames[6]);
+        frames[5].pin();
+        frames[6].pin();
+
+        // T1's frames are pinned, so T2 is used
+        assertEquals(frames[0], policy.evict(new BufferFrame[] {frames[4], frames[6], frames[0], frames[5]}));
+        policy.cleanup(frames[0]);
+
+        frames[4].pin();
+        boolean exceptionThrown = false;
+        try {
+            policy.evict(new BufferFrame[] {frames[4], frames[6], placeholderFrames[2], frames[5]});
+        } catch (IllegalStateException e) {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+
+        frames[5].unpin();
+        assertEquals(frames[5], policy.evict(new BufferFrame[] {frames[4], frames[6], placeholderFrames[2], frames[5]}));
+        policy.cleanup(frames[5]);
+        frames[4].unpin();
+        frames[6].unpin();
+    }
+
+    /**
+     * Hits frames 0-3 (which are pinned) from several threads, while frames 4-7 are
+     * evicted and reloaded, as the buffer manager does (hits are not serialized with
+     * each other or with evictions), and checks that every frame can still be evicted
+     * exactly once afterwards.
+     */
+    private void checkConcurrentHits(EvictionPolicy policy) throws InterruptedException {
+        for (BufferFrame frame : frames) {
+            policy.init(frame);
+        }
+        for (int i = 0; i < 4; ++i) {
+            frames[i].pin();
+        }
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; ++i) {
+                    policy.hit(frames[random.nextInt(4)]);
+                }
+            });
+            threads[t].start();
+        }
+        for (int i = 0; i < 20000; ++i) {
+            BufferFrame evicted = policy.evict(frames);
+            assertTrue(Arrays.asList(frames).subList(4, 8).contains(evicted));
+            policy.cleanup(evicted);
+            policy.init(evicted);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 4; ++i) {
+            frames[i].unpin();
+        }
+
+        Set<BufferFrame> evicted = new HashSet<>();
+        for (int i = 0; i < frames.length; ++i) {
+            BufferFrame frame = policy.evict(frames);
+            assertTrue(evicted.add(frame));
+            policy.cleanup(frame);
+            frame.pin();
+        }
+        for (BufferFrame frame : frames) {
+            frame.unpin();
+        }
+    }
+
+    @Test
+    public void testConcurrentHits() throws InterruptedException {
+        checkConcurrentHits(new LRUEvictionPolicy());
+        checkConcurrentHits(new ClockEvictionPolicy());
+        checkConcurrentHits(new TwoQueueEvictionPolicy());
+        checkConcurrentHits(new LRUKEvictionPolicy());
+        checkConcurrentHits(new ARCEvictionPolicy());
+    }
+
+    /**
+     * Runs random point lookups over a small hot set of pages interleaved with a
+     * sequential scan over a much larger set of pages through a buffer manager with
+     * the given policy, and returns the number of misses on the hot set.
+     */
+    private static long hotSetMisses(EvictionPolicy policy) {
+        final int numFrames = 32;
+        final int numHotPages = 12;
+        final int numScanPages = 256;
+        final int scanPerLookup = 3;
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        BufferManager bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(),
+                numFrames, policy);
+        try {
+            int partNum = diskSpaceManager.allocPart();
+            long[] pageNums = new long[numHotPages + numScanPages];
+            for (int i = 0; i < pageNums.length; ++i) {
+                BufferFrame frame = bufferManager.fetchNewPageFrame(partNum, false);
+                pageNums[i] = frame.getPageNum();
+                frame.unpin();
+            }
+            bufferManager.evictAll();
+
+            Random random = new Random(186);
+            byte[] buf = new byte[8];
+            long misses = 0;
+            for (int step = 0; step < 4096; ++step) {
+                int scanPage = numHotPages + (step % numScanPages);
+                BufferFrame frame = bufferManager.fetchPageFrame(pageNums[scanPage], false);
+                for (int j = 0; j < 4; ++j) {
+                    frame.readBytes((short) (j * buf.length), (short) buf.length, buf);
+                }
+                frame.unpin();
+
+                if (step % scanPerLookup == 0) {
+                    long ios = bufferManager.getNumIOs();
+                    frame = bufferManager.fetchPageFrame(pageNums[random.nextInt(numHotPages)], false);
+                    frame.readBytes((short) 0, (short) buf.length, buf);
+                    frame.unpin();
+                    misses += bufferManager.getNumIOs() - ios;
+                }
+            }
+            return misses;
+        } finally {
+            bufferManager.close();
+            diskSpaceManager.close();
+        }
+    }
+
+    @Test
+    public void testScanResistance() {
+        long lruMisses = hotSetMisses(new LRUEvictionPolicy());
+        long clockMisses = hotSetMisses(new ClockEvictionPolicy());
+        long twoQueueMisses = hotSetMisses(new TwoQueueEvictionPolicy());
+        long lruKMisses = hotSetMisses(new LRUKEvictionPolicy());
+        long arcMisses = hotSetMisses(new ARCEvictionPolicy());
+
+        // the scan keeps flushing the hot set out of an LRU or clock buffer, while
+        // the scan-resistant policies hold on to it once it has been re-referenced
+        assertTrue(lruMisses > 4096 / 3 / 4);
+        assertTrue(clockMisses > 4096 / 3 / 4);
+        assertTrue(twoQueueMisses < lruMisses / 4);
+        assertTrue(lruKMisses < lruMisses / 4);
+        assertTrue(arcMisses < lruMisses / 4);
+    }
 }
@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.*;
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.TableFormat;
 import org.junit.*;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
@@ -178,4 +179,220 @@ public class TestBasicQuery {
             assertEquals(count, 10);
         }
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupBySpills() {
+        try(Transaction transaction = db.beginTransaction()) {
+            // more groups than fit in 5 pages of work memory
+            for (int i = 0; i < 500; ++i) {
+                Record r = createRecordWithAllTypes(false, i % 400, "!", i);
+                transaction.insert(TABLENAME, r.getValues());
+            }
+
+            QueryPlan query = transaction.query("T");
+            query.groupBy("T.int");
+            query.project(Collections.singletonList("T.int"));
+            query.count();
+            query.sum("T.float");
+
+            Iterator<Record> queryOutput = query.execute();
+            boolean[] seen = new boolean[400];
+            while (queryOutput.hasNext()) {
+                Record r = queryOutput.next();
+                int key = r.getValues().get(0).getInt();
+                assertFalse(seen[key]);
+                seen[key] = true;
+                if (key < 100) {
+                    assertEquals(2, r.getValues().get(1).getInt());
+                    assertEquals(2 * key + 400, r.getValues().get(2).getFloat(), 1e-3);
+                } else {
+                    assertEquals(1, r.getValues().get(1).getInt());
+                    assertEquals(key, r.getValues().get(2).getFloat(), 1e-3);
+                }
+            }
+            for (boolean s : seen) {
+                assertTrue(s);
+            }
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBatchSelectAndAggregate() {
+        try(Transaction transaction = db.beginTransaction()) {
+            // a columnar table, whose pages are read into batches column by column
+            transaction.createTable(TestUtils.createSchemaWithAllTypes(), TABLENAME + "P", TableFormat.PAX);
+            for (int i = 0; i < 500; ++i) {
+                Record r = createRecordWithAllTypes(i % 2 == 0, i, i % 3 == 0 ? "a" : "b", i / 4f);
+                transaction.insert(TABLENAME + "P", r.getValues());
+            }
+
+            // selections on an int, a bool, and a string column, then aggregates
+            QueryPlan query = transaction.query(TABLENAME + "P");
+            query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(250));
+            query.select("bool", PredicateOperator.EQUALS, new BoolDataBox(true));
+            query.select("string", PredicateOperator.NOT_EQUALS, new StringDataBox("a", 1));
+            query.count();
+            query.sum("int");
+            query.average("int");
+
+            Iterator<Record> queryOutput = query.execute();
+            int count = 0;
+            long sum = 0;
+            for (int i = 250; i < 500; ++i) {
+                if (i % 2 == 0 && i % 3 != 0) {
+                    ++count;
+                    sum += i;
+                }
+            }
+            assertTrue(queryOutput.hasNext());
+            Record r = queryOutput.next();
+            assertEquals(count, r.getValues().get(0).getInt());
+            assertEquals(sum, r.getValues().get(1).getInt());
+            assertEquals((float) sum / count, r.getValues().get(2).getFloat(), 1e-3);
+            assertFalse(queryOutput.hasNext());
+
+            // no records are selected
+            query = transaction.query(TABLENAME + "P");
+            query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(0));
+            query.count();
+            assertFalse(query.execute().hasNext());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLimit() {
+        try(Transaction transaction = db.beginTransaction()) {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "!", 0.0f);
+                transaction.insert(TABLENAME, r.getValues());
+                transaction.insert(TABLENAME + "2", r.getValues());
+            }
+
+            QueryPlan query = transaction.query(TABLENAME);
+            query.join(TABLENAME + "2", TABLENAME + ".int", TABLENAME + "2.int");
+            query.limit(5);
+
+            Iterator<Record> queryOutput = query.execute();
+            assertEquals(QueryOperator.OperatorType.LIMIT, query.getFinalOperator().getType());
+            int count = 0;
+            while (queryOutput.hasNext()) {
+                Record r = queryOutput.next();
+                assertEquals(r.getValues().get(1), r.getValues().get(5));
+                count++;
+            }
+            assertEquals(5, count);
+
+            query = transaction.query(TABLENAME);
+            query.limit(0);
+            assertFalse(query.execute().hasNext());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLimitJoinNonScanRight() {
+        try(Transaction transaction = db.beginTransaction()) {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "!", 0.0f);
+                transaction.insert(TABLENAME, r.getValues());
+                transaction.insert(TABLENAME + "2", r.getValues());
+            }
+
+            // the selection makes the right input of the join a selection or index scan
+            QueryPlan query = transaction.query(TABLENAME);
+            query.join(TABLENAME + "2", TABLENAME + ".int", TABLENAME + "2.int");
+            query.select(TABLENAME + "2.int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(50));
+            query.limit(5);
+
+            Iterator<Record> queryOutput = query.execute();
+            QueryOperator limit = query.getFinalOperator();
+            assertEquals(QueryOperator.OperatorType.LIMIT, limit.getType());
+            assertTrue(limit.getStats().getNumRecords() <= 5);
+            assertFalse(((JoinOperator) limit.getSource()).getRightSource().isSequentialScan());
+            int count = 0;
+            while (queryOutput.hasNext()) {
+                Record r = queryOutput.next();
+                assertEquals(r.getValues().get(1), r.getValues().get(5));
+                assertTrue(r.getValues().get(5).getInt() >= 50);
+                count++;
+            }
+            assertEquals(5, count);
+
+            // a right input that is not a scan is not read if there are no left records
+            Schema schema = TestUtils.createSchemaWithAllTypes();
+            QueryOperator left = new TestSourceOperator(Collections.emptyList(), schema);
+            QueryOperator right = new TestSourceOperator(Collections.emptyList(), schema) {
+                @Override
+                public Iterator<Record> iterator() {
+                    throw new AssertionError("right input was read");
+                }
+            };
+            TransactionContext context = transaction.getTransactionContext();
+            assertFalse(new SNLJOperator(left, right, "int", "int", context).iterator().hasNext());
+            assertFalse(new BNLJOperator(left, right, "int", "int", context).iterator().hasNext());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testLimitOrderBy() {
+        try(Transaction transaction = db.beginTransaction()) {
+            // 0 to 99, out of order
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i * 37 % 100, "!", 0.0f);
+                transaction.insert(TABLENAME, r.getValues());
+            }
+
+            QueryPlan query = transaction.query(TABLENAME);
+            query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+            query.project(Collections.singletonList("int"));
+            query.orderBy("int");
+            query.limit(5);
+
+            Iterator<Record> queryOutput = query.execute();
+            for (int i = 10; i < 15; ++i) {
+                assertTrue(queryOutput.hasNext());
+                assertEquals(new IntDataBox(i), queryOutput.next().getValues().get(0));
+            }
+            assertFalse(queryOutput.hasNext());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testProjectBatchesOnlyNativeSources() {
+        try(Transaction transaction = db.beginTransaction()) {
+            transaction.createTable(TestUtils.createSchemaWithAllTypes(), TABLENAME + "P", TableFormat.PAX);
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "!", 0.0f);
+                transaction.insert(TABLENAME, r.getValues());
+                transaction.insert(TABLENAME + "P", r.getValues());
+            }
+
+            // records of a row table are projected one at a time, and those of a PAX
+            // table in batches
+            String[] tableNames = new String[] {TABLENAME, TABLENAME + "P"};
+            boolean[] batched = new boolean[] {false, true};
+            for (int t = 0; t < tableNames.length; ++t) {
+                QueryPlan query = transaction.query(tableNames[t]);
+                query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(50));
+                query.project(Collections.singletonList("int"));
+
+                Iterator<Record> queryOutput = query.execute();
+                QueryOperator project = query.getFinalOperator();
+                while (!project.isProject()) {
+                    project = project.getSource();
+                }
+                assertEquals(batched[t], project.batchesNatively());
+                for (int i = 50; i < 100; ++i) {
+                    assertTrue(queryOutput.hasNext());
+                    assertEquals(Collections.singletonList(new IntDataBox(i)), queryOutput.next().getValues());
+                }
+                assertFalse(queryOutput.hasNext());
+            }
+        }
+    }
 }
@@ -499,6 +499,128 @@ public class TestJoinOperator {
         }
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testSortMergeJoinSortedInputs() {
+        // Same as testSimpleSortMergeJoin, but both inputs claim to already be sorted
+        // on the join column (as an index scan would), so neither is sorted again.
+        d.setWorkMem(5); // B=5
+        try(Transaction transaction = d.beginTransaction()) {
+            setSourceOperators(
+                new TestSourceOperator() {
+                    @Override
+                    public boolean isSortedOn(int columnIndex) {
+                        return true;
+                    }
+                },
+                new TestSourceOperator() {
+                    @Override
+                    public boolean isSortedOn(int columnIndex) {
+                        return true;
+                    }
+                },
+                transaction
+            );
+
+            startCountIOs();
+
+            JoinOperator joinOperator = new SortMergeOperator(leftSourceOperator, rightSourceOperator, "int",
+                    "int",
+                    transaction.getTransactionContext());
+            checkIOs(0);
+            // reading each input once
+            assertEquals(2, joinOperator.estimateIOCost());
+            assertTrue(joinOperator.isSortedOn(1));
+            assertTrue(joinOperator.isSortedOn(5));
+            assertFalse(joinOperator.isSortedOn(0));
+
+            Iterator<Record> outputIterator = joinOperator.iterator();
+            // only the first page of each input, no sorting
+            checkIOs(2);
+
+            int numRecords = 0;
+            while (outputIterator.hasNext()) {
+                outputIterator.next();
+                numRecords++;
+            }
+            assertEquals(100 * 100, numRecords);
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSimpleJoinHashJoins() {
+        // Joins the same 100 identical records as above with a simple hash join
+        // and a grace hash join.
+        d.setWorkMem(5); // B=5
+        try(Transaction transaction = d.beginTransaction()) {
+            setSourceOperators(
+                new TestSourceOperator(),
+                new TestSourceOperator(),
+                transaction
+            );
+
+            List<DataBox> expectedRecordValues = new ArrayList<>(TestUtils.createRecordWithAllTypes().getValues());
+            expectedRecordValues.addAll(TestUtils.createRecordWithAllTypes().getValues());
+            Record expectedRecord = new Record(expectedRecordValues);
+
+            JoinOperator[] joinOperators = new JoinOperator[] {
+                new SHJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                transaction.getTransactionContext()),
+                new GHJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                transaction.getTransactionContext()),
+            };
+            for (JoinOperator joinOperator : joinOperators) {
+                Iterator<Record> outputIterator = joinOperator.iterator();
+                int numRecords = 0;
+                while (outputIterator.hasNext() && numRecords < 100 * 100) {
+                    assertEquals("mismatch at record " + numRecords, expectedRecord, outputIterator.next());
+                    numRecords++;
+                }
+                assertFalse("too many records", outputIterator.hasNext());
+                assertEquals("too few records", 100 * 100, numRecords);
+            }
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testHashJoinsSingleJoinValue() {
+        // Joins two tables of 40 records of about 500 bytes (5 pages each), all with the
+        // same join value, so that no partition fits in B-2 pages however many times it
+        // is partitioned.
+        d.setWorkMem(5); // B=5
+        try(Transaction transaction = d.beginTransaction()) {
+            List<Record> records = new ArrayList<>();
+            for (int i = 0; i < 40; ++i) {
+                records.add(TestUtils.createRecordWithIntAndStringWithValue(1, "" + i, 500));
+            }
+            setSourceOperators(
+                new TestSourceOperator(records, TestUtils.createSchemaOfIntAndString(500)),
+                new TestSourceOperator(records, TestUtils.createSchemaOfIntAndString(500)),
+                transaction
+            );
+
+            JoinOperator[] joinOperators = new JoinOperator[] {
+                new SHJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                transaction.getTransactionContext()),
+                new GHJOperator(leftSourceOperator, rightSourceOperator, "int", "int",
+                                transaction.getTransactionContext()),
+            };
+            for (JoinOperator joinOperator : joinOperators) {
+                Set<String> pairs = new HashSet<>();
+                Iterator<Record> outputIterator = joinOperator.iterator();
+                while (outputIterator.hasNext()) {
+                    List<DataBox> values = outputIterator.next().getValues();
+                    assertEquals(new IntDataBox(1), values.get(0));
+                    assertEquals(new IntDataBox(1), values.get(2));
+                    pairs.add(values.get(1).getString() + "," + values.get(3).getString());
+                }
+                assertEquals(40 * 40, pairs.size());
+            }
+        }
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testBNLJDiffOutPutThanPNLJ() {
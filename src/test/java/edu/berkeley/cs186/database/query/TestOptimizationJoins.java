@@ -23,6 +23,7 @@ import org.junit.rules.DisableOnDebug;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -163,6 +164,66 @@ public class TestOptimizationJoins {
         }
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testJoinTypeD() {
+        try(Transaction transaction = this.db.beginTransaction()) {
+            for (int i = 0; i < 12000; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "!", 0.0f);
+                transaction.insert(TABLENAME, r.getValues());
+            }
+
+            transaction.getTransactionContext().getTable(TABLENAME).buildStatistics(10);
+
+            // 30 pages on each side: two partitioning passes of a grace hash join
+            // are cheaper than scanning the right table once per block of the left
+            QueryPlan query = transaction.query("T", "t1");
+            query.join("T", "t2", "t1.int", "t2.int");
+
+            query.execute();
+
+            QueryOperator finalOperator = query.getFinalOperator();
+            assertTrue(finalOperator.toString().contains("GHJ"));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testJoinTypeFewJoinValues() {
+        try(Transaction transaction = this.db.beginTransaction()) {
+            for (int i = 0; i < 2400; ++i) {
+                Record r = createRecordWithAllTypes(false, i % 2, "!", 0.0f);
+                transaction.insert(TABLENAME, r.getValues());
+            }
+
+            transaction.getTransactionContext().getTable(TABLENAME).buildStatistics(10);
+
+            // 6 pages on each side, with only 2 join values: a simple hash join only fills
+            // (and probes the right table for) 2 of its 4 partitions, which makes it
+            // cheaper than a grace hash join, but a block nested loop join, which reads
+            // the right table once per block of 3 pages, is cheaper still
+            QueryPlan query = transaction.query("T", "t1");
+            query.join("T", "t2", "t1.int", "t2.int");
+
+            query.execute();
+
+            QueryOperator finalOperator = query.getFinalOperator();
+            assertTrue(finalOperator.toString().contains("BNLJ"));
+
+            TransactionContext context = transaction.getTransactionContext();
+            QueryOperator left = new SequentialScanOperator(context, TABLENAME);
+            QueryOperator right = new SequentialScanOperator(context, TABLENAME);
+            int numPages = left.getStats().getNumPages();
+            assertEquals(6, numPages);
+            int shjCost = new SHJOperator(left, right, "int", "int", context).estimateIOCost();
+            int ghjCost = new GHJOperator(left, right, "int", "int", context).estimateIOCost();
+            int bnljCost = new BNLJOperator(left, right, "int", "int", context).estimateIOCost();
+            assertEquals(3 * numPages + 2 * numPages, shjCost);
+            assertTrue(shjCost < ghjCost);
+            assertTrue(bnljCost < shjCost);
+        }
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testJoinOrderA() {
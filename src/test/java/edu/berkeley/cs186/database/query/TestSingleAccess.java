@@ -8,7 +8,9 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 
 import edu.berkeley.cs186.database.table.Schema;
 
@@ -17,13 +19,14 @@ import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.Type;
 
 import edu.berkeley.cs186.database.TimeoutScaling;
 import org.junit.rules.DisableOnDebug;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 @Category({Proj3Tests.class, Proj3Part2Tests.class})
 public class TestSingleAccess {
@@ -211,4 +214,68 @@ public class TestSingleAccess {
             assertTrue(op.getSource().isIndexScan());
         }
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelSequentialScan() {
+        try(Transaction transaction = this.db.beginTransaction()) {
+            // wide records, so that the table has enough pages to split into morsels
+            Schema schema = new Schema(Arrays.asList("int", "string"),
+                                       Arrays.asList(Type.intType(), Type.stringType(200)));
+            transaction.createTable(schema, TABLENAME + "W");
+            for (int i = 0; i < 500; ++i) {
+                transaction.insert(TABLENAME + "W", Arrays.asList(new IntDataBox(i),
+                                   new StringDataBox(i % 2 == 0 ? "a" : "b", 200)));
+            }
+
+            QueryPlan query = transaction.query(TABLENAME + "W", "t1");
+            query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(400));
+            query.select("string", PredicateOperator.EQUALS, new StringDataBox("a", 200));
+            assertTrue(query.minCostSingleAccess("t1").isSelect());
+
+            this.db.setQueryParallelism(4);
+            query = transaction.query(TABLENAME + "W", "t1");
+            query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(400));
+            query.select("string", PredicateOperator.EQUALS, new StringDataBox("a", 200));
+            QueryOperator op = query.minCostSingleAccess("t1");
+            assertEquals(QueryOperator.OperatorType.GATHER, op.getType());
+            assertTrue(op.getSource().isSelect());
+
+            // the records of every morsel are returned, in the order of a sequential scan
+            Iterator<Record> records = query.execute();
+            for (int i = 0; i < 400; i += 2) {
+                assertTrue(records.hasNext());
+                assertEquals(new IntDataBox(i), records.next().getValues().get(0));
+            }
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelSequentialScanEndsWithTransaction() {
+        Iterator<Record> records;
+        try(Transaction transaction = this.db.beginTransaction()) {
+            Schema schema = new Schema(Arrays.asList("int", "string"),
+                                       Arrays.asList(Type.intType(), Type.stringType(200)));
+            transaction.createTable(schema, TABLENAME + "W");
+            for (int i = 0; i < 500; ++i) {
+                transaction.insert(TABLENAME + "W", Arrays.asList(new IntDataBox(i),
+                                   new StringDataBox("a", 200)));
+            }
+
+            this.db.setQueryParallelism(4);
+            QueryPlan query = transaction.query(TABLENAME + "W", "t1");
+            query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(0));
+            assertEquals(QueryOperator.OperatorType.GATHER, query.minCostSingleAccess("t1").getType());
+
+            // only the first record is read before the transaction ends
+            records = query.execute();
+            assertTrue(records.hasNext());
+            assertEquals(new IntDataBox(0), records.next().getValues().get(0));
+        }
+
+        // the morsels in flight were cancelled or stopped before the locks were released
+        assertFalse(records.hasNext());
+    }
 }
@@ -10,15 +10,18 @@ import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBatch;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.TableFormat;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.function.UnaryOperator;
 
 /**
@@ -69,6 +72,12 @@ class DummyTransaction extends AbstractTransaction {
     @Override
     public void createTable(Schema s, String tableName) {}
 
+    @Override
+    public void createTable(Schema s, String tableName, TableFormat format) {}
+
+    @Override
+    public void createTable(Schema s, String tableName, TableFormat format, List<String> dictionaryColumns) {}
+
     @Override
     public void dropTable(String tableName) {}
 
@@ -104,6 +113,9 @@ class DummyTransaction extends AbstractTransaction {
     @Override
     public void insert(String tableName, List<DataBox> values) {}
 
+    @Override
+    public void insertAll(String tableName, Iterator<List<DataBox>> rows) {}
+
     @Override
     public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue) {}
 
@@ -185,6 +197,22 @@ class DummyTransaction extends AbstractTransaction {
             return 0;
         }
 
+        @Override
+        public int getQueryParallelism() {
+            return 1;
+        }
+
+        @Override
+        public ExecutorService getExecutor() {
+            return null;
+        }
+
+        @Override
+        public void addCloseHandler(Runnable handler) {}
+
+        @Override
+        public void removeCloseHandler(Runnable handler) {}
+
         @Override
         public void close() {}
 
@@ -230,6 +258,16 @@ class DummyTransaction extends AbstractTransaction {
             return null;
         }
 
+        @Override
+        public BacktrackingIterator<Record> getRecordIterator(String tableName, List<Integer> columns) {
+            return null;
+        }
+
+        @Override
+        public Iterator<RecordBatch> getBatchIterator(String tableName, List<Integer> columns) {
+            return null;
+        }
+
         @Override
         public BacktrackingIterator<Page> getPageIterator(String tableName) {
             return null;
@@ -251,6 +289,11 @@ class DummyTransaction extends AbstractTransaction {
             return null;
         }
 
+        @Override
+        public int addRecords(String tableName, Iterator<List<DataBox>> rows) {
+            return 0;
+        }
+
         @Override
         public RecordId deleteRecord(String tableName, RecordId rid) {
             return null;
@@ -275,6 +318,11 @@ class DummyTransaction extends AbstractTransaction {
         public void runDeleteRecordWhere(String tableName, String predColumnName,
                                          PredicateOperator predOperator, DataBox predValue) {}
 
+        @Override
+        public int vacuum(String tableName, int maxPages) {
+            return 0;
+        }
+
         @Override
         public Schema getSchema(String tableName) {
             return null;
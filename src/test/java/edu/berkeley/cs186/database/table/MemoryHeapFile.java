@@ -91,6 +91,17 @@ public class MemoryHeapFile implements HeapFile, AutoCloseable {
         return numDataPages;
     }
 
+    @Override
+    public List<Long> getDataPageNums() {
+        List<Long> dataPageNums = new ArrayList<>();
+        for (long pageNum : pageNums) {
+            if (pages.get(pageNum) != null) {
+                dataPageNums.add(pageNum);
+            }
+        }
+        return dataPageNums;
+    }
+
     @Override
     public int getPartNum() {
         return 0;
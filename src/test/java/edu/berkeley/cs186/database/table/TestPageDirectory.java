@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.table;
 
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
+import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
@@ -10,6 +11,7 @@ import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.BufferManagerImpl;
 import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.memory.ReadAhead;
 import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
 import org.junit.After;
 import org.junit.Before;
@@ -189,6 +191,101 @@ public class TestPageDirectory {
         } catch (IllegalArgumentException e) { /* do nothing */ }
     }
 
+    @Test
+    public void testFreeSpaceMap() {
+        createPageDirectory((short) 10);
+        // enough full pages to need more than one header page
+        short pageSize = (short) (pageDirectory.getEffectivePageSize() - 10);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            Page page = pageDirectory.getPageWithSpace(pageSize);
+            page.unpin();
+            pages.add(page);
+        }
+
+        pageDirectory.updateFreeSpace(pages.get(3), (short) 100);
+        pageDirectory.updateFreeSpace(pages.get(450), (short) 200);
+
+        // no header pages are walked to find a page with space: the only page fetched is
+        // the data page itself
+        long numAccesses = this.bufferManager.getStats().getHits() + this.bufferManager.getStats().getMisses();
+        Page page = pageDirectory.getPageWithSpace((short) 150);
+        page.unpin();
+        assertEquals(pages.get(450), page);
+        assertEquals(numAccesses + 1,
+                     this.bufferManager.getStats().getHits() + this.bufferManager.getStats().getMisses());
+
+        page = pageDirectory.getPageWithSpace((short) 100);
+        page.unpin();
+        assertEquals(pages.get(3), page);
+
+        // freeing a page frees up an entry for a new page
+        pageDirectory.updateFreeSpace(pages.get(10), pageSize);
+        assertEquals(499, pageDirectory.getNumDataPages());
+        page = pageDirectory.getPageWithSpace((short) 120);
+        page.unpin();
+        assertEquals(500, pageDirectory.getNumDataPages());
+        assertFalse(pages.contains(page));
+    }
+
+    @Test
+    public void testFreeSpaceMapReload() {
+        Page headerPage = bufferManager.fetchNewPage(new DummyLockContext(), 0, false);
+        headerPage.unpin();
+        createPageDirectory(headerPage.getPageNum(), (short) 10);
+
+        short pageSize = (short) (pageDirectory.getEffectivePageSize() - 10);
+        List<Page> pages = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            Page page = pageDirectory.getPageWithSpace(pageSize);
+            page.unpin();
+            pages.add(page);
+        }
+        pageDirectory.updateFreeSpace(pages.get(420), (short) 300);
+
+        // the free space map is rebuilt from the header pages
+        createPageDirectory(headerPage.getPageNum(), (short) 10);
+        assertEquals(500, pageDirectory.getNumDataPages());
+        Page page = pageDirectory.getPageWithSpace((short) 300);
+        page.unpin();
+        assertEquals(pages.get(420), page);
+    }
+
+    @Test
+    public void testConcurrentInsertersSpread() throws InterruptedException {
+        createPageDirectory((short) 10);
+
+        short pageSize = (short) (pageDirectory.getEffectivePageSize() - 10);
+        Page p1 = pageDirectory.getPageWithSpace(pageSize);
+        Page p2 = pageDirectory.getPageWithSpace(pageSize);
+        p1.unpin();
+        p2.unpin();
+        pageDirectory.updateFreeSpace(p1, (short) 1000);
+        pageDirectory.updateFreeSpace(p2, (short) 1000);
+
+        // each thread is given a different page, and keeps getting its own page
+        Page[] pages = new Page[4];
+        Thread t1 = new Thread(() -> {
+            pages[0] = pageDirectory.getPageWithSpace((short) 10);
+            pages[0].unpin();
+        });
+        Thread t2 = new Thread(() -> {
+            pages[1] = pageDirectory.getPageWithSpace((short) 10);
+            pages[1].unpin();
+            pages[2] = pageDirectory.getPageWithSpace((short) 10);
+            pages[2].unpin();
+        });
+        t1.start();
+        t1.join();
+        t2.start();
+        t2.join();
+
+        assertNotEquals(pages[0], pages[1]);
+        assertEquals(pages[1], pages[2]);
+        assertEquals(new HashSet<>(Arrays.asList(p1.getPageNum(), p2.getPageNum())),
+                     new HashSet<>(Arrays.asList(pages[0].getPageNum(), pages[1].getPageNum())));
+    }
+
     @Test
     public void testIterator() {
         createPageDirectory((short) 0);
@@ -214,6 +311,66 @@ public class TestPageDirectory {
         }
     }
 
+    @Test
+    public void testIteratorResetRestartsReadAhead() {
+        // records the pages declared to each read-ahead, and whether it was closed
+        List<List<Long>> declared = new ArrayList<>();
+        List<Boolean> closed = new ArrayList<>();
+        bufferManager.close();
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy()) {
+            @Override
+            public ReadAhead readAhead(Iterator<Long> pageNums, boolean logPage) {
+                List<Long> pages = new ArrayList<>();
+                pageNums.forEachRemaining(pages::add);
+                int i = declared.size();
+                declared.add(pages);
+                closed.add(false);
+                return new ReadAhead() {
+                    @Override
+                    public void advance() {}
+
+                    @Override
+                    public void close() {
+                        closed.set(i, true);
+                    }
+                };
+            }
+        };
+        createPageDirectory((short) 0);
+        short fullPage = pageDirectory.getEffectivePageSize();
+
+        List<Long> pageNums = new ArrayList<>();
+        for (int i = 0; i < 6; ++i) {
+            Page page = pageDirectory.getPageWithSpace(fullPage);
+            pageNums.add(page.getPageNum());
+            page.unpin();
+        }
+
+        BacktrackingIterator<Page> iter = pageDirectory.iterator();
+        for (int i = 0; i < 2; ++i) {
+            iter.next().unpin();
+        }
+        iter.markPrev();
+        for (int i = 2; i < 5; ++i) {
+            iter.next().unpin();
+        }
+        assertEquals(Collections.singletonList(pageNums), declared);
+
+        // backtracking cancels the read-ahead past the marked page, and starts a new one
+        // from the marked page when the scan gets back to it
+        iter.reset();
+        assertEquals(Collections.singletonList(true), closed);
+        Page page = iter.next();
+        page.unpin();
+        assertEquals((long) pageNums.get(1), page.getPageNum());
+        assertEquals(2, declared.size());
+        assertEquals(pageNums.subList(1, 6), declared.get(1));
+        assertFalse(closed.get(1));
+    }
+
     @Test
     public void testIteratorWithDeletes() {
         createPageDirectory((short) 0);
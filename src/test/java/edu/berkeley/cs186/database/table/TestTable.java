@@ -2,9 +2,12 @@ package edu.berkeley.cs186.database.table;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -21,7 +24,12 @@ import org.junit.rules.TemporaryFolder;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestTable {
@@ -177,6 +185,58 @@ public class TestTable {
         }
     }
 
+    @Test
+    public void testAddRecords() {
+        // We add 42 to make sure the last page is incomplete.
+        int numRecords = table.getNumRecordsPerPage() * 2 + 42;
+
+        List<List<DataBox>> rows = new ArrayList<>();
+        for (int i = 0; i < numRecords; ++i) {
+            rows.add(createRecordWithAllTypes(i).getValues());
+        }
+        List<RecordId> rids = table.addRecords(rows.iterator());
+
+        assertEquals(numRecords, rids.size());
+        assertEquals(numRecords, table.getNumRecords());
+        assertEquals(numRecords, table.getStats().getNumRecords());
+        assertEquals(3, table.getNumDataPages());
+        for (int i = 0; i < numRecords; ++i) {
+            assertEquals(i % table.getNumRecordsPerPage(), rids.get(i).getEntryNum());
+            assertEquals(createRecordWithAllTypes(i), table.getRecord(rids.get(i)));
+        }
+
+        // the incomplete page is filled by later inserts
+        RecordId rid = table.addRecord(createRecordWithAllTypes(numRecords).getValues());
+        assertEquals(rids.get(numRecords - 1).getPageNum(), rid.getPageNum());
+        assertEquals(42, rid.getEntryNum());
+
+        table = new Table(table.getName(), table.getSchema(), heapFile, new DummyLockContext());
+        assertEquals(numRecords + 1, table.getNumRecords());
+        for (int i = 0; i < numRecords; ++i) {
+            assertEquals(createRecordWithAllTypes(i), table.getRecord(rids.get(i)));
+        }
+    }
+
+    @Test
+    public void testAddRecordsSkipsPartialPages() {
+        RecordId first = table.addRecord(createRecordWithAllTypes(0).getValues());
+
+        List<List<DataBox>> rows = new ArrayList<>();
+        for (int i = 1; i <= 10; ++i) {
+            rows.add(createRecordWithAllTypes(i).getValues());
+        }
+        List<RecordId> rids = table.addRecords(rows.iterator());
+
+        // bulk-appended records go on a new page, not in the free slots of the first
+        assertNotEquals(first.getPageNum(), rids.get(0).getPageNum());
+        assertEquals(2, table.getNumDataPages());
+        assertEquals(11, table.getNumRecords());
+        assertEquals(createRecordWithAllTypes(0), table.getRecord(first));
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(createRecordWithAllTypes(i + 1), table.getRecord(rids.get(i)));
+        }
+    }
+
     /**
      * Loads some number of pages of records. rids will be loaded with all the record IDs
      * of the new records, and the number of records will be returned.
@@ -446,4 +506,404 @@ public class TestTable {
         checkSequentialRecords(1, numRecords, 2, iter);
         assertFalse(iter.hasNext());
     }
+
+    private static Schema createVariableLengthSchema() {
+        return new Schema(Arrays.asList("id", "name"), Arrays.asList(Type.intType(), Type.stringType(255)));
+    }
+
+    private static List<DataBox> createVariableLengthRow(int id, int nameLength) {
+        char[] name = new char[nameLength];
+        Arrays.fill(name, (char) ('a' + id % 26));
+        return Arrays.asList(new IntDataBox(id), new StringDataBox(new String(name), 255));
+    }
+
+    private Table createSlottedTable() {
+        return new Table(TABLENAME, createVariableLengthSchema(), heapFile, new DummyLockContext(),
+                         TableFormat.SLOTTED);
+    }
+
+    @Test
+    public void testSlottedInsertAndGet() {
+        Table slotted = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rids.add(slotted.addRecord(createVariableLengthRow(i, 10)));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(new Record(createVariableLengthRow(i, 10)), slotted.getRecord(rids.get(i)));
+        }
+        assertEquals(1000, slotted.getNumRecords());
+
+        // 10-character names take 10 bytes rather than 255, so many more rows fit on a page
+        // than the 8 per page of fixed-size records
+        int fixedRecordsPerPage = Table.computeNumRecordsPerPage(heapFile.getEffectivePageSize(),
+                                  createVariableLengthSchema());
+        assertEquals(8, fixedRecordsPerPage);
+        assertTrue(slotted.getNumDataPages() <= 1000 / 100);
+    }
+
+    @Test
+    public void testSlottedUpdateInPlace() {
+        Table slotted = createSlottedTable();
+        RecordId rid = slotted.addRecord(createVariableLengthRow(0, 10));
+        RecordId other = slotted.addRecord(createVariableLengthRow(1, 10));
+
+        // shrink, then grow while there is room on the page
+        assertEquals(new Record(createVariableLengthRow(0, 10)),
+                     slotted.updateRecord(createVariableLengthRow(0, 2), rid));
+        assertEquals(new Record(createVariableLengthRow(0, 2)), slotted.getRecord(rid));
+        slotted.updateRecord(createVariableLengthRow(0, 200), rid);
+        assertEquals(new Record(createVariableLengthRow(0, 200)), slotted.getRecord(rid));
+        assertEquals(new Record(createVariableLengthRow(1, 10)), slotted.getRecord(other));
+        assertEquals(1, slotted.getNumDataPages());
+    }
+
+    @Test
+    public void testSlottedUpdateForwards() {
+        Table slotted = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        // fill the first page with small records
+        do {
+            rids.add(slotted.addRecord(createVariableLengthRow(rids.size(), 20)));
+        } while (slotted.getNumDataPages() == 1);
+        long firstPage = rids.get(0).getPageNum();
+
+        // growing a record on the full page moves it, but not its record id
+        RecordId rid = rids.get(3);
+        assertEquals(firstPage, rid.getPageNum());
+        slotted.updateRecord(createVariableLengthRow(3, 255), rid);
+        assertEquals(new Record(createVariableLengthRow(3, 255)), slotted.getRecord(rid));
+
+        // update it where it moved to, then shrink it enough to fit back home
+        slotted.updateRecord(createVariableLengthRow(3, 254), rid);
+        assertEquals(new Record(createVariableLengthRow(3, 254)), slotted.getRecord(rid));
+        slotted.deleteRecord(rids.get(4));
+        slotted.deleteRecord(rids.get(5));
+        slotted.updateRecord(createVariableLengthRow(3, 30), rid);
+        assertEquals(new Record(createVariableLengthRow(3, 30)), slotted.getRecord(rid));
+
+        // scans see each record once, at its original record id
+        slotted.updateRecord(createVariableLengthRow(6, 255), rids.get(6));
+        List<RecordId> scanned = new ArrayList<>();
+        slotted.ridIterator().forEachRemaining(scanned::add);
+        List<RecordId> expected = new ArrayList<>(rids);
+        expected.remove(5);
+        expected.remove(4);
+        assertEquals(expected, scanned);
+        assertEquals(rids.size() - 2, slotted.getNumRecords());
+
+        // deleting a moved record removes it from both pages
+        assertEquals(new Record(createVariableLengthRow(6, 255)), slotted.deleteRecord(rids.get(6)));
+        assertEquals(rids.size() - 3, slotted.getNumRecords());
+
+        slotted = createSlottedTable();
+        assertEquals(rids.size() - 3, slotted.getNumRecords());
+        assertEquals(new Record(createVariableLengthRow(3, 30)), slotted.getRecord(rid));
+    }
+
+    @Test
+    public void testSlottedDeleteReusesSpace() {
+        Table slotted = createSlottedTable();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            rids.add(slotted.addRecord(createVariableLengthRow(i, 20)));
+        }
+        assertEquals(1, slotted.getNumDataPages());
+
+        for (int i = 0; i < 100; i += 2) {
+            slotted.deleteRecord(rids.get(i));
+        }
+        // the freed space is fragmented, so it takes compacting the page to fit these
+        for (int i = 0; i < 25; ++i) {
+            RecordId rid = slotted.addRecord(createVariableLengthRow(i, 50));
+            assertEquals(rids.get(0).getPageNum(), rid.getPageNum());
+            assertEquals(new Record(createVariableLengthRow(i, 50)), slotted.getRecord(rid));
+        }
+        for (int i = 1; i < 100; i += 2) {
+            assertEquals(new Record(createVariableLengthRow(i, 20)), slotted.getRecord(rids.get(i)));
+        }
+        assertEquals(1, slotted.getNumDataPages());
+    }
+
+    @Test
+    public void testSlottedAddRecords() {
+        Table slotted = createSlottedTable();
+        List<List<DataBox>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rows.add(createVariableLengthRow(i, i % 100));
+        }
+        List<RecordId> rids = slotted.addRecords(rows.iterator());
+        assertEquals(1000, slotted.getNumRecords());
+
+        RecordId rid = slotted.addRecord(createVariableLengthRow(1000, 1));
+        slotted = createSlottedTable();
+        assertEquals(1001, slotted.getNumRecords());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(new Record(rows.get(i)), slotted.getRecord(rids.get(i)));
+        }
+        assertEquals(new Record(createVariableLengthRow(1000, 1)), slotted.getRecord(rid));
+    }
+
+    private Table createPaxTable() {
+        return new Table(TABLENAME, schema, heapFile, new DummyLockContext(), TableFormat.PAX);
+    }
+
+    private static Record createPaxRecord(int i) {
+        Record r = createRecordWithAllTypes(i);
+        r.getValues().set(0, new BoolDataBox(i % 3 == 0));
+        r.getValues().set(3, new FloatDataBox(i / 2f));
+        return r;
+    }
+
+    @Test
+    public void testPaxInsertAndGet() {
+        Table pax = createPaxTable();
+        // booleans take a bit rather than a byte: 54 + 54 + (432 * 9) = 3996
+        assertEquals(432, pax.getNumRecordsPerPage());
+
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rids.add(pax.addRecord(createPaxRecord(i).getValues()));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(createPaxRecord(i), pax.getRecord(rids.get(i)));
+        }
+        assertEquals(3, pax.getNumDataPages());
+
+        // update and delete in place, then reload the table
+        assertEquals(createPaxRecord(10), pax.updateRecord(createPaxRecord(-10).getValues(), rids.get(10)));
+        assertEquals(createPaxRecord(11), pax.deleteRecord(rids.get(11)));
+        RecordId rid = pax.addRecord(createPaxRecord(-11).getValues());
+        assertEquals(rids.get(11), rid);
+
+        pax = createPaxTable();
+        assertEquals(1000, pax.getNumRecords());
+        for (int i = 0; i < 1000; ++i) {
+            int expected = i == 10 || i == 11 ? -i : i;
+            assertEquals(createPaxRecord(expected), pax.getRecord(rids.get(i)));
+        }
+    }
+
+    @Test
+    public void testPaxProjectedIterator() {
+        Table pax = createPaxTable();
+        for (int i = 0; i < 1000; ++i) {
+            pax.addRecord(createPaxRecord(i).getValues());
+        }
+
+        // columns are read in the order they are asked for
+        BacktrackingIterator<Record> iter = pax.iterator(Arrays.asList(3, 0));
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(iter.hasNext());
+            List<DataBox> values = createPaxRecord(i).getValues();
+            assertEquals(new Record(Arrays.asList(values.get(3), values.get(0))), iter.next());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void testPaxAddRecords() {
+        Table pax = createPaxTable();
+        List<List<DataBox>> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rows.add(createPaxRecord(i).getValues());
+        }
+        List<RecordId> rids = pax.addRecords(rows.iterator());
+        assertEquals(3, pax.getNumDataPages());
+
+        // the last page was left partially filled
+        RecordId rid = pax.addRecord(createPaxRecord(1000).getValues());
+        assertEquals(3, pax.getNumDataPages());
+
+        pax = createPaxTable();
+        assertEquals(1001, pax.getNumRecords());
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(createPaxRecord(i), pax.getRecord(rids.get(i)));
+        }
+        assertEquals(createPaxRecord(1000), pax.getRecord(rid));
+    }
+
+    private static List<DataBox> createDepartmentRow(int i) {
+        String[] departments = {"EECS", "MATH", "PHYS"};
+        return Arrays.asList(new IntDataBox(i), new StringDataBox(departments[i % 3], 255));
+    }
+
+    @Test
+    public void testDictionaryEncoding() {
+        for (TableFormat format : TableFormat.values()) {
+            try (MemoryHeapFile dataHeapFile = new MemoryHeapFile();
+                    MemoryHeapFile dictionaryHeapFile = new MemoryHeapFile()) {
+                Schema schema = createVariableLengthSchema();
+                StringDictionary dictionary = new StringDictionary(schema, Arrays.asList(1), dictionaryHeapFile,
+                        new DummyLockContext());
+                Table encoded = new Table(TABLENAME, schema, dataHeapFile, new DummyLockContext(), format,
+                                          dictionary);
+                List<RecordId> rids = new ArrayList<>();
+                for (int i = 0; i < 1000; ++i) {
+                    rids.add(encoded.addRecord(createDepartmentRow(i)));
+                }
+                encoded.updateRecord(Arrays.asList(new IntDataBox(0), new StringDataBox("CHEM", 255)), rids.get(0));
+                assertEquals(4, dictionary.getNumEntries(1));
+
+                // codes take 4 bytes rather than 255, so 1000 records take a few pages rather than
+                // the 125 they would take as fixed-size records
+                assertTrue(encoded.getNumDataPages() <= 4);
+
+                // reload the table and its dictionary
+                dictionary = new StringDictionary(schema, Arrays.asList(1), dictionaryHeapFile,
+                                                  new DummyLockContext());
+                encoded = new Table(TABLENAME, schema, dataHeapFile, new DummyLockContext(), format, dictionary);
+                assertEquals(4, dictionary.getNumEntries(1));
+                assertEquals(1000, encoded.getNumRecords());
+                assertEquals(new Record(Arrays.asList(new IntDataBox(0), new StringDataBox("CHEM", 255))),
+                             encoded.getRecord(rids.get(0)));
+                for (int i = 1; i < 1000; ++i) {
+                    assertEquals(new Record(createDepartmentRow(i)), encoded.getRecord(rids.get(i)));
+                }
+
+                // records with the same value share a decoded value
+                assertTrue(encoded.getRecord(rids.get(1)).getValues().get(1)
+                           == encoded.getRecord(rids.get(4)).getValues().get(1));
+            }
+        }
+    }
+
+    @Test
+    public void testDictionaryEntriesInSystemTransaction() {
+        try (MemoryHeapFile dataHeapFile = new MemoryHeapFile();
+                MemoryHeapFile dictionaryHeapFile = new MemoryHeapFile()) {
+            Schema schema = createVariableLengthSchema();
+            // counts the system transactions, failing the fifth one
+            int[] numSystemTransactions = {0};
+            StringDictionary dictionary = new StringDictionary(schema, Arrays.asList(1), dictionaryHeapFile,
+                    new DummyLockContext(), action -> {
+                        if (++numSystemTransactions[0] == 5) {
+                            throw new DatabaseException("system transaction failed");
+                        }
+                        action.run();
+                    });
+            Table encoded = new Table(TABLENAME, schema, dataHeapFile, new DummyLockContext(),
+                                      TableFormat.ROW, dictionary);
+            for (int i = 0; i < 100; ++i) {
+                encoded.addRecord(createDepartmentRow(i));
+            }
+            // one system transaction per new value
+            assertEquals(3, numSystemTransactions[0]);
+
+            encoded.addRecord(Arrays.asList(new IntDataBox(100), new StringDataBox("CHEM", 255)));
+            assertEquals(4, numSystemTransactions[0]);
+            try {
+                encoded.addRecord(Arrays.asList(new IntDataBox(101), new StringDataBox("ARTS", 255)));
+                fail();
+            } catch (DatabaseException e) {
+                // an entry that could not be persisted is not in the dictionary either
+            }
+            assertEquals(4, dictionary.getNumEntries(1));
+
+            encoded.addRecord(Arrays.asList(new IntDataBox(102), new StringDataBox("ARTS", 255)));
+            assertEquals(6, numSystemTransactions[0]);
+
+            // the new values of a batch of records share one system transaction
+            List<List<DataBox>> rows = new ArrayList<>();
+            for (String department : new String[] {"BIOL", "EECS", "HIST", "BIOL"}) {
+                rows.add(Arrays.asList(new IntDataBox(103 + rows.size()), new StringDataBox(department, 255)));
+            }
+            encoded.addRecords(rows.iterator());
+            assertEquals(7, numSystemTransactions[0]);
+
+            dictionary = new StringDictionary(schema, Arrays.asList(1), dictionaryHeapFile,
+                                              new DummyLockContext());
+            assertEquals(7, dictionary.getNumEntries(1));
+            assertEquals(new StringDataBox("ARTS", 255), dictionary.decode(1, 4));
+            assertEquals(new StringDataBox("HIST", 255), dictionary.decode(1, 6));
+        }
+    }
+
+    @Test
+    public void testBatchIterator() {
+        for (TableFormat format : TableFormat.values()) {
+            try (MemoryHeapFile dataHeapFile = new MemoryHeapFile();
+                    MemoryHeapFile dictionaryHeapFile = new MemoryHeapFile()) {
+                Schema schema = createVariableLengthSchema();
+                StringDictionary dictionary = new StringDictionary(schema, Arrays.asList(1), dictionaryHeapFile,
+                        new DummyLockContext());
+                Table encoded = new Table(TABLENAME, schema, dataHeapFile, new DummyLockContext(), format,
+                                          dictionary);
+                List<RecordId> rids = new ArrayList<>();
+                for (int i = 0; i < 3000; ++i) {
+                    rids.add(encoded.addRecord(createDepartmentRow(i)));
+                }
+                for (int i = 0; i < 3000; i += 7) {
+                    encoded.deleteRecord(rids.get(i));
+                }
+
+                // batches are full, except for the last one, and hold the same records as
+                // a projected scan
+                Iterator<RecordBatch> batches = encoded.batchIterator(Arrays.asList(1, 0));
+                Iterator<Record> expected = encoded.iterator(Arrays.asList(1, 0));
+                int numRecords = 0;
+                while (batches.hasNext()) {
+                    RecordBatch batch = batches.next();
+                    assertTrue(batch.size() == RecordBatch.CAPACITY || !batches.hasNext());
+                    for (int i = 0; i < batch.size(); ++i) {
+                        assertEquals(expected.next(), batch.getRecord(i));
+                        ++numRecords;
+                    }
+                }
+                assertFalse(expected.hasNext());
+                assertEquals(encoded.getNumRecords(), numRecords);
+            }
+        }
+
+        // primitive columns of every type
+        Table pax = createPaxTable();
+        for (int i = 0; i < 1000; ++i) {
+            pax.addRecord(createPaxRecord(i).getValues());
+        }
+        RecordBatch batch = pax.batchIterator(null).next();
+        assertEquals(1000, batch.size());
+        for (int i = 0; i < 1000; ++i) {
+            int row = batch.getSelection()[i];
+            assertEquals(i % 3 == 0, batch.getBools(0)[row]);
+            assertEquals(i, batch.getInts(1)[row]);
+            assertEquals(i / 2f, batch.getFloats(3)[row], 0);
+            assertEquals(createPaxRecord(i), batch.getRecord(i));
+        }
+    }
+
+    @Test
+    public void testGetSparsePages() {
+        int numRecordsPerPage = table.getNumRecordsPerPage();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < numRecordsPerPage * 4; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i).getValues()));
+        }
+        // keep all of the first page, 300 records of the second, 50 of the third, and 20
+        // of the fourth
+        int[] kept = {numRecordsPerPage, 300, 50, 20};
+        for (int p = 0; p < 4; ++p) {
+            for (int i = kept[p]; i < numRecordsPerPage; ++i) {
+                table.deleteRecord(rids.get(p * numRecordsPerPage + i));
+            }
+        }
+        long page2 = rids.get(2 * numRecordsPerPage).getPageNum();
+        long page3 = rids.get(3 * numRecordsPerPage).getPageNum();
+
+        // 830 free entries fit the records of two pages, sparsest first
+        assertEquals(Arrays.asList(page3, page2), table.getSparsePages(10));
+        assertEquals(Arrays.asList(page3), table.getSparsePages(1));
+
+        BacktrackingIterator<RecordId> iter = table.ridIterator(page3);
+        for (int i = 0; i < 20; ++i) {
+            assertTrue(iter.hasNext());
+            assertEquals(rids.get(3 * numRecordsPerPage + i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        // with 100 more records, the free entries only fit the records of one page
+        for (int i = 0; i < 100; ++i) {
+            table.addRecord(createRecordWithAllTypes(i).getValues());
+        }
+        assertEquals(1, table.getSparsePages(10).size());
+    }
 }